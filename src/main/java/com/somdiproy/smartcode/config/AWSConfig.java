@@ -10,11 +10,14 @@ import com.amazonaws.Protocol;
 import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsClientBuilder;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -26,6 +29,8 @@ import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3ClientBuilder;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
@@ -53,6 +58,15 @@ public class AWSConfig {
     @Value("${aws.endpoint.url:}")
     private String endpointUrl;
     
+    @Value("${aws.bedrock.endpoint-url:}")
+    private String bedrockEndpointUrl;
+    
+    @Value("${bedrock.simulator.enabled:false}")
+    private boolean bedrockSimulatorEnabled;
+    
+    @Value("${bedrock.simulator.port:8099}")
+    private int bedrockSimulatorPort;
+    
     /**
      * AWS SDK v1 Credentials Provider
      */
@@ -158,6 +172,41 @@ public class AWSConfig {
         return builder.build();
     }
     
+    /**
+     * DynamoDB Streams client, only needed when the change feed tails the table's stream
+     */
+    @Bean
+    @ConditionalOnProperty(name = "analysis.change-feed.type", havingValue = "dynamodb-streams")
+    public AmazonDynamoDBStreams amazonDynamoDBStreams(AWSCredentialsProvider credentialsProvider) {
+        logger.info("Creating AmazonDynamoDBStreams client for the analysis change feed");
+        
+        AmazonDynamoDBStreamsClientBuilder builder = AmazonDynamoDBStreamsClientBuilder.standard()
+                .withCredentials(credentialsProvider)
+                .withRegion(region)
+                .withClientConfiguration(createClientConfiguration());
+        
+        if (!endpointUrl.isEmpty()) {
+            builder.withEndpointConfiguration(
+                new AwsClientBuilder.EndpointConfiguration(endpointUrl, region)
+            );
+        }
+        
+        return builder.build();
+    }
+    
+    /**
+     * Bedrock endpoint: explicit setting, then the embedded simulator, then aws.endpoint.url
+     */
+    private String resolveBedrockEndpointUrl() {
+        if (!bedrockEndpointUrl.isEmpty()) {
+            return bedrockEndpointUrl;
+        }
+        if (bedrockSimulatorEnabled) {
+            return "http://localhost:" + bedrockSimulatorPort;
+        }
+        return endpointUrl;
+    }
+    
     /**
      * Create AWS SDK v2 Client Override Configuration with retry and timeout settings
      */
@@ -188,7 +237,30 @@ public class AWSConfig {
         
         return builder.build();
     }
-    
+
+    /**
+     * Async DynamoDB client for the analysis polling path.
+     * Reads complete on the SDK's own threads, so request threads are not held
+     * while waiting on DynamoDB.
+     */
+    @Bean
+    public DynamoDbAsyncClient dynamoDbAsyncClient(AwsCredentialsProvider credentialsProvider) {
+        logger.info("Creating DynamoDbAsyncClient for non-blocking reads");
+
+        DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(Region.of(region))
+                .overrideConfiguration(createV2ClientConfiguration());
+
+        // Support for LocalStack or custom endpoints
+        if (!endpointUrl.isEmpty()) {
+            logger.info("Using custom endpoint for DynamoDB async: {}", endpointUrl);
+            builder.endpointOverride(java.net.URI.create(endpointUrl));
+        }
+
+        return builder.build();
+    }
+
     @Bean
     public BedrockRuntimeClient bedrockRuntimeClient(AwsCredentialsProvider credentialsProvider) {
         logger.info("Creating BedrockRuntimeClient with enhanced configuration");
@@ -198,7 +270,12 @@ public class AWSConfig {
                 .region(Region.US_EAST_1)
                 .overrideConfiguration(createV2ClientConfiguration());
         
-        // Note: Bedrock doesn't support custom endpoints
+        // Custom endpoint, e.g. the local Bedrock simulator
+        String bedrockEndpoint = resolveBedrockEndpointUrl();
+        if (!bedrockEndpoint.isEmpty()) {
+            logger.info("Using custom endpoint for Bedrock: {}", bedrockEndpoint);
+            builder.endpointOverride(java.net.URI.create(bedrockEndpoint));
+        }
         
         return builder.build();
     }
@@ -0,0 +1,33 @@
+package com.somdiproy.smartcode.config;
+
+import com.somdiproy.smartcode.util.BedrockSimulator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Embedded Bedrock simulator for load and throttling experiments.
+ *
+ * Enabled with bedrock.simulator.enabled=true; tunables bind from
+ * bedrock.simulator.* (see {@link BedrockSimulator.Settings}). When no
+ * explicit aws.bedrock.endpoint-url is set, the app's Bedrock client is
+ * pointed at the simulator automatically.
+ *
+ * @author Somdip Roy
+ */
+@Configuration
+@ConditionalOnProperty(name = "bedrock.simulator.enabled", havingValue = "true")
+public class BedrockSimulatorConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "bedrock.simulator")
+    public BedrockSimulator.Settings bedrockSimulatorSettings() {
+        return new BedrockSimulator.Settings();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public BedrockSimulator bedrockSimulator(BedrockSimulator.Settings settings) {
+        return new BedrockSimulator(settings);
+    }
+}
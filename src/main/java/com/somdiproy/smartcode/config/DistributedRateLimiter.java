@@ -0,0 +1,210 @@
+package com.somdiproy.smartcode.config;
+
+import com.somdiproy.smartcode.lambda.TokenBucketStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Cluster-wide rate limiter that leases permits in batches.
+ *
+ * The limit is shared by every instance through a {@link TokenBucketStore}.
+ * Each instance leases a small batch of permits and hands them out locally
+ * without any remote call. When a lease runs low the next batch is fetched in
+ * the background, so the request path only touches the store when a lease is
+ * exhausted before the prefetch returned.
+ *
+ * Leases are sized so that all instances together hold at most a quarter of
+ * the per-minute limit, and they are short-lived: permits still unused when
+ * a lease expires are released back to the store, so an idle instance does
+ * not starve a busy one.
+ *
+ * If the store is unreachable the limiter fails open and logs; rate
+ * limiting must not take the API down with it.
+ *
+ * @author Somdip Roy
+ */
+public class DistributedRateLimiter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedRateLimiter.class);
+
+    private static final long DEFAULT_LEASE_TTL_MS = 5000;
+
+    private final String name;
+    private final TokenBucketStore store;
+    private final long permitsPerMinute;
+    private final long leaseSize;
+    private final long prefetchThreshold;
+    private final long leaseTtlMs;
+    private final LongSupplier clock;
+    private final Executor prefetchExecutor;
+
+    private final AtomicReference<Lease> lease = new AtomicReference<>(new Lease(0, Long.MIN_VALUE));
+    private final AtomicBoolean prefetching = new AtomicBoolean();
+
+    public DistributedRateLimiter(String name, TokenBucketStore store, long permitsPerMinute, long leaseSize) {
+        this(name, store, permitsPerMinute, leaseSize, 1, DEFAULT_LEASE_TTL_MS,
+                System::currentTimeMillis, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param instances expected number of instances sharing the limit
+     * @param leaseTtlMs how long unused leased permits are kept before they are returned
+     * @param clock current time in milliseconds
+     * @param prefetchExecutor runs background lease fetches
+     */
+    public DistributedRateLimiter(String name, TokenBucketStore store, long permitsPerMinute, long leaseSize,
+                                  int instances, long leaseTtlMs, LongSupplier clock, Executor prefetchExecutor) {
+        this.name = name;
+        this.store = store;
+        this.permitsPerMinute = permitsPerMinute;
+        this.leaseSize = Math.max(1, Math.min(leaseSize, permitsPerMinute / (4L * Math.max(1, instances))));
+        this.prefetchThreshold = this.leaseSize / 4;
+        this.leaseTtlMs = leaseTtlMs;
+        this.clock = clock;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Take one permit if the cluster-wide limit allows it
+     */
+    public boolean tryAcquire() {
+        long now = clock.getAsLong();
+        Lease current = lease.get();
+
+        // Fast path: a permit from the local lease
+        if (current.isLive(now) && current.remaining.getAndDecrement() > 0) {
+            if (current.remaining.get() <= prefetchThreshold) {
+                prefetch();
+            }
+            return true;
+        }
+        return acquireSlow(now);
+    }
+
+    public long getPermitsPerMinute() {
+        return permitsPerMinute;
+    }
+
+    public long getLeaseSize() {
+        return leaseSize;
+    }
+
+    /**
+     * Return any unused leased permits to the store
+     */
+    @Override
+    public synchronized void close() {
+        releaseUnused(lease.getAndSet(new Lease(0, Long.MIN_VALUE)));
+    }
+
+    /**
+     * Lease exhausted or expired: lease synchronously
+     */
+    private synchronized boolean acquireSlow(long now) {
+        Lease current = lease.get();
+        if (current.isLive(now) && current.remaining.getAndDecrement() > 0) {
+            return true;
+        }
+
+        long granted = leaseFromStore();
+        if (granted < 0) {
+            // Store unavailable: fail open without a lease
+            return true;
+        }
+        if (granted == 0) {
+            return false;
+        }
+        replaceLease(granted - 1, now);
+        return true;
+    }
+
+    /**
+     * Fetch the next batch in the background and add it to a fresh lease
+     */
+    private void prefetch() {
+        if (!prefetching.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                long granted = leaseFromStore();
+                if (granted > 0) {
+                    synchronized (this) {
+                        replaceLease(granted, clock.getAsLong());
+                    }
+                }
+            } finally {
+                prefetching.set(false);
+            }
+        }, prefetchExecutor);
+    }
+
+    /**
+     * Swap in a new lease, carrying over what is left of a live one and
+     * returning what is left of an expired one. Callers hold the monitor.
+     */
+    private void replaceLease(long granted, long now) {
+        Lease current = lease.get();
+        long carried = 0;
+        if (current.isLive(now)) {
+            // getAndSet drains the old lease so racing fast-path callers fall through to acquireSlow
+            carried = Math.max(0, current.remaining.getAndSet(0));
+        } else {
+            releaseUnused(current);
+        }
+        lease.set(new Lease(carried + granted, now + leaseTtlMs));
+    }
+
+    private void releaseUnused(Lease expired) {
+        long unused = expired.remaining.getAndSet(0);
+        if (unused <= 0) {
+            return;
+        }
+        try {
+            store.release(name, unused, permitsPerMinute);
+        } catch (Exception e) {
+            logger.debug("Could not return {} leased permits for {}: {}", unused, name, e.getMessage());
+        }
+    }
+
+    /**
+     * Lease a full batch, or a single permit when the bucket is nearly empty.
+     * Returns -1 when the store is unavailable.
+     */
+    private long leaseFromStore() {
+        try {
+            if (store.tryAcquire(name, leaseSize, permitsPerMinute) == 0) {
+                return leaseSize;
+            }
+            if (leaseSize > 1 && store.tryAcquire(name, 1, permitsPerMinute) == 0) {
+                return 1;
+            }
+            return 0;
+        } catch (Exception e) {
+            logger.warn("Rate limit store unavailable for {}, allowing request: {}", name, e.getMessage());
+            return -1;
+        }
+    }
+
+    private static final class Lease {
+        private final AtomicLong remaining;
+        private final long expiresAt;
+
+        Lease(long remaining, long expiresAt) {
+            this.remaining = new AtomicLong(remaining);
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isLive(long now) {
+            return now < expiresAt;
+        }
+    }
+}
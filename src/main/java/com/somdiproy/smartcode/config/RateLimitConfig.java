@@ -1,8 +1,14 @@
 package com.somdiproy.smartcode.config;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.util.concurrent.RateLimiter;
+import com.somdiproy.smartcode.lambda.DynamoDBTokenBucketStore;
+import com.somdiproy.smartcode.lambda.InMemoryTokenBucketStore;
+import com.somdiproy.smartcode.lambda.TokenBucketStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,6 +17,7 @@ import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 
@@ -23,6 +30,11 @@ import java.util.concurrent.TimeUnit;
  * - Failed attempt tracking
  * - IP-based throttling
  * 
+ * Session creation and API limits are cluster-wide: with
+ * rate.limit.backend=dynamodb every instance leases permits from a shared
+ * DynamoDB table; the default local backend keeps the same semantics in
+ * memory for a single instance and tests.
+ * 
  * @author Somdip Roy
  */
 @EnableScheduling
@@ -35,23 +47,49 @@ public class RateLimitConfig implements WebMvcConfigurer {
     @Value("${rate.limit.api.per.minute:60}")
     private double apiCallsPerMinute;
     
-    @Value("${rate.limit.analysis.per.minute:4}")  // Maximum 4 analyses per minute across all users
-    private double analysisRatePerMinute;
-    
     @Value("${rate.limit.failed.attempts.max:5}")
     private int maxFailedAttempts;
     
     @Value("${rate.limit.failed.attempts.window.minutes:15}")
     private int failedAttemptWindowMinutes;
     
+    @Value("${rate.limit.backend:local}")
+    private String backend;
+    
+    @Value("${rate.limit.dynamodb.table-name:bedrock-token-buckets}")
+    private String bucketTableName;
+    
+    @Value("${rate.limit.lease-size:10}")
+    private long leaseSize;
+    
+    @Value("${rate.limit.lease-ttl-ms:5000}")
+    private long leaseTtlMs;
+    
+    @Value("${rate.limit.instances:1}")
+    private int instances;
+    
+    @Autowired
+    private ObjectProvider<AmazonDynamoDB> amazonDynamoDB;
+    
+    /**
+     * Shared permit store behind the cluster-wide limiters
+     */
+    @Bean
+    public TokenBucketStore rateLimitBucketStore() {
+        if ("dynamodb".equals(backend)) {
+            return new DynamoDBTokenBucketStore(amazonDynamoDB.getObject(), bucketTableName);
+        }
+        return new InMemoryTokenBucketStore();
+    }
+    
     /**
      * Rate limiter for session creation
      * Prevents abuse of session creation endpoint
      */
     @Bean
-    public RateLimiter sessionCreationRateLimiter() {
-        // Allow configured session creations per minute
-        return RateLimiter.create(sessionCreationRatePerMinute / 60.0);
+    public DistributedRateLimiter sessionCreationRateLimiter() {
+        // Allow configured session creations per minute across all instances
+        return newLimiter("rate-limit:session-create", (long) sessionCreationRatePerMinute);
     }
     
     /**
@@ -59,19 +97,14 @@ public class RateLimitConfig implements WebMvcConfigurer {
      * Applies to all authenticated endpoints
      */
     @Bean
-    public RateLimiter apiRateLimiter() {
-        // Allow configured API calls per minute
-        return RateLimiter.create(apiCallsPerMinute / 60.0);
+    public DistributedRateLimiter apiRateLimiter() {
+        // Allow configured API calls per minute across all instances
+        return newLimiter("rate-limit:api", (long) apiCallsPerMinute);
     }
     
-    /**
-     * Rate limiter for code analysis requests
-     * More restrictive as analysis is resource-intensive
-     */
-    @Bean
-    public RateLimiter analysisRateLimiter() {
-        // Allow configured analysis requests per minute
-        return RateLimiter.create(analysisRatePerMinute / 60.0);
+    private DistributedRateLimiter newLimiter(String name, long permitsPerMinute) {
+        return new DistributedRateLimiter(name, rateLimitBucketStore(), permitsPerMinute, leaseSize,
+                instances, leaseTtlMs, System::currentTimeMillis, ForkJoinPool.commonPool());
     }
     
     /**
@@ -136,7 +169,6 @@ public class RateLimitConfig implements WebMvcConfigurer {
         return new RateLimitInterceptor(
             sessionCreationRateLimiter(),
             apiRateLimiter(),
-            analysisRateLimiter(),
             failedAttemptCache(),
             apiUsageCache()
         );
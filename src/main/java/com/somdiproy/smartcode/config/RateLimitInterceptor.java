@@ -1,8 +1,8 @@
 package com.somdiproy.smartcode.config;
 
 import com.github.benmanes.caffeine.cache.Cache;
-import com.google.common.util.concurrent.RateLimiter;
 import com.somdiproy.smartcode.config.RateLimitConfig.APIUsageStats;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
@@ -20,34 +20,34 @@ public class RateLimitInterceptor implements HandlerInterceptor {
     private static final Logger logger = LoggerFactory.getLogger(RateLimitInterceptor.class);
     
     private static final int SC_TOO_MANY_REQUESTS = 429;
-    private final RateLimiter sessionCreationRateLimiter;
-    private final RateLimiter apiRateLimiter;
-    private final RateLimiter analysisRateLimiter;
+    private final DistributedRateLimiter sessionCreationRateLimiter;
+    private final DistributedRateLimiter apiRateLimiter;
     private final Cache<String, Integer> failedAttemptCache;
     private final Cache<String, APIUsageStats> apiUsageCache;
     
     // Store rate limits for headers
     private final double apiCallsPerMinute;
-    private final double analysisCallsPerMinute;
     
-    public RateLimitInterceptor(RateLimiter sessionCreationRateLimiter,
-                                RateLimiter apiRateLimiter,
-                                RateLimiter analysisRateLimiter,
+    public RateLimitInterceptor(DistributedRateLimiter sessionCreationRateLimiter,
+                                DistributedRateLimiter apiRateLimiter,
                                 Cache<String, Integer> failedAttemptCache,
                                 Cache<String, APIUsageStats> apiUsageCache) {
         this.sessionCreationRateLimiter = sessionCreationRateLimiter;
         this.apiRateLimiter = apiRateLimiter;
-        this.analysisRateLimiter = analysisRateLimiter;
         this.failedAttemptCache = failedAttemptCache;
         this.apiUsageCache = apiUsageCache;
         
-        // Store rate limits (assuming 60 and 5 per minute based on logs)
-        this.apiCallsPerMinute = 60.0;
-        this.analysisCallsPerMinute = 20.0; // Increased from 5 to 20
+        this.apiCallsPerMinute = apiRateLimiter.getPermitsPerMinute();
     }
     
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // Async endpoints are dispatched a second time when their result is ready;
+        // the permit was already charged on the initial request
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        
         String requestPath = request.getRequestURI();
         String sessionToken = extractSessionToken(request);
         String ipAddress = getClientIpAddress(request);
@@ -70,14 +70,8 @@ public class RateLimitInterceptor implements HandlerInterceptor {
                 return false;
             }
         } else if (requestPath.contains("/analyze/") && method.equals("POST")) {
-            // This is for submitting new analysis (POST requests)
-            if (!analysisRateLimiter.tryAcquire()) {
-                logger.warn("Analysis submission rate limit exceeded for session: {}", sessionToken);
-                response.setStatus(SC_TOO_MANY_REQUESTS);
-                response.setContentType("application/json");
-                response.getWriter().write("{\"error\":\"Too many analysis submissions. Please try again later.\"}");
-                return false;
-            }
+            // Analysis submissions are charged by estimated tokens in the
+            // controller (AdmissionControlService), not one permit per request
             updateAPIUsageStats(sessionToken, true);
         } else if (requestPath.contains("/analysis/") && method.equals("GET")) {
             // For polling analysis results (GET requests), use a more lenient rate limit
@@ -116,9 +110,8 @@ public class RateLimitInterceptor implements HandlerInterceptor {
             response.setHeader("X-RateLimit-Limit", String.valueOf((int)apiCallsPerMinute));
             response.setHeader("X-RateLimit-Window", "60s");
         } else if (requestPath.contains("/analyze/")) {
-            // For analysis submission, show analysis rate limits
-            response.setHeader("X-RateLimit-Limit", String.valueOf((int)analysisCallsPerMinute));
-            response.setHeader("X-RateLimit-Window", "60s");
+            // Submissions are limited by token budget; Retry-After is set on rejection
+            return;
         } else {
             // For other endpoints, show API rate limits
             response.setHeader("X-RateLimit-Limit", String.valueOf((int)apiCallsPerMinute));
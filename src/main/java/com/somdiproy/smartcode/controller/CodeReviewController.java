@@ -1,12 +1,15 @@
 package com.somdiproy.smartcode.controller;
 
 import com.somdiproy.smartcode.dto.*;
+import com.somdiproy.smartcode.service.AdmissionControlService;
+import com.somdiproy.smartcode.service.AnalysisEventService;
 import com.somdiproy.smartcode.service.CodeAnalysisService;
 import com.somdiproy.smartcode.service.ReportGenerationService;
 import com.somdiproy.smartcode.service.SessionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -14,11 +17,14 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Code Review Controller - Main REST API
@@ -46,6 +52,15 @@ public class CodeReviewController {
     
     @Autowired
     private ReportGenerationService reportGenerationService;
+
+    @Autowired
+    private AnalysisEventService analysisEventService;
+
+    @Autowired
+    private AdmissionControlService admissionControlService;
+    
+    @Value("${analysis.long-poll.max-wait-seconds:30}")
+    private long maxLongPollSeconds;
     
     /**
      * Health check endpoint
@@ -124,8 +139,10 @@ public class CodeReviewController {
     public ResponseEntity<AnalysisResponse> analyzeZipFile(
             @RequestParam("file") MultipartFile file,
             @RequestParam("sessionToken") String sessionToken,
+            @RequestParam(value = "depth", required = false) String depth,
             HttpServletRequest request) {
         
+        AdmissionControlService.Admission admission = null;
         try {
             logger.info("ZIP file upload received: {} ({})", file.getOriginalFilename(), file.getSize());
             
@@ -147,6 +164,13 @@ public class CodeReviewController {
                                 .build());
             }
             
+            // Charge estimated tokens; turn away work that could not start soon
+            admission = admissionControlService.admit(sessionToken,
+                    admissionControlService.estimateZipTokens(file.getSize()));
+            if (admission.isRejected()) {
+                return admissionRejected(admission);
+            }
+            
             // Process analysis
             AnalysisRequest analysisRequest = AnalysisRequest.builder()
                     .type(AnalysisType.ZIP_UPLOAD)
@@ -154,14 +178,18 @@ public class CodeReviewController {
                     .fileName(file.getOriginalFilename())
                     .fileSize(file.getSize())
                     .clientIp(getClientIp(request))
+                    .admissionDelaySeconds(admission.getWaitSeconds())
+                    .depth(depth)
                     .build();
             
             AnalysisResponse response = codeAnalysisService.analyzeZipFile(file, analysisRequest);
+            applyAdmission(admission, response);
             
             logger.info("ZIP analysis completed: {}", response.getAnalysisId());
             return ResponseEntity.ok(response);
             
         } catch (Exception e) {
+            admissionControlService.release(admission);
             logger.error("Error analyzing ZIP file", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(AnalysisResponse.builder()
@@ -173,29 +201,40 @@ public class CodeReviewController {
     
     /**
      * Analyze pasted code
+     * 
+     * Completes asynchronously: a small paste analyzed inline (hybrid mode)
+     * is answered with its result without holding a Tomcat thread while it
+     * runs.
      */
     @PostMapping("/analyze/code")
-    public ResponseEntity<AnalysisResponse> analyzeCode(@Valid @RequestBody CodeAnalysisRequest request,
-                                                       HttpServletRequest httpRequest) {
+    public CompletableFuture<ResponseEntity<AnalysisResponse>> analyzeCode(@Valid @RequestBody CodeAnalysisRequest request,
+                                                                          HttpServletRequest httpRequest) {
+        AdmissionControlService.Admission admission = null;
         try {
             logger.info("Code paste analysis received for language: {}", request.getLanguage());
             
             // Validate session
             if (!sessionService.isValidSession(request.getSessionToken())) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(AnalysisResponse.builder()
                                 .success(false)
                                 .message("Invalid or expired session")
-                                .build());
+                                .build()));
             }
             
             // Validate code length
             if (request.getCode().length() > 100000) { // 100KB limit
-                return ResponseEntity.badRequest()
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
                         .body(AnalysisResponse.builder()
                                 .success(false)
                                 .message("Code is too large (max 100KB)")
-                                .build());
+                                .build()));
+            }
+            
+            admission = admissionControlService.admit(request.getSessionToken(),
+                    admissionControlService.estimateCodeTokens(request.getCode().length()));
+            if (admission.isRejected()) {
+                return CompletableFuture.completedFuture(admissionRejected(admission));
             }
             
             AnalysisRequest analysisRequest = AnalysisRequest.builder()
@@ -203,86 +242,166 @@ public class CodeReviewController {
                     .sessionToken(request.getSessionToken())
                     .language(request.getLanguage())
                     .clientIp(getClientIp(httpRequest))
+                    .admissionDelaySeconds(admission.getWaitSeconds())
+                    .depth(request.getDepth())
                     .build();
             
-            AnalysisResponse response = codeAnalysisService.analyzeCode(request.getCode(), analysisRequest);
-            
-            logger.info("Code analysis completed: {}", response.getAnalysisId());
-            return ResponseEntity.ok(response);
+            AdmissionControlService.Admission admitted = admission;
+            return codeAnalysisService.analyzeCodeAsync(request.getCode(), analysisRequest)
+                    .thenApply(response -> {
+                        applyAdmission(admitted, response);
+                        logger.info("Code analysis completed: {}", response.getAnalysisId());
+                        return ResponseEntity.ok(response);
+                    })
+                    .exceptionally(e -> {
+                        admissionControlService.release(admitted);
+                        return analyzeCodeFailed(e);
+                    });
             
         } catch (Exception e) {
-            logger.error("Error analyzing code", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(AnalysisResponse.builder()
-                            .success(false)
-                            .message("Failed to analyze code: " + e.getMessage())
-                            .build());
+            admissionControlService.release(admission);
+            return CompletableFuture.completedFuture(analyzeCodeFailed(e));
         }
     }
     
+    private ResponseEntity<AnalysisResponse> analyzeCodeFailed(Throwable e) {
+        logger.error("Error analyzing code", e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(AnalysisResponse.builder()
+                        .success(false)
+                        .message("Failed to analyze code: " + e.getMessage())
+                        .build());
+    }
+    
     /**
      * Get analysis result by ID
+     * 
+     * Completes asynchronously: the request thread is released while the
+     * DynamoDB read is in flight, so concurrent polls are not bounded by the
+     * Tomcat thread pool.
      */
     @GetMapping("/analysis/{analysisId}")
-    public ResponseEntity<AnalysisResponse> getAnalysis(@PathVariable String analysisId,
-                                                       @RequestParam String sessionToken) {
-        try {
-            logger.info("Retrieving analysis: {}", analysisId);
-            
-            // Validate session
-            if (!sessionService.isValidSession(sessionToken)) {
-                logger.warn("Invalid session token for analysis request: {}", analysisId);
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(AnalysisResponse.builder()
-                                .success(false)
-                                .message("Session expired. Please start a new analysis.")
-                                .status(AnalysisStatus.FAILED)
-                                .analysisId(analysisId)
-                                .build());
-            }
-            
-            // Get analysis result
-            AnalysisResponse response = codeAnalysisService.getAnalysisResult(analysisId);
-            
-            if (response == null) {
-                logger.warn("Analysis not found: {}", analysisId);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(AnalysisResponse.builder()
-                                .success(false)
-                                .message("Analysis not found")
-                                .status(AnalysisStatus.NOT_FOUND)
-                                .analysisId(analysisId)
-                                .build());
-            }
-            
-            // Ensure status is set
-            if (response.getStatus() == null) {
-                response.setStatus(AnalysisStatus.UNKNOWN);
-            }
-            
-            // The success flag should already be set by codeAnalysisService
-            // but if we need to ensure it matches the status:
-            if (response.getStatus() == AnalysisStatus.FAILED || 
-                response.getStatus() == AnalysisStatus.NOT_FOUND) {
-                response.setSuccess(false);
-            }
-            
-            // Log the response status for debugging
-            logger.info("Analysis {} status: {}, success: {}", 
-                       analysisId, response.getStatus(), response.isSuccess());
-            
-            return ResponseEntity.ok(response);
-            
-        } catch (Exception e) {
-            logger.error("Error retrieving analysis: {}", analysisId, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+    public CompletableFuture<ResponseEntity<AnalysisResponse>> getAnalysis(@PathVariable String analysisId,
+                                                                          @RequestParam String sessionToken,
+                                                                          @RequestParam(defaultValue = "0") long waitSeconds) {
+        logger.info("Retrieving analysis: {}", analysisId);
+        
+        // Validate session
+        if (!sessionService.isValidSession(sessionToken)) {
+            logger.warn("Invalid session token for analysis request: {}", analysisId);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(AnalysisResponse.builder()
                             .success(false)
-                            .message("Failed to retrieve analysis")
+                            .message("Session expired. Please start a new analysis.")
                             .status(AnalysisStatus.FAILED)
                             .analysisId(analysisId)
+                            .build()));
+        }
+        
+        // Get analysis result; waitSeconds > 0 long-polls for the next change
+        long waitMs = TimeUnit.SECONDS.toMillis(Math.max(0, Math.min(waitSeconds, maxLongPollSeconds)));
+        return codeAnalysisService.awaitAnalysisResult(analysisId, waitMs)
+                .thenApply(response -> toAnalysisResponseEntity(analysisId, response))
+                .exceptionally(e -> {
+                    logger.error("Error retrieving analysis: {}", analysisId, e);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(AnalysisResponse.builder()
+                                    .success(false)
+                                    .message("Failed to retrieve analysis")
+                                    .status(AnalysisStatus.FAILED)
+                                    .analysisId(analysisId)
+                                    .build());
+                });
+    }
+    
+    /**
+     * Stream analysis progress as Server-Sent Events (status, issues, complete).
+     * Reconnecting clients resume via the Last-Event-ID header.
+     */
+    @GetMapping(value = "/analysis/{analysisId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamAnalysisEvents(@PathVariable String analysisId,
+                                                           @RequestParam String sessionToken,
+                                                           @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                                           @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        if (!sessionService.isValidSession(sessionToken)) {
+            logger.warn("Invalid session token for event stream: {}", analysisId);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        Long lastEventId = parseEventId(lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam);
+        logger.info("Opening event stream for analysis: {} (Last-Event-ID: {})", analysisId, lastEventId);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(analysisEventService.subscribe(analysisId, lastEventId));
+    }
+
+    /**
+     * 429 with the estimated time until the submission's tokens would be available
+     */
+    private ResponseEntity<AnalysisResponse> admissionRejected(AdmissionControlService.Admission admission) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(admission.getWaitSeconds()))
+                .body(AnalysisResponse.builder()
+                        .success(false)
+                        .message("Analysis capacity is fully booked for a submission of this size. "
+                                + "Estimated wait: " + admission.getWaitSeconds() + " seconds")
+                        .build());
+    }
+    
+    /**
+     * Refund a failed start; tell the client when a delayed submission will begin
+     */
+    private void applyAdmission(AdmissionControlService.Admission admission, AnalysisResponse response) {
+        if (!response.isSuccess()) {
+            admissionControlService.release(admission);
+        } else if (admission.getOutcome() == AdmissionControlService.Outcome.DELAYED) {
+            response.setMessage("Analysis queued - expected to start in about "
+                    + admission.getWaitSeconds() + " seconds");
+        }
+    }
+    
+    private Long parseEventId(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private ResponseEntity<AnalysisResponse> toAnalysisResponseEntity(String analysisId, AnalysisResponse response) {
+        if (response == null) {
+            logger.warn("Analysis not found: {}", analysisId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(AnalysisResponse.builder()
+                            .success(false)
+                            .message("Analysis not found")
+                            .status(AnalysisStatus.NOT_FOUND)
+                            .analysisId(analysisId)
                             .build());
         }
+        
+        // Ensure status is set
+        if (response.getStatus() == null) {
+            response.setStatus(AnalysisStatus.UNKNOWN);
+        }
+        
+        // The success flag should already be set by codeAnalysisService
+        // but if we need to ensure it matches the status:
+        if (response.getStatus() == AnalysisStatus.FAILED || 
+            response.getStatus() == AnalysisStatus.NOT_FOUND) {
+            response.setSuccess(false);
+        }
+        
+        // Log the response status for debugging
+        logger.info("Analysis {} status: {}, success: {}", 
+                   analysisId, response.getStatus(), response.isSuccess());
+        
+        return ResponseEntity.ok(response);
     }
     
     /**
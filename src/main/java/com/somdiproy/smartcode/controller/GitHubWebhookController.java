@@ -4,10 +4,12 @@ import com.somdiproy.smartcode.dto.AnalysisRequest;
 import com.somdiproy.smartcode.dto.AnalysisResponse;
 import com.somdiproy.smartcode.dto.AnalysisType;
 import com.somdiproy.smartcode.dto.GitHubWebhookPayload;
+import com.somdiproy.smartcode.service.AdmissionControlService;
 import com.somdiproy.smartcode.service.CodeAnalysisService;
 import com.somdiproy.smartcode.service.GitHubService;
 import com.somdiproy.smartcode.service.SessionService;
 import com.somdiproy.smartcode.service.SessionService.SessionData;
+import com.somdiproy.smartcode.util.DiffExcerptBuilder;
 import com.somdiproy.smartcode.util.GitHubWebhookValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,12 +54,24 @@ public class GitHubWebhookController {
     @Autowired
     private GitHubService gitHubService;
     
+    @Autowired
+    private AdmissionControlService admissionControlService;
+    
     @Value("${github.webhook.secret:}")
     private String webhookSecret;
     
     @Value("${github.webhook.max-payload-size:5242880}") // 5MB default
     private long maxPayloadSize;
     
+    /**
+     * diff: review changed hunks plus context; full: review every changed file whole
+     */
+    @Value("${github.pr.analysis-mode:diff}")
+    private String pullRequestAnalysisMode;
+    
+    @Value("${github.pr.diff-context-lines:10}")
+    private int diffContextLines;
+    
     /**
      * Track webhook events for each session
      */
@@ -555,9 +569,12 @@ public class GitHubWebhookController {
                             .build();
                         
                         // Trigger the actual analysis
-                        AnalysisResponse analysisResponse = codeAnalysisService.analyzeCode(
-                            combinedCode.toString(), analysisRequest
+                        AnalysisResponse analysisResponse = admitAndAnalyze(
+                            combinedCode.toString(), analysisRequest, result
                         );
+                        if (analysisResponse == null) {
+                            return result;
+                        }
                         
                         result.put("analysis_status", "started");
                         result.put("analysis_id", analysisResponse.getAnalysisId());
@@ -586,7 +603,10 @@ public class GitHubWebhookController {
     }
     
     /**
-     * Process pull request events
+     * Process pull request events. In diff mode only the changed hunks and
+     * a window of context around them are analyzed, with findings mapped
+     * back to head-commit lines; files GitHub sends no patch for are
+     * analyzed whole.
      */
     private Map<String, Object> processPullRequestEvent(String payload, String sessionToken) 
             throws Exception {
@@ -617,29 +637,44 @@ public class GitHubWebhookController {
                     repoName, prNumberInt
                 );
                 
-                // Fetch file contents
-                Map<String, String> fileContents = new HashMap<>();
+                boolean diffMode = "diff".equalsIgnoreCase(pullRequestAnalysisMode);
+                result.put("analysis_mode", diffMode ? "diff" : "full");
+                
+                // Prepare combined code for analysis
+                StringBuilder combinedCode = new StringBuilder();
+                List<String> fileNames = new ArrayList<>();
+                int changedLines = 0;
+                
                 for (Map<String, String> fileInfo : prFiles) {
                     String filePath = fileInfo.get("filename");
-                    if (isCodeFile(filePath)) {
-                        String content = gitHubService.fetchFileContent(repoName, filePath, headSha);
-                        if (content != null) {
-                            fileContents.put(filePath, content);
-                        }
+                    if (!isCodeFile(filePath)) {
+                        continue;
                     }
-                }
-                
-                if (!fileContents.isEmpty()) {
-                    // Prepare combined code for analysis
-                    StringBuilder combinedCode = new StringBuilder();
-                    List<String> fileNames = new ArrayList<>();
                     
-                    for (Map.Entry<String, String> entry : fileContents.entrySet()) {
-                        combinedCode.append("// File: ").append(entry.getKey()).append("\n");
-                        combinedCode.append(entry.getValue()).append("\n\n");
-                        fileNames.add(entry.getKey());
+                    String patch = fileInfo.get("patch");
+                    if (diffMode && patch != null) {
+                        // The patch's own context lines suffice unless a wider window is configured
+                        String headContent = diffContextLines > DiffExcerptBuilder.PATCH_CONTEXT_LINES
+                                ? gitHubService.fetchFileContent(repoName, filePath, headSha) : null;
+                        DiffExcerptBuilder.Excerpt excerpt = DiffExcerptBuilder.build(
+                                filePath, patch, headContent, diffContextLines);
+                        if (excerpt != null) {
+                            combinedCode.append(excerpt.getText());
+                            fileNames.add(filePath);
+                            changedLines += excerpt.getChangedLines();
+                        }
+                        continue;
                     }
                     
+                    String content = gitHubService.fetchFileContent(repoName, filePath, headSha);
+                    if (content != null) {
+                        combinedCode.append("// File: ").append(filePath).append("\n");
+                        combinedCode.append(content).append("\n\n");
+                        fileNames.add(filePath);
+                    }
+                }
+                
+                if (!fileNames.isEmpty()) {
                     // Create analysis request with correct field names
                     AnalysisRequest analysisRequest = AnalysisRequest.builder()
                         .type(AnalysisType.GITHUB_WEBHOOK)
@@ -648,17 +683,28 @@ public class GitHubWebhookController {
                         .language("auto-detect")
                         .build();
                     
-                    AnalysisResponse analysisResponse = codeAnalysisService.analyzeCode(
-                        combinedCode.toString(), analysisRequest
+                    AnalysisResponse analysisResponse = admitAndAnalyze(
+                        combinedCode.toString(), analysisRequest, result
                     );
+                    if (analysisResponse == null) {
+                        return result;
+                    }
                     
                     result.put("analysis_status", "started");
                     result.put("analysis_id", analysisResponse.getAnalysisId());
+                    result.put("analyzed_files", fileNames.size());
+                    result.put("analyzed_chars", combinedCode.length());
+                    if (diffMode) {
+                        result.put("changed_lines", changedLines);
+                    }
                     
                     // Create GitHub check run for PR
                     gitHubService.createCheckRun(repoName, headSha,
                         "Smart Code Review", "in_progress", null,
-                        "Analyzing PR #" + prNumber + " (" + fileContents.size() + " files)");
+                        "Analyzing PR #" + prNumber + " (" + fileNames.size() + " files)");
+                } else {
+                    result.put("analysis_status", "skipped");
+                    result.put("reason", "No code changes found to analyze");
                 }
             } else {
                 result.put("analysis_status", "skipped");
@@ -673,6 +719,40 @@ public class GitHubWebhookController {
         return result;
     }
     
+    /**
+     * Charge a webhook analysis against the admission budgets, as uploads
+     * and pastes are, and start it. Returns null after recording the
+     * outcome in the result when the submission is rejected.
+     */
+    private AnalysisResponse admitAndAnalyze(String code, AnalysisRequest analysisRequest,
+                                             Map<String, Object> result) {
+        AdmissionControlService.Admission admission = admissionControlService.admit(
+                analysisRequest.getSessionToken(), admissionControlService.estimateCodeTokens(code.length()));
+        if (admission.isRejected()) {
+            logger.warn("Webhook analysis rejected by admission control, capacity in {}s",
+                    admission.getWaitSeconds());
+            result.put("analysis_status", "rejected");
+            result.put("reason", "Analysis capacity is fully booked");
+            result.put("retry_after_seconds", admission.getWaitSeconds());
+            return null;
+        }
+        analysisRequest.setAdmissionDelaySeconds(admission.getWaitSeconds());
+        
+        AnalysisResponse analysisResponse;
+        try {
+            analysisResponse = codeAnalysisService.analyzeCode(code, analysisRequest);
+        } catch (RuntimeException e) {
+            admissionControlService.release(admission);
+            throw e;
+        }
+        if (!analysisResponse.isSuccess()) {
+            admissionControlService.release(admission);
+        } else if (admission.getOutcome() == AdmissionControlService.Outcome.DELAYED) {
+            result.put("start_delay_seconds", admission.getWaitSeconds());
+        }
+        return analysisResponse;
+    }
+    
     /**
      * Process repository events
      */
@@ -14,6 +14,8 @@ public class AnalysisRequest {
     private String language;
     private String clientIp;
     private String userAgent;
+    private int admissionDelaySeconds;
+    private String depth;
     
     // Default constructor
     public AnalysisRequest() {
@@ -81,6 +83,22 @@ public class AnalysisRequest {
         this.userAgent = userAgent;
     }
     
+    public int getAdmissionDelaySeconds() {
+        return admissionDelaySeconds;
+    }
+    
+    public void setAdmissionDelaySeconds(int admissionDelaySeconds) {
+        this.admissionDelaySeconds = admissionDelaySeconds;
+    }
+    
+    public String getDepth() {
+        return depth;
+    }
+    
+    public void setDepth(String depth) {
+        this.depth = depth;
+    }
+    
     // Builder class
     public static class AnalysisRequestBuilder {
         private AnalysisType type;
@@ -90,6 +108,8 @@ public class AnalysisRequest {
         private String language;
         private String clientIp;
         private String userAgent;
+        private int admissionDelaySeconds;
+        private String depth;
         
         public AnalysisRequestBuilder type(AnalysisType type) {
             this.type = type;
@@ -126,6 +146,16 @@ public class AnalysisRequest {
             return this;
         }
         
+        public AnalysisRequestBuilder admissionDelaySeconds(int admissionDelaySeconds) {
+            this.admissionDelaySeconds = admissionDelaySeconds;
+            return this;
+        }
+        
+        public AnalysisRequestBuilder depth(String depth) {
+            this.depth = depth;
+            return this;
+        }
+        
         public AnalysisRequest build() {
             AnalysisRequest request = new AnalysisRequest();
             request.type = this.type;
@@ -135,6 +165,8 @@ public class AnalysisRequest {
             request.language = this.language;
             request.clientIp = this.clientIp;
             request.userAgent = this.userAgent;
+            request.admissionDelaySeconds = this.admissionDelaySeconds;
+            request.depth = this.depth;
             return request;
         }
     }
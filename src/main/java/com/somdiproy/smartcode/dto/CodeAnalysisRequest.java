@@ -1,6 +1,7 @@
 package com.somdiproy.smartcode.dto;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 
 /**
@@ -22,6 +23,10 @@ public class CodeAnalysisRequest {
     
     private String fileName;
     
+    // Optional: quick, standard or deep; picks the model tier
+    @Pattern(regexp = "quick|standard|deep", message = "Depth must be quick, standard or deep")
+    private String depth;
+    
     // Default constructor
     public CodeAnalysisRequest() {
     }
@@ -66,4 +71,12 @@ public class CodeAnalysisRequest {
     public void setFileName(String fileName) {
         this.fileName = fileName;
     }
+    
+    public String getDepth() {
+        return depth;
+    }
+    
+    public void setDepth(String depth) {
+        this.depth = depth;
+    }
 }
\ No newline at end of file
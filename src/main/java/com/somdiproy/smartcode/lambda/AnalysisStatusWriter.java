@@ -0,0 +1,14 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.util.Map;
+
+/**
+ * Where {@link BedrockAnalysisEngine} records status changes and results.
+ * The Lambda writes DynamoDB items directly; the local worker goes through
+ * the app's storage service.
+ */
+@FunctionalInterface
+public interface AnalysisStatusWriter {
+
+    void updateStatus(String analysisId, String status, String message, Map<String, Object> result);
+}
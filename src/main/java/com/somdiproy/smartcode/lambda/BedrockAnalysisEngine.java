@@ -0,0 +1,543 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Bedrock analysis logic shared by the SQS Lambda and the in-process local worker.
+ *
+ * Takes code that has already been fetched, runs it through Bedrock (in
+ * chunks for large inputs) and reports PROCESSING/COMPLETED states through
+ * an {@link AnalysisStatusWriter}, so the caller decides where results land.
+ * Chunk results are checkpointed to a {@link ChunkCheckpointStore}, so a
+ * retried analysis resumes at its first incomplete chunk. Every Bedrock call
+ * first takes its share of the shared {@link BedrockQuota}, which paces
+ * chunks instead of a fixed delay. Request bodies are streamed from
+ * precompiled {@link PromptTemplate}s by a {@link BedrockRequestBodyWriter}
+ * and built once per prompt, not once per attempt.
+ *
+ * The review instructions are a fixed system prompt, cached by Bedrock on
+ * models that support it, so each chunk only pays full price for its code.
+ * Token and cache usage is reported in the result's metadata.tokenUsage.
+ *
+ * The model comes from a {@link ModelRouter}: one tier is picked per
+ * analysis, and a throttled call moves to the fallback tier's model.
+ *
+ * Model output is read with a {@link LenientReviewJsonParser}. A response
+ * cut off at maxTokens is continued from its last complete value with an
+ * assistant prefill, and whatever parsed is kept if it still does not
+ * close, so a truncated response never costs a full retry. Each request's
+ * maxTokens comes from an {@link OutputTokenBudget} sized to its input, so
+ * small chunks stop reserving quota for output they never produce.
+ *
+ * Calls go through a {@link HedgedBedrockInvoker}, which can race a slow
+ * call against a second request elsewhere to cut tail latency; hedges are
+ * charged to the same quota.
+ *
+ * Each chunk that starts part way into a file carries a header from a
+ * {@link ChunkContextExtractor} (package, imports, enclosing type signatures
+ * and fields), so chunks can be kept small without the model losing track
+ * of the declarations they use.
+ */
+public class BedrockAnalysisEngine {
+    
+    static final int MAX_CHUNK_SIZE = 50000; // characters
+    // Nova's output limit; per-request budgets stay under it
+    static final int MAX_OUTPUT_TOKENS = 10000;
+    // Continuations of one response that hit maxTokens before settling for what parsed
+    private static final int MAX_CONTINUATIONS = 2;
+    
+    private final HedgedBedrockInvoker invoker;
+    private final ModelRouter router;
+    private final AnalysisStatusWriter statusWriter;
+    private final ChunkCheckpointStore checkpointStore;
+    private final BedrockQuota quota;
+    private final int chunkSize;
+    private final BedrockRequestBodyWriter bodyWriter;
+    private final ObjectMapper objectMapper;
+    private final LenientReviewJsonParser reviewParser;
+    private final OutputTokenBudget outputBudget;
+    
+    public BedrockAnalysisEngine(BedrockRuntimeClient bedrockClient, String modelId, AnalysisStatusWriter statusWriter) {
+        this(bedrockClient, modelId, statusWriter, ChunkCheckpointStore.NONE);
+    }
+    
+    public BedrockAnalysisEngine(BedrockRuntimeClient bedrockClient, String modelId, AnalysisStatusWriter statusWriter,
+                                 ChunkCheckpointStore checkpointStore) {
+        this(bedrockClient, modelId, statusWriter, checkpointStore, BedrockQuota.UNLIMITED);
+    }
+    
+    public BedrockAnalysisEngine(BedrockRuntimeClient bedrockClient, String modelId, AnalysisStatusWriter statusWriter,
+                                 ChunkCheckpointStore checkpointStore, BedrockQuota quota) {
+        this(bedrockClient, ModelRouter.single(modelId), statusWriter, checkpointStore, quota);
+    }
+    
+    public BedrockAnalysisEngine(BedrockRuntimeClient bedrockClient, ModelRouter router, AnalysisStatusWriter statusWriter,
+                                 ChunkCheckpointStore checkpointStore, BedrockQuota quota) {
+        this(bedrockClient, router, statusWriter, checkpointStore, quota, MAX_CHUNK_SIZE);
+    }
+    
+    /**
+     * @param chunkSize characters of code per chunk; larger inputs are analyzed in chunks
+     */
+    public BedrockAnalysisEngine(BedrockRuntimeClient bedrockClient, ModelRouter router, AnalysisStatusWriter statusWriter,
+                                 ChunkCheckpointStore checkpointStore, BedrockQuota quota, int chunkSize) {
+        this(HedgedBedrockInvoker.direct(bedrockClient), router, statusWriter, checkpointStore, quota, chunkSize);
+    }
+    
+    public BedrockAnalysisEngine(HedgedBedrockInvoker invoker, ModelRouter router, AnalysisStatusWriter statusWriter,
+                                 ChunkCheckpointStore checkpointStore, BedrockQuota quota, int chunkSize) {
+        this.invoker = invoker;
+        this.router = router;
+        this.statusWriter = statusWriter;
+        this.checkpointStore = checkpointStore;
+        this.quota = quota;
+        this.chunkSize = chunkSize;
+        // The body is built before the model is known, so only cache when every tier can
+        boolean promptCaching = Arrays.stream(ModelRouter.Tier.values())
+                .allMatch(tier -> BedrockRequestBodyWriter.supportsPromptCaching(router.modelFor(tier)));
+        this.bodyWriter = new BedrockRequestBodyWriter(MAX_OUTPUT_TOKENS, 0.1, 0.9, promptCaching);
+        this.objectMapper = new ObjectMapper();
+        this.reviewParser = new LenientReviewJsonParser(objectMapper);
+        this.outputBudget = new OutputTokenBudget(MAX_OUTPUT_TOKENS);
+    }
+    
+    /**
+     * Analyze code and write the final COMPLETED result. Failures are thrown
+     * to the caller, which owns retries and the FAILED status.
+     */
+    public void analyze(String analysisId, String code, String language, LambdaLogger logger) throws Exception {
+        analyze(analysisId, code, language, null, logger);
+    }
+    
+    /**
+     * @param depth requested analysis depth (quick, standard or deep), or null
+     */
+    public void analyze(String analysisId, String code, String language, String depth, LambdaLogger logger)
+            throws Exception {
+        ModelRouter.Route route = router.route(code, language, depth);
+        logger.log("Routing " + analysisId + " to " + route.getTier() + " (" + route.getModelId() + "): "
+                + route.getReason());
+        
+        // Process based on size
+        if (code.length() > chunkSize) {
+            processInChunks(analysisId, code, language, route, logger);
+        } else {
+            processSingleAnalysis(analysisId, code, language, route, logger);
+        }
+    }
+    
+    public ModelRouter getRouter() {
+        return router;
+    }
+    
+    public OutputTokenBudget getOutputBudget() {
+        return outputBudget;
+    }
+    
+    public HedgedBedrockInvoker getInvoker() {
+        return invoker;
+    }
+    
+    void processSingleAnalysis(String analysisId, String code, String language, ModelRouter.Route route,
+                               LambdaLogger logger) throws Exception {
+        logger.log("Processing single analysis for " + analysisId);
+        
+        TokenUsage usage = new TokenUsage();
+        Map<String, String> values = Map.of("language", language, "code", code);
+        int outputTokens = outputBudget.budgetFor(language, code.length());
+        SdkBytes body = bodyWriter.write(REVIEW_INSTRUCTIONS, ANALYSIS_PROMPT, values, null, outputTokens);
+        Map<String, Object> analysisResult = requestReview(body, outputTokens, ANALYSIS_PROMPT, values, route, usage,
+                logger);
+        // Multi-file sources and diff excerpts report lines per file, as chunked results do
+        ChunkResultMerger merger = ChunkResultMerger.forSource(code);
+        if (merger.hasMarkers()) {
+            merger.locateIssues(analysisResult);
+        }
+        
+        // Store result
+        Map<String, Object> metadata = routingMetadata(route);
+        metadata.put("tokenUsage", usage.toMap());
+        analysisResult.put("metadata", metadata);
+        statusWriter.updateStatus(analysisId, "COMPLETED", "Analysis completed successfully", analysisResult);
+    }
+    
+    void processInChunks(String analysisId, String code, String language, ModelRouter.Route route,
+                         LambdaLogger logger) throws Exception {
+        logger.log("Processing in chunks for " + analysisId + ", code length: " + code.length());
+        
+        List<String> chunks = splitIntoChunks(code, chunkSize);
+        ChunkResultMerger merger = ChunkResultMerger.forSource(code);
+        ChunkContextExtractor contextExtractor = ChunkContextExtractor.forSource(code);
+        List<ChunkResultMerger.Chunk> chunkResults = new ArrayList<>();
+        int chunkStartLine = 1;
+        int restoredChunks = 0;
+        TokenUsage usage = new TokenUsage();
+        
+        for (int i = 0; i < chunks.size(); i++) {
+            int startLine = chunkStartLine;
+            chunkStartLine += lineCount(chunks.get(i));
+            String context = contextSection(contextExtractor.contextAt(startLine), language);
+            Map<String, String> values = Map.of(
+                    "chunkNumber", String.valueOf(i + 1),
+                    "totalChunks", String.valueOf(chunks.size()),
+                    "language", language,
+                    "context", context,
+                    "code", chunks.get(i));
+            // Weighted by estimated input tokens when merging scores
+            long chunkTokens = (chunks.get(i).length() + context.length()) / 4;
+            int outputTokens = outputBudget.budgetFor(language, chunks.get(i).length());
+            SdkBytes chunkBody = bodyWriter.write(REVIEW_INSTRUCTIONS, CHUNK_PROMPT, values, null, outputTokens);
+            String chunkHash = hash(CHUNK_PROMPT, values);
+            
+            // A previous attempt may already have paid for this chunk
+            Map<String, Object> chunkResult = loadCheckpoint(analysisId, i, chunkHash, logger);
+            if (chunkResult != null) {
+                logger.log("Chunk " + (i + 1) + " of " + chunks.size() + " restored from checkpoint");
+                chunkResults.add(new ChunkResultMerger.Chunk(chunkResult, startLine, chunkTokens));
+                restoredChunks++;
+                continue;
+            }
+            
+            logger.log("Processing chunk " + (i + 1) + " of " + chunks.size());
+            chunkResult = requestReview(chunkBody, outputTokens, CHUNK_PROMPT, values, route, usage, logger);
+            chunkResults.add(new ChunkResultMerger.Chunk(chunkResult, startLine, chunkTokens));
+            saveCheckpoint(analysisId, i, chunkHash, chunkResult, logger);
+            
+            if (i < chunks.size() - 1) {
+                // Publish partial results so streaming clients see issues as chunks finish
+                Map<String, Object> partialResult = merger.merge(chunkResults);
+                partialResult.put("metadata", Map.of("chunksCompleted", i + 1, "totalChunks", chunks.size()));
+                statusWriter.updateStatus(analysisId, "PROCESSING",
+                        "Analyzed segment " + (i + 1) + " of " + chunks.size(), partialResult);
+            }
+        }
+        
+        // Merge results
+        Map<String, Object> mergedResult = merger.merge(chunkResults);
+        Map<String, Object> metadata = routingMetadata(route);
+        metadata.put("totalChunks", chunks.size());
+        if (restoredChunks > 0) {
+            metadata.put("chunksRestored", restoredChunks);
+        }
+        metadata.put("tokenUsage", usage.toMap());
+        mergedResult.put("metadata", metadata);
+        logger.log("Analysis " + analysisId + " prompt cache: " + usage.getCacheReadInputTokens() + " tokens read, "
+                + usage.getCacheWriteInputTokens() + " written");
+        statusWriter.updateStatus(analysisId, "COMPLETED", "Analysis completed successfully", mergedResult);
+        
+        try {
+            checkpointStore.clear(analysisId);
+        } catch (Exception e) {
+            logger.log("Failed to clear checkpoints for " + analysisId + ": " + e.getMessage());
+        }
+    }
+    
+    private static Map<String, Object> routingMetadata(ModelRouter.Route route) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("modelTier", route.getTier().name());
+        metadata.put("modelId", route.getModelId());
+        metadata.put("routingReason", route.getReason());
+        return metadata;
+    }
+    
+    // Checkpoint I/O is best effort: a failure only costs a re-analysis on retry
+    private Map<String, Object> loadCheckpoint(String analysisId, int chunkIndex, String chunkHash, LambdaLogger logger) {
+        try {
+            return checkpointStore.load(analysisId, chunkIndex, chunkHash);
+        } catch (Exception e) {
+            logger.log("Failed to read checkpoint for chunk " + (chunkIndex + 1) + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private void saveCheckpoint(String analysisId, int chunkIndex, String chunkHash, Map<String, Object> result,
+                                LambdaLogger logger) {
+        try {
+            checkpointStore.save(analysisId, chunkIndex, chunkHash, result);
+        } catch (Exception e) {
+            logger.log("Failed to checkpoint chunk " + (chunkIndex + 1) + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Checkpoint key for a prompt. Covers the instructions and the filled-in
+     * template but not maxTokens, which varies with what this container has
+     * learned, so a retry elsewhere still finds the chunk.
+     */
+    private static String hash(PromptTemplate template, Map<String, String> values) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(REVIEW_INSTRUCTIONS.getBytes(StandardCharsets.UTF_8));
+        char[] buffer = new char[8192];
+        try (Reader prompt = template.reader(values)) {
+            int read;
+            while ((read = prompt.read(buffer)) > 0) {
+                digest.update(new String(buffer, 0, read).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+    
+    /**
+     * One review from the model. Output cut off at maxTokens is continued
+     * from its last complete value; output that still does not close is kept
+     * as far as it parsed. A review that completes feeds its issue count and
+     * output tokens back into the output budget.
+     */
+    private Map<String, Object> requestReview(SdkBytes body, int maxTokens, PromptTemplate template,
+                                              Map<String, String> values, ModelRouter.Route route, TokenUsage usage,
+                                              LambdaLogger logger) throws Exception {
+        long outputTokensBefore = usage.getOutputTokens();
+        ModelOutput output = invokeBedrockWithRetry(body, maxTokens, route, usage, logger);
+        StringBuilder text = new StringBuilder(output.text);
+        LenientReviewJsonParser.Result parsed = reviewParser.parse(text);
+        
+        for (int i = 0; i < MAX_CONTINUATIONS && !parsed.isComplete() && output.truncated; i++) {
+            // Only the missing tail is generated; the prompt is resent but its prefix is cached
+            text.setLength(parsed.getResumeOffset());
+            logger.log("Response hit maxTokens; continuing from offset " + text.length());
+            usage.recordContinuation();
+            maxTokens = outputBudget.continuationBudget(maxTokens);
+            SdkBytes continuation = bodyWriter.write(REVIEW_INSTRUCTIONS, template, values, text.toString(), maxTokens);
+            output = invokeBedrockWithRetry(continuation, maxTokens, route, usage, logger);
+            text.append(output.text);
+            parsed = reviewParser.parse(text);
+        }
+        
+        if (!parsed.isComplete()) {
+            if (parsed.isEmpty()) {
+                throw new RuntimeException("Unparseable response from Bedrock");
+            }
+            logger.log("Keeping " + parsed.getValues().keySet() + " salvaged from an incomplete response");
+            usage.recordSalvage();
+        } else {
+            Object issues = parsed.getValues().get("issues");
+            outputBudget.record(values.get("language"), values.get("code").length(),
+                    issues instanceof List ? ((List<?>) issues).size() : 0,
+                    usage.getOutputTokens() - outputTokensBefore);
+        }
+        return parsed.getValues();
+    }
+    
+    private ModelOutput invokeBedrockWithRetry(SdkBytes body, int maxTokens, ModelRouter.Route route,
+                                               TokenUsage usage, LambdaLogger logger) throws Exception {
+        int maxRetries = 3;
+        int retryDelay = 2000; // Start with 2 seconds
+        
+        // Built once per model; every attempt sends the same bytes
+        ModelRouter.Tier tier = route.getTier();
+        InvokeModelRequest request = buildRequest(router.modelFor(tier), body);
+        // Input estimated at 4 bytes per token, which the JSON envelope barely moves
+        long estimatedTokens = body.asByteArrayUnsafe().length / 4 + maxTokens;
+        
+        for (int attempt = 0; attempt < maxRetries; attempt++) {
+            // Wait for room in the shared quota
+            quota.acquire(estimatedTokens, logger);
+            
+            try {
+                long startedAt = System.currentTimeMillis();
+                InvokeModelResponse response = invoker.invoke(request, body.asByteArrayUnsafe().length,
+                        estimatedTokens);
+                
+                // Parse Nova response
+                Map<String, Object> responseMap = objectMapper.readValue(response.body().asByteArrayUnsafe(), Map.class);
+                usage.add((Map<String, Object>) responseMap.get("usage"));
+                usage.recordOutputBudget(maxTokens);
+                router.recordCall(tier, System.currentTimeMillis() - startedAt,
+                        (Map<String, Object>) responseMap.get("usage"));
+                Map<String, Object> output = (Map<String, Object>) responseMap.get("output");
+                if (output != null) {
+                    Map<String, Object> outputMessage = (Map<String, Object>) output.get("message");
+                    if (outputMessage != null) {
+                        List<Map<String, Object>> content = (List<Map<String, Object>>) outputMessage.get("content");
+                        if (content != null && !content.isEmpty()) {
+                            return new ModelOutput((String) content.get(0).get("text"),
+                                    "max_tokens".equals(responseMap.get("stopReason")));
+                        }
+                    }
+                }
+                
+                throw new RuntimeException("Invalid response from Bedrock");
+                
+            } catch (Exception e) {
+                logger.log("Bedrock invocation failed (attempt " + (attempt + 1) + "): " + e.getMessage());
+                boolean throttled = e instanceof ThrottlingException;
+                if (throttled) {
+                    router.recordThrottle(tier);
+                } else {
+                    router.recordFailure(tier);
+                }
+                
+                if (attempt < maxRetries - 1) {
+                    ModelRouter.Tier fallback = throttled ? router.fallback(tier) : tier;
+                    if (fallback != tier) {
+                        // A different model has its own service quota, so retry there right away
+                        logger.log("Falling back from " + tier + " to " + fallback);
+                        tier = fallback;
+                        request = buildRequest(router.modelFor(tier), body);
+                    } else {
+                        Thread.sleep(retryDelay);
+                        retryDelay *= 2; // Exponential backoff
+                    }
+                } else {
+                    throw e;
+                }
+            }
+        }
+        
+        throw new RuntimeException("Failed to invoke Bedrock after " + maxRetries + " attempts");
+    }
+    
+    private static final class ModelOutput {
+        private final String text;
+        private final boolean truncated;
+        
+        ModelOutput(String text, boolean truncated) {
+            this.text = text;
+            this.truncated = truncated;
+        }
+    }
+    
+    static InvokeModelRequest buildRequest(String modelId, SdkBytes body) {
+        return InvokeModelRequest.builder()
+                .modelId(modelId)
+                .body(body)
+                .contentType("application/json")
+                .accept("application/json")
+                .build();
+    }
+    
+    /**
+     * Prompt section for a chunk's extracted header; empty when it has none
+     */
+    private static String contextSection(String context, String language) {
+        if (context.isEmpty()) {
+            return "";
+        }
+        return "\nDeclarations from outside this chunk, for reference only:\n```" + language + "\n" + context + "```\n";
+    }
+    
+    private static int lineCount(String chunk) {
+        int lines = 0;
+        for (int i = 0; i < chunk.length(); i++) {
+            if (chunk.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+    
+    private List<String> splitIntoChunks(String code, int chunkSize) {
+        List<String> chunks = new ArrayList<>();
+        String[] lines = code.split("\n");
+        StringBuilder currentChunk = new StringBuilder();
+        
+        for (String line : lines) {
+            if (currentChunk.length() + line.length() + 1 > chunkSize && currentChunk.length() > 0) {
+                chunks.add(currentChunk.toString());
+                currentChunk = new StringBuilder();
+            }
+            currentChunk.append(line).append("\n");
+        }
+        
+        if (currentChunk.length() > 0) {
+            chunks.add(currentChunk.toString());
+        }
+        
+        return chunks;
+    }
+    
+    // Identical for every request, so it forms the cached prompt prefix; keep
+    // anything request-specific out of it or every call becomes a cache miss
+    private static final String REVIEW_INSTRUCTIONS = """
+            You are an expert code reviewer. Review the code in the user message and provide a comprehensive review.
+            
+            Focus on:
+            1. Security vulnerabilities
+            2. Performance issues
+            3. Code quality and maintainability
+            4. Best practices
+            5. Potential bugs
+            
+            Severity levels:
+            - HIGH: exploitable vulnerabilities, data loss, crashes or incorrect results in normal use
+            - MEDIUM: problems under specific conditions, significant performance or maintainability costs
+            - LOW: style, readability and minor improvements
+            
+            Issue types: SECURITY, PERFORMANCE, QUALITY, BUG, BEST_PRACTICE.
+            
+            Report lineNumber as the 1-based line within the code you were given. When the
+            code is one segment of a larger file, review only that segment and do not
+            report code that is cut off at its edges as missing. A segment may be preceded
+            by the declarations it sits inside (package, imports, enclosing types and
+            their fields); use them to understand the segment, but do not review them or
+            count their lines.
+            
+            Code from a pull request may be an excerpt: "// File:" starts a file, its
+            "// Changed lines:" comment lists the lines the change touched, and the lines
+            after a "// @@ line N" marker are lines N, N+1, ... of that file. Review the
+            changed lines, using the lines around them as context, and still report
+            lineNumber as the line within the code you were given.
+            
+            Provide your response in JSON format with this structure:
+            {
+              "summary": "Brief overview",
+              "overallScore": 8.5,
+              "issues": [{
+                "severity": "HIGH",
+                "type": "SECURITY",
+                "title": "Issue title",
+                "description": "Description",
+                "lineNumber": 15,
+                "suggestion": "How to fix"
+              }],
+              "suggestions": [{
+                "title": "Suggestion",
+                "description": "Description",
+                "category": "Performance",
+                "impact": "High"
+              }],
+              "security": {
+                "securityScore": 7.5,
+                "vulnerabilities": [],
+                "hasSecurityIssues": false
+              },
+              "performance": {
+                "performanceScore": 8.0,
+                "bottlenecks": [],
+                "complexity": "Medium"
+              }
+            }
+            
+            Respond with valid JSON only.
+            """;
+    
+    private static final PromptTemplate ANALYSIS_PROMPT = PromptTemplate.compile("""
+            Analyze the following ${language} code.
+            
+            Code:
+            ```${language}
+            ${code}
+            ```
+            """);
+    
+    private static final PromptTemplate CHUNK_PROMPT = PromptTemplate.compile("""
+            Analyzing chunk ${chunkNumber} of ${totalChunks} of ${language} code.
+            Note: This is a partial analysis of a larger file.
+            ${context}
+            Code chunk:
+            ```${language}
+            ${code}
+            ```
+            """);
+}
@@ -12,12 +12,11 @@ import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClientBuilder;
 
+import java.net.URI;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -26,8 +25,11 @@ public class BedrockAnalysisLambda implements RequestHandler<SQSEvent, Void> {
     private static final String TABLE_NAME = System.getenv("DYNAMODB_TABLE_NAME");
     private static final String BUCKET_NAME = System.getenv("S3_BUCKET_NAME");
     private static final String MODEL_ID = System.getenv("BEDROCK_MODEL_ID");
-    private static final int MAX_CHUNK_SIZE = 50000; // characters
-    private static final int CHUNK_DELAY_MS = 5000; // 5 seconds between chunks
+    private static final String TOKEN_BUCKET_TABLE_NAME = System.getenv("TOKEN_BUCKET_TABLE_NAME");
+    private static final String BEDROCK_ENDPOINT_URL = System.getenv("BEDROCK_ENDPOINT_URL") != null
+            ? System.getenv("BEDROCK_ENDPOINT_URL") : System.getenv("AWS_ENDPOINT_URL");
+    // Must match maxReceiveCount in the queue's redrive policy
+    private static final long MAX_RECEIVE_COUNT = envLong("SQS_MAX_RECEIVE_COUNT", 3);
     
     private final BedrockRuntimeClient bedrockClient;
     private final AmazonDynamoDB dynamoDBClient;
@@ -35,12 +37,17 @@ public class BedrockAnalysisLambda implements RequestHandler<SQSEvent, Void> {
     private final Table analysisTable;
     private final AmazonS3 s3Client;
     private final ObjectMapper objectMapper;
+    private final BedrockAnalysisEngine engine;
     
     public BedrockAnalysisLambda() {
-        this.bedrockClient = BedrockRuntimeClient.builder()
+        BedrockRuntimeClientBuilder bedrockBuilder = BedrockRuntimeClient.builder()
                 .region(Region.US_EAST_1)
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+                .credentialsProvider(DefaultCredentialsProvider.create());
+        if (BEDROCK_ENDPOINT_URL != null && !BEDROCK_ENDPOINT_URL.isEmpty()) {
+            // e.g. the Bedrock simulator for load tests
+            bedrockBuilder.endpointOverride(URI.create(BEDROCK_ENDPOINT_URL));
+        }
+        this.bedrockClient = bedrockBuilder.build();
         
         this.dynamoDBClient = AmazonDynamoDBClientBuilder.standard().build();
         this.dynamoDB = new DynamoDB(dynamoDBClient);
@@ -48,6 +55,25 @@ public class BedrockAnalysisLambda implements RequestHandler<SQSEvent, Void> {
         
         this.s3Client = AmazonS3ClientBuilder.standard().build();
         this.objectMapper = new ObjectMapper();
+        // Chunk checkpoints let SQS redeliveries and DLQ redrives resume mid-analysis
+        ChunkCheckpointStore checkpointStore = BUCKET_NAME != null
+                ? new S3ChunkCheckpointStore(s3Client, BUCKET_NAME) : ChunkCheckpointStore.NONE;
+        // Shared quota across all concurrent Lambdas and chunk analyzers
+        BedrockQuota quota = TOKEN_BUCKET_TABLE_NAME != null
+                ? new BedrockQuota(new DynamoDBTokenBucketStore(dynamoDBClient, TOKEN_BUCKET_TABLE_NAME),
+                        envLong("BEDROCK_REQUESTS_PER_MINUTE", 0), envLong("BEDROCK_TOKENS_PER_MINUTE", 0))
+                : BedrockQuota.UNLIMITED;
+        // Unset tiers use BEDROCK_MODEL_ID, so a single-model deployment routes nowhere
+        ModelRouter router = new ModelRouter(
+                envString("BEDROCK_MODEL_ID_FAST", MODEL_ID),
+                envString("BEDROCK_MODEL_ID_STANDARD", MODEL_ID),
+                envString("BEDROCK_MODEL_ID_PREMIUM", MODEL_ID),
+                (int) envLong("ROUTER_SMALL_INPUT_CHARS", 4000),
+                (int) envLong("ROUTER_LARGE_INPUT_CHARS", 50000),
+                envLong("ROUTER_THROTTLE_COOLDOWN_MS", 30000));
+        // Chunks carry their declaration context, so they can be smaller than the single-call limit
+        this.engine = new BedrockAnalysisEngine(createInvoker(bedrockClient, quota), router, this::updateAnalysisStatus,
+                checkpointStore, quota, (int) envLong("MAX_CHUNK_SIZE", 30000));
     }
     
     @Override
@@ -58,14 +84,22 @@ public class BedrockAnalysisLambda implements RequestHandler<SQSEvent, Void> {
             try {
                 processMessage(message, context);
             } catch (Exception e) {
-                context.getLogger().log("Error processing message: " + e.getMessage());
-                // Update status to FAILED in DynamoDB
-                updateAnalysisStatus(message.getMessageAttributes().get("analysisId").getStringValue(), 
-                                   "FAILED", e.getMessage(), null);
+                long receiveCount = receiveCount(message);
+                context.getLogger().log("Error processing message (delivery " + receiveCount + " of "
+                        + MAX_RECEIVE_COUNT + "): " + e.getMessage());
+                // Earlier deliveries are retried and resume from their checkpoints, so only the last one fails the analysis
+                if (receiveCount >= MAX_RECEIVE_COUNT) {
+                    updateAnalysisStatus(message.getMessageAttributes().get("analysisId").getStringValue(), 
+                                       "FAILED", e.getMessage(), null);
+                }
                 // Rethrow to let SQS retry if configured
                 throw new RuntimeException("Failed to process message", e);
             }
         }
+        // Cumulative for this container; feeds routing threshold tuning
+        context.getLogger().log("Model router stats: " + engine.getRouter().getStats());
+        context.getLogger().log("Output token budget: " + engine.getOutputBudget().getStats());
+        context.getLogger().log("Bedrock hedging: " + engine.getInvoker().getStats());
         return null;
     }
     
@@ -90,236 +124,51 @@ public class BedrockAnalysisLambda implements RequestHandler<SQSEvent, Void> {
             code = (String) messageBody.get("code");
         }
         
-        // Process based on size
-        if (code.length() > MAX_CHUNK_SIZE) {
-            processInChunks(analysisId, code, language, context);
-        } else {
-            processSingleAnalysis(analysisId, code, language, context);
-        }
-    }
-    
-    private void processSingleAnalysis(String analysisId, String code, String language, Context context) throws Exception {
-        context.getLogger().log("Processing single analysis for " + analysisId);
-        
-        String prompt = buildAnalysisPrompt(code, language);
-        String result = invokeBedrockWithRetry(prompt, context);
+        Map<String, Object> metadata = (Map<String, Object>) messageBody.get("metadata");
+        String depth = metadata != null ? (String) metadata.get("depth") : null;
         
-        // Parse and store result
-        Map<String, Object> analysisResult = objectMapper.readValue(result, Map.class);
-        updateAnalysisStatus(analysisId, "COMPLETED", "Analysis completed successfully", analysisResult);
+        engine.analyze(analysisId, code, language, depth, context.getLogger());
     }
     
-    private void processInChunks(String analysisId, String code, String language, Context context) throws Exception {
-        context.getLogger().log("Processing in chunks for " + analysisId + ", code length: " + code.length());
-        
-        List<String> chunks = splitIntoChunks(code, MAX_CHUNK_SIZE);
-        List<Map<String, Object>> chunkResults = new ArrayList<>();
-        
-        for (int i = 0; i < chunks.size(); i++) {
-            context.getLogger().log("Processing chunk " + (i + 1) + " of " + chunks.size());
-            
-            String chunkPrompt = buildChunkAnalysisPrompt(chunks.get(i), language, i + 1, chunks.size());
-            String result = invokeBedrockWithRetry(chunkPrompt, context);
-            
-            Map<String, Object> chunkResult = objectMapper.readValue(result, Map.class);
-            chunkResults.add(chunkResult);
-            
-            // Delay between chunks to avoid throttling
-            if (i < chunks.size() - 1) {
-                Thread.sleep(CHUNK_DELAY_MS);
-            }
+    /**
+     * Hedging is opt-in; hedges go to BEDROCK_HEDGE_REGION when set, else to
+     * the same region, optionally through a cross-region inference profile
+     */
+    private static HedgedBedrockInvoker createInvoker(BedrockRuntimeClient bedrockClient, BedrockQuota quota) {
+        if (!Boolean.parseBoolean(envString("BEDROCK_HEDGING_ENABLED", "false"))) {
+            return HedgedBedrockInvoker.direct(bedrockClient);
         }
-        
-        // Merge results
-        Map<String, Object> mergedResult = mergeChunkResults(chunkResults);
-        updateAnalysisStatus(analysisId, "COMPLETED", "Analysis completed successfully", mergedResult);
-    }
-    
-    private String invokeBedrockWithRetry(String prompt, Context context) throws Exception {
-        int maxRetries = 3;
-        int retryDelay = 2000; // Start with 2 seconds
-        
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            try {
-                // Build request for Nova Premier
-                Map<String, Object> requestBody = new HashMap<>();
-                
-                List<Map<String, Object>> messages = new ArrayList<>();
-                Map<String, Object> message = new HashMap<>();
-                message.put("role", "user");
-                
-                List<Map<String, Object>> contentArray = new ArrayList<>();
-                Map<String, Object> textContent = new HashMap<>();
-                textContent.put("text", prompt);
-                contentArray.add(textContent);
-                
-                message.put("content", contentArray);
-                messages.add(message);
-                
-                requestBody.put("messages", messages);
-                
-                Map<String, Object> inferenceConfig = new HashMap<>();
-                inferenceConfig.put("maxTokens", 4000);
-                inferenceConfig.put("temperature", 0.1);
-                inferenceConfig.put("topP", 0.9);
-                
-                requestBody.put("inferenceConfig", inferenceConfig);
-                
-                String jsonBody = objectMapper.writeValueAsString(requestBody);
-                
-                InvokeModelRequest request = InvokeModelRequest.builder()
-                        .modelId(MODEL_ID)
-                        .body(SdkBytes.fromUtf8String(jsonBody))
-                        .contentType("application/json")
-                        .accept("application/json")
-                        .build();
-                
-                InvokeModelResponse response = bedrockClient.invokeModel(request);
-                String responseBody = response.body().asUtf8String();
-                
-                // Parse Nova response
-                Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-                Map<String, Object> output = (Map<String, Object>) responseMap.get("output");
-                if (output != null) {
-                    Map<String, Object> outputMessage = (Map<String, Object>) output.get("message");
-                    if (outputMessage != null) {
-                        List<Map<String, Object>> content = (List<Map<String, Object>>) outputMessage.get("content");
-                        if (content != null && !content.isEmpty()) {
-                            return (String) content.get(0).get("text");
-                        }
-                    }
-                }
-                
-                throw new RuntimeException("Invalid response from Bedrock");
-                
-            } catch (Exception e) {
-                context.getLogger().log("Bedrock invocation failed (attempt " + (attempt + 1) + "): " + e.getMessage());
-                
-                if (attempt < maxRetries - 1) {
-                    Thread.sleep(retryDelay);
-                    retryDelay *= 2; // Exponential backoff
-                } else {
-                    throw e;
-                }
-            }
+        String hedgeRegion = envString("BEDROCK_HEDGE_REGION", null);
+        String profilePrefix = envString("BEDROCK_HEDGE_PROFILE_PREFIX", null);
+        if (hedgeRegion == null && profilePrefix == null) {
+            // A hedge would be the same call to the same place
+            System.err.println("BEDROCK_HEDGING_ENABLED needs BEDROCK_HEDGE_REGION or BEDROCK_HEDGE_PROFILE_PREFIX; "
+                    + "hedging disabled");
+            return HedgedBedrockInvoker.direct(bedrockClient);
         }
-        
-        throw new RuntimeException("Failed to invoke Bedrock after " + maxRetries + " attempts");
+        BedrockRuntimeClient hedgeClient = hedgeRegion != null
+                ? HedgedBedrockInvoker.regionalClient(bedrockClient, hedgeRegion) : null;
+        return new HedgedBedrockInvoker(bedrockClient, hedgeClient, profilePrefix, quota,
+                envLong("BEDROCK_HEDGE_BUDGET_PERCENT", 5) / 100.0, envLong("BEDROCK_HEDGE_MIN_DELAY_MS", 2000));
     }
     
-    private List<String> splitIntoChunks(String code, int chunkSize) {
-        List<String> chunks = new ArrayList<>();
-        String[] lines = code.split("\n");
-        StringBuilder currentChunk = new StringBuilder();
-        
-        for (String line : lines) {
-            if (currentChunk.length() + line.length() + 1 > chunkSize && currentChunk.length() > 0) {
-                chunks.add(currentChunk.toString());
-                currentChunk = new StringBuilder();
-            }
-            currentChunk.append(line).append("\n");
-        }
-        
-        if (currentChunk.length() > 0) {
-            chunks.add(currentChunk.toString());
+    private static long receiveCount(SQSEvent.SQSMessage message) {
+        String count = message.getAttributes() != null ? message.getAttributes().get("ApproximateReceiveCount") : null;
+        try {
+            return count != null ? Long.parseLong(count) : MAX_RECEIVE_COUNT;
+        } catch (NumberFormatException e) {
+            return MAX_RECEIVE_COUNT;
         }
-        
-        return chunks;
     }
     
-    private String buildAnalysisPrompt(String code, String language) {
-        return String.format("""
-            You are an expert code reviewer. Analyze the following %s code and provide a comprehensive review.
-            
-            Focus on:
-            1. Security vulnerabilities
-            2. Performance issues
-            3. Code quality and maintainability
-            4. Best practices
-            5. Potential bugs
-            
-            Provide your response in JSON format with this structure:
-            {
-              "summary": "Brief overview",
-              "overallScore": 8.5,
-              "issues": [{
-                "severity": "HIGH",
-                "type": "SECURITY",
-                "title": "Issue title",
-                "description": "Description",
-                "lineNumber": 15,
-                "suggestion": "How to fix"
-              }],
-              "suggestions": [{
-                "title": "Suggestion",
-                "description": "Description",
-                "category": "Performance",
-                "impact": "High"
-              }],
-              "security": {
-                "securityScore": 7.5,
-                "vulnerabilities": [],
-                "hasSecurityIssues": false
-              },
-              "performance": {
-                "performanceScore": 8.0,
-                "bottlenecks": [],
-                "complexity": "Medium"
-              }
-            }
-            
-            Code:
-            ```%s
-            %s
-            ```
-            
-            Respond with valid JSON only.
-            """, language, language, code);
+    private static String envString(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
     }
     
-    private String buildChunkAnalysisPrompt(String code, String language, int chunkNumber, int totalChunks) {
-        return String.format("""
-            Analyzing chunk %d of %d of %s code.
-            
-            Analyze for issues and improvements in this code segment.
-            Note: This is a partial analysis of a larger file.
-            
-            Use the same JSON response format as specified.
-            
-            Code chunk:
-            ```%s
-            %s
-            ```
-            """, chunkNumber, totalChunks, language, language, code);
-    }
-    
-    private Map<String, Object> mergeChunkResults(List<Map<String, Object>> chunkResults) {
-        Map<String, Object> merged = new HashMap<>();
-        
-        // Aggregate all issues and suggestions
-        List<Map<String, Object>> allIssues = new ArrayList<>();
-        List<Map<String, Object>> allSuggestions = new ArrayList<>();
-        double totalScore = 0;
-        
-        for (Map<String, Object> chunk : chunkResults) {
-            if (chunk.containsKey("issues")) {
-                allIssues.addAll((List<Map<String, Object>>) chunk.get("issues"));
-            }
-            if (chunk.containsKey("suggestions")) {
-                allSuggestions.addAll((List<Map<String, Object>>) chunk.get("suggestions"));
-            }
-            if (chunk.containsKey("overallScore")) {
-                totalScore += ((Number) chunk.get("overallScore")).doubleValue();
-            }
-        }
-        
-        merged.put("summary", "Comprehensive analysis completed across " + chunkResults.size() + " code segments");
-        merged.put("overallScore", totalScore / chunkResults.size());
-        merged.put("issues", allIssues);
-        merged.put("suggestions", allSuggestions);
-        merged.put("chunkCount", chunkResults.size());
-        
-        return merged;
+    private static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? Long.parseLong(value) : defaultValue;
     }
     
     private void updateAnalysisStatus(String analysisId, String status, String message, Map<String, Object> result) {
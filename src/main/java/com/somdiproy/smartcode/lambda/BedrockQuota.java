@@ -0,0 +1,117 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Client side of the shared Bedrock quota: a request-per-minute and a
+ * token-per-minute bucket in a {@link TokenBucketStore}. Callers reserve
+ * from both and sleep until their reservation comes due, so work proceeds
+ * as fast as the quota allows and no faster, and callers queued behind an
+ * empty bucket start one after another rather than together.
+ */
+public class BedrockQuota {
+
+    /**
+     * No shared quota; calls go straight through
+     */
+    public static final BedrockQuota UNLIMITED = new BedrockQuota(null, 0, 0);
+
+    static final String REQUESTS_BUCKET = "bedrock-requests";
+    static final String TOKENS_BUCKET = "bedrock-tokens";
+
+    // How far ahead a caller may reserve; beyond this it waits before reserving
+    static final long MAX_RESERVE_AHEAD_MS = 60000;
+    private static final long RETRY_JITTER_MS = 1000;
+
+    private final TokenBucketStore store;
+    private final long requestsPerMinute;
+    private final long tokensPerMinute;
+
+    /**
+     * @param requestsPerMinute 0 to leave requests unlimited
+     * @param tokensPerMinute 0 to leave tokens unlimited
+     */
+    public BedrockQuota(TokenBucketStore store, long requestsPerMinute, long tokensPerMinute) {
+        this.store = store;
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+    }
+
+    /**
+     * Wait until one request of the estimated size fits the shared quota
+     */
+    public void acquire(long estimatedTokens, LambdaLogger logger) throws InterruptedException {
+        while (true) {
+            long waitMs = reserveOrBackOff(estimatedTokens);
+            if (waitMs >= 0) {
+                if (waitMs > 0) {
+                    logger.log("Bedrock quota reserved, starting in " + waitMs + "ms");
+                    Thread.sleep(waitMs);
+                }
+                return;
+            }
+
+            logger.log("Bedrock quota backlogged, waiting " + -waitMs + "ms before reserving");
+            Thread.sleep(-waitMs);
+        }
+    }
+
+    /**
+     * Reserve one request of the estimated size for a caller that does its
+     * waiting elsewhere, such as a Step Functions Wait state
+     *
+     * @return milliseconds until the reservation comes due, or, when the
+     *         backlog is longer than may be reserved ahead and nothing was
+     *         reserved, minus the milliseconds to wait before trying again
+     */
+    public long reserveOrBackOff(long estimatedTokens) {
+        long waitMs = reserve(estimatedTokens);
+        if (waitMs >= 0) {
+            return waitMs;
+        }
+        // Come back when it fits; the jitter keeps a backlog from retrying together
+        return -(Math.max(0, -waitMs - MAX_RESERVE_AHEAD_MS)
+                + ThreadLocalRandom.current().nextLong(1, RETRY_JITTER_MS));
+    }
+
+    /**
+     * Take room for one request only if it fits the quota right now
+     */
+    public boolean tryAcquire(long estimatedTokens) {
+        return reserve(estimatedTokens, 0) == 0;
+    }
+
+    long reserve(long estimatedTokens) {
+        return reserve(estimatedTokens, MAX_RESERVE_AHEAD_MS);
+    }
+
+    /**
+     * Reserve one request of the estimated size without waiting for it
+     *
+     * @return milliseconds until the reservation comes due, or a negative
+     *         value (minus the wait needed) when nothing was reserved
+     */
+    long reserve(long estimatedTokens, long maxWaitMs) {
+        if (store == null) {
+            return 0;
+        }
+        // A request bigger than a whole minute's budget gets the whole budget
+        long tokens = tokensPerMinute > 0 ? Math.min(estimatedTokens, tokensPerMinute) : 0;
+
+        long waitMs = requestsPerMinute > 0
+                ? store.reserve(REQUESTS_BUCKET, 1, requestsPerMinute, maxWaitMs) : 0;
+        if (waitMs < 0 || tokens == 0) {
+            return waitMs;
+        }
+        long tokenWaitMs = store.reserve(TOKENS_BUCKET, tokens, tokensPerMinute, maxWaitMs);
+        if (tokenWaitMs < 0) {
+            if (requestsPerMinute > 0) {
+                store.release(REQUESTS_BUCKET, 1, requestsPerMinute);
+            }
+            return tokenWaitMs;
+        }
+        return Math.max(waitMs, tokenWaitMs);
+    }
+}
@@ -0,0 +1,82 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Step Functions task that takes a chunk's room in the shared Bedrock quota
+ * before SmartCode-ChunkAnalyzer calls Bedrock, in place of a fixed stagger
+ * per Map item.
+ *
+ * The chunk is estimated the way the engine estimates a request (input at
+ * four characters per token plus its output budget) and reserved from the
+ * bucket table and limits in the task input, the same buckets the analysis
+ * Lambdas and local workers draw from. Nothing sleeps here: the task returns
+ * how long to wait, the state machine waits in a Wait state, and then
+ * analyzes the chunk when it was reserved or comes back when the quota is
+ * backlogged further ahead than a caller may reserve.
+ *
+ * Input: code, language and quota {tokenBucketTable, requestsPerMinute,
+ * tokensPerMinute}. Output: reserved and waitSeconds. Without a table there
+ * is no shared quota and every chunk goes straight through.
+ */
+public class BedrockQuotaGateLambda implements RequestHandler<Map<String, Object>, Map<String, Object>> {
+
+    private final Function<String, TokenBucketStore> storeFactory;
+    // One quota per table and limits, kept across warm invocations
+    private final Map<String, BedrockQuota> quotas = new ConcurrentHashMap<>();
+    private final OutputTokenBudget outputBudget = new OutputTokenBudget(BedrockAnalysisEngine.MAX_OUTPUT_TOKENS);
+
+    public BedrockQuotaGateLambda() {
+        this(table -> new DynamoDBTokenBucketStore(AmazonDynamoDBClientBuilder.standard().build(), table));
+    }
+
+    BedrockQuotaGateLambda(Function<String, TokenBucketStore> storeFactory) {
+        this.storeFactory = storeFactory;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> handleRequest(Map<String, Object> input, Context context) {
+        Map<String, Object> settings = input.get("quota") instanceof Map
+                ? (Map<String, Object>) input.get("quota") : Map.of();
+        Object table = settings.get("tokenBucketTable");
+        if (!(table instanceof String) || ((String) table).isEmpty()) {
+            return result(true, 0);
+        }
+        long requestsPerMinute = number(settings.get("requestsPerMinute"));
+        long tokensPerMinute = number(settings.get("tokensPerMinute"));
+        BedrockQuota quota = quotas.computeIfAbsent(table + "/" + requestsPerMinute + "/" + tokensPerMinute,
+                key -> new BedrockQuota(storeFactory.apply((String) table), requestsPerMinute, tokensPerMinute));
+
+        String code = input.get("code") instanceof String ? (String) input.get("code") : "";
+        long estimatedTokens = code.length() / 4
+                + outputBudget.budgetFor((String) input.get("language"), code.length());
+        long waitMs = quota.reserveOrBackOff(estimatedTokens);
+        // Wait states count whole seconds; starting a little late is always safe
+        long waitSeconds = (Math.abs(waitMs) + 999) / 1000;
+        context.getLogger().log((waitMs >= 0 ? "Bedrock quota reserved for chunk " : "Bedrock quota backlogged for chunk ")
+                + input.get("chunkId") + " (" + estimatedTokens + " tokens), waiting " + waitSeconds + "s");
+        return result(waitMs >= 0, waitSeconds);
+    }
+
+    private static Map<String, Object> result(boolean reserved, long waitSeconds) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("reserved", reserved);
+        result.put("waitSeconds", waitSeconds);
+        return result;
+    }
+
+    private static long number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value instanceof String && !((String) value).isEmpty() ? Long.parseLong((String) value) : 0;
+    }
+}
@@ -0,0 +1,154 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import software.amazon.awssdk.core.SdkBytes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Writes Nova InvokeModel request bodies with a streaming {@link JsonGenerator}.
+ *
+ * The prompt is streamed from a {@link PromptTemplate} straight into a
+ * per-thread byte buffer that is kept between calls, so building a body
+ * encodes the code once and copies the finished bytes once into the
+ * immutable array the SDK holds on to. Callers build the body once per
+ * prompt and reuse it for every retry.
+ *
+ * Static instructions go in the system block. When prompt caching is on, a
+ * cachePoint follows them, so Bedrock bills the repeated prefix at the
+ * cache-read rate and only the per-request message at the full input rate.
+ * An assistant prefill continues a response that hit maxTokens: the model
+ * picks up after the given text instead of starting over. maxTokens can be
+ * set per body, so each request reserves only the output it needs.
+ */
+public class BedrockRequestBodyWriter {
+
+    // Buffers that grew past this are dropped rather than pinned per thread
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final ThreadLocal<ByteArrayOutputStream> buffers =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(64 * 1024));
+    private final int maxTokens;
+    private final double temperature;
+    private final double topP;
+    private final boolean promptCaching;
+
+    public BedrockRequestBodyWriter(int maxTokens, double temperature, double topP) {
+        this(maxTokens, temperature, topP, false);
+    }
+
+    public BedrockRequestBodyWriter(int maxTokens, double temperature, double topP, boolean promptCaching) {
+        this.maxTokens = maxTokens;
+        this.temperature = temperature;
+        this.topP = topP;
+        this.promptCaching = promptCaching;
+    }
+
+    /**
+     * Request body for a single user message filled in from the template
+     */
+    public SdkBytes write(PromptTemplate template, Map<String, ? extends CharSequence> values) {
+        return write(null, template, values);
+    }
+
+    /**
+     * Request body with fixed system instructions followed by a user message
+     * filled in from the template
+     */
+    public SdkBytes write(String system, PromptTemplate template, Map<String, ? extends CharSequence> values) {
+        return write(system, template, values, null);
+    }
+
+    /**
+     * Request body that continues an earlier response from assistantPrefill
+     */
+    public SdkBytes write(String system, PromptTemplate template, Map<String, ? extends CharSequence> values,
+                          String assistantPrefill) {
+        return write(system, template, values, assistantPrefill, maxTokens);
+    }
+
+    /**
+     * Request body with its own output limit
+     *
+     * @param assistantPrefill start of the response to continue from, or null
+     */
+    public SdkBytes write(String system, PromptTemplate template, Map<String, ? extends CharSequence> values,
+                          String assistantPrefill, int maxTokens) {
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            generator.writeStartObject();
+
+            if (system != null) {
+                generator.writeArrayFieldStart("system");
+                generator.writeStartObject();
+                generator.writeStringField("text", system);
+                generator.writeEndObject();
+                if (promptCaching) {
+                    generator.writeStartObject();
+                    generator.writeObjectFieldStart("cachePoint");
+                    generator.writeStringField("type", "default");
+                    generator.writeEndObject();
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+
+            generator.writeArrayFieldStart("messages");
+            generator.writeStartObject();
+            generator.writeStringField("role", "user");
+            generator.writeArrayFieldStart("content");
+            generator.writeStartObject();
+            generator.writeFieldName("text");
+            generator.writeString(template.reader(values), -1);
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+            if (assistantPrefill != null) {
+                generator.writeStartObject();
+                generator.writeStringField("role", "assistant");
+                generator.writeArrayFieldStart("content");
+                generator.writeStartObject();
+                generator.writeStringField("text", assistantPrefill);
+                generator.writeEndObject();
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeObjectFieldStart("inferenceConfig");
+            generator.writeNumberField("maxTokens", maxTokens);
+            generator.writeNumberField("temperature", temperature);
+            generator.writeNumberField("topP", topP);
+            generator.writeEndObject();
+
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write Bedrock request body", e);
+        }
+
+        SdkBytes body = SdkBytes.fromByteArrayUnsafe(buffer.toByteArray());
+        if (buffer.size() > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        }
+        return body;
+    }
+
+    public boolean isPromptCaching() {
+        return promptCaching;
+    }
+
+    /**
+     * Whether the model accepts cachePoint blocks in an InvokeModel body.
+     * Every Nova text model does; other families use a different body
+     * format that this writer does not produce.
+     */
+    public static boolean supportsPromptCaching(String modelId) {
+        return modelId != null && modelId.contains("amazon.nova-");
+    }
+}
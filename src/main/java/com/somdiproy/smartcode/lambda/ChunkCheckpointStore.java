@@ -0,0 +1,45 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.util.Map;
+
+/**
+ * Durable store for per-chunk analysis results.
+ *
+ * {@link BedrockAnalysisEngine} saves each chunk's parsed result as soon as
+ * Bedrock returns it, keyed by analysis ID, chunk index and a hash of the
+ * chunk prompt. A redelivered message (SQS retry, DLQ redrive, local retry)
+ * then restores finished chunks instead of paying for them again. The hash
+ * keeps a checkpoint from being reused if the chunking or prompt changed.
+ */
+public interface ChunkCheckpointStore {
+
+    /**
+     * Store that keeps nothing; every chunk is analyzed on every attempt
+     */
+    ChunkCheckpointStore NONE = new ChunkCheckpointStore() {
+        @Override
+        public Map<String, Object> load(String analysisId, int chunkIndex, String chunkHash) {
+            return null;
+        }
+
+        @Override
+        public void save(String analysisId, int chunkIndex, String chunkHash, Map<String, Object> result) {
+        }
+
+        @Override
+        public void clear(String analysisId) {
+        }
+    };
+
+    /**
+     * The checkpointed result, or null if the chunk has not completed
+     */
+    Map<String, Object> load(String analysisId, int chunkIndex, String chunkHash) throws Exception;
+
+    void save(String analysisId, int chunkIndex, String chunkHash, Map<String, Object> result) throws Exception;
+
+    /**
+     * Drop all checkpoints of an analysis once its final result is written
+     */
+    void clear(String analysisId) throws Exception;
+}
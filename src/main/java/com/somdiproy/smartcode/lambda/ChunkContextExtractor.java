@@ -0,0 +1,325 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compact declaration header for a chunk that starts part way into a file.
+ *
+ * The source is scanned once for its package, imports, type declarations
+ * and the field declarations directly inside each type, per file when it
+ * carries "// File: " markers. For a chunk starting at a given line the
+ * header holds what the chunk cannot see: the package and imports above it,
+ * and the signatures and fields of the types it starts inside. A chunk that
+ * comes with this header reads like a complete file, so it can be smaller
+ * without the model guessing at types and field names.
+ *
+ * Nesting is tracked by counting braces outside strings and comments, so
+ * type context is only produced for brace languages; imports work for any
+ * language the patterns below cover.
+ */
+public class ChunkContextExtractor {
+
+    // Header budget; signatures always fit, fields and imports are cut to it
+    static final int MAX_CONTEXT_CHARS = 4000;
+
+    // Lines after a type declaration within which its opening brace must appear
+    private static final int MAX_OPEN_BRACE_DISTANCE = 3;
+
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*(package|namespace)\\s+[\\w.\\\\]+.*");
+    private static final Pattern IMPORT = Pattern.compile(
+            "^\\s*(import\\s|from\\s+\\S+\\s+import\\s|using\\s+[\\w.=\\s]+;|#include\\s|require\\s|use\\s+[\\w:\\\\]+).*");
+    private static final Pattern TYPE = Pattern.compile(
+            "^\\s*(?:@\\w+(?:\\([^)]*\\))?\\s+|(?:public|protected|private|internal|static|final|abstract|sealed|"
+                    + "non-sealed|partial|export|default|data|open)\\s+)*"
+                    + "(class|interface|enum|record|struct|object|trait|@interface)\\s+\\w+.*");
+    // Declarations that end in ';' (and maybe a line comment) and call nothing before any initializer
+    private static final Pattern FIELD = Pattern.compile(
+            "^\\s*(?:@\\w+(?:\\([^)]*\\))?\\s+)*[\\w$<>\\[\\],.?\\s]+\\s+[\\w$]+(\\s*\\[\\])*\\s*(=.*)?;\\s*(//.*)?$");
+    private static final Pattern NOT_A_FIELD = Pattern.compile(
+            "^\\s*(return|throw|break|continue|package|import|using|goto|yield|assert)\\b.*");
+
+    private final List<FileContext> files;
+
+    private ChunkContextExtractor(List<FileContext> files) {
+        this.files = files;
+    }
+
+    /**
+     * Extractor for chunks of the given source; scans it once
+     */
+    public static ChunkContextExtractor forSource(String code) {
+        List<FileContext> files = new ArrayList<>();
+        Scanner scanner = new Scanner(new FileContext(null, 1));
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i <= code.length(); i++) {
+            if (i == code.length() || code.charAt(i) == '\n') {
+                if (code.startsWith(ChunkResultMerger.FILE_MARKER, lineStart)) {
+                    files.add(scanner.finish());
+                    String name = code.substring(lineStart + ChunkResultMerger.FILE_MARKER.length(), i).trim();
+                    scanner = new Scanner(new FileContext(name, line));
+                } else {
+                    scanner.scan(code.substring(lineStart, i), line);
+                }
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        files.add(scanner.finish());
+        return new ChunkContextExtractor(files);
+    }
+
+    /**
+     * Header for a chunk whose first line is the given 1-based source line,
+     * or an empty string when nothing above it is needed to read it
+     */
+    public String contextAt(int startLine) {
+        FileContext file = null;
+        for (FileContext candidate : files) {
+            if (candidate.startLine <= startLine) {
+                file = candidate;
+            }
+        }
+        if (file == null) {
+            return "";
+        }
+
+        List<Declaration> header = new ArrayList<>();
+        for (Declaration declaration : file.header) {
+            if (declaration.line < startLine) {
+                header.add(declaration);
+            }
+        }
+        List<TypeContext> enclosing = new ArrayList<>();
+        for (TypeContext type : file.types) {
+            if (type.line < startLine && type.endLine >= startLine) {
+                enclosing.add(type);
+            }
+        }
+        if (header.isEmpty() && enclosing.isEmpty()) {
+            return "";
+        }
+        return render(file.name, header, enclosing);
+    }
+
+    private static String render(String fileName, List<Declaration> header, List<TypeContext> enclosing) {
+        // Signatures and the package are kept whole; fields, then imports, share what is left
+        int fixed = 0;
+        for (TypeContext type : enclosing) {
+            fixed += type.signature.length() + 8 * type.depth + 20;
+        }
+        int budget = MAX_CONTEXT_CHARS - fixed;
+
+        StringBuilder fields = new StringBuilder();
+        List<StringBuilder> fieldsPerType = new ArrayList<>();
+        for (TypeContext type : enclosing) {
+            StringBuilder typeFields = new StringBuilder();
+            String indent = "    ".repeat(type.depth + 1);
+            int omitted = 0;
+            for (String field : type.fields) {
+                if (fields.length() + typeFields.length() + indent.length() + field.length() + 1 > budget) {
+                    omitted++;
+                } else {
+                    typeFields.append(indent).append(field).append('\n');
+                }
+            }
+            if (omitted > 0) {
+                typeFields.append(indent).append("// ").append(omitted).append(" more fields omitted\n");
+            }
+            fields.append(typeFields);
+            fieldsPerType.add(typeFields);
+        }
+        budget -= fields.length();
+
+        StringBuilder context = new StringBuilder();
+        if (fileName != null) {
+            context.append(ChunkResultMerger.FILE_MARKER).append(fileName).append('\n');
+        }
+        int omittedImports = 0;
+        for (Declaration declaration : header) {
+            if (declaration.isPackage || declaration.text.length() + 1 <= budget) {
+                context.append(declaration.text).append('\n');
+                budget -= declaration.text.length() + 1;
+            } else {
+                omittedImports++;
+            }
+        }
+        if (omittedImports > 0) {
+            context.append("// ").append(omittedImports).append(" more imports omitted\n");
+        }
+
+        for (int i = 0; i < enclosing.size(); i++) {
+            TypeContext type = enclosing.get(i);
+            context.append("    ".repeat(type.depth)).append(type.signature).append(" {\n");
+            context.append(fieldsPerType.get(i));
+        }
+        for (int i = enclosing.size() - 1; i >= 0; i--) {
+            String indent = "    ".repeat(enclosing.get(i).depth);
+            context.append(indent).append("    // ...\n").append(indent).append("}\n");
+        }
+        return context.toString();
+    }
+
+    /**
+     * Brace-depth scan of one file's lines
+     */
+    private static class Scanner {
+        private final FileContext file;
+        private final Deque<TypeContext> open = new ArrayDeque<>();
+        private int depth;
+        private int maxDepthOnLine;
+        private boolean inBlockComment;
+
+        Scanner(FileContext file) {
+            this.file = file;
+        }
+
+        void scan(String text, int line) {
+            int depthAtStart = depth;
+            String trimmed = text.trim();
+
+            if (depthAtStart == 0 && !inBlockComment) {
+                if (PACKAGE.matcher(text).matches()) {
+                    file.header.add(new Declaration(trimmed, line, true));
+                } else if (IMPORT.matcher(text).matches()) {
+                    file.header.add(new Declaration(trimmed, line, false));
+                }
+            }
+
+            TypeContext current = open.peek();
+            boolean isType = !inBlockComment && TYPE.matcher(text).matches();
+            if (!isType && !inBlockComment && current != null && current.opened
+                    && depthAtStart == current.bodyDepth
+                    && FIELD.matcher(text).matches() && !NOT_A_FIELD.matcher(text).matches()) {
+                current.fields.add(stripTrailingComment(trimmed));
+            }
+            if (isType) {
+                TypeContext type = new TypeContext(signatureOf(trimmed), line, depthAtStart, open.size());
+                open.push(type);
+                file.types.add(type);
+            }
+
+            countBraces(text);
+
+            // Close every type whose body the braces on this line ended
+            while (!open.isEmpty()) {
+                TypeContext top = open.peek();
+                if (!top.opened && maxDepthOnLine > top.openDepth) {
+                    top.opened = true;
+                }
+                if (top.opened && depth <= top.openDepth) {
+                    top.endLine = line;
+                    open.pop();
+                } else if (!top.opened && line - top.line >= MAX_OPEN_BRACE_DISTANCE) {
+                    // No brace body (a Python or Kotlin one-liner class); not tracked
+                    open.pop();
+                    file.types.remove(top);
+                } else {
+                    break;
+                }
+            }
+        }
+
+        FileContext finish() {
+            // Types still open at the end of the file enclose everything after them
+            for (TypeContext type : open) {
+                if (type.opened) {
+                    type.endLine = Integer.MAX_VALUE;
+                } else {
+                    file.types.remove(type);
+                }
+            }
+            return file;
+        }
+
+        private void countBraces(String text) {
+            maxDepthOnLine = depth;
+            char quote = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                char next = i + 1 < text.length() ? text.charAt(i + 1) : 0;
+                if (inBlockComment) {
+                    if (c == '*' && next == '/') {
+                        inBlockComment = false;
+                        i++;
+                    }
+                } else if (quote != 0) {
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '/' && next == '/') {
+                    return;
+                } else if (c == '/' && next == '*') {
+                    inBlockComment = true;
+                    i++;
+                } else if (c == '"' || c == '\'' || c == '`') {
+                    quote = c;
+                } else if (c == '{') {
+                    depth++;
+                    maxDepthOnLine = Math.max(maxDepthOnLine, depth);
+                } else if (c == '}') {
+                    depth = Math.max(0, depth - 1);
+                }
+            }
+        }
+
+        private static String signatureOf(String declaration) {
+            int brace = declaration.indexOf('{');
+            return (brace >= 0 ? declaration.substring(0, brace) : declaration).trim();
+        }
+
+        private static String stripTrailingComment(String declaration) {
+            int semicolon = declaration.lastIndexOf(';');
+            return semicolon >= 0 ? declaration.substring(0, semicolon + 1) : declaration;
+        }
+    }
+
+    private static class FileContext {
+        private final String name;
+        private final int startLine;
+        private final List<Declaration> header = new ArrayList<>();
+        private final List<TypeContext> types = new ArrayList<>();
+
+        FileContext(String name, int startLine) {
+            this.name = name;
+            this.startLine = startLine;
+        }
+    }
+
+    private static class Declaration {
+        private final String text;
+        private final int line;
+        private final boolean isPackage;
+
+        Declaration(String text, int line, boolean isPackage) {
+            this.text = text;
+            this.line = line;
+            this.isPackage = isPackage;
+        }
+    }
+
+    private static class TypeContext {
+        private final String signature;
+        private final int line;
+        private final int openDepth;
+        private final int bodyDepth;
+        private final int depth;
+        private final List<String> fields = new ArrayList<>();
+        private boolean opened;
+        private int endLine = Integer.MAX_VALUE;
+
+        TypeContext(String signature, int line, int openDepth, int depth) {
+            this.signature = signature;
+            this.line = line;
+            this.openDepth = openDepth;
+            this.bodyDepth = openDepth + 1;
+            this.depth = depth;
+        }
+    }
+}
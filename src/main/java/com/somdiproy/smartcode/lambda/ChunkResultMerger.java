@@ -0,0 +1,326 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Merges per-chunk review results into one.
+ *
+ * Issue line numbers are chunk-relative on the way in. They are mapped back
+ * to the source (per file when the code carries "// File: " markers, as
+ * ZIP extractions do) and each issue is fingerprinted by file, a bucket of
+ * its line and a hash of its normalized title. An issue is a duplicate of
+ * one on the same line. Chunks do not overlap, but each chunk is reviewed
+ * with declarations from around it, so a finding at a chunk boundary can be
+ * reported by both chunks on slightly different lines: issues from
+ * different chunks that sit within {@value #LINE_TOLERANCE} lines of the same
+ * boundary also match when they are that close to each other, looked up in
+ * their own and the neighbouring buckets. The more severe copy is kept.
+ * Suggestions are deduplicated by title.
+ * Code that is an excerpt of a file (a pull-request diff) carries
+ * "// @@ line N" markers before each run of lines; issues in a run are
+ * mapped to line N onwards, so they point at the head commit.
+ * The overall score is the mean of the chunk scores weighted by each
+ * chunk's estimated tokens, so a short tail chunk barely moves it.
+ */
+public class ChunkResultMerger {
+
+    static final String FILE_MARKER = "// File: ";
+    public static final String LINE_MARKER = "// @@ line ";
+
+    // Lines from a chunk boundary, and apart, at which the same finding from two chunks
+    // still counts as a duplicate; also the bucket width
+    static final int LINE_TOLERANCE = 3;
+    // Issues without a line only match each other, never a neighbour of line 0
+    private static final long NO_LINE_BUCKET = Long.MIN_VALUE;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final NavigableMap<Integer, String> fileStarts;
+    // Source line of each line marker, to the file line the run after it starts at
+    private final NavigableMap<Integer, Integer> lineStarts;
+
+    private ChunkResultMerger(NavigableMap<Integer, String> fileStarts, NavigableMap<Integer, Integer> lineStarts) {
+        this.fileStarts = fileStarts;
+        this.lineStarts = lineStarts;
+    }
+
+    /**
+     * Merger for chunks of the given source; indexes its file markers
+     */
+    public static ChunkResultMerger forSource(String code) {
+        NavigableMap<Integer, String> fileStarts = new TreeMap<>();
+        NavigableMap<Integer, Integer> lineStarts = new TreeMap<>();
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i <= code.length(); i++) {
+            if (i == code.length() || code.charAt(i) == '\n') {
+                if (code.startsWith(FILE_MARKER, lineStart)) {
+                    fileStarts.put(line, code.substring(lineStart + FILE_MARKER.length(), i).trim());
+                } else if (code.startsWith(LINE_MARKER, lineStart)) {
+                    try {
+                        lineStarts.put(line, Integer.parseInt(code.substring(lineStart + LINE_MARKER.length(), i).trim()));
+                    } catch (NumberFormatException e) {
+                        // Not one of ours; the lines after it keep their file-relative numbers
+                    }
+                }
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return new ChunkResultMerger(fileStarts, lineStarts);
+    }
+
+    /**
+     * Whether the source has markers that move issue lines, so a result
+     * analyzed in one piece still needs {@link #locateIssues}
+     */
+    public boolean hasMarkers() {
+        return !fileStarts.isEmpty() || !lineStarts.isEmpty();
+    }
+
+    /**
+     * Map the issue lines of a result for the whole source in place, the
+     * way {@link #merge} does for chunks
+     */
+    @SuppressWarnings("unchecked")
+    public void locateIssues(Map<String, Object> result) {
+        Object issues = result.get("issues");
+        if (!(issues instanceof List)) {
+            return;
+        }
+        List<Object> located = new ArrayList<>();
+        for (Object issue : (List<Object>) issues) {
+            located.add(issue instanceof Map ? locate((Map<String, Object>) issue, 1) : issue);
+        }
+        result.put("issues", located);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> merge(List<Chunk> chunks) {
+        List<Map<String, Object>> issues = new ArrayList<>();
+        // Chunk and source line each kept issue came from, in step with issues
+        List<Origin> origins = new ArrayList<>();
+        List<Map<String, Object>> suggestions = new ArrayList<>();
+        Map<Long, Integer> issueIndex = new HashMap<>();
+        Map<Long, Integer> suggestionIndex = new HashMap<>();
+        double weightedScore = 0;
+        long scoredTokens = 0;
+        int duplicates = 0;
+
+        // Source lines where a chunk other than the first starts
+        NavigableSet<Integer> boundaries = new TreeSet<>();
+        for (Chunk chunk : chunks) {
+            boundaries.add(chunk.startLine);
+        }
+        if (!boundaries.isEmpty()) {
+            boundaries.pollFirst();
+        }
+
+        for (int c = 0; c < chunks.size(); c++) {
+            Chunk chunk = chunks.get(c);
+            Map<String, Object> result = chunk.result;
+            Object chunkIssues = result.get("issues");
+            if (chunkIssues instanceof List) {
+                for (Object item : (List<Object>) chunkIssues) {
+                    if (!(item instanceof Map)) {
+                        continue;
+                    }
+                    int chunkLine = lineOf((Map<String, Object>) item);
+                    Origin origin = new Origin(c, chunkLine < 0 ? -1 : chunk.startLine + chunkLine - 1);
+                    Map<String, Object> issue = locate((Map<String, Object>) item, chunk.startLine);
+                    Integer existing = findDuplicate(issue, origin, issues, origins, issueIndex, boundaries);
+                    if (existing == null) {
+                        issueIndex.put(fingerprint(issue, bucket(lineOf(issue))), issues.size());
+                        issues.add(issue);
+                        origins.add(origin);
+                    } else {
+                        duplicates++;
+                        if (severityRank(issue) > severityRank(issues.get(existing))) {
+                            issues.set(existing, issue);
+                            origins.set(existing, origin);
+                        }
+                    }
+                }
+            }
+
+            Object chunkSuggestions = result.get("suggestions");
+            if (chunkSuggestions instanceof List) {
+                for (Object item : (List<Object>) chunkSuggestions) {
+                    if (item instanceof Map) {
+                        Map<String, Object> suggestion = (Map<String, Object>) item;
+                        long fingerprint = hashNormalized(String.valueOf(suggestion.get("title")), FNV_OFFSET);
+                        if (suggestionIndex.putIfAbsent(fingerprint, suggestions.size()) == null) {
+                            suggestions.add(suggestion);
+                        }
+                    }
+                }
+            }
+
+            if (result.get("overallScore") instanceof Number) {
+                long weight = Math.max(1, chunk.tokens);
+                weightedScore += ((Number) result.get("overallScore")).doubleValue() * weight;
+                scoredTokens += weight;
+            }
+        }
+
+        Map<String, Object> merged = new HashMap<>();
+        merged.put("summary", "Comprehensive analysis completed across " + chunks.size() + " code segments");
+        merged.put("overallScore", scoredTokens > 0 ? weightedScore / scoredTokens : 0.0);
+        merged.put("issues", issues);
+        merged.put("suggestions", suggestions);
+        merged.put("chunkCount", chunks.size());
+        merged.put("duplicateIssuesRemoved", duplicates);
+        return merged;
+    }
+
+    /**
+     * Copy of the issue with its line mapped from the chunk to the source
+     * file, and the file filled in when the source has markers
+     */
+    private Map<String, Object> locate(Map<String, Object> issue, int chunkStartLine) {
+        Map<String, Object> located = new LinkedHashMap<>(issue);
+        if (!(issue.get("lineNumber") instanceof Number)) {
+            return located;
+        }
+        int line = chunkStartLine + ((Number) issue.get("lineNumber")).intValue() - 1;
+        Map.Entry<Integer, String> file = fileStarts.floorEntry(line);
+        Map.Entry<Integer, Integer> run = lineStarts.floorEntry(line);
+        int fileStart = file != null ? file.getKey() : 0;
+        if (file != null) {
+            located.putIfAbsent("file", file.getValue());
+        }
+        if (run != null && run.getKey() > fileStart) {
+            // A marker line itself counts as the first line of its run
+            line = run.getValue() + Math.max(0, line - run.getKey() - 1);
+        } else {
+            line -= fileStart;
+        }
+        located.put("lineNumber", line);
+        return located;
+    }
+
+    /**
+     * Index of an earlier issue with the same file and title on the same
+     * line, or, for an issue from another chunk near the same boundary,
+     * within LINE_TOLERANCE lines; looked up in the issue's bucket and both neighbours
+     */
+    private static Integer findDuplicate(Map<String, Object> issue, Origin origin,
+                                         List<Map<String, Object>> issues, List<Origin> origins,
+                                         Map<Long, Integer> issueIndex, NavigableSet<Integer> boundaries) {
+        int line = lineOf(issue);
+        if (line < 0) {
+            return issueIndex.get(fingerprint(issue, NO_LINE_BUCKET));
+        }
+        Integer boundary = boundaryNear(origin.sourceLine, boundaries);
+        long bucket = bucket(line);
+        for (long candidate = bucket - 1; candidate <= bucket + 1; candidate++) {
+            Integer index = issueIndex.get(fingerprint(issue, candidate));
+            if (index == null) {
+                continue;
+            }
+            int distance = Math.abs(lineOf(issues.get(index)) - line);
+            Origin other = origins.get(index);
+            if (distance == 0 || (distance <= LINE_TOLERANCE && boundary != null && other.chunk != origin.chunk
+                    && boundary.equals(boundaryNear(other.sourceLine, boundaries)))) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The chunk boundary the source line is within LINE_TOLERANCE lines of, if any
+     */
+    private static Integer boundaryNear(int sourceLine, NavigableSet<Integer> boundaries) {
+        if (sourceLine < 0) {
+            return null;
+        }
+        Integer boundary = boundaries.higher(sourceLine - LINE_TOLERANCE);
+        return boundary != null && boundary <= sourceLine + LINE_TOLERANCE ? boundary : null;
+    }
+
+    private static long bucket(int line) {
+        return line < 0 ? NO_LINE_BUCKET : line / LINE_TOLERANCE;
+    }
+
+    private static int lineOf(Map<String, Object> issue) {
+        Object line = issue.get("lineNumber");
+        return line instanceof Number ? ((Number) line).intValue() : -1;
+    }
+
+    private static long fingerprint(Map<String, Object> issue, long lineBucket) {
+        long hash = FNV_OFFSET;
+        Object file = issue.get("file");
+        if (file != null) {
+            hash = hashNormalized(file.toString(), hash);
+        }
+        hash = (hash ^ lineBucket) * FNV_PRIME;
+        return hashNormalized(String.valueOf(issue.get("title")), hash);
+    }
+
+    /**
+     * FNV-1a over the lower-cased letters and digits only, so titles that
+     * differ in case, spacing or punctuation collide on purpose
+     */
+    private static long hashNormalized(String text, long hash) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    private static int severityRank(Map<String, Object> issue) {
+        Object severity = issue.get("severity");
+        if (severity == null) {
+            return 0;
+        }
+        return switch (severity.toString().toUpperCase()) {
+            case "CRITICAL" -> 4;
+            case "HIGH" -> 3;
+            case "MEDIUM" -> 2;
+            case "LOW" -> 1;
+            default -> 0;
+        };
+    }
+
+    private static final class Origin {
+        private final int chunk;
+        private final int sourceLine;
+
+        Origin(int chunk, int sourceLine) {
+            this.chunk = chunk;
+            this.sourceLine = sourceLine;
+        }
+    }
+
+    /**
+     * One chunk's result with where it starts in the source and its size
+     */
+    public static class Chunk {
+        private final Map<String, Object> result;
+        private final int startLine;
+        private final long tokens;
+
+        /**
+         * @param startLine 1-based source line of the chunk's first line
+         * @param tokens estimated input tokens of the chunk, used as its score weight
+         */
+        public Chunk(Map<String, Object> result, int startLine, long tokens) {
+            this.result = result;
+            this.startLine = startLine;
+            this.tokens = tokens;
+        }
+    }
+}
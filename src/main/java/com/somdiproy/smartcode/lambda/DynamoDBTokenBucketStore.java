@@ -0,0 +1,132 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link TokenBucketStore} on DynamoDB.
+ *
+ * One item per bucket (bucketKey = "{bucket}") holding its balance, the time
+ * it was last refilled and a version. A change reads the item, applies the
+ * refill and the reservation, and writes it back on condition that the
+ * version is unchanged, so concurrent callers in any process never
+ * overshoot; a caller that loses the race re-reads and tries again.
+ * Items carry an expiresAt TTL an hour after their last change, by which
+ * time any bucket is full again.
+ *
+ * Table: partition key bucketKey (S), TTL attribute expiresAt, on-demand billing.
+ */
+public class DynamoDBTokenBucketStore implements TokenBucketStore {
+
+    private static final int MAX_ATTEMPTS = 8;
+    // Reported wait when every attempt lost a race; the caller comes back shortly
+    private static final long CONTENDED_WAIT_MS = 100;
+    private static final long TTL_SECONDS = 3600;
+
+    private final AmazonDynamoDB dynamoDB;
+    private final String tableName;
+
+    public DynamoDBTokenBucketStore(AmazonDynamoDB dynamoDB, String tableName) {
+        this.dynamoDB = dynamoDB;
+        this.tableName = tableName;
+    }
+
+    @Override
+    public long reserve(String bucket, long permits, long limitPerMinute, long maxWaitMs) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            long now = System.currentTimeMillis();
+            Map<String, AttributeValue> item = read(bucket);
+            TokenBucket state = toBucket(item, limitPerMinute, now);
+            long waitMs = state.reserve(permits, limitPerMinute, maxWaitMs, now);
+            if (waitMs < 0 || write(bucket, state, item, now)) {
+                return waitMs;
+            }
+            backOff(attempt);
+        }
+        return -CONTENDED_WAIT_MS;
+    }
+
+    @Override
+    public void release(String bucket, long permits, long limitPerMinute) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            long now = System.currentTimeMillis();
+            Map<String, AttributeValue> item = read(bucket);
+            if (item == null) {
+                // Expired, so already full
+                return;
+            }
+            TokenBucket state = toBucket(item, limitPerMinute, now);
+            state.release(permits, limitPerMinute, now);
+            if (write(bucket, state, item, now)) {
+                return;
+            }
+            backOff(attempt);
+        }
+    }
+
+    @Override
+    public long available(String bucket, long limitPerMinute) {
+        long now = System.currentTimeMillis();
+        return toBucket(read(bucket), limitPerMinute, now).available(limitPerMinute, now);
+    }
+
+    private Map<String, AttributeValue> read(String bucket) {
+        return dynamoDB.getItem(new GetItemRequest()
+                .withTableName(tableName)
+                .withKey(Map.of("bucketKey", new AttributeValue(bucket)))
+                .withConsistentRead(true)).getItem();
+    }
+
+    private static TokenBucket toBucket(Map<String, AttributeValue> item, long limitPerMinute, long now) {
+        if (item == null || !item.containsKey("tokens")) {
+            return TokenBucket.full(limitPerMinute, now);
+        }
+        return new TokenBucket(Double.parseDouble(item.get("tokens").getN()),
+                Long.parseLong(item.get("refilledAt").getN()));
+    }
+
+    /**
+     * Write the new state unless someone else changed the bucket since it was read
+     */
+    private boolean write(String bucket, TokenBucket state, Map<String, AttributeValue> previous, long now) {
+        long version = previous != null && previous.containsKey("version")
+                ? Long.parseLong(previous.get("version").getN()) : 0;
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("bucketKey", new AttributeValue(bucket));
+        item.put("tokens", new AttributeValue().withN(Double.toString(state.getBalance())));
+        item.put("refilledAt", new AttributeValue().withN(Long.toString(state.getRefilledAt())));
+        item.put("version", new AttributeValue().withN(Long.toString(version + 1)));
+        item.put("expiresAt", new AttributeValue().withN(Long.toString(now / 1000 + TTL_SECONDS)));
+
+        PutItemRequest request = new PutItemRequest().withTableName(tableName).withItem(item);
+        if (previous == null) {
+            request.withConditionExpression("attribute_not_exists(bucketKey)");
+        } else if (!previous.containsKey("version")) {
+            request.withConditionExpression("attribute_not_exists(version)");
+        } else {
+            request.withConditionExpression("version = :version")
+                    .withExpressionAttributeValues(Map.of(":version", new AttributeValue().withN(Long.toString(version))));
+        }
+        try {
+            dynamoDB.putItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(5L << Math.min(attempt, 4)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Chunk checkpoints as JSON files under {root}/{analysisId}/, for the
+ * in-process pipeline. Files are written via a temp file and atomic rename
+ * so a crash never leaves a half-written checkpoint behind.
+ */
+public class FileChunkCheckpointStore implements ChunkCheckpointStore {
+
+    private final Path root;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public FileChunkCheckpointStore(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> load(String analysisId, int chunkIndex, String chunkHash) throws IOException {
+        Path file = file(analysisId, chunkIndex, chunkHash);
+        return Files.exists(file) ? objectMapper.readValue(file.toFile(), Map.class) : null;
+    }
+
+    @Override
+    public void save(String analysisId, int chunkIndex, String chunkHash, Map<String, Object> result) throws IOException {
+        Path file = file(analysisId, chunkIndex, chunkHash);
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        objectMapper.writeValue(temp.toFile(), result);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void clear(String analysisId) throws IOException {
+        Path dir = root.resolve(analysisId);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private Path file(String analysisId, int chunkIndex, String chunkHash) {
+        return root.resolve(analysisId).resolve("chunk-" + chunkIndex + "-" + chunkHash + ".json");
+    }
+}
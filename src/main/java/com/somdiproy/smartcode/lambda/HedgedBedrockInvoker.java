@@ -0,0 +1,319 @@
+package com.somdiproy.smartcode.lambda;
+
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClientBuilder;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InvokeModel with optional request hedging.
+ *
+ * Latencies are kept per model and request size class. Once a class has
+ * enough samples, a call that runs past that class's p95 (and a floor) gets
+ * a second request for the same body, sent to the hedge client in another
+ * region or to a cross-region inference profile of the same model. A hedge
+ * that would be byte-for-byte the same call on the same client is never
+ * sent. The hedge budget caps how many hedges are sent, as a share of all
+ * calls; it does not cap what they cost.
+ *
+ * Whichever answers first wins and the other future is cancelled. The
+ * interrupt only stops a request that is still waiting (for a connection or
+ * a retry backoff); the Apache HTTP client does not abort a socket read in
+ * progress, and a call slow enough to be hedged is usually already reading
+ * its response, so the loser normally runs to completion on its daemon
+ * thread and its response is dropped. Every hedge is therefore paid for in
+ * full: it takes its whole estimate (input plus maxTokens) from the shared
+ * {@link BedrockQuota} before it is sent, and that charge is never returned,
+ * whichever request loses. A hedge the quota has no room for right now is
+ * not sent. The tokens charged for hedges are reported as hedgeTokens.
+ *
+ * A failure before the hedge fires is thrown as is, so throttling and
+ * retries behave exactly as without hedging. When both requests fail, the
+ * primary's error is thrown.
+ */
+public class HedgedBedrockInvoker {
+
+    // Size classes by body bytes: <8K, <32K, <128K, larger
+    private static final int[] SIZE_CLASS_LIMITS = {8 * 1024, 32 * 1024, 128 * 1024};
+    private static final int WINDOW_SIZE = 200;
+    private static final int MIN_SAMPLES = 20;
+    // Hedges allowed before the share of calls applies
+    private static final int HEDGE_BURST = 2;
+
+    private final BedrockRuntimeClient primary;
+    private final BedrockRuntimeClient hedgeClient;
+    private final String hedgeProfilePrefix;
+    private final BedrockQuota quota;
+    private final boolean enabled;
+    private final double hedgeBudget;
+    private final long minDelayMs;
+    // Keyed by model ID and size class
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+    private final AtomicLong hedgesUnavailable = new AtomicLong();
+    private final AtomicLong hedgeTokens = new AtomicLong();
+
+    /**
+     * @param hedgeClient client hedges go to, e.g. in another region; null for the primary
+     * @param hedgeProfilePrefix geography prefix ("us.", "eu.") that turns an in-region model
+     *                           ID into its cross-region inference profile for hedges; null to keep the ID
+     * @param quota shared quota each hedge is charged its full estimate against
+     * @param hedgeBudget hedges allowed per call, e.g. 0.05; bounds how many hedges are sent, not their cost
+     * @param minDelayMs shortest wait before hedging, whatever the p95
+     * @throws IllegalArgumentException when there is neither a hedge client nor a profile prefix,
+     *                                  so every hedge would repeat the original call
+     */
+    public HedgedBedrockInvoker(BedrockRuntimeClient primary, BedrockRuntimeClient hedgeClient,
+                                String hedgeProfilePrefix, BedrockQuota quota, double hedgeBudget, long minDelayMs) {
+        this(primary, hedgeClient, hedgeProfilePrefix, quota, true, hedgeBudget, minDelayMs);
+        if (this.hedgeClient == primary && this.hedgeProfilePrefix == null) {
+            throw new IllegalArgumentException("Hedging needs a hedge region or an inference profile prefix");
+        }
+    }
+
+    private HedgedBedrockInvoker(BedrockRuntimeClient primary, BedrockRuntimeClient hedgeClient,
+                                 String hedgeProfilePrefix, BedrockQuota quota, boolean enabled,
+                                 double hedgeBudget, long minDelayMs) {
+        this.primary = primary;
+        this.hedgeClient = hedgeClient != null ? hedgeClient : primary;
+        this.hedgeProfilePrefix = hedgeProfilePrefix != null && !hedgeProfilePrefix.isEmpty() ? hedgeProfilePrefix : null;
+        this.quota = quota != null ? quota : BedrockQuota.UNLIMITED;
+        this.enabled = enabled;
+        this.hedgeBudget = hedgeBudget;
+        this.minDelayMs = minDelayMs;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = enabled ? Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "bedrock-hedge-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Plain calls on the client, still recording latencies
+     */
+    public static HedgedBedrockInvoker direct(BedrockRuntimeClient client) {
+        return new HedgedBedrockInvoker(client, null, null, null, false, 0, 0);
+    }
+
+    /**
+     * Client for hedges in another region, with the same credentials chain
+     * and endpoint override (e.g. the Bedrock simulator) as the primary
+     */
+    public static BedrockRuntimeClient regionalClient(BedrockRuntimeClient primary, String region) {
+        BedrockRuntimeClientBuilder builder = BedrockRuntimeClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(DefaultCredentialsProvider.create());
+        primary.serviceClientConfiguration().endpointOverride().ifPresent(builder::endpointOverride);
+        return builder.build();
+    }
+
+    /**
+     * @param estimatedTokens input plus maxTokens; what a hedge is charged against the shared quota
+     */
+    public InvokeModelResponse invoke(InvokeModelRequest request, int bodyBytes, long estimatedTokens)
+            throws Exception {
+        calls.incrementAndGet();
+        LatencyWindow window = windows.computeIfAbsent(windowKey(request.modelId(), bodyBytes),
+                key -> new LatencyWindow());
+        long p95 = window.p95();
+        if (!enabled || p95 < 0) {
+            return timed(primary, request, window);
+        }
+        InvokeModelRequest hedgeRequest = hedgeRequest(request);
+        if (hedgeRequest == null) {
+            // Same client, same model ID: a hedge would only repeat the call
+            hedgesUnavailable.incrementAndGet();
+            return timed(primary, request, window);
+        }
+
+        ExecutorCompletionService<InvokeModelResponse> race = new ExecutorCompletionService<>(executor);
+        long startedAt = System.nanoTime();
+        Future<InvokeModelResponse> first = race.submit(() -> timed(primary, request, window));
+        Future<InvokeModelResponse> done = race.poll(Math.max(p95, minDelayMs), TimeUnit.MILLISECONDS);
+        if (done != null) {
+            return result(done);
+        }
+        if (!tryHedge(estimatedTokens)) {
+            return result(first);
+        }
+
+        Future<InvokeModelResponse> second = race.submit(() -> timed(hedgeClient, hedgeRequest, window));
+        Exception primaryError = null;
+        for (int i = 0; i < 2; i++) {
+            done = race.take();
+            try {
+                InvokeModelResponse response = result(done);
+                Future<InvokeModelResponse> loser = done == first ? second : first;
+                if (loser.cancel(true) && loser == first) {
+                    // The primary took at least this long; keeps the p95 from drifting down
+                    window.record((System.nanoTime() - startedAt) / 1_000_000);
+                }
+                if (done == second) {
+                    hedgeWins.incrementAndGet();
+                }
+                return response;
+            } catch (Exception e) {
+                if (done == first || primaryError == null) {
+                    primaryError = e;
+                }
+            }
+        }
+        throw primaryError;
+    }
+
+    /**
+     * Calls, hedges and the current p95 per model and size class
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("calls", calls.get());
+        stats.put("hedges", hedges.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("hedgesDenied", hedgesDenied.get());
+        stats.put("hedgesUnavailable", hedgesUnavailable.get());
+        stats.put("hedgeTokens", hedgeTokens.get());
+        Map<String, Object> p95 = new TreeMap<>();
+        windows.forEach((key, window) -> p95.put(key, window.p95()));
+        stats.put("p95Ms", p95);
+        return stats;
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Estimated tokens charged to the quota for hedges; the loser of a race
+     * usually runs to completion, so this is extra spend, not a refundable hold
+     */
+    public long getHedgeTokens() {
+        return hedgeTokens.get();
+    }
+
+    /**
+     * Take a hedge from the budget, then its full estimate from the shared
+     * quota; a hedge the quota has no room for right now is not sent
+     */
+    private boolean tryHedge(long estimatedTokens) {
+        while (true) {
+            long taken = hedges.get();
+            if (taken + 1 > hedgeBudget * calls.get() + HEDGE_BURST) {
+                hedgesDenied.incrementAndGet();
+                return false;
+            }
+            if (hedges.compareAndSet(taken, taken + 1)) {
+                break;
+            }
+        }
+        if (!quota.tryAcquire(estimatedTokens)) {
+            hedges.decrementAndGet();
+            hedgesDenied.incrementAndGet();
+            return false;
+        }
+        hedgeTokens.addAndGet(estimatedTokens);
+        return true;
+    }
+
+    /**
+     * The request a hedge sends, or null when it would repeat the original
+     * on the same client
+     */
+    private InvokeModelRequest hedgeRequest(InvokeModelRequest request) {
+        String modelId = request.modelId();
+        // Profile IDs ("us.amazon.nova-pro-v1:0") and ARNs are sent as they are
+        if (hedgeProfilePrefix != null && !isInferenceProfile(modelId)) {
+            return BedrockAnalysisEngine.buildRequest(hedgeProfilePrefix + modelId, request.body());
+        }
+        return hedgeClient != primary ? request : null;
+    }
+
+    /**
+     * In-region IDs are provider.model ("amazon.nova-pro-v1:0"); profiles add
+     * a geography in front
+     */
+    static boolean isInferenceProfile(String modelId) {
+        if (modelId.startsWith("arn:")) {
+            return true;
+        }
+        int version = modelId.indexOf(':');
+        String name = version >= 0 ? modelId.substring(0, version) : modelId;
+        int firstDot = name.indexOf('.');
+        return firstDot >= 0 && name.indexOf('.', firstDot + 1) >= 0;
+    }
+
+    private static InvokeModelResponse timed(BedrockRuntimeClient client, InvokeModelRequest request,
+                                             LatencyWindow window) {
+        long startedAt = System.nanoTime();
+        InvokeModelResponse response = client.invokeModel(request);
+        window.record((System.nanoTime() - startedAt) / 1_000_000);
+        return response;
+    }
+
+    private static InvokeModelResponse result(Future<InvokeModelResponse> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private static String windowKey(String modelId, int bodyBytes) {
+        for (int limit : SIZE_CLASS_LIMITS) {
+            if (bodyBytes < limit) {
+                return modelId + " <" + limit / 1024 + "KB";
+            }
+        }
+        return modelId + " larger";
+    }
+
+    /**
+     * Most recent successful latencies of one model and size class
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private long count;
+
+        synchronized void record(long latencyMs) {
+            samples[(int) (count++ % WINDOW_SIZE)] = latencyMs;
+        }
+
+        /**
+         * 95th percentile in ms, or -1 until there are enough samples
+         */
+        synchronized long p95() {
+            int size = (int) Math.min(count, WINDOW_SIZE);
+            if (size < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(size * 0.95) - 1];
+        }
+    }
+}
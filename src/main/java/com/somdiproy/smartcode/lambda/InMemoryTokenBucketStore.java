@@ -0,0 +1,74 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Single-process {@link TokenBucketStore} with the same refill semantics as
+ * {@link DynamoDBTokenBucketStore}; used by the local pipeline and in tests.
+ */
+public class InMemoryTokenBucketStore implements TokenBucketStore {
+
+    // Buckets untouched this long are full again and are dropped, as DynamoDB expires them
+    private static final long IDLE_MS = 3600_000;
+    private static final long SWEEP_INTERVAL_MS = 60_000;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private volatile long lastSweep;
+
+    public InMemoryTokenBucketStore() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds
+     */
+    public InMemoryTokenBucketStore(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public long reserve(String bucket, long permits, long limitPerMinute, long maxWaitMs) {
+        long now = clock.getAsLong();
+        sweep(now);
+        TokenBucket state = buckets.computeIfAbsent(bucket, key -> TokenBucket.full(limitPerMinute, now));
+        synchronized (state) {
+            return state.reserve(permits, limitPerMinute, maxWaitMs, now);
+        }
+    }
+
+    @Override
+    public void release(String bucket, long permits, long limitPerMinute) {
+        TokenBucket state = buckets.get(bucket);
+        if (state != null) {
+            synchronized (state) {
+                state.release(permits, limitPerMinute, clock.getAsLong());
+            }
+        }
+    }
+
+    @Override
+    public long available(String bucket, long limitPerMinute) {
+        TokenBucket state = buckets.get(bucket);
+        if (state == null) {
+            return limitPerMinute;
+        }
+        synchronized (state) {
+            return state.available(limitPerMinute, clock.getAsLong());
+        }
+    }
+
+    private void sweep(long now) {
+        if (now - lastSweep < SWEEP_INTERVAL_MS) {
+            return;
+        }
+        lastSweep = now;
+        buckets.values().removeIf(state -> {
+            synchronized (state) {
+                return now - state.getRefilledAt() > IDLE_MS;
+            }
+        });
+    }
+}
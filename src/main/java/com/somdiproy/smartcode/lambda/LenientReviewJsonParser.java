@@ -0,0 +1,108 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a review JSON object from model output that may be wrapped in
+ * markdown fences or prose, or cut off part way through.
+ *
+ * The root object is read one field at a time and arrays one element at a
+ * time, so everything before the point of truncation survives: every
+ * complete issue and suggestion, and every complete top-level field. The
+ * result also gives the offset just after the last complete value, which is
+ * where a continuation request should resume.
+ */
+public class LenientReviewJsonParser {
+
+    private final ObjectMapper objectMapper;
+
+    public LenientReviewJsonParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public Result parse(CharSequence output) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        int start = indexOf(output, '{');
+        if (start < 0) {
+            return new Result(values, false, 0);
+        }
+
+        int resumeOffset = start + 1;
+        try (JsonParser parser = objectMapper.getFactory().createParser(output.subSequence(start, output.length()).toString())) {
+            parser.nextToken();
+            while (true) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.END_OBJECT) {
+                    return new Result(values, true, start + offset(parser));
+                }
+                if (token != JsonToken.FIELD_NAME) {
+                    break;
+                }
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY) {
+                    // Keep the list in place so complete elements survive a cut-off array
+                    List<Object> elements = new ArrayList<>();
+                    values.put(field, elements);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        elements.add(objectMapper.readValue(parser, Object.class));
+                        resumeOffset = start + offset(parser);
+                    }
+                } else {
+                    values.put(field, objectMapper.readValue(parser, Object.class));
+                }
+                resumeOffset = start + offset(parser);
+            }
+        } catch (IOException e) {
+            // Truncated or malformed from here on; keep what was complete
+        }
+        return new Result(values, false, resumeOffset);
+    }
+
+    private static int offset(JsonParser parser) {
+        return (int) parser.getCurrentLocation().getCharOffset();
+    }
+
+    private static int indexOf(CharSequence text, char c) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parsed fields plus whether the root object was closed
+     */
+    public static class Result {
+        private final Map<String, Object> values;
+        private final boolean complete;
+        private final int resumeOffset;
+
+        Result(Map<String, Object> values, boolean complete, int resumeOffset) {
+            this.values = values;
+            this.complete = complete;
+            this.resumeOffset = resumeOffset;
+        }
+
+        public Map<String, Object> getValues() { return values; }
+        public boolean isComplete() { return complete; }
+
+        /**
+         * Offset in the original output just after the last complete value
+         */
+        public int getResumeOffset() { return resumeOffset; }
+
+        public boolean isEmpty() {
+            return values.isEmpty();
+        }
+    }
+}
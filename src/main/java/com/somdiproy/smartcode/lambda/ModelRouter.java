@@ -0,0 +1,280 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the Bedrock model for an analysis from three tiers.
+ *
+ * Small inputs and markup/config languages go to the FAST tier, large or
+ * security-sensitive code to PREMIUM, everything else to STANDARD; a
+ * requested depth of quick or deep overrides the size rules. A tier that
+ * was throttled recently is skipped for the length of the cooldown, and a
+ * throttled call falls back to the nearest tier with a different model.
+ *
+ * Per-tier calls, throttles, latency, tokens and estimated cost are kept so
+ * the thresholds can be tuned from real traffic.
+ */
+public class ModelRouter {
+
+    public enum Tier { FAST, STANDARD, PREMIUM }
+
+    // Inputs where a cheap model is as good as an expensive one
+    private static final Set<String> SIMPLE_LANGUAGES = Set.of(
+            "json", "yaml", "yml", "xml", "html", "css", "markdown", "md", "text", "txt",
+            "properties", "toml", "ini", "csv");
+
+    // Code that hardcodes secrets or calls crypto, execution, deserialization or injection sinks.
+    // Matches APIs and assignments rather than words, so "password" in a form label or
+    // "encrypted" in a variable name does not promote ordinary code
+    private static final Pattern SECURITY_SENSITIVE = Pattern.compile(
+            "(?i:(?:password|passwd|secret(?!ary)|api[_-]?key|access[_-]?key|private[_-]?key|auth[_-]?token)\\w*[\"']?"
+                    + "\\s*[:=]\\s*[\"'][^\"'\\n]+[\"'])"
+                    + "|-----BEGIN [A-Z ]*PRIVATE KEY-----"
+                    + "|\\bCipher\\.getInstance|\\bMessageDigest\\.getInstance|\\bSecretKeySpec\\b|\\bcreateCipheriv\\b"
+                    + "|\\bhashlib\\.|\\bJwts\\.parser|\\bjwt\\.decode\\s*\\("
+                    + "|(?<![.\\w])(?:exec|eval)\\s*\\(|\\bRuntime\\.getRuntime\\(\\)\\.exec|\\bProcessBuilder\\b"
+                    + "|\\bsubprocess\\.|\\bos\\.system\\s*\\(|\\bchild_process\\b"
+                    + "|\\bObjectInputStream\\b|\\bpickle\\.loads?\\s*\\(|\\bunserialize\\s*\\(|\\byaml\\.load\\s*\\("
+                    + "|\\bcreateStatement\\s*\\("
+                    + "|\\b(?:executeQuery|executeUpdate|execute|rawQuery|createQuery)\\s*\\(\\s*\"[^\"]*\"\\s*\\+"
+                    + "|\\.innerHTML\\s*=|dangerouslySetInnerHTML");
+
+    // On-demand list prices in USD per 1K input/output tokens (us-east-1), for
+    // comparing tiers; actual billing comes from AWS
+    private static final Map<String, double[]> PRICES = Map.of(
+            "nova-micro", new double[]{0.000035, 0.00014},
+            "nova-lite", new double[]{0.00006, 0.00024},
+            "nova-pro", new double[]{0.0008, 0.0032},
+            "nova-premier", new double[]{0.0025, 0.0125});
+
+    private final Map<Tier, String> models;
+    private final int smallChars;
+    private final int largeChars;
+    private final long throttleCooldownMs;
+    private final Map<Tier, Long> throttledUntil = new ConcurrentHashMap<>();
+    private final Map<Tier, TierStats> stats = new EnumMap<>(Tier.class);
+
+    public ModelRouter(String fastModel, String standardModel, String premiumModel,
+                       int smallChars, int largeChars, long throttleCooldownMs) {
+        this.models = new EnumMap<>(Tier.class);
+        this.models.put(Tier.FAST, fastModel);
+        this.models.put(Tier.STANDARD, standardModel);
+        this.models.put(Tier.PREMIUM, premiumModel);
+        this.smallChars = smallChars;
+        this.largeChars = largeChars;
+        this.throttleCooldownMs = throttleCooldownMs;
+        for (Tier tier : Tier.values()) {
+            stats.put(tier, new TierStats());
+        }
+    }
+
+    /**
+     * Every tier on one model, for callers that do not route
+     */
+    public static ModelRouter single(String modelId) {
+        return new ModelRouter(modelId, modelId, modelId, 0, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Tier for an analysis of the given code
+     *
+     * @param depth quick, standard or deep; null or unknown means standard
+     */
+    public Route route(String code, String language, String depth) {
+        Tier tier;
+        String reason;
+        String requested = depth != null ? depth.toLowerCase(Locale.ROOT) : "standard";
+        if ("deep".equals(requested)) {
+            tier = Tier.PREMIUM;
+            reason = "depth=deep";
+        } else if ("quick".equals(requested)) {
+            tier = Tier.FAST;
+            reason = "depth=quick";
+        } else if (code.length() >= largeChars) {
+            tier = Tier.PREMIUM;
+            reason = "large input";
+        } else if (SECURITY_SENSITIVE.matcher(code).find()) {
+            tier = Tier.PREMIUM;
+            reason = "security-sensitive";
+        } else if (code.length() <= smallChars) {
+            tier = Tier.FAST;
+            reason = "small input";
+        } else if (language != null && SIMPLE_LANGUAGES.contains(language.toLowerCase(Locale.ROOT))) {
+            tier = Tier.FAST;
+            reason = "simple language";
+        } else {
+            tier = Tier.STANDARD;
+            reason = "default";
+        }
+
+        if (isCoolingDown(tier)) {
+            Tier alternative = fallback(tier);
+            if (alternative != tier) {
+                return new Route(alternative, models.get(alternative), reason + ", " + tier + " throttled");
+            }
+        }
+        return new Route(tier, models.get(tier), reason);
+    }
+
+    /**
+     * Nearest tier with a different model that is not cooling down, preferring
+     * the cheaper side; the tier itself when there is none
+     */
+    public Tier fallback(Tier tier) {
+        for (Tier candidate : fallbackOrder(tier)) {
+            if (!models.get(candidate).equals(models.get(tier)) && !isCoolingDown(candidate)) {
+                return candidate;
+            }
+        }
+        return tier;
+    }
+
+    public String modelFor(Tier tier) {
+        return models.get(tier);
+    }
+
+    public void recordThrottle(Tier tier) {
+        stats.get(tier).recordThrottle();
+        if (throttleCooldownMs > 0) {
+            throttledUntil.put(tier, System.currentTimeMillis() + throttleCooldownMs);
+        }
+    }
+
+    public void recordFailure(Tier tier) {
+        stats.get(tier).recordFailure();
+    }
+
+    /**
+     * Record a successful call with its Nova usage block
+     */
+    public void recordCall(Tier tier, long latencyMs, Map<String, Object> usage) {
+        long inputTokens = count(usage, "inputTokens") + count(usage, "cacheReadInputTokenCount")
+                + count(usage, "cacheWriteInputTokenCount");
+        long outputTokens = count(usage, "outputTokens");
+        double[] price = priceFor(models.get(tier));
+        double cost = (inputTokens * price[0] + outputTokens * price[1]) / 1000.0;
+        stats.get(tier).recordCall(latencyMs, inputTokens, outputTokens, cost);
+    }
+
+    /**
+     * Per-tier counters, keyed by tier name
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Tier tier : Tier.values()) {
+            Map<String, Object> tierStats = stats.get(tier).toMap();
+            tierStats.put("modelId", models.get(tier));
+            result.put(tier.name(), tierStats);
+        }
+        return result;
+    }
+
+    public TierStats getTierStats(Tier tier) {
+        return stats.get(tier);
+    }
+
+    private boolean isCoolingDown(Tier tier) {
+        Long until = throttledUntil.get(tier);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    private static List<Tier> fallbackOrder(Tier tier) {
+        return switch (tier) {
+            case PREMIUM -> List.of(Tier.STANDARD, Tier.FAST);
+            case STANDARD -> List.of(Tier.FAST, Tier.PREMIUM);
+            case FAST -> List.of(Tier.STANDARD, Tier.PREMIUM);
+        };
+    }
+
+    private static double[] priceFor(String modelId) {
+        for (Map.Entry<String, double[]> entry : PRICES.entrySet()) {
+            if (modelId != null && modelId.contains(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return new double[]{0, 0};
+    }
+
+    private static long count(Map<String, Object> usage, String key) {
+        Object value = usage != null ? usage.get(key) : null;
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * Routing decision for one analysis
+     */
+    public static class Route {
+        private final Tier tier;
+        private final String modelId;
+        private final String reason;
+
+        Route(Tier tier, String modelId, String reason) {
+            this.tier = tier;
+            this.modelId = modelId;
+            this.reason = reason;
+        }
+
+        public Tier getTier() { return tier; }
+        public String getModelId() { return modelId; }
+        public String getReason() { return reason; }
+    }
+
+    /**
+     * Running totals for one tier
+     */
+    public static class TierStats {
+        private long calls;
+        private long throttles;
+        private long failures;
+        private long totalLatencyMs;
+        private long maxLatencyMs;
+        private long inputTokens;
+        private long outputTokens;
+        private double estimatedCostUsd;
+
+        synchronized void recordCall(long latencyMs, long input, long output, double cost) {
+            calls++;
+            totalLatencyMs += latencyMs;
+            maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+            inputTokens += input;
+            outputTokens += output;
+            estimatedCostUsd += cost;
+        }
+
+        synchronized void recordThrottle() {
+            throttles++;
+        }
+
+        synchronized void recordFailure() {
+            failures++;
+        }
+
+        public synchronized long getCalls() { return calls; }
+        public synchronized long getThrottles() { return throttles; }
+        public synchronized double getEstimatedCostUsd() { return estimatedCostUsd; }
+
+        public synchronized double getAverageLatencyMs() {
+            return calls > 0 ? (double) totalLatencyMs / calls : 0;
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("calls", calls);
+            map.put("throttles", throttles);
+            map.put("failures", failures);
+            map.put("avgLatencyMs", Math.round(getAverageLatencyMs()));
+            map.put("maxLatencyMs", maxLatencyMs);
+            map.put("inputTokens", inputTokens);
+            map.put("outputTokens", outputTokens);
+            map.put("estimatedCostUsd", Math.round(estimatedCostUsd * 10000) / 10000.0);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * maxTokens for one review, sized to the output it is expected to produce.
+ *
+ * A review is a fixed envelope (summary, scores, security and performance
+ * blocks) plus one entry per issue, so the expected output is the envelope
+ * plus the input size times the issue density seen so far for the language,
+ * times the tokens an issue has taken so far. Both rates are exponentially
+ * weighted moving averages over completed reviews, so the budget follows
+ * the models and code actually seen. A review that still hits the budget is
+ * continued by the engine, which makes undershooting cheap; overshooting
+ * only reserves quota that is never used.
+ */
+public class OutputTokenBudget {
+
+    // Envelope without issues, and the floor for any review
+    static final int BASE_TOKENS = 600;
+    // Starting points until a language has history
+    private static final double INITIAL_ISSUES_PER_1K_CHARS = 0.5;
+    private static final double INITIAL_TOKENS_PER_ISSUE = 120;
+    private static final double ALPHA = 0.2;
+    // Slack over the expectation, so an average review fits in one call
+    private static final double HEADROOM = 1.5;
+
+    private final int maxTokens;
+    private final Map<String, Double> issuesPer1kChars = new ConcurrentHashMap<>();
+    private volatile double tokensPerIssue = INITIAL_TOKENS_PER_ISSUE;
+
+    /**
+     * @param maxTokens the model's output limit, which no budget exceeds
+     */
+    public OutputTokenBudget(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Budget for reviewing the given amount of code
+     */
+    public int budgetFor(String language, int inputChars) {
+        double expectedIssues = density(language) * inputChars / 1000.0;
+        long budget = BASE_TOKENS + Math.round(expectedIssues * tokensPerIssue * HEADROOM);
+        return (int) Math.min(maxTokens, Math.max(BASE_TOKENS, budget));
+    }
+
+    /**
+     * Budget for continuing a review that hit the given budget
+     */
+    public int continuationBudget(int previousBudget) {
+        return Math.min(maxTokens, previousBudget * 2);
+    }
+
+    /**
+     * Learn from a review that completed
+     *
+     * @param outputTokens output tokens of every call the review took
+     */
+    public void record(String language, int inputChars, int issues, long outputTokens) {
+        if (inputChars <= 0) {
+            return;
+        }
+        double density = issues * 1000.0 / inputChars;
+        issuesPer1kChars.merge(key(language), density, (previous, observed) -> previous + ALPHA * (observed - previous));
+        if (issues > 0 && outputTokens > BASE_TOKENS) {
+            double observed = (double) (outputTokens - BASE_TOKENS) / issues;
+            synchronized (this) {
+                tokensPerIssue += ALPHA * (observed - tokensPerIssue);
+            }
+        }
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * Current rates, for logs and metrics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tokensPerIssue", Math.round(tokensPerIssue));
+        Map<String, Object> densities = new LinkedHashMap<>();
+        issuesPer1kChars.forEach((language, density) -> densities.put(language, Math.round(density * 100) / 100.0));
+        stats.put("issuesPer1kChars", densities);
+        return stats;
+    }
+
+    private double density(String language) {
+        return issuesPer1kChars.getOrDefault(key(language), INITIAL_ISSUES_PER_1K_CHARS);
+    }
+
+    private static String key(String language) {
+        return language != null ? language.toLowerCase(Locale.ROOT) : "unknown";
+    }
+}
@@ -0,0 +1,133 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prompt text with ${name} placeholders, split into literal and placeholder
+ * parts once at class-load time.
+ *
+ * Filling the template does not concatenate anything: {@link #reader} walks
+ * the literals and the supplied values in order, so a large code segment is
+ * read straight from the caller's string into the JSON encoder.
+ */
+public final class PromptTemplate {
+
+    private final List<String> literals;
+    private final List<String> placeholders;
+
+    private PromptTemplate(List<String> literals, List<String> placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    public static PromptTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int start = template.indexOf("${", position);
+            if (start < 0) {
+                break;
+            }
+            int end = template.indexOf('}', start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated placeholder at " + start);
+            }
+            literals.add(template.substring(position, start));
+            placeholders.add(template.substring(start + 2, end));
+            position = end + 1;
+        }
+        literals.add(template.substring(position));
+        return new PromptTemplate(Collections.unmodifiableList(literals), Collections.unmodifiableList(placeholders));
+    }
+
+    /**
+     * Length of the filled-in prompt in chars, without building it
+     */
+    public int length(Map<String, ? extends CharSequence> values) {
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        for (String placeholder : placeholders) {
+            length += value(values, placeholder).length();
+        }
+        return length;
+    }
+
+    /**
+     * Streams the filled-in prompt
+     */
+    public Reader reader(Map<String, ? extends CharSequence> values) {
+        List<CharSequence> parts = new ArrayList<>(literals.size() + placeholders.size());
+        for (int i = 0; i < placeholders.size(); i++) {
+            parts.add(literals.get(i));
+            parts.add(value(values, placeholders.get(i)));
+        }
+        parts.add(literals.get(literals.size() - 1));
+        return new PartsReader(parts);
+    }
+
+    /**
+     * The filled-in prompt as one string, for logging and tests
+     */
+    public String render(Map<String, ? extends CharSequence> values) {
+        StringBuilder builder = new StringBuilder(length(values));
+        for (int i = 0; i < placeholders.size(); i++) {
+            builder.append(literals.get(i)).append(value(values, placeholders.get(i)));
+        }
+        return builder.append(literals.get(literals.size() - 1)).toString();
+    }
+
+    private static CharSequence value(Map<String, ? extends CharSequence> values, String placeholder) {
+        CharSequence value = values.get(placeholder);
+        if (value == null) {
+            throw new IllegalArgumentException("No value for placeholder " + placeholder);
+        }
+        return value;
+    }
+
+    private static final class PartsReader extends Reader {
+        private final List<CharSequence> parts;
+        private int part;
+        private int offset;
+
+        PartsReader(List<CharSequence> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < len && part < parts.size()) {
+                CharSequence current = parts.get(part);
+                int count = Math.min(len - read, current.length() - offset);
+                if (current instanceof String) {
+                    ((String) current).getChars(offset, offset + count, buffer, off + read);
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        buffer[off + read + i] = current.charAt(offset + i);
+                    }
+                }
+                read += count;
+                offset += count;
+                if (offset == current.length()) {
+                    part++;
+                    offset = 0;
+                }
+            }
+            return read == 0 ? -1 : read;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
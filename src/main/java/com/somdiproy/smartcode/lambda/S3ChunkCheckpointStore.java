@@ -0,0 +1,74 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunk checkpoints as JSON objects under checkpoints/{analysisId}/ in the
+ * analysis bucket. S3 rather than DynamoDB because a chunk result can exceed
+ * the 400KB item limit.
+ */
+public class S3ChunkCheckpointStore implements ChunkCheckpointStore {
+
+    private static final String PREFIX = "checkpoints/";
+
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public S3ChunkCheckpointStore(AmazonS3 s3Client, String bucketName) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> load(String analysisId, int chunkIndex, String chunkHash) throws Exception {
+        try {
+            String json = s3Client.getObjectAsString(bucketName, key(analysisId, chunkIndex, chunkHash));
+            return objectMapper.readValue(json, Map.class);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void save(String analysisId, int chunkIndex, String chunkHash, Map<String, Object> result) throws Exception {
+        s3Client.putObject(bucketName, key(analysisId, chunkIndex, chunkHash), objectMapper.writeValueAsString(result));
+    }
+
+    @Override
+    public void clear(String analysisId) {
+        ListObjectsV2Request listRequest = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(PREFIX + analysisId + "/");
+        ListObjectsV2Result listing;
+        do {
+            listing = s3Client.listObjectsV2(listRequest);
+            List<DeleteObjectsRequest.KeyVersion> keys = new ArrayList<>();
+            for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                keys.add(new DeleteObjectsRequest.KeyVersion(summary.getKey()));
+            }
+            if (!keys.isEmpty()) {
+                s3Client.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys));
+            }
+            listRequest.setContinuationToken(listing.getNextContinuationToken());
+        } while (listing.isTruncated());
+    }
+
+    private String key(String analysisId, int chunkIndex, String chunkHash) {
+        return PREFIX + analysisId + "/chunk-" + chunkIndex + "-" + chunkHash + ".json";
+    }
+}
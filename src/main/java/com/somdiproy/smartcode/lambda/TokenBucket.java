@@ -0,0 +1,66 @@
+package com.somdiproy.smartcode.lambda;
+
+/**
+ * Balance of one token bucket and the arithmetic every
+ * {@link TokenBucketStore} applies to it. Capacity is one minute of tokens;
+ * the balance refills continuously from the time it was last brought up
+ * to date.
+ */
+final class TokenBucket {
+
+    // Wait reported for a bucket with no refill, which never covers anything
+    static final long NO_REFILL_WAIT_MS = 60000;
+
+    private double balance;
+    private long refilledAt;
+
+    TokenBucket(double balance, long refilledAt) {
+        this.balance = balance;
+        this.refilledAt = refilledAt;
+    }
+
+    static TokenBucket full(long limitPerMinute, long now) {
+        return new TokenBucket(limitPerMinute, now);
+    }
+
+    /**
+     * Same contract as {@link TokenBucketStore#reserve}
+     */
+    long reserve(long permits, long limitPerMinute, long maxWaitMs, long now) {
+        if (limitPerMinute <= 0) {
+            return -NO_REFILL_WAIT_MS;
+        }
+        refill(limitPerMinute, now);
+        long waitMs = balance >= permits ? 0 : (long) Math.ceil((permits - balance) * 60000.0 / limitPerMinute);
+        if (waitMs > maxWaitMs) {
+            return -waitMs;
+        }
+        balance -= permits;
+        return waitMs;
+    }
+
+    void release(long permits, long limitPerMinute, long now) {
+        refill(limitPerMinute, now);
+        balance = Math.min(limitPerMinute, balance + permits);
+    }
+
+    long available(long limitPerMinute, long now) {
+        refill(limitPerMinute, now);
+        return (long) Math.floor(balance);
+    }
+
+    double getBalance() {
+        return balance;
+    }
+
+    long getRefilledAt() {
+        return refilledAt;
+    }
+
+    private void refill(long limitPerMinute, long now) {
+        if (now > refilledAt) {
+            balance = Math.min(limitPerMinute, balance + (now - refilledAt) * (limitPerMinute / 60000.0));
+            refilledAt = now;
+        }
+    }
+}
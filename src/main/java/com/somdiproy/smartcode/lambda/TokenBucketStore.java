@@ -0,0 +1,48 @@
+package com.somdiproy.smartcode.lambda;
+
+/**
+ * Shared token buckets for Bedrock quota and cluster-wide limits.
+ *
+ * Every worker that calls Bedrock (Lambda instances, Step Functions chunk
+ * analyzers, local workers) takes tokens from the same named buckets
+ * before invoking the model, so together they stay within the account
+ * quota without fixed staggers. A bucket holds at most one minute of
+ * tokens and refills continuously at its per-minute limit.
+ *
+ * A reservation may take a bucket below zero: the debt is what later
+ * callers wait behind, so callers queued on an empty bucket get start
+ * times one after another instead of all retrying at the same moment.
+ */
+public interface TokenBucketStore {
+
+    /**
+     * Take permits if the bucket covers them within maxWaitMs.
+     *
+     * @return milliseconds the caller must wait before using the permits (0
+     *         when they are there now); a negative value means nothing was
+     *         taken and is minus the wait that would have been needed
+     */
+    long reserve(String bucket, long permits, long limitPerMinute, long maxWaitMs);
+
+    /**
+     * Take permits only if the bucket holds them now.
+     *
+     * @return 0 if the permits were granted, otherwise milliseconds until
+     *         the bucket would hold them
+     */
+    default long tryAcquire(String bucket, long permits, long limitPerMinute) {
+        long waitMs = reserve(bucket, permits, limitPerMinute, 0);
+        return waitMs >= 0 ? 0 : -waitMs;
+    }
+
+    /**
+     * Return permits taken by a call that did not go ahead; a bucket never
+     * fills past its capacity
+     */
+    void release(String bucket, long permits, long limitPerMinute);
+
+    /**
+     * Tokens in the bucket now; negative while it is in debt
+     */
+    long available(String bucket, long limitPerMinute);
+}
@@ -0,0 +1,80 @@
+package com.somdiproy.smartcode.lambda;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bedrock token counts summed over the calls of one analysis, including how
+ * much input was served from or written to the prompt cache, how much
+ * output was reserved through maxTokens, and how often a response cut off
+ * at maxTokens was continued or salvaged.
+ */
+public class TokenUsage {
+
+    private long inputTokens;
+    private long outputTokens;
+    private long outputTokensReserved;
+    private long cacheReadInputTokens;
+    private long cacheWriteInputTokens;
+    private int calls;
+    private int continuations;
+    private int salvagedResponses;
+
+    /**
+     * Add the usage block of a Nova InvokeModel response
+     */
+    public synchronized void add(Map<String, Object> usage) {
+        calls++;
+        if (usage == null) {
+            return;
+        }
+        inputTokens += count(usage.get("inputTokens"));
+        outputTokens += count(usage.get("outputTokens"));
+        cacheReadInputTokens += count(usage.get("cacheReadInputTokenCount"));
+        cacheWriteInputTokens += count(usage.get("cacheWriteInputTokenCount"));
+    }
+
+    /**
+     * Add the maxTokens a successful call reserved
+     */
+    public synchronized void recordOutputBudget(int maxTokens) {
+        outputTokensReserved += maxTokens;
+    }
+
+    public synchronized void recordContinuation() {
+        continuations++;
+    }
+
+    public synchronized void recordSalvage() {
+        salvagedResponses++;
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("calls", calls);
+        map.put("inputTokens", inputTokens);
+        map.put("outputTokens", outputTokens);
+        map.put("outputTokensReserved", outputTokensReserved);
+        map.put("cacheReadInputTokens", cacheReadInputTokens);
+        map.put("cacheWriteInputTokens", cacheWriteInputTokens);
+        map.put("continuations", continuations);
+        map.put("salvagedResponses", salvagedResponses);
+        return map;
+    }
+
+    public synchronized long getOutputTokens() {
+        return outputTokens;
+    }
+
+    public synchronized long getCacheReadInputTokens() {
+        return cacheReadInputTokens;
+    }
+
+    public synchronized long getCacheWriteInputTokens() {
+        return cacheWriteInputTokens;
+    }
+
+    private static long count(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
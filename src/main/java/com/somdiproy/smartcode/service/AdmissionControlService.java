@@ -0,0 +1,212 @@
+package com.somdiproy.smartcode.service;
+
+import com.somdiproy.smartcode.lambda.TokenBucketStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-weighted admission control for analysis submissions.
+ *
+ * Each submission is charged its estimated Bedrock tokens (input, prompt
+ * overhead and expected output per chunk) against a global tokens-per-minute
+ * budget and a smaller per-session budget. Work that fits now is admitted;
+ * work that fits within the maximum delay is admitted with a start delay the
+ * queue honours; anything later is rejected up front with an ETA, without
+ * charging either budget.
+ *
+ * Both budgets live in the shared {@link TokenBucketStore} used by the API
+ * rate limiters, so with the DynamoDB backend every instance admits against
+ * the same cluster-wide budget.
+ *
+ * @author Somdip Roy
+ */
+@Service
+public class AdmissionControlService {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlService.class);
+
+    static final String GLOBAL_BUCKET = "admission:global";
+    private static final String SESSION_BUCKET_PREFIX = "admission:session:";
+
+    @Value("${analysis.admission.tokens-per-minute:200000}")
+    private long globalTokensPerMinute;
+
+    @Value("${analysis.admission.session-tokens-per-minute:60000}")
+    private long sessionTokensPerMinute;
+
+    @Value("${analysis.admission.max-delay-seconds:300}")
+    private long maxDelaySeconds;
+
+    @Value("${analysis.admission.chars-per-token:4}")
+    private double charsPerToken;
+
+    @Value("${analysis.admission.zip-expansion-factor:3.0}")
+    private double zipExpansionFactor;
+
+    @Value("${analysis.admission.prompt-overhead-tokens:800}")
+    private long promptOverheadTokens;
+
+    @Value("${analysis.admission.output-tokens-per-chunk:4000}")
+    private long outputTokensPerChunk;
+
+    @Value("${analysis.admission.chunk-chars:50000}")
+    private long chunkChars;
+
+    private final MeterRegistry meterRegistry;
+    private final TokenBucketStore bucketStore;
+
+    public AdmissionControlService(MeterRegistry meterRegistry, TokenBucketStore bucketStore) {
+        this.meterRegistry = meterRegistry;
+        this.bucketStore = bucketStore;
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("analysis.admission.tokens.available", this, AdmissionControlService::getGlobalTokensAvailable)
+                .description("Tokens left in the global admission budget")
+                .register(meterRegistry);
+        logger.info("Admission control: {} tokens/min global, {} tokens/min per session, max delay {}s",
+                globalTokensPerMinute, sessionTokensPerMinute, maxDelaySeconds);
+    }
+
+    /**
+     * Estimated tokens for pasted code of the given length
+     */
+    public long estimateCodeTokens(long codeChars) {
+        long chunks = Math.max(1, (codeChars + chunkChars - 1) / chunkChars);
+        return (long) Math.ceil(codeChars / charsPerToken) + chunks * (promptOverheadTokens + outputTokensPerChunk);
+    }
+
+    /**
+     * Estimated tokens for a ZIP upload; the archive is assumed to expand by
+     * the configured factor once extracted
+     */
+    public long estimateZipTokens(long zipBytes) {
+        return estimateCodeTokens((long) (zipBytes * zipExpansionFactor));
+    }
+
+    /**
+     * Charge a submission against the global and session budgets
+     */
+    public Admission admit(String sessionToken, long tokens) {
+        long maxWaitMs = TimeUnit.SECONDS.toMillis(maxDelaySeconds);
+        String sessionBucket = sessionBucket(sessionToken);
+        long globalWait;
+        long sessionWait;
+        try {
+            globalWait = bucketStore.reserve(GLOBAL_BUCKET, tokens, globalTokensPerMinute, maxWaitMs);
+            if (globalWait < 0) {
+                return reject(sessionToken, tokens, -globalWait);
+            }
+            sessionWait = bucketStore.reserve(sessionBucket, tokens, sessionTokensPerMinute, maxWaitMs);
+            if (sessionWait < 0) {
+                bucketStore.release(GLOBAL_BUCKET, tokens, globalTokensPerMinute);
+                return reject(sessionToken, tokens, -sessionWait);
+            }
+        } catch (Exception e) {
+            // Admission must not take submissions down with the store; the Bedrock quota still applies
+            logger.warn("Admission budget store unavailable, admitting without a charge: {}", e.getMessage());
+            meterRegistry.counter("analysis.admission", "outcome", "unchecked").increment();
+            return new Admission(Outcome.ADMITTED, 0, 0, sessionToken);
+        }
+
+        long waitMs = Math.max(globalWait, sessionWait);
+        Outcome outcome = waitMs > 0 ? Outcome.DELAYED : Outcome.ADMITTED;
+        meterRegistry.counter("analysis.admission", "outcome", outcome.name().toLowerCase()).increment();
+        meterRegistry.counter("analysis.admission.tokens").increment(tokens);
+        logger.debug("Admitted ~{} tokens for session {} with {}ms delay", tokens, maskToken(sessionToken), waitMs);
+        return new Admission(outcome, tokens, waitMs, sessionToken);
+    }
+
+    /**
+     * Return the tokens of an admitted submission that failed to start
+     */
+    public void release(Admission admission) {
+        if (admission == null || admission.getOutcome() == Outcome.REJECTED || admission.getTokens() == 0) {
+            return;
+        }
+        try {
+            bucketStore.release(GLOBAL_BUCKET, admission.getTokens(), globalTokensPerMinute);
+            bucketStore.release(sessionBucket(admission.sessionToken), admission.getTokens(), sessionTokensPerMinute);
+        } catch (Exception e) {
+            logger.debug("Could not return {} admission tokens: {}", admission.getTokens(), e.getMessage());
+        }
+    }
+
+    public long getGlobalTokensAvailable() {
+        try {
+            return bucketStore.available(GLOBAL_BUCKET, globalTokensPerMinute);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    public long getGlobalTokensPerMinute() {
+        return globalTokensPerMinute;
+    }
+
+    private Admission reject(String sessionToken, long tokens, long waitMs) {
+        meterRegistry.counter("analysis.admission", "outcome", "rejected").increment();
+        logger.info("Rejected submission of ~{} tokens for session {}: capacity in {}ms",
+                tokens, maskToken(sessionToken), waitMs);
+        return new Admission(Outcome.REJECTED, tokens, waitMs, sessionToken);
+    }
+
+    /**
+     * Session bucket key; the token itself is not written to the shared store
+     */
+    private static String sessionBucket(String sessionToken) {
+        String token = sessionToken != null ? sessionToken : "";
+        return SESSION_BUCKET_PREFIX + UUID.nameUUIDFromBytes(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String maskToken(String token) {
+        return token != null && token.length() > 8 ? token.substring(0, 8) + "..." : token;
+    }
+
+    public enum Outcome {
+        ADMITTED,
+        DELAYED,
+        REJECTED
+    }
+
+    /**
+     * Admission decision for one submission
+     */
+    public static class Admission {
+        private final Outcome outcome;
+        private final long tokens;
+        private final long waitMs;
+        private final String sessionToken;
+
+        Admission(Outcome outcome, long tokens, long waitMs, String sessionToken) {
+            this.outcome = outcome;
+            this.tokens = tokens;
+            this.waitMs = waitMs;
+            this.sessionToken = sessionToken;
+        }
+
+        public Outcome getOutcome() { return outcome; }
+        public long getTokens() { return tokens; }
+        public long getWaitMs() { return waitMs; }
+
+        public boolean isRejected() {
+            return outcome == Outcome.REJECTED;
+        }
+
+        /**
+         * Whole seconds to wait, rounded up
+         */
+        public int getWaitSeconds() {
+            return (int) TimeUnit.MILLISECONDS.toSeconds(waitMs + 999);
+        }
+    }
+}
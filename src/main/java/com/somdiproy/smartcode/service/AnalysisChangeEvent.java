@@ -0,0 +1,29 @@
+package com.somdiproy.smartcode.service;
+
+/**
+ * A change to an analysis record, as observed on the change feed.
+ * Carries the new image so subscribers never need to re-read DynamoDB.
+ *
+ * @author Somdip Roy
+ */
+public class AnalysisChangeEvent {
+    private final String analysisId;
+    private final DynamoDBAnalysisStorage.AnalysisRecord record;
+    private final long observedAt;
+
+    public AnalysisChangeEvent(String analysisId, DynamoDBAnalysisStorage.AnalysisRecord record) {
+        this.analysisId = analysisId;
+        this.record = record;
+        this.observedAt = System.currentTimeMillis();
+    }
+
+    public String getAnalysisId() { return analysisId; }
+    public DynamoDBAnalysisStorage.AnalysisRecord getRecord() { return record; }
+    public String getStatus() { return record != null ? record.getStatus() : null; }
+    public long getObservedAt() { return observedAt; }
+
+    public boolean isTerminal() {
+        String status = getStatus();
+        return "COMPLETED".equals(status) || "FAILED".equals(status);
+    }
+}
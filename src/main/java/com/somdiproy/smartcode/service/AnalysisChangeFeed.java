@@ -0,0 +1,19 @@
+package com.somdiproy.smartcode.service;
+
+/**
+ * Source of analysis record changes, published to the {@link AnalysisEventBus}.
+ *
+ * Selected with analysis.change-feed.type: "dynamodb-streams" tails the
+ * table's stream, "local" is an in-process stand-in fed by this app's own
+ * writes, and "none" (default) leaves consumers on periodic reads.
+ *
+ * @author Somdip Roy
+ */
+public interface AnalysisChangeFeed {
+
+    /**
+     * Whether changes are currently being delivered. Consumers fall back to
+     * periodic reads when this is false.
+     */
+    boolean isActive();
+}
@@ -0,0 +1,89 @@
+package com.somdiproy.smartcode.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-process pub/sub for analysis changes, keyed by analysisId.
+ *
+ * The change feed publishes here; SSE streams, long-poll requests and the
+ * polling caches subscribe. Listeners run on the publishing thread and must
+ * not block.
+ *
+ * @author Somdip Roy
+ */
+@Service
+public class AnalysisEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisEventBus.class);
+
+    private final Map<String, List<Consumer<AnalysisChangeEvent>>> listeners = new ConcurrentHashMap<>();
+    private final List<Consumer<AnalysisChangeEvent>> globalListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listen for changes to one analysis. Run the returned handle to unsubscribe.
+     */
+    public Runnable subscribe(String analysisId, Consumer<AnalysisChangeEvent> listener) {
+        listeners.computeIfAbsent(analysisId, id -> new CopyOnWriteArrayList<>()).add(listener);
+        return () -> unsubscribe(analysisId, listener);
+    }
+
+    /**
+     * Listen for changes to every analysis
+     */
+    public void subscribeAll(Consumer<AnalysisChangeEvent> listener) {
+        globalListeners.add(listener);
+    }
+
+    /**
+     * Complete with the next change to an analysis, or with null after the timeout
+     */
+    public CompletableFuture<AnalysisChangeEvent> awaitChange(String analysisId, long timeoutMs) {
+        CompletableFuture<AnalysisChangeEvent> future = new CompletableFuture<>();
+        Runnable unsubscribe = subscribe(analysisId, future::complete);
+        // Cancelling the returned future also unsubscribes
+        future.whenComplete((event, error) -> unsubscribe.run());
+        future.completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    public void publish(AnalysisChangeEvent event) {
+        for (Consumer<AnalysisChangeEvent> listener : globalListeners) {
+            deliver(listener, event);
+        }
+
+        List<Consumer<AnalysisChangeEvent>> subscribers = listeners.get(event.getAnalysisId());
+        if (subscribers != null) {
+            for (Consumer<AnalysisChangeEvent> listener : subscribers) {
+                deliver(listener, event);
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return listeners.values().stream().mapToInt(List::size).sum();
+    }
+
+    private void unsubscribe(String analysisId, Consumer<AnalysisChangeEvent> listener) {
+        listeners.computeIfPresent(analysisId, (id, subscribers) -> {
+            subscribers.remove(listener);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private void deliver(Consumer<AnalysisChangeEvent> listener, AnalysisChangeEvent event) {
+        try {
+            listener.accept(event);
+        } catch (Exception e) {
+            logger.warn("Analysis change listener failed for {}: {}", event.getAnalysisId(), e.getMessage());
+        }
+    }
+}
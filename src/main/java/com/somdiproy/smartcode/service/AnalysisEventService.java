@@ -0,0 +1,413 @@
+package com.somdiproy.smartcode.service;
+
+import com.somdiproy.smartcode.dto.AnalysisResponse;
+import com.somdiproy.smartcode.dto.AnalysisStatus;
+import com.somdiproy.smartcode.dto.Issue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Server-Sent Events for analysis progress
+ *
+ * Keeps one stream per analysis shared by all of its subscribers. Each stream
+ * records a bounded history of events so a reconnecting EventSource can resume
+ * from its Last-Event-ID. Event ids are derived from the analysis record's
+ * update time, so every instance numbers the same state alike and a client
+ * that reconnects elsewhere, or after its stream was dropped, is not sent
+ * what it has already seen. With a change feed active, streams are
+ * driven by its events; otherwise they are refreshed only while someone is
+ * listening, through the coalesced polling path, so the backend cost is one
+ * read per interval per analysis, not per client.
+ *
+ * Event names: "status" (status/progress/message), "issues" (newly found
+ * issues), "complete" (final AnalysisResponse, for COMPLETED and FAILED).
+ *
+ * @author Somdip Roy
+ */
+@Service
+public class AnalysisEventService {
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisEventService.class);
+
+    public static final String EVENT_STATUS = "status";
+    public static final String EVENT_ISSUES = "issues";
+    public static final String EVENT_COMPLETE = "complete";
+
+    // Event ids per millisecond of record update time (issues, status, complete)
+    private static final long EVENTS_PER_STATE = 10;
+
+    @Value("${analysis.events.emitter-timeout-ms:600000}")
+    private long emitterTimeoutMs;
+
+    @Value("${analysis.events.history-size:200}")
+    private int historySize;
+
+    @Value("${analysis.events.retention-ms:300000}")
+    private long retentionMs;
+
+    @Value("${analysis.events.reconnect-ms:3000}")
+    private long reconnectMs;
+
+    private final CodeAnalysisService codeAnalysisService;
+    private final AnalysisEventBus eventBus;
+    private final ObjectProvider<AnalysisChangeFeed> changeFeedProvider;
+    private final Map<String, AnalysisStream> streams = new ConcurrentHashMap<>();
+
+    public AnalysisEventService(CodeAnalysisService codeAnalysisService, AnalysisEventBus eventBus,
+                                ObjectProvider<AnalysisChangeFeed> changeFeedProvider) {
+        this.codeAnalysisService = codeAnalysisService;
+        this.eventBus = eventBus;
+        this.changeFeedProvider = changeFeedProvider;
+    }
+
+    @PostConstruct
+    public void init() {
+        // Push changes to watched streams as soon as the change feed sees them
+        eventBus.subscribeAll(event -> {
+            if (streams.containsKey(event.getAnalysisId())) {
+                publish(codeAnalysisService.applyChange(event));
+            }
+        });
+    }
+
+    /**
+     * Open an event stream for an analysis, replaying anything after lastEventId
+     */
+    public SseEmitter subscribe(String analysisId, Long lastEventId) {
+        SseEmitter emitter = newEmitter();
+        AnalysisStream stream = streams.computeIfAbsent(analysisId, AnalysisStream::new);
+
+        emitter.onCompletion(() -> stream.removeSubscriber(emitter));
+        emitter.onTimeout(() -> stream.removeSubscriber(emitter));
+        emitter.onError(e -> stream.removeSubscriber(emitter));
+
+        boolean replayed = stream.addSubscriber(emitter, lastEventId);
+        logger.debug("SSE subscriber added for analysis {} (resume from {}, replayed: {})",
+                analysisId, lastEventId, replayed);
+
+        // Fresh stream or a resume point we no longer hold - push the current state now
+        if (!replayed) {
+            refresh(analysisId);
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Refresh every stream that has subscribers and is not finished.
+     * Skipped while a change feed is delivering updates.
+     */
+    @Scheduled(fixedDelayString = "${analysis.events.refresh-interval-ms:2000}")
+    public void refreshActiveStreams() {
+        AnalysisChangeFeed changeFeed = changeFeedProvider.getIfAvailable();
+        if (changeFeed != null && changeFeed.isActive()) {
+            return;
+        }
+        for (AnalysisStream stream : streams.values()) {
+            if (stream.hasSubscribers() && !stream.isFinished()) {
+                refresh(stream.analysisId);
+            }
+        }
+    }
+
+    /**
+     * Keep idle connections open through proxies and load balancers
+     */
+    @Scheduled(fixedDelayString = "${analysis.events.heartbeat-interval-ms:15000}")
+    public void sendHeartbeats() {
+        for (AnalysisStream stream : streams.values()) {
+            stream.heartbeat();
+        }
+    }
+
+    /**
+     * Drop finished streams once reconnecting clients no longer need their history
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void cleanupStreams() {
+        long now = System.currentTimeMillis();
+        streams.values().removeIf(stream -> !stream.hasSubscribers()
+                && now - stream.lastActivity > retentionMs);
+    }
+
+    /**
+     * Apply a new view of the analysis to its stream (no-op if nobody is listening)
+     */
+    public void publish(AnalysisResponse response) {
+        if (response == null || response.getAnalysisId() == null) {
+            return;
+        }
+        AnalysisStream stream = streams.get(response.getAnalysisId());
+        if (stream != null) {
+            stream.apply(response);
+        }
+    }
+
+    public int getActiveSubscriberCount() {
+        return streams.values().stream().mapToInt(AnalysisStream::subscriberCount).sum();
+    }
+
+    /**
+     * Emitter for a new subscriber; overridden in tests to record what is sent
+     */
+    SseEmitter newEmitter() {
+        return new SseEmitter(emitterTimeoutMs);
+    }
+
+    private void refresh(String analysisId) {
+        codeAnalysisService.getAnalysisResultAsync(analysisId)
+                .thenAccept(this::publish)
+                .exceptionally(e -> {
+                    logger.warn("Failed to refresh event stream for analysis {}: {}", analysisId, e.getMessage());
+                    return null;
+                });
+    }
+
+    private static boolean isTerminal(AnalysisStatus status) {
+        return status == AnalysisStatus.COMPLETED || status == AnalysisStatus.FAILED;
+    }
+
+    /**
+     * Responses built without a record behind them ("not found", read errors)
+     * carry no timestamps; they may not hold a moment later
+     */
+    private static boolean isTransient(AnalysisResponse response) {
+        return response.getUpdatedAt() <= 0 && response.getCreatedAt() <= 0;
+    }
+
+    /**
+     * Identity of an issue for streaming; a merge that swaps in a more severe
+     * copy of an issue changes it, so the new copy is sent too
+     */
+    private static String fingerprint(Issue issue) {
+        String title = issue.getTitle() != null ? issue.getTitle().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "") : "";
+        return issue.getFileName() + ":" + issue.getLineNumber() + ":" + title + ":" + issue.getSeverity();
+    }
+
+    /**
+     * Per-analysis stream state. All sends happen under the stream lock, since
+     * an SseEmitter must not be written from two threads at once.
+     */
+    private class AnalysisStream {
+        private final String analysisId;
+        private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+        // Subscribers that resumed past what this stream holds, to the last event id they saw
+        private final Map<SseEmitter, Long> resumePoints = new ConcurrentHashMap<>();
+        private final Deque<StoredEvent> history = new ArrayDeque<>();
+        private final Set<String> issuesSent = new HashSet<>();
+        private long lastEventId;
+        // Newest event id dropped from the history
+        private long evictedEventId;
+        private AnalysisStatus lastStatus;
+        private int lastProgress = -1;
+        private String lastMessage;
+        private boolean finished;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        AnalysisStream(String analysisId) {
+            this.analysisId = analysisId;
+        }
+
+        synchronized boolean addSubscriber(SseEmitter emitter, Long lastEventId) {
+            subscribers.add(emitter);
+            lastActivity = System.currentTimeMillis();
+
+            if (history.isEmpty()) {
+                // The next state pushed is filtered against what the client already has
+                if (lastEventId != null) {
+                    resumePoints.put(emitter, lastEventId);
+                }
+                return false;
+            }
+            if (lastEventId == null || evictedEventId > lastEventId) {
+                // Nothing to resume from; replay the full history
+                lastEventId = 0L;
+            }
+
+            for (StoredEvent event : history) {
+                if (event.id > lastEventId && !send(emitter, event)) {
+                    return true;
+                }
+            }
+            if (finished) {
+                emitter.complete();
+            }
+            return true;
+        }
+
+        /**
+         * The one way a subscriber leaves, from its completion, timeout and
+         * error callbacks or a failed send, so its resume point goes with it
+         */
+        void removeSubscriber(SseEmitter emitter) {
+            subscribers.remove(emitter);
+            resumePoints.remove(emitter);
+            lastActivity = System.currentTimeMillis();
+        }
+
+        boolean hasSubscribers() {
+            return !subscribers.isEmpty();
+        }
+
+        int subscriberCount() {
+            return subscribers.size();
+        }
+
+        synchronized boolean isFinished() {
+            return finished;
+        }
+
+        synchronized void apply(AnalysisResponse response) {
+            if (finished) {
+                return;
+            }
+
+            AnalysisStatus status = response.getStatus() != null ? response.getStatus() : AnalysisStatus.UNKNOWN;
+            long version = Math.max(response.getUpdatedAt(), response.getCreatedAt());
+
+            // Partial issues, only those not yet sent
+            List<Issue> issues = response.getResult() != null ? response.getResult().getIssues() : null;
+            if (issues != null && !isTerminal(status)) {
+                List<Issue> newIssues = new ArrayList<>();
+                for (Issue issue : issues) {
+                    if (issuesSent.add(fingerprint(issue))) {
+                        newIssues.add(issue);
+                    }
+                }
+                if (!newIssues.isEmpty()) {
+                    Map<String, Object> payload = new HashMap<>();
+                    payload.put("analysisId", analysisId);
+                    payload.put("issues", newIssues);
+                    payload.put("total", issues.size());
+                    broadcast(EVENT_ISSUES, payload, version, 0);
+                }
+            }
+
+            if (isTerminal(status) && isTransient(response)) {
+                // Tell current subscribers, but let the next subscriber look again
+                StoredEvent event = new StoredEvent(nextEventId(version, 2), EVENT_COMPLETE, response);
+                for (SseEmitter emitter : subscribers) {
+                    send(emitter, event);
+                    emitter.complete();
+                }
+                subscribers.clear();
+                resumePoints.clear();
+                return;
+            }
+
+            if (isTerminal(status)) {
+                finished = true;
+                broadcast(EVENT_COMPLETE, response, version, 2);
+                for (SseEmitter emitter : subscribers) {
+                    emitter.complete();
+                }
+                subscribers.clear();
+                resumePoints.clear();
+                return;
+            }
+
+            boolean changed = status != lastStatus
+                    || response.getProgressPercentage() != lastProgress
+                    || (response.getMessage() != null && !response.getMessage().equals(lastMessage));
+            if (changed) {
+                lastStatus = status;
+                lastProgress = response.getProgressPercentage();
+                lastMessage = response.getMessage();
+
+                Map<String, Object> payload = new HashMap<>();
+                payload.put("analysisId", analysisId);
+                payload.put("status", status);
+                payload.put("progressPercentage", response.getProgressPercentage());
+                payload.put("message", response.getMessage());
+                broadcast(EVENT_STATUS, payload, version, 1);
+            }
+        }
+
+        synchronized void heartbeat() {
+            for (SseEmitter emitter : subscribers) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    removeSubscriber(emitter);
+                }
+            }
+        }
+
+        /**
+         * @param version update time of the state the event describes
+         * @param slot position of the event among those one state produces
+         */
+        private void broadcast(String name, Object data, long version, int slot) {
+            StoredEvent event = new StoredEvent(nextEventId(version, slot), name, data);
+            history.addLast(event);
+            while (history.size() > historySize) {
+                evictedEventId = history.removeFirst().id;
+            }
+            lastActivity = System.currentTimeMillis();
+
+            for (SseEmitter emitter : subscribers) {
+                Long resumePoint = resumePoints.get(emitter);
+                if (resumePoint == null || event.id > resumePoint) {
+                    // Caught up; ids only grow, so later events need no check
+                    resumePoints.remove(emitter);
+                    send(emitter, event);
+                }
+            }
+        }
+
+        /**
+         * Id from the state's update time, so instances agree on it; kept
+         * increasing within the stream for states without a newer timestamp
+         */
+        private long nextEventId(long version, int slot) {
+            lastEventId = Math.max(version * EVENTS_PER_STATE + slot, lastEventId + 1);
+            return lastEventId;
+        }
+
+        private boolean send(SseEmitter emitter, StoredEvent event) {
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.id))
+                        .name(event.name)
+                        .reconnectTime(reconnectMs)
+                        .data(event.data, MediaType.APPLICATION_JSON));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Dropping SSE subscriber for analysis {}: {}", analysisId, e.getMessage());
+                removeSubscriber(emitter);
+                return false;
+            }
+        }
+    }
+
+    private static class StoredEvent {
+        private final long id;
+        private final String name;
+        private final Object data;
+
+        StoredEvent(long id, String name, Object data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+    }
+}
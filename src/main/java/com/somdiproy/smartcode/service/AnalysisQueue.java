@@ -0,0 +1,42 @@
+package com.somdiproy.smartcode.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Hand-off point between the web tier and the analysis workers.
+ *
+ * analysis.pipeline.mode selects the implementation: "aws" (default) sends
+ * to SQS for the Bedrock Lambda, "local" keeps a durable queue on disk that
+ * an in-process worker pool drains.
+ *
+ * @author Somdip Roy
+ */
+public interface AnalysisQueue {
+
+    /**
+     * Queue an analysis and wait until it is accepted; returns the message ID
+     */
+    String submitAnalysisRequest(String analysisId, String code, String language, Map<String, Object> metadata);
+
+    /**
+     * Queue an analysis; completes with the message ID once it is accepted
+     */
+    CompletableFuture<String> submitAnalysisRequestAsync(String analysisId, String code, String language,
+                                                         Map<String, Object> metadata);
+
+    default String submitAnalysisRequest(String analysisId, String code, String language) {
+        return submitAnalysisRequest(analysisId, code, language, null);
+    }
+
+    /**
+     * Messages waiting or in progress (may be an estimate)
+     */
+    int getQueueDepth();
+
+    /**
+     * Called when an analysis is first seen to reach a terminal state
+     */
+    default void recordAnalysisFinished(String analysisId) {
+    }
+}
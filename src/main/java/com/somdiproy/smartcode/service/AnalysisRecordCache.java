@@ -0,0 +1,132 @@
+package com.somdiproy.smartcode.service;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache in front of the async DynamoDB reader for analysis polling.
+ *
+ * Concurrent polls for the same analysis share one in-flight read, and the
+ * result is reused for a short coalescing window, so N clients polling one
+ * analysis cost one DynamoDB read per window. Missing IDs are cached as
+ * negative entries so repeated polls for unknown IDs stay off DynamoDB.
+ * When a change feed is active, entries are refreshed by its events and
+ * kept much longer.
+ *
+ * @author Somdip Roy
+ */
+@Service
+public class AnalysisRecordCache {
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisRecordCache.class);
+
+    @Value("${analysis.polling.coalesce-ttl-ms:2000}")
+    private long coalesceTtlMs;
+
+    @Value("${analysis.polling.negative-ttl-ms:5000}")
+    private long negativeTtlMs;
+
+    @Value("${analysis.polling.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${analysis.polling.feed-ttl-ms:60000}")
+    private long feedTtlMs;
+
+    private final AsyncDynamoDBAnalysisStorage asyncDynamoDBStorage;
+    private final MeterRegistry meterRegistry;
+    private final AnalysisEventBus eventBus;
+    private final ObjectProvider<AnalysisChangeFeed> changeFeedProvider;
+    private AsyncLoadingCache<String, Optional<DynamoDBAnalysisStorage.AnalysisRecord>> records;
+
+    public AnalysisRecordCache(AsyncDynamoDBAnalysisStorage asyncDynamoDBStorage, MeterRegistry meterRegistry,
+                               AnalysisEventBus eventBus, ObjectProvider<AnalysisChangeFeed> changeFeedProvider) {
+        this.asyncDynamoDBStorage = asyncDynamoDBStorage;
+        this.meterRegistry = meterRegistry;
+        this.eventBus = eventBus;
+        this.changeFeedProvider = changeFeedProvider;
+    }
+
+    @PostConstruct
+    public void init() {
+        long coalesceTtlNanos = TimeUnit.MILLISECONDS.toNanos(coalesceTtlMs);
+        long negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+        long feedTtlNanos = TimeUnit.MILLISECONDS.toNanos(feedTtlMs);
+        AnalysisChangeFeed changeFeed = changeFeedProvider.getIfAvailable();
+
+        this.records = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<String, Optional<DynamoDBAnalysisStorage.AnalysisRecord>>() {
+                    @Override
+                    public long expireAfterCreate(String analysisId,
+                                                  Optional<DynamoDBAnalysisStorage.AnalysisRecord> record,
+                                                  long currentTime) {
+                        return ttlFor(record);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String analysisId,
+                                                  Optional<DynamoDBAnalysisStorage.AnalysisRecord> record,
+                                                  long currentTime, long currentDuration) {
+                        return ttlFor(record);
+                    }
+
+                    // With a live change feed, present entries are kept fresh by pushes
+                    private long ttlFor(Optional<DynamoDBAnalysisStorage.AnalysisRecord> record) {
+                        if (!record.isPresent()) {
+                            return negativeTtlNanos;
+                        }
+                        return changeFeed != null && changeFeed.isActive() ? feedTtlNanos : coalesceTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String analysisId,
+                                                Optional<DynamoDBAnalysisStorage.AnalysisRecord> record,
+                                                long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync((analysisId, executor) ->
+                        asyncDynamoDBStorage.getAnalysisAsync(analysisId).thenApply(Optional::ofNullable));
+
+        CaffeineCacheMetrics.monitor(meterRegistry, records.synchronous(), "analysisRecordPolling");
+
+        // Prime entries from the change feed so the next read needs no DynamoDB call
+        eventBus.subscribeAll(event -> {
+            if (event.getRecord() != null) {
+                records.put(event.getAnalysisId(),
+                        CompletableFuture.completedFuture(Optional.of(event.getRecord())));
+            }
+        });
+
+        logger.info("Analysis record cache initialized - coalesce TTL: {}ms, negative TTL: {}ms",
+                coalesceTtlMs, negativeTtlMs);
+    }
+
+    /**
+     * Get the DynamoDB record for an analysis, sharing reads with other pollers.
+     * Completes with null when the analysis does not exist.
+     */
+    public CompletableFuture<DynamoDBAnalysisStorage.AnalysisRecord> getRecord(String analysisId) {
+        return records.get(analysisId).thenApply(record -> record.orElse(null));
+    }
+
+    /**
+     * Drop any cached (or negatively cached) entry, e.g. after a local write
+     */
+    public void invalidate(String analysisId) {
+        records.synchronous().invalidate(analysisId);
+    }
+}
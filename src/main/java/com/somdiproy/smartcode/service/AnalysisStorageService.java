@@ -1,24 +1,173 @@
 package com.somdiproy.smartcode.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.somdiproy.smartcode.dto.AnalysisResponse;
+import com.somdiproy.smartcode.dto.AnalysisStatus;
+import com.somdiproy.smartcode.dto.CodeReviewResult;
+import com.somdiproy.smartcode.dto.Issue;
+import com.somdiproy.smartcode.dto.Suggestion;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory analysis store
+ *
+ * Bounded by an estimated memory budget rather than entry count, since one
+ * finished ZIP analysis can outweigh hundreds of in-progress entries.
+ * Terminal results expire quickly (DynamoDB remains the system of record);
+ * in-progress entries live long enough to cover the slowest pipeline run.
+ * Hit, miss, eviction and weight stats are exported to Micrometer.
+ *
+ * @author Somdip Roy
+ */
 @Service
 public class AnalysisStorageService {
-    
-    private final Map<String, AnalysisResponse> storage = new ConcurrentHashMap<>();
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisStorageService.class);
+
+    // Rough per-object overheads used by the size estimate
+    private static final int BASE_ENTRY_BYTES = 512;
+    private static final int PER_ITEM_OVERHEAD_BYTES = 160;
+
+    @Value("${analysis.storage.max-weight-bytes:134217728}") // 128MB
+    private long maxWeightBytes;
+
+    @Value("${analysis.storage.terminal-ttl-minutes:30}")
+    private long terminalTtlMinutes;
+
+    @Value("${analysis.storage.active-ttl-minutes:120}")
+    private long activeTtlMinutes;
+
+    private final MeterRegistry meterRegistry;
+    private Cache<String, AnalysisResponse> storage;
+
+    public AnalysisStorageService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.storage = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((String analysisId, AnalysisResponse response) -> estimateSize(response))
+                .expireAfter(new StatusAwareExpiry(
+                        TimeUnit.MINUTES.toNanos(terminalTtlMinutes),
+                        TimeUnit.MINUTES.toNanos(activeTtlMinutes)))
+                .removalListener((String analysisId, AnalysisResponse response, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        logger.debug("Evicted analysis {} from memory ({})", analysisId, cause);
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, storage, "analysisStorage");
+        Gauge.builder("analysis.storage.weighted.bytes", storage,
+                        cache -> cache.policy().eviction()
+                                .map(eviction -> (double) eviction.weightedSize().orElse(0L))
+                                .orElse(0.0))
+                .description("Estimated heap held by in-memory analysis results")
+                .register(meterRegistry);
+
+        logger.info("Analysis storage initialized - budget: {} bytes, terminal TTL: {}m, active TTL: {}m",
+                maxWeightBytes, terminalTtlMinutes, activeTtlMinutes);
+    }
+
     public void storeAnalysis(String analysisId, AnalysisResponse response) {
         storage.put(analysisId, response);
     }
-    
+
     public AnalysisResponse getAnalysis(String analysisId) {
-        return storage.get(analysisId);
+        return storage.getIfPresent(analysisId);
     }
-    
+
     public void removeAnalysis(String analysisId) {
-        storage.remove(analysisId);
+        storage.invalidate(analysisId);
+    }
+
+    /**
+     * Estimated heap footprint of a stored response, in bytes.
+     * Strings are counted at two bytes per char to stay conservative.
+     */
+    static int estimateSize(AnalysisResponse response) {
+        long size = BASE_ENTRY_BYTES + chars(response.getMessage());
+
+        CodeReviewResult result = response.getResult();
+        if (result != null) {
+            size += chars(result.getSummary());
+            if (result.getIssues() != null) {
+                for (Issue issue : result.getIssues()) {
+                    size += PER_ITEM_OVERHEAD_BYTES
+                            + chars(issue.getTitle()) + chars(issue.getDescription())
+                            + chars(issue.getSuggestion()) + chars(issue.getCodeSnippet())
+                            + chars(issue.getCorrectedCode()) + chars(issue.getFixInstructions())
+                            + chars(issue.getImplementationGuide()) + chars(issue.getFileName());
+                }
+            }
+            if (result.getSuggestions() != null) {
+                for (Suggestion suggestion : result.getSuggestions()) {
+                    size += PER_ITEM_OVERHEAD_BYTES
+                            + chars(suggestion.getTitle()) + chars(suggestion.getDescription())
+                            + chars(suggestion.getImplementation()) + chars(suggestion.getExample());
+                }
+            }
+            if (result.getMetadata() != null) {
+                size += (long) result.getMetadata().size() * PER_ITEM_OVERHEAD_BYTES;
+            }
+        }
+
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    private static long chars(String value) {
+        return value != null ? 2L * value.length() : 0L;
+    }
+
+    private static boolean isTerminal(AnalysisResponse response) {
+        AnalysisStatus status = response.getStatus();
+        return status == AnalysisStatus.COMPLETED
+                || status == AnalysisStatus.FAILED
+                || status == AnalysisStatus.CANCELLED;
+    }
+
+    /**
+     * Short TTL once an analysis has finished, long TTL while it is in flight
+     */
+    private static class StatusAwareExpiry implements Expiry<String, AnalysisResponse> {
+        private final long terminalTtlNanos;
+        private final long activeTtlNanos;
+
+        StatusAwareExpiry(long terminalTtlNanos, long activeTtlNanos) {
+            this.terminalTtlNanos = terminalTtlNanos;
+            this.activeTtlNanos = activeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String analysisId, AnalysisResponse response, long currentTime) {
+            return isTerminal(response) ? terminalTtlNanos : activeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String analysisId, AnalysisResponse response,
+                                      long currentTime, long currentDuration) {
+            return isTerminal(response) ? terminalTtlNanos : activeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(String analysisId, AnalysisResponse response,
+                                    long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
-}
\ No newline at end of file
+}
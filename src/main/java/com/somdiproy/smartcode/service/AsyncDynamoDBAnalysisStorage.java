@@ -0,0 +1,143 @@
+package com.somdiproy.smartcode.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking reader for analysis records.
+ *
+ * Uses the SDK v2 async client so the polling endpoint can hand back a
+ * CompletableFuture instead of parking a Tomcat thread on DynamoDB. Writes stay
+ * on {@link DynamoDBAnalysisStorage}; records produced here are the same
+ * {@link DynamoDBAnalysisStorage.AnalysisRecord} type.
+ *
+ * @author Somdip Roy
+ */
+@Service
+public class AsyncDynamoDBAnalysisStorage {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncDynamoDBAnalysisStorage.class);
+
+    @Value("${aws.dynamodb.table-name:code-analysis-results}")
+    private String tableName;
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final DynamoDBAnalysisStorage dynamoDBStorage;
+    private final ObjectMapper objectMapper;
+
+    public AsyncDynamoDBAnalysisStorage(DynamoDbAsyncClient dynamoDbAsyncClient,
+                                        DynamoDBAnalysisStorage dynamoDBStorage) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.dynamoDBStorage = dynamoDBStorage;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Load an analysis record without blocking the caller.
+     * Completes with null when the item does not exist.
+     */
+    public CompletableFuture<DynamoDBAnalysisStorage.AnalysisRecord> getAnalysisAsync(String analysisId) {
+        GetItemRequest request = GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("analysisId", AttributeValue.builder().s(analysisId).build()))
+                .build();
+
+        return dynamoDbAsyncClient.getItem(request)
+                .thenApply(response -> {
+                    if (!response.hasItem() || response.item().isEmpty()) {
+                        return null;
+                    }
+                    DynamoDBAnalysisStorage.AnalysisRecord record = toRecord(analysisId, response.item());
+                    dynamoDBStorage.attachParsedResult(record);
+                    return record;
+                })
+                .whenComplete((record, error) -> {
+                    if (error != null) {
+                        logger.error("Async DynamoDB read failed for analysis {}", analysisId, error);
+                    }
+                });
+    }
+
+    private DynamoDBAnalysisStorage.AnalysisRecord toRecord(String analysisId, Map<String, AttributeValue> item) {
+        DynamoDBAnalysisStorage.AnalysisRecord record = new DynamoDBAnalysisStorage.AnalysisRecord();
+        record.setAnalysisId(analysisId);
+        record.setStatus(stringAttribute(item, "status"));
+        record.setMessage(stringAttribute(item, "message"));
+
+        AttributeValue timestamp = item.get("timestamp");
+        if (timestamp != null && timestamp.n() != null) {
+            record.setTimestamp(Long.parseLong(timestamp.n()));
+        }
+
+        AttributeValue ttl = item.get("ttl");
+        if (ttl != null && ttl.n() != null) {
+            record.setTtl(Long.parseLong(ttl.n()));
+        }
+
+        // The app writes "resultJson"; the Lambda writes "result" as a string or a map
+        try {
+            AttributeValue resultJson = item.get("resultJson");
+            AttributeValue result = item.get("result");
+            if (resultJson != null && resultJson.s() != null) {
+                record.setResultJson(resultJson.s());
+            } else if (result != null && result.s() != null) {
+                record.setResultJson(result.s());
+            } else if (result != null && result.hasM()) {
+                record.setResultJson(objectMapper.writeValueAsString(toObjectMap(result.m())));
+            }
+        } catch (Exception e) {
+            logger.error("Error converting result attribute for analysis {}", analysisId, e);
+        }
+
+        return record;
+    }
+
+    private String stringAttribute(Map<String, AttributeValue> item, String name) {
+        AttributeValue value = item.get(name);
+        return value != null ? value.s() : null;
+    }
+
+    private Map<String, Object> toObjectMap(Map<String, AttributeValue> attributes) {
+        Map<String, Object> result = new HashMap<>();
+        for (Map.Entry<String, AttributeValue> entry : attributes.entrySet()) {
+            Object value = toObject(entry.getValue());
+            if (value != null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    private Object toObject(AttributeValue value) {
+        if (value.s() != null) {
+            return value.s();
+        } else if (value.n() != null) {
+            return Double.parseDouble(value.n());
+        } else if (value.bool() != null) {
+            return value.bool();
+        } else if (value.hasL()) {
+            List<Object> list = new ArrayList<>();
+            for (AttributeValue element : value.l()) {
+                Object converted = toObject(element);
+                if (converted != null) {
+                    list.add(converted);
+                }
+            }
+            return list;
+        } else if (value.hasM()) {
+            return toObjectMap(value.m());
+        }
+        return null;
+    }
+}
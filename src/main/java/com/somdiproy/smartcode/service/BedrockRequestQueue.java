@@ -10,6 +10,12 @@ import jakarta.annotation.PostConstruct;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Paces in-process Bedrock calls at aws.bedrock.requests-per-minute with at
+ * most aws.bedrock.max-concurrent-requests in flight.
+ *
+ * @author Somdip Roy
+ */
 @Component
 public class BedrockRequestQueue {
     private static final Logger logger = LoggerFactory.getLogger(BedrockRequestQueue.class);
@@ -20,7 +26,11 @@ public class BedrockRequestQueue {
     @Value("${aws.bedrock.requests-per-minute:10}")
     private double requestsPerMinute;
     
+    // How often a waiting trySubmitRequest checks for a free slot
+    private static final long SLOT_RETRY_MS = 50;
+    
     private ExecutorService executorService;
+    private ScheduledExecutorService slotRetryScheduler;
     private RateLimiter rateLimiter;
     private Semaphore concurrencyLimiter;
     private final AtomicInteger activeRequests = new AtomicInteger(0);
@@ -28,11 +38,15 @@ public class BedrockRequestQueue {
     @PostConstruct
     public void init() {
         this.executorService = Executors.newFixedThreadPool(maxConcurrentRequests);
-        // Ultra-conservative rate limiting - 1 request per minute
-        this.rateLimiter = RateLimiter.create(1.0 / 60.0);
-        this.concurrencyLimiter = new Semaphore(1); // Reduce concurrency
+        this.slotRetryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bedrock-slot-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rateLimiter = RateLimiter.create(requestsPerMinute / 60.0);
+        this.concurrencyLimiter = new Semaphore(maxConcurrentRequests);
         logger.info("BedrockRequestQueue initialized with maxConcurrent={}, requestsPerMinute={}", 
-                    maxConcurrentRequests / 2, requestsPerMinute);
+                    maxConcurrentRequests, requestsPerMinute);
     }
     
     public <T> CompletableFuture<T> submitRequest(Callable<T> task) {
@@ -59,7 +73,75 @@ public class BedrockRequestQueue {
         }, executorService);
     }
     
+    /**
+     * Run the task only if a rate permit and a concurrency slot come free
+     * within the timeout; otherwise leave it to the caller's slower path.
+     * The caller's thread is never held: while no slot is free the check is
+     * retried on a scheduler. The future fails with a
+     * RejectedExecutionException when the timeout passes first.
+     */
+    public <T> CompletableFuture<T> trySubmitRequest(Callable<T> task, long timeoutMs) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptSubmit(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs), result);
+        return result;
+    }
+    
+    private <T> void attemptSubmit(Callable<T> task, long deadline, CompletableFuture<T> result) {
+        if (tryStart(task, result)) {
+            return;
+        }
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMs <= 0) {
+            result.completeExceptionally(new RejectedExecutionException("No Bedrock request slot free in time"));
+            return;
+        }
+        try {
+            slotRetryScheduler.schedule(() -> attemptSubmit(task, deadline, result),
+                    Math.min(SLOT_RETRY_MS, remainingMs), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * Start the task if a concurrency slot and a rate permit are free right now
+     */
+    private <T> boolean tryStart(Callable<T> task, CompletableFuture<T> result) {
+        if (!concurrencyLimiter.tryAcquire()) {
+            return false;
+        }
+        if (!rateLimiter.tryAcquire()) {
+            concurrencyLimiter.release();
+            return false;
+        }
+        
+        int active = activeRequests.incrementAndGet();
+        logger.debug("Executing Bedrock request. Active requests: {}", active);
+        try {
+            executorService.execute(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    activeRequests.decrementAndGet();
+                    concurrencyLimiter.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            activeRequests.decrementAndGet();
+            concurrencyLimiter.release();
+            result.completeExceptionally(e);
+        }
+        return true;
+    }
+    
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+    
     public void shutdown() {
+        slotRetryScheduler.shutdownNow();
         executorService.shutdown();
         try {
             if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
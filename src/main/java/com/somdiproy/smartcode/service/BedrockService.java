@@ -1,30 +1,209 @@
 package com.somdiproy.smartcode.service;
 
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.somdiproy.smartcode.dto.*;
+import com.somdiproy.smartcode.lambda.BedrockAnalysisEngine;
+import com.somdiproy.smartcode.lambda.BedrockQuota;
+import com.somdiproy.smartcode.lambda.ChunkCheckpointStore;
+import com.somdiproy.smartcode.lambda.HedgedBedrockInvoker;
+import com.somdiproy.smartcode.lambda.ModelRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Bedrock Service
+ *
+ * Submits analyses to the configured pipeline. With
+ * bedrock.processing.mode=hybrid, inputs up to
+ * bedrock.processing.inline.max-chars are analyzed in-process instead, paced
+ * by {@link BedrockRequestQueue} and guarded by {@link BedrockCircuitBreaker};
+ * when neither has room, or the inline call fails, the analysis takes the
+ * async path like any other.
+ *
+ * @author Somdip Roy
+ */
 @Service
 public class BedrockService {
 	private static final Logger logger = LoggerFactory.getLogger(BedrockService.class);
 
+	// async: every analysis is queued; hybrid: small inputs are analyzed inline
 	@Value("${bedrock.processing.mode:async}")
 	private String processingMode;
 
-	private final SQSBedrockService sqsService;
+	@Value("${bedrock.processing.inline.max-chars:4000}")
+	private int inlineMaxChars;
+
+	@Value("${bedrock.processing.inline.wait-ms:20000}")
+	private long inlineWaitMs;
+
+	@Value("${bedrock.processing.inline.queue-wait-ms:2000}")
+	private long inlineQueueWaitMs;
+
+	@Value("${aws.bedrock.router.fast-model-id:${aws.bedrock.model-id:us.amazon.nova-premier-v1:0}}")
+	private String fastModelId;
+
+	@Value("${aws.bedrock.router.standard-model-id:${aws.bedrock.model-id:us.amazon.nova-premier-v1:0}}")
+	private String standardModelId;
+
+	@Value("${aws.bedrock.router.premium-model-id:${aws.bedrock.model-id:us.amazon.nova-premier-v1:0}}")
+	private String premiumModelId;
+
+	@Value("${aws.bedrock.router.small-input-chars:4000}")
+	private int smallInputChars;
+
+	@Value("${aws.bedrock.router.large-input-chars:50000}")
+	private int largeInputChars;
+
+	@Value("${aws.bedrock.router.throttle-cooldown-ms:30000}")
+	private long throttleCooldownMs;
+
+	@Value("${analysis.pipeline.mode:aws}")
+	private String pipelineMode;
+
+	private final AnalysisQueue analysisQueue;
 	private final StepFunctionsBedrockService stepFunctionsService;
 	private final DynamoDBAnalysisStorage dynamoDBStorage;
+	private final BedrockRuntimeClient bedrockClient;
+	private final BedrockRequestQueue requestQueue;
+	private final BedrockCircuitBreaker circuitBreaker;
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	// Results of inline analyses, handed from the engine's status writer to the waiting task
+	private final Map<String, Map<String, Object>> inlineResults = new ConcurrentHashMap<>();
+	private BedrockAnalysisEngine inlineEngine;
 
-	public BedrockService(SQSBedrockService sqsService, DynamoDBAnalysisStorage dynamoDBStorage,
-			StepFunctionsBedrockService stepFunctionsService) {
-		this.sqsService = sqsService;
+	public BedrockService(AnalysisQueue analysisQueue, DynamoDBAnalysisStorage dynamoDBStorage,
+			StepFunctionsBedrockService stepFunctionsService, BedrockRuntimeClient bedrockClient,
+			BedrockRequestQueue requestQueue, BedrockCircuitBreaker circuitBreaker) {
+		this.analysisQueue = analysisQueue;
 		this.dynamoDBStorage = dynamoDBStorage;
 		this.stepFunctionsService = stepFunctionsService;
+		this.bedrockClient = bedrockClient;
+		this.requestQueue = requestQueue;
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	@PostConstruct
+	public void init() {
+		if (!isHybrid()) {
+			return;
+		}
+		ModelRouter router = new ModelRouter(fastModelId, standardModelId, premiumModelId,
+				smallInputChars, largeInputChars, throttleCooldownMs);
+		// One call per analysis; BedrockRequestQueue does the pacing, so no quota or checkpoints
+		inlineEngine = new BedrockAnalysisEngine(HedgedBedrockInvoker.direct(bedrockClient), router,
+				this::writeInlineStatus, ChunkCheckpointStore.NONE, BedrockQuota.UNLIMITED,
+				Math.max(inlineMaxChars, 1));
+		logger.info("Hybrid processing: inputs up to {} chars are analyzed inline", inlineMaxChars);
+	}
+
+	/**
+	 * Analyze small code in-process when hybrid mode, the circuit breaker and
+	 * the request queue all allow it. The result is saved like a queued
+	 * analysis's, so polling sees it too. Does not block: the wait for a
+	 * request queue slot happens off the caller's thread.
+	 *
+	 * @return the pending result, failing if the inline call failed or no
+	 *         queue slot came free within the queue wait (with a
+	 *         RejectedExecutionException); null when the analysis has to take
+	 *         the async path
+	 */
+	public CompletableFuture<CodeReviewResult> tryAnalyzeInline(String analysisId, String code, String language,
+			String depth) {
+		if (inlineEngine == null || code == null || code.trim().isEmpty() || code.length() > inlineMaxChars) {
+			return null;
+		}
+		if (!circuitBreaker.allowRequest()) {
+			return null;
+		}
+
+		String lang = language == null || language.trim().isEmpty() ? "unknown" : language;
+		return requestQueue.trySubmitRequest(() -> analyzeInline(analysisId, code, lang, depth), inlineQueueWaitMs);
+	}
+
+	/**
+	 * How long a request should wait for an inline result before answering
+	 * with the analysis ID; the analysis keeps running either way
+	 */
+	public long getInlineWaitMs() {
+		return inlineWaitMs;
+	}
+
+	private CodeReviewResult analyzeInline(String analysisId, String code, String language, String depth)
+			throws Exception {
+		long startedAt = System.currentTimeMillis();
+		try {
+			inlineEngine.analyze(analysisId, code, language, depth, lambdaLogger);
+			Map<String, Object> result = inlineResults.remove(analysisId);
+			if (result == null) {
+				throw new IllegalStateException("Inline analysis finished without a result");
+			}
+			circuitBreaker.recordSuccess();
+			logger.info("Analysis {} completed inline in {} ms", analysisId, System.currentTimeMillis() - startedAt);
+			return toCompletedResult(analysisId, objectMapper.writeValueAsString(result));
+		} catch (Exception e) {
+			inlineResults.remove(analysisId);
+			circuitBreaker.recordFailure();
+			logger.warn("Inline analysis {} failed after {} ms: {}", analysisId,
+					System.currentTimeMillis() - startedAt, e.getMessage());
+			throw e;
+		}
+	}
+
+	private void writeInlineStatus(String analysisId, String status, String message, Map<String, Object> result) {
+		if ("COMPLETED".equals(status) && result != null) {
+			Map<String, Object> stamped = new LinkedHashMap<>(result);
+			Map<String, Object> metadata = new LinkedHashMap<>();
+			if (result.get("metadata") instanceof Map) {
+				((Map<?, ?>) result.get("metadata")).forEach((key, value) -> metadata.put(String.valueOf(key), value));
+			}
+			metadata.put("processingMode", "inline");
+			stamped.put("metadata", metadata);
+			result = stamped;
+			inlineResults.put(analysisId, result);
+		}
+		// A lost status write leaves the analysis to its polling fallback; the inline result still stands
+		try {
+			dynamoDBStorage.saveAnalysisStatusWithMetadata(analysisId, status, message, result);
+		} catch (Exception e) {
+			logger.error("Failed to store status {} for inline analysis {}", status, analysisId, e);
+		}
+	}
+
+	/**
+	 * Run small pastes on the Express workflow when one is configured and the
+	 * whole pipeline is not local. The workflow saves its result like a queued
+	 * analysis, so polling picks it up.
+	 *
+	 * @return true when the workflow took the analysis, finished or still
+	 *         running; false when it has to be queued as usual
+	 */
+	public boolean tryExpressAnalysis(String analysisId, String code, String language) {
+		if ("local".equals(pipelineMode) || !stepFunctionsService.isExpressCandidate(code)) {
+			return false;
+		}
+		String lang = language == null || language.trim().isEmpty() ? "unknown" : language;
+		StepFunctionsBedrockService.Submission submission = stepFunctionsService.submitExpress(analysisId, code, lang);
+		if (submission == null) {
+			return false;
+		}
+		logger.info("Analysis {} {} on the Express workflow: {}", analysisId,
+				submission.isCompleted() ? "completed" : "running", submission.getExecutionArn());
+		return true;
+	}
+
+	private boolean isHybrid() {
+		return "hybrid".equalsIgnoreCase(processingMode);
 	}
     
     /**
@@ -51,9 +230,24 @@ public class BedrockService {
             
 			// Submit for async processing
 			String executionId;
-			// Use Step Functions
-			executionId = stepFunctionsService.submitAnalysisToStepFunctions(analysisId, code, language);
-			logger.info("Analysis {} submitted to Step Functions: {}", analysisId, executionId);
+			if ("local".equals(pipelineMode)) {
+				// Whole pipeline runs in-process
+				executionId = analysisQueue.submitAnalysisRequest(analysisId, code, language);
+				logger.info("Analysis {} submitted to local queue: {}", analysisId, executionId);
+			} else {
+				// Use Step Functions; small inputs may finish synchronously on the Express workflow
+				StepFunctionsBedrockService.Submission submission =
+						stepFunctionsService.submitAnalysis(analysisId, code, language);
+				executionId = submission.getExecutionArn();
+				if (submission.isCompleted()) {
+					CodeReviewResult result = toCompletedResult(analysisId, submission.getResultJson());
+					if (result != null) {
+						logger.info("Analysis {} completed synchronously: {}", analysisId, executionId);
+						return result;
+					}
+				}
+				logger.info("Analysis {} submitted to Step Functions: {}", analysisId, executionId);
+			}
             
             // Return pending result with analysis ID
             return CodeReviewResult.builder()
@@ -76,6 +270,19 @@ public class BedrockService {
         }
     }
     
+    /**
+     * Parse an Express workflow result the same way stored results are parsed.
+     * The workflow has already saved it to DynamoDB, so polling sees the same result.
+     */
+    private CodeReviewResult toCompletedResult(String analysisId, String resultJson) {
+        DynamoDBAnalysisStorage.AnalysisRecord record = new DynamoDBAnalysisStorage.AnalysisRecord();
+        record.setAnalysisId(analysisId);
+        record.setStatus("COMPLETED");
+        record.setResultJson(resultJson);
+        dynamoDBStorage.attachParsedResult(record);
+        return record.getResult();
+    }
+    
     /**
      * Submit code for analysis with existing analysis ID
      * This method reuses an existing analysis ID instead of creating a new one
@@ -99,7 +306,7 @@ public class BedrockService {
             dynamoDBStorage.saveAnalysisStatus(analysisId, "QUEUED", "Analysis queued for processing");
             
             // Submit to SQS for async processing
-            String messageId = sqsService.submitAnalysisRequest(analysisId, code, language);
+            String messageId = analysisQueue.submitAnalysisRequest(analysisId, code, language);
             
             logger.info("Analysis {} submitted to queue with message ID: {}", analysisId, messageId);
             
@@ -148,8 +355,13 @@ public class BedrockService {
      */
     public Map<String, Object> getQueueStatus() {
         Map<String, Object> status = new HashMap<>();
-        status.put("queueDepth", sqsService.getQueueDepth());
+        status.put("queueDepth", analysisQueue.getQueueDepth());
         status.put("processingMode", processingMode);
+        if (isHybrid()) {
+            status.put("inlineMaxChars", inlineMaxChars);
+            status.put("inlineActiveRequests", requestQueue.getActiveRequests());
+        }
+        status.put("pipelineMode", pipelineMode);
         status.put("timestamp", System.currentTimeMillis());
         return status;
     }
@@ -183,4 +395,17 @@ public class BedrockService {
                 .metadata(Map.of("error", true, "message", errorMessage))
                 .build();
     }
+    
+    // Routes the inline engine's Lambda-style logging to SLF4J
+    private final LambdaLogger lambdaLogger = new LambdaLogger() {
+        @Override
+        public void log(String message) {
+            logger.info(message);
+        }
+        
+        @Override
+        public void log(byte[] message) {
+            logger.info(new String(message, StandardCharsets.UTF_8));
+        }
+    };
 }
\ No newline at end of file
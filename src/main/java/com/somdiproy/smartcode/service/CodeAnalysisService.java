@@ -3,6 +3,7 @@ package com.somdiproy.smartcode.service;
 import com.somdiproy.smartcode.dto.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -11,6 +12,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.io.ByteArrayOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -47,7 +51,16 @@ public class CodeAnalysisService {
     private DynamoDBAnalysisStorage dynamoDBStorage;
     
     @Autowired
-    private SQSBedrockService sqsService;
+    private AnalysisRecordCache analysisRecordCache;
+    
+    @Autowired
+    private AnalysisQueue analysisQueue;
+    
+    @Autowired
+    private AnalysisEventBus analysisEventBus;
+    
+    @Autowired
+    private ObjectProvider<AnalysisChangeFeed> changeFeedProvider;
     
     /**
      * Analyze uploaded ZIP file
@@ -102,9 +115,24 @@ public class CodeAnalysisService {
     }
     
     /**
-     * Analyze pasted code
+     * Analyze pasted code, answering with the analysis ID straight away.
+     * Used by callers that do not wait for results (webhooks), so it always
+     * takes the queue.
      */
     public AnalysisResponse analyzeCode(String code, AnalysisRequest request) {
+        return startCodeAnalysis(code, request, false).join();
+    }
+    
+    /**
+     * Analyze pasted code. Small pastes in hybrid mode may complete with the
+     * finished analysis; the request thread is not held while they run.
+     */
+    public CompletableFuture<AnalysisResponse> analyzeCodeAsync(String code, AnalysisRequest request) {
+        return startCodeAnalysis(code, request, true);
+    }
+    
+    private CompletableFuture<AnalysisResponse> startCodeAnalysis(String code, AnalysisRequest request,
+                                                                  boolean allowInline) {
         String analysisId = UUID.randomUUID().toString();
         
         try {
@@ -123,29 +151,80 @@ public class CodeAnalysisService {
             // Store initial status
             analysisStorageService.storeAnalysis(analysisId, response);
             
-            // Process asynchronously
-            CompletableFuture.runAsync(() -> {
-                try {
-                    processCodeAnalysis(analysisId, code, request);
-                } catch (Exception e) {
-                    logger.error("Error in async code analysis", e);
-                    markAnalysisAsFailed(analysisId, e.getMessage());
+            // Small pastes in hybrid mode are answered in this request, unless admission asked them to wait
+            if (allowInline && request.getAdmissionDelaySeconds() <= 0) {
+                CompletableFuture<CodeReviewResult> inline = bedrockService.tryAnalyzeInline(
+                        analysisId, code, request.getLanguage(), request.getDepth());
+                if (inline != null) {
+                    return awaitInlineAnalysis(analysisId, code, request, inline, response);
                 }
-            });
+            }
             
-            return response;
+            queueCodeAnalysis(analysisId, code, request);
+            return CompletableFuture.completedFuture(response);
             
         } catch (Exception e) {
             logger.error("Error starting code analysis", e);
-            return AnalysisResponse.builder()
+            return CompletableFuture.completedFuture(AnalysisResponse.builder()
                     .success(false)
                     .analysisId(analysisId)
                     .status(AnalysisStatus.FAILED)
                     .message("Failed to start analysis: " + e.getMessage())
-                    .build();
+                    .build());
         }
     }
     
+    private void queueCodeAnalysis(String analysisId, String code, AnalysisRequest request) {
+        CompletableFuture.runAsync(() -> {
+            try {
+                processCodeAnalysis(analysisId, code, request);
+            } catch (Exception e) {
+                logger.error("Error in async code analysis", e);
+                markAnalysisAsFailed(analysisId, e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Complete with the inline result if it arrives within the inline wait,
+     * otherwise with the pending response. An inline call that failed, or
+     * found no request slot, falls back to the queue; one still running when
+     * the wait ends keeps going and saves its result for polling.
+     */
+    private CompletableFuture<AnalysisResponse> awaitInlineAnalysis(String analysisId, String code,
+                                                                   AnalysisRequest request,
+                                                                   CompletableFuture<CodeReviewResult> inline,
+                                                                   AnalysisResponse pending) {
+        return inline.handle((result, error) -> {
+            if (error != null) {
+                if (unwrap(error) instanceof RejectedExecutionException) {
+                    logger.info("No inline capacity for analysis {}; queueing it", analysisId);
+                } else {
+                    logger.warn("Inline analysis {} failed, queueing it instead", analysisId);
+                }
+                queueCodeAnalysis(analysisId, code, request);
+                return pending;
+            }
+            
+            AnalysisResponse completed = AnalysisResponse.builder()
+                    .success(true)
+                    .analysisId(analysisId)
+                    .status(AnalysisStatus.COMPLETED)
+                    .message("Analysis completed successfully")
+                    .result(result)
+                    .progressPercentage(100)
+                    .createdAt(pending.getCreatedAt())
+                    .updatedAt(System.currentTimeMillis())
+                    .build();
+            analysisStorageService.storeAnalysis(analysisId, completed);
+            return completed;
+        }).completeOnTimeout(pending, bedrockService.getInlineWaitMs(), TimeUnit.MILLISECONDS);
+    }
+    
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+    
     /**
      * Get analysis result by ID
      */
@@ -154,86 +233,204 @@ public class CodeAnalysisService {
             // First check in-memory storage
             AnalysisResponse response = analysisStorageService.getAnalysis(analysisId);
             
-            // Always check DynamoDB for updates
+            // Completed analyses never change again - no DynamoDB read needed
+            if (isCompleted(response)) {
+                return response;
+            }
+            
             logger.debug("Checking DynamoDB for analysis: {}", analysisId);
             
             DynamoDBAnalysisStorage.AnalysisRecord record = 
                 dynamoDBStorage.getAnalysis(analysisId);
             
-            if (record != null) {
-                logger.info("Found in DynamoDB: {} - Status: {}", 
-                    analysisId, record.getStatus());
-                
-                // Create or update response based on DynamoDB record
-                AnalysisResponse.AnalysisResponseBuilder builder = 
-                    AnalysisResponse.builder()
-                        .analysisId(analysisId)
-                        .createdAt(record.getTimestamp())
-                        .updatedAt(record.getTimestamp());
-                
-                switch (record.getStatus()) {
-                    case "COMPLETED":
-                        builder.success(true)
-                               .status(AnalysisStatus.COMPLETED)
-                               .message("Analysis completed successfully")
-                               .result(record.getResult())
-                               .progressPercentage(100);
-                        break;
-                    case "FAILED":
-                        builder.success(false)
-                               .status(AnalysisStatus.FAILED)
-                               .message(record.getMessage() != null ? 
-                                   record.getMessage() : "Analysis failed")
-                               .progressPercentage(0);
-                        break;
-                    case "PROCESSING":
-                        builder.success(true)
-                               .status(AnalysisStatus.PROCESSING)
-                               .message("Lambda is processing your code...")
-                               .progressPercentage(50);
-                        break;
-                    case "QUEUED":
-                        builder.success(true)
-                               .status(AnalysisStatus.PROCESSING)
-                               .message("Analysis queued for processing")
-                               .progressPercentage(25);
-                        break;
-                    default:
-                        builder.success(true)
-                               .status(AnalysisStatus.PROCESSING)
-                               .message("Processing...")
-                               .progressPercentage(30);
-                }
-                
-                response = builder.build();
-                
-                // Update in-memory cache if completed or failed
-                if (response.getStatus() == AnalysisStatus.COMPLETED || 
-                    response.getStatus() == AnalysisStatus.FAILED) {
-                    analysisStorageService.storeAnalysis(analysisId, response);
-                }
-            } else if (response == null) {
-                // Not found anywhere
-                logger.warn("Analysis not found: {}", analysisId);
-                return AnalysisResponse.builder()
-                    .success(false)
-                    .analysisId(analysisId)
-                    .status(AnalysisStatus.FAILED)
-                    .message("Analysis not found")
-                    .build();
-            }
-            
-            return response;
+            return resolveAnalysisResponse(analysisId, response, record);
             
         } catch (Exception e) {
             logger.error("Error retrieving analysis result", e);
+            return createRetrievalErrorResponse(analysisId, e);
+        }
+    }
+    
+    /**
+     * Get analysis result by ID without blocking the calling thread.
+     * Completed results are served from memory; otherwise the DynamoDB read
+     * goes through the coalescing record cache, so concurrent pollers of the
+     * same analysis share one read per interval. FAILED is re-read too, since
+     * a local failure can still be superseded by a retried attempt.
+     */
+    public CompletableFuture<AnalysisResponse> getAnalysisResultAsync(String analysisId) {
+        AnalysisResponse inMemory = analysisStorageService.getAnalysis(analysisId);
+        
+        if (isCompleted(inMemory)) {
+            return CompletableFuture.completedFuture(inMemory);
+        }
+        
+        logger.debug("Checking DynamoDB (async) for analysis: {}", analysisId);
+        
+        return analysisRecordCache.getRecord(analysisId)
+                .thenApply(record -> resolveAnalysisResponse(analysisId, inMemory, record))
+                .exceptionally(e -> {
+                    logger.error("Error retrieving analysis result", e);
+                    return createRetrievalErrorResponse(analysisId, e);
+                });
+    }
+    
+    /**
+     * Long-poll variant: if the analysis is still running, wait up to waitMs
+     * for the change feed to deliver its next change instead of returning the
+     * current state. Without an active change feed this is a plain read.
+     */
+    public CompletableFuture<AnalysisResponse> awaitAnalysisResult(String analysisId, long waitMs) {
+        AnalysisChangeFeed changeFeed = changeFeedProvider.getIfAvailable();
+        if (waitMs <= 0 || changeFeed == null || !changeFeed.isActive()) {
+            return getAnalysisResultAsync(analysisId);
+        }
+        
+        // Subscribe before reading so a change between the two is not missed
+        CompletableFuture<AnalysisChangeEvent> nextChange = analysisEventBus.awaitChange(analysisId, waitMs);
+        
+        return getAnalysisResultAsync(analysisId).thenCompose(current -> {
+            if (current == null || isTerminal(current)) {
+                nextChange.cancel(false);
+                return CompletableFuture.completedFuture(current);
+            }
+            return nextChange.thenApply(event -> event != null ? applyChange(event) : current);
+        });
+    }
+    
+    /**
+     * Fold a change-feed event into the in-memory store and return the
+     * resulting client view, without reading DynamoDB
+     */
+    public AnalysisResponse applyChange(AnalysisChangeEvent event) {
+        return resolveAnalysisResponse(event.getAnalysisId(),
+                analysisStorageService.getAnalysis(event.getAnalysisId()), event.getRecord());
+    }
+    
+    /**
+     * Merge the in-memory view with the DynamoDB record, preferring DynamoDB
+     * when it has an entry
+     */
+    private AnalysisResponse resolveAnalysisResponse(String analysisId, AnalysisResponse response,
+                                                     DynamoDBAnalysisStorage.AnalysisRecord record) {
+        if (record != null) {
+            logger.info("Found in DynamoDB: {} - Status: {}", 
+                analysisId, record.getStatus());
+            
+            boolean wasTerminal = isTerminal(response);
+            response = toAnalysisResponse(analysisId, record);
+            
+            // Update in-memory cache if completed or failed
+            if (response.getStatus() == AnalysisStatus.COMPLETED || 
+                response.getStatus() == AnalysisStatus.FAILED) {
+                analysisStorageService.storeAnalysis(analysisId, response);
+                
+                // First time this instance sees it finish - its message has left the queue;
+                // inline analyses never had one
+                if (!wasTerminal && !isInline(response)) {
+                    analysisQueue.recordAnalysisFinished(analysisId);
+                }
+            }
+        } else if (response == null) {
+            // Not found anywhere
+            logger.warn("Analysis not found: {}", analysisId);
             return AnalysisResponse.builder()
                 .success(false)
                 .analysisId(analysisId)
                 .status(AnalysisStatus.FAILED)
-                .message("Error retrieving analysis: " + e.getMessage())
+                .message("Analysis not found")
                 .build();
         }
+        
+        return response;
+    }
+    
+    /**
+     * Create or update response based on DynamoDB record
+     */
+    private AnalysisResponse toAnalysisResponse(String analysisId, DynamoDBAnalysisStorage.AnalysisRecord record) {
+        AnalysisResponse.AnalysisResponseBuilder builder = 
+            AnalysisResponse.builder()
+                .analysisId(analysisId)
+                .createdAt(record.getTimestamp() != null ? record.getTimestamp() : 0L)
+                .updatedAt(record.getTimestamp() != null ? record.getTimestamp() : 0L);
+        
+        String status = record.getStatus() != null ? record.getStatus() : "";
+        switch (status) {
+            case "COMPLETED":
+                builder.success(true)
+                       .status(AnalysisStatus.COMPLETED)
+                       .message("Analysis completed successfully")
+                       .result(record.getResult())
+                       .progressPercentage(100);
+                break;
+            case "FAILED":
+                builder.success(false)
+                       .status(AnalysisStatus.FAILED)
+                       .message(record.getMessage() != null ? 
+                           record.getMessage() : "Analysis failed")
+                       .progressPercentage(0);
+                break;
+            case "PROCESSING":
+                // Chunked runs publish partial results and segment progress as they go
+                builder.success(true)
+                       .status(AnalysisStatus.PROCESSING)
+                       .message(record.getMessage() != null ? 
+                               record.getMessage() : "Lambda is processing your code...")
+                       .result(record.getResult())
+                       .progressPercentage(chunkProgress(record.getResult()));
+                break;
+            case "QUEUED":
+                builder.success(true)
+                       .status(AnalysisStatus.PROCESSING)
+                       .message("Analysis queued for processing")
+                       .progressPercentage(25);
+                break;
+            default:
+                builder.success(true)
+                       .status(AnalysisStatus.PROCESSING)
+                       .message("Processing...")
+                       .progressPercentage(30);
+        }
+        
+        return builder.build();
+    }
+    
+    private int chunkProgress(CodeReviewResult partialResult) {
+        if (partialResult == null || partialResult.getMetadata() == null) {
+            return 50;
+        }
+        Object completed = partialResult.getMetadata().get("chunksCompleted");
+        Object total = partialResult.getMetadata().get("totalChunks");
+        if (!(completed instanceof Number) || !(total instanceof Number) || ((Number) total).intValue() <= 0) {
+            return 50;
+        }
+        return 30 + (65 * ((Number) completed).intValue()) / ((Number) total).intValue();
+    }
+    
+    private boolean isInline(AnalysisResponse response) {
+        CodeReviewResult result = response.getResult();
+        return result != null && result.getMetadata() != null
+                && "inline".equals(result.getMetadata().get("processingMode"));
+    }
+    
+    private boolean isCompleted(AnalysisResponse response) {
+        return response != null && response.getStatus() == AnalysisStatus.COMPLETED;
+    }
+    
+    private boolean isTerminal(AnalysisResponse response) {
+        return response != null && 
+               (response.getStatus() == AnalysisStatus.COMPLETED || 
+                response.getStatus() == AnalysisStatus.FAILED);
+    }
+    
+    private AnalysisResponse createRetrievalErrorResponse(String analysisId, Throwable e) {
+        return AnalysisResponse.builder()
+            .success(false)
+            .analysisId(analysisId)
+            .status(AnalysisStatus.FAILED)
+            .message("Error retrieving analysis: " + e.getMessage())
+            .build();
     }
     
     /**
@@ -276,11 +473,17 @@ public class CodeAnalysisService {
             metadata.put("uploadTimestamp", LocalDateTime.now().toString());
             metadata.put("linesOfCode", linesOfCode);
             metadata.put("codeLength", extractedCode.length());
+            if (request != null && request.getAdmissionDelaySeconds() > 0) {
+                metadata.put("admissionDelaySeconds", request.getAdmissionDelaySeconds());
+            }
+            if (request != null && request.getDepth() != null) {
+                metadata.put("depth", request.getDepth());
+            }
             
             // Submit to Bedrock processing queue with metadata
-            if (sqsService != null) {
+            if (analysisQueue != null) {
             	String language = (request != null && request.getLanguage() != null) ? request.getLanguage() : "auto";
-                sqsService.submitAnalysisRequest(analysisId, extractedCode, language, metadata);
+                analysisQueue.submitAnalysisRequest(analysisId, extractedCode, language, metadata);
             } else {
                 // Fallback to direct Bedrock submission
                 bedrockService.submitAnalysisWithId(analysisId, extractedCode, request.getLanguage());
@@ -297,6 +500,7 @@ public class CodeAnalysisService {
                 
                 // Also save to DynamoDB
                 dynamoDBStorage.saveAnalysisStatus(analysisId, "QUEUED", "Submitted to processing queue");
+                analysisRecordCache.invalidate(analysisId);
             }
             
             updateAnalysisProgress(analysisId, 85, "Submitted to AI processing queue");
@@ -327,10 +531,23 @@ public class CodeAnalysisService {
             metadata.put("analysisType", "code-paste");
             metadata.put("linesOfCode", linesOfCode);
             metadata.put("uploadTimestamp", LocalDateTime.now().toString());
+            if (request.getAdmissionDelaySeconds() > 0) {
+                metadata.put("admissionDelaySeconds", request.getAdmissionDelaySeconds());
+            }
+            if (request.getDepth() != null) {
+                metadata.put("depth", request.getDepth());
+            }
+            
+            // Small inputs may run on the Express workflow; a start delay has to go through the queue
+            if (request.getAdmissionDelaySeconds() <= 0
+                    && bedrockService.tryExpressAnalysis(analysisId, code, request.getLanguage())) {
+                updateAnalysisProgress(analysisId, 85, "Submitted to AI processing workflow");
+                return;
+            }
             
             // Submit to processing queue with metadata
-            if (sqsService != null) {
-                sqsService.submitAnalysisRequest(analysisId, code, request.getLanguage(), metadata);
+            if (analysisQueue != null) {
+                analysisQueue.submitAnalysisRequest(analysisId, code, request.getLanguage(), metadata);
             } else {
                 // Fallback to direct Bedrock submission
                 bedrockService.submitAnalysisWithId(analysisId, code, request.getLanguage());
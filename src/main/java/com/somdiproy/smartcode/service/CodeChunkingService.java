@@ -1,5 +1,6 @@
 package com.somdiproy.smartcode.service;
 
+import com.somdiproy.smartcode.lambda.ChunkContextExtractor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,7 +15,7 @@ import java.util.regex.Pattern;
 public class CodeChunkingService {
     private static final Logger logger = LoggerFactory.getLogger(CodeChunkingService.class);
     
-    @Value("${aws.bedrock.max-chunk-size:50000}")
+    @Value("${aws.bedrock.max-chunk-size:30000}")
     private int maxChunkSize; // Characters, not bytes
     
     @Value("${aws.bedrock.max-tokens-per-request:100000}")
@@ -25,21 +26,31 @@ public class CodeChunkingService {
     
     public static class CodeChunk {
         private final String content;
+        private final String context;
         private final int startLine;
         private final int endLine;
         private final String fileName;
         private final int estimatedTokens;
         
         public CodeChunk(String content, int startLine, int endLine, String fileName) {
+            this(content, "", startLine, endLine, fileName);
+        }
+        
+        /**
+         * @param context declarations from outside the chunk it needs to be read on its own, or empty
+         */
+        public CodeChunk(String content, String context, int startLine, int endLine, String fileName) {
             this.content = content;
+            this.context = context;
             this.startLine = startLine;
             this.endLine = endLine;
             this.fileName = fileName;
-            this.estimatedTokens = (int) (content.length() / CHARS_PER_TOKEN);
+            this.estimatedTokens = (int) ((context.length() + content.length()) / CHARS_PER_TOKEN);
         }
         
         // Getters
         public String getContent() { return content; }
+        public String getContext() { return context; }
         public int getStartLine() { return startLine; }
         public int getEndLine() { return endLine; }
         public String getFileName() { return fileName; }
@@ -66,6 +77,7 @@ public class CodeChunkingService {
         }
         
         // Smart chunking: try to break at logical boundaries
+        ChunkContextExtractor contextExtractor = ChunkContextExtractor.forSource(code);
         String[] lines = code.split("\n");
         StringBuilder currentChunk = new StringBuilder();
         int currentStartLine = 1;
@@ -82,6 +94,7 @@ public class CodeChunkingService {
                 // Create chunk up to break point
                 chunks.add(new CodeChunk(
                     currentChunk.toString(),
+                    contextExtractor.contextAt(currentStartLine),
                     currentStartLine,
                     currentLine,
                     fileName
@@ -106,6 +119,7 @@ public class CodeChunkingService {
         if (currentChunk.length() > 0) {
             chunks.add(new CodeChunk(
                 currentChunk.toString(),
+                contextExtractor.contextAt(currentStartLine),
                 currentStartLine,
                 currentLine,
                 fileName
@@ -12,6 +12,7 @@ import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -35,6 +36,10 @@ public class DynamoDBAnalysisStorage {
     private DynamoDBMapper mapper;
     private ObjectMapper objectMapper;
     
+    // Present only when analysis.change-feed.type=local
+    @Autowired(required = false)
+    private LocalAnalysisChangeFeed localChangeFeed;
+    
     // Constructor injection for AmazonDynamoDB
     public DynamoDBAnalysisStorage(AmazonDynamoDB dynamoDB) {
         this.dynamoDB = dynamoDB;
@@ -106,7 +111,10 @@ public class DynamoDBAnalysisStorage {
                 .withTableName(tableName)
                 .withKeySchema(new KeySchemaElement("analysisId", KeyType.HASH))
                 .withAttributeDefinitions(new AttributeDefinition("analysisId", ScalarAttributeType.S))
-                .withBillingMode(BillingMode.PAY_PER_REQUEST); // On-demand billing
+                .withBillingMode(BillingMode.PAY_PER_REQUEST) // On-demand billing
+                .withStreamSpecification(new StreamSpecification()
+                    .withStreamEnabled(true)
+                    .withStreamViewType(StreamViewType.NEW_IMAGE)); // Change feed for completion events
             
             dynamoDB.createTable(createTableRequest);
             
@@ -142,6 +150,7 @@ public class DynamoDBAnalysisStorage {
             record.setTtl(System.currentTimeMillis() / 1000 + 604800); // 7 days TTL
             
             mapper.save(record);
+            publishLocalChange(record);
             logger.debug("Saved analysis status: {} - {}", analysisId, status);
             
         } catch (Exception e) {
@@ -164,6 +173,7 @@ public class DynamoDBAnalysisStorage {
             }
             
             mapper.save(record);
+            publishLocalChange(record);
             logger.debug("Saved analysis status with metadata: {} - {}", analysisId, status);
             
         } catch (Exception e) {
@@ -186,6 +196,7 @@ public class DynamoDBAnalysisStorage {
             }
             
             mapper.save(record);
+            publishLocalChange(record);
             logger.info("Saved analysis result: {} - {}", analysisId, status);
             
         } catch (Exception e) {
@@ -194,6 +205,13 @@ public class DynamoDBAnalysisStorage {
         }
     }
     
+    private void publishLocalChange(AnalysisRecord record) {
+        if (localChangeFeed != null) {
+            attachParsedResult(record);
+            localChangeFeed.recordWritten(record);
+        }
+    }
+    
     public AnalysisRecord getAnalysis(String analysisId) {
         try {
             // First, try to load using the standard mapper
@@ -207,36 +225,7 @@ public class DynamoDBAnalysisStorage {
                 record = manualLoadRecord(analysisId);
             }
             
-            if (record != null && record.getResultJson() != null) {
-                try {
-                    // Parse as Map first to handle field variations
-                    Map<String, Object> resultMap = objectMapper.readValue(record.getResultJson(), Map.class);
-                    
-                    // Handle "improvements" -> "suggestions" mapping
-                    if (resultMap.containsKey("improvements") && !resultMap.containsKey("suggestions")) {
-                        resultMap.put("suggestions", resultMap.get("improvements"));
-                        resultMap.remove("improvements");
-                    }
-                    
-                    // Convert back to JSON with corrected fields
-                    String normalizedJson = objectMapper.writeValueAsString(resultMap);
-                    
-                    // Now deserialize to CodeReviewResult
-                    CodeReviewResult result = objectMapper.readValue(normalizedJson, CodeReviewResult.class);
-                    record.setResult(result);
-                } catch (Exception e) {
-                    logger.error("Error parsing result JSON, trying direct parsing", e);
-                    // Fallback to direct parsing if normalization fails
-                    try {
-                        CodeReviewResult result = objectMapper.readValue(record.getResultJson(), CodeReviewResult.class);
-                        record.setResult(result);
-                    } catch (Exception e2) {
-                        logger.error("Failed to parse result JSON", e2);
-                        // Set result to null if parsing completely fails
-                        record.setResult(null);
-                    }
-                }
-            }
+            attachParsedResult(record);
             
             return record;
             
@@ -246,6 +235,45 @@ public class DynamoDBAnalysisStorage {
         }
     }
 
+    /**
+     * Parse the stored result JSON into a CodeReviewResult on the record.
+     * Shared by the blocking mapper path and the async reader.
+     */
+    void attachParsedResult(AnalysisRecord record) {
+        if (record == null || record.getResultJson() == null) {
+            return;
+        }
+
+        try {
+            // Parse as Map first to handle field variations
+            Map<String, Object> resultMap = objectMapper.readValue(record.getResultJson(), Map.class);
+            
+            // Handle "improvements" -> "suggestions" mapping
+            if (resultMap.containsKey("improvements") && !resultMap.containsKey("suggestions")) {
+                resultMap.put("suggestions", resultMap.get("improvements"));
+                resultMap.remove("improvements");
+            }
+            
+            // Convert back to JSON with corrected fields
+            String normalizedJson = objectMapper.writeValueAsString(resultMap);
+            
+            // Now deserialize to CodeReviewResult
+            CodeReviewResult result = objectMapper.readValue(normalizedJson, CodeReviewResult.class);
+            record.setResult(result);
+        } catch (Exception e) {
+            logger.error("Error parsing result JSON, trying direct parsing", e);
+            // Fallback to direct parsing if normalization fails
+            try {
+                CodeReviewResult result = objectMapper.readValue(record.getResultJson(), CodeReviewResult.class);
+                record.setResult(result);
+            } catch (Exception e2) {
+                logger.error("Failed to parse result JSON", e2);
+                // Set result to null if parsing completely fails
+                record.setResult(null);
+            }
+        }
+    }
+
     private AnalysisRecord manualLoadRecord(String analysisId) {
         try {
             // Use low-level DynamoDB API to get the item
@@ -259,7 +287,19 @@ public class DynamoDBAnalysisStorage {
                 return null;
             }
             
-            Map<String, AttributeValue> item = result.getItem();
+            return toRecord(analysisId, result.getItem());
+            
+        } catch (Exception e) {
+            logger.error("Error in manual load", e);
+            return null;
+        }
+    }
+
+    /**
+     * Map a raw item (GetItem result or stream image) to a record
+     */
+    AnalysisRecord toRecord(String analysisId, Map<String, AttributeValue> item) {
+        try {
             AnalysisRecord record = new AnalysisRecord();
             
             // Map basic fields
@@ -298,7 +338,7 @@ public class DynamoDBAnalysisStorage {
             return record;
             
         } catch (Exception e) {
-            logger.error("Error in manual load", e);
+            logger.error("Error mapping analysis item", e);
             return null;
         }
     }
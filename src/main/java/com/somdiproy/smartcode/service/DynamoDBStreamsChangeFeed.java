@@ -0,0 +1,234 @@
+package com.somdiproy.smartcode.service;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
+import com.amazonaws.services.dynamodbv2.model.ExpiredIteratorException;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.Shard;
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.TrimmedDataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Change feed that tails the analysis table's DynamoDB Stream.
+ *
+ * One background thread walks the stream's shards and publishes the new
+ * image of every INSERT/MODIFY to the {@link AnalysisEventBus}. Shards open
+ * at startup are read from LATEST (only changes from now on matter);
+ * child shards discovered later are read from TRIM_HORIZON so nothing is
+ * lost across a shard split. Requires the table's stream to be enabled
+ * with a NEW_IMAGE (or NEW_AND_OLD_IMAGES) view.
+ *
+ * @author Somdip Roy
+ */
+@Service
+@ConditionalOnProperty(name = "analysis.change-feed.type", havingValue = "dynamodb-streams")
+public class DynamoDBStreamsChangeFeed implements AnalysisChangeFeed {
+    private static final Logger logger = LoggerFactory.getLogger(DynamoDBStreamsChangeFeed.class);
+
+    @Value("${aws.dynamodb.table-name:code-analysis-results}")
+    private String tableName;
+
+    @Value("${analysis.change-feed.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${analysis.change-feed.shard-refresh-ms:30000}")
+    private long shardRefreshMs;
+
+    private final AmazonDynamoDB dynamoDB;
+    private final AmazonDynamoDBStreams streams;
+    private final DynamoDBAnalysisStorage dynamoDBStorage;
+    private final AnalysisEventBus eventBus;
+
+    // shardId -> current iterator; last sequence number per shard for iterator recovery
+    private final Map<String, String> shardIterators = new HashMap<>();
+    private final Map<String, String> lastSequenceNumbers = new HashMap<>();
+
+    private String streamArn;
+    private volatile boolean running;
+    private Thread worker;
+
+    public DynamoDBStreamsChangeFeed(AmazonDynamoDB dynamoDB, AmazonDynamoDBStreams streams,
+                                     DynamoDBAnalysisStorage dynamoDBStorage, AnalysisEventBus eventBus) {
+        this.dynamoDB = dynamoDB;
+        this.streams = streams;
+        this.dynamoDBStorage = dynamoDBStorage;
+        this.eventBus = eventBus;
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            streamArn = dynamoDB.describeTable(tableName).getTable().getLatestStreamArn();
+        } catch (Exception e) {
+            logger.error("Could not describe table {} for change feed", tableName, e);
+        }
+
+        if (streamArn == null) {
+            logger.warn("No stream enabled on table {} - change feed inactive, consumers will poll", tableName);
+            return;
+        }
+
+        running = true;
+        worker = new Thread(this::run, "dynamodb-streams-feed");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("DynamoDB Streams change feed started on {}", streamArn);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return running;
+    }
+
+    private void run() {
+        long lastShardRefresh = 0;
+        boolean initialDiscovery = true;
+
+        while (running) {
+            try {
+                if (System.currentTimeMillis() - lastShardRefresh >= shardRefreshMs) {
+                    discoverShards(initialDiscovery);
+                    initialDiscovery = false;
+                    lastShardRefresh = System.currentTimeMillis();
+                }
+
+                int published = 0;
+                for (String shardId : shardIterators.keySet().toArray(new String[0])) {
+                    published += pollShard(shardId);
+                }
+
+                if (published == 0) {
+                    Thread.sleep(pollIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Change feed poll failed, retrying", e);
+                try {
+                    Thread.sleep(Math.max(pollIntervalMs, 5000));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void discoverShards(boolean initialDiscovery) {
+        String lastShardId = null;
+        do {
+            StreamDescription description = streams.describeStream(new DescribeStreamRequest()
+                    .withStreamArn(streamArn)
+                    .withExclusiveStartShardId(lastShardId))
+                    .getStreamDescription();
+
+            for (Shard shard : description.getShards()) {
+                String shardId = shard.getShardId();
+                if (shardIterators.containsKey(shardId) || lastSequenceNumbers.containsKey(shardId)) {
+                    continue;
+                }
+                boolean open = shard.getSequenceNumberRange().getEndingSequenceNumber() == null;
+                if (initialDiscovery && !open) {
+                    // History from before startup is not needed
+                    lastSequenceNumbers.put(shardId, "");
+                    continue;
+                }
+                shardIterators.put(shardId, getIterator(shardId,
+                        initialDiscovery ? ShardIteratorType.LATEST : ShardIteratorType.TRIM_HORIZON, null));
+            }
+
+            lastShardId = description.getLastEvaluatedShardId();
+        } while (lastShardId != null);
+    }
+
+    private int pollShard(String shardId) {
+        String iterator = shardIterators.get(shardId);
+        GetRecordsResult result;
+        try {
+            result = streams.getRecords(new GetRecordsRequest().withShardIterator(iterator).withLimit(100));
+        } catch (ExpiredIteratorException e) {
+            String sequenceNumber = lastSequenceNumbers.get(shardId);
+            shardIterators.put(shardId, sequenceNumber != null && !sequenceNumber.isEmpty()
+                    ? getIterator(shardId, ShardIteratorType.AFTER_SEQUENCE_NUMBER, sequenceNumber)
+                    : getIterator(shardId, ShardIteratorType.LATEST, null));
+            return 0;
+        } catch (TrimmedDataAccessException e) {
+            shardIterators.put(shardId, getIterator(shardId, ShardIteratorType.LATEST, null));
+            return 0;
+        }
+
+        int published = 0;
+        for (Record record : result.getRecords()) {
+            lastSequenceNumbers.put(shardId, record.getDynamodb().getSequenceNumber());
+            if (publish(record)) {
+                published++;
+            }
+        }
+
+        if (result.getNextShardIterator() == null) {
+            // Shard closed; its children are picked up on the next refresh
+            shardIterators.remove(shardId);
+            lastSequenceNumbers.putIfAbsent(shardId, "");
+        } else {
+            shardIterators.put(shardId, result.getNextShardIterator());
+        }
+        return published;
+    }
+
+    private boolean publish(Record record) {
+        if ("REMOVE".equals(record.getEventName())) {
+            return false;
+        }
+        Map<String, AttributeValue> image = record.getDynamodb().getNewImage();
+        if (image == null || !image.containsKey("analysisId")) {
+            return false;
+        }
+
+        String analysisId = image.get("analysisId").getS();
+        DynamoDBAnalysisStorage.AnalysisRecord analysisRecord = dynamoDBStorage.toRecord(analysisId, image);
+        if (analysisRecord == null) {
+            return false;
+        }
+        dynamoDBStorage.attachParsedResult(analysisRecord);
+
+        logger.debug("Change feed: analysis {} -> {}", analysisId, analysisRecord.getStatus());
+        eventBus.publish(new AnalysisChangeEvent(analysisId, analysisRecord));
+        return true;
+    }
+
+    private String getIterator(String shardId, ShardIteratorType type, String sequenceNumber) {
+        GetShardIteratorRequest request = new GetShardIteratorRequest()
+                .withStreamArn(streamArn)
+                .withShardId(shardId)
+                .withShardIteratorType(type);
+        if (sequenceNumber != null) {
+            request.withSequenceNumber(sequenceNumber);
+        }
+        return streams.getShardIterator(request).getShardIterator();
+    }
+}
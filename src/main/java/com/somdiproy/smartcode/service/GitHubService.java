@@ -157,11 +157,13 @@ public class GitHubService {
     
     
     /**
-     * Get list of changed files in a pull request
+     * Get list of changed files in a pull request, with each file's
+     * unified-diff patch when GitHub includes one (it omits it for binary
+     * and very large diffs)
      */
     public List<Map<String, String>> getPullRequestFiles(String repoFullName, int prNumber) {
         try {
-            String url = String.format("%s/repos/%s/pulls/%d/files", 
+            String url = String.format("%s/repos/%s/pulls/%d/files?per_page=100", 
                 githubApiBaseUrl, repoFullName, prNumber);
             
             HttpHeaders headers = new HttpHeaders();
@@ -186,6 +188,9 @@ public class GitHubService {
                     fileInfo.put("additions", String.valueOf(file.path("additions").asInt()));
                     fileInfo.put("deletions", String.valueOf(file.path("deletions").asInt()));
                     fileInfo.put("changes", String.valueOf(file.path("changes").asInt()));
+                    if (file.hasNonNull("patch")) {
+                        fileInfo.put("patch", file.path("patch").asText());
+                    }
                     fileList.add(fileInfo);
                 }
                 
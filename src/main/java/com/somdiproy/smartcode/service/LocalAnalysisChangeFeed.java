@@ -0,0 +1,78 @@
+package com.somdiproy.smartcode.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * In-process stand-in for DynamoDB Streams.
+ *
+ * {@link DynamoDBAnalysisStorage} offers every record it writes; a single
+ * dispatcher thread delivers them to the bus in write order, asynchronously,
+ * the way a stream consumer would. Used for local runs and tests where the
+ * Lambda's writes go through this app.
+ *
+ * @author Somdip Roy
+ */
+@Service
+@ConditionalOnProperty(name = "analysis.change-feed.type", havingValue = "local")
+public class LocalAnalysisChangeFeed implements AnalysisChangeFeed {
+    private static final Logger logger = LoggerFactory.getLogger(LocalAnalysisChangeFeed.class);
+
+    private final AnalysisEventBus eventBus;
+    private final BlockingQueue<AnalysisChangeEvent> pending = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    public LocalAnalysisChangeFeed(AnalysisEventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatcher = new Thread(this::dispatch, "analysis-change-feed");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        logger.info("Local analysis change feed started");
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return running;
+    }
+
+    /**
+     * Record a write, as a stream would observe it
+     */
+    public void recordWritten(DynamoDBAnalysisStorage.AnalysisRecord record) {
+        if (record != null && record.getAnalysisId() != null) {
+            pending.offer(new AnalysisChangeEvent(record.getAnalysisId(), record));
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                eventBus.publish(pending.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
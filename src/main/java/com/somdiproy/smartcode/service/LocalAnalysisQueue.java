@@ -0,0 +1,279 @@
+package com.somdiproy.smartcode.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Durable in-JVM replacement for the SQS analysis queue (analysis.pipeline.mode=local).
+ *
+ * Each message is a JSON file. It lives in ready/ until it is due, moves to
+ * inflight/ while a worker holds it, and is deleted on ack. Failed messages
+ * go back to ready/ with a backoff until they run out of attempts, then land
+ * in dlq/. On startup anything left in inflight/ (a crash mid-analysis) is
+ * returned to ready/, so queued work survives restarts.
+ *
+ * @author Somdip Roy
+ */
+@Service
+@ConditionalOnProperty(name = "analysis.pipeline.mode", havingValue = "local")
+public class LocalAnalysisQueue implements AnalysisQueue {
+    private static final Logger logger = LoggerFactory.getLogger(LocalAnalysisQueue.class);
+
+    @Value("${analysis.local.queue-dir:${java.io.tmpdir}/smartcode-queue}")
+    private String queueDir;
+
+    @Value("${analysis.local.max-attempts:3}")
+    private int maxAttempts;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DelayQueue<DueMessage> due = new DelayQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private Path readyDir;
+    private Path inflightDir;
+    private Path dlqDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path root = Paths.get(queueDir);
+        readyDir = Files.createDirectories(root.resolve("ready"));
+        inflightDir = Files.createDirectories(root.resolve("inflight"));
+        dlqDir = Files.createDirectories(root.resolve("dlq"));
+
+        // Messages a previous run was working on are retried
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inflightDir, "*.json")) {
+            for (Path file : files) {
+                Files.move(file, readyDir.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+
+        int recovered = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(readyDir, "*.json")) {
+            for (Path file : files) {
+                LocalMessage message;
+                try {
+                    message = objectMapper.readValue(file.toFile(), LocalMessage.class);
+                } catch (IOException e) {
+                    // One bad file must not keep the application from starting
+                    logger.warn("Moving unreadable local message {} to the DLQ: {}", file.getFileName(), e.getMessage());
+                    deadLetter(file);
+                    continue;
+                }
+                due.add(new DueMessage(message.getId(), message.getVisibleAt()));
+                recovered++;
+            }
+        }
+
+        logger.info("Local analysis queue at {} - {} message(s) pending", root.toAbsolutePath(), recovered);
+    }
+
+    @Override
+    public String submitAnalysisRequest(String analysisId, String code, String language, Map<String, Object> metadata) {
+        LocalMessage message = new LocalMessage();
+        message.setId(System.currentTimeMillis() + "-" + UUID.randomUUID());
+        message.setAnalysisId(analysisId);
+        message.setCode(code);
+        message.setLanguage(language);
+        message.setMetadata(metadata);
+        message.setEnqueuedAt(System.currentTimeMillis());
+        // Admission control may have scheduled the start for later
+        Object admissionDelay = metadata != null ? metadata.get("admissionDelaySeconds") : null;
+        long delayMs = admissionDelay instanceof Number ? ((Number) admissionDelay).longValue() * 1000 : 0;
+        message.setVisibleAt(System.currentTimeMillis() + delayMs);
+
+        try {
+            write(readyDir, message);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to persist analysis request " + analysisId, e);
+        }
+        due.add(new DueMessage(message.getId(), message.getVisibleAt()));
+
+        logger.info("Queued analysis {} locally as {}", analysisId, message.getId());
+        return message.getId();
+    }
+
+    @Override
+    public CompletableFuture<String> submitAnalysisRequestAsync(String analysisId, String code, String language,
+                                                                Map<String, Object> metadata) {
+        try {
+            return CompletableFuture.completedFuture(submitAnalysisRequest(analysisId, code, language, metadata));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return due.size() + inFlight.get();
+    }
+
+    /**
+     * Block until a message is due and claim it
+     */
+    public LocalMessage take() throws InterruptedException {
+        while (true) {
+            DueMessage next = due.take();
+            Path source = readyDir.resolve(next.id + ".json");
+            Path claimed = inflightDir.resolve(next.id + ".json");
+            try {
+                Files.move(source, claimed, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("Skipping local message {} that could not be claimed: {}", next.id, e.getMessage());
+                continue;
+            }
+            try {
+                LocalMessage message = objectMapper.readValue(claimed.toFile(), LocalMessage.class);
+                inFlight.incrementAndGet();
+                return message;
+            } catch (IOException e) {
+                logger.warn("Moving unreadable local message {} to the DLQ: {}", next.id, e.getMessage());
+                deadLetter(claimed);
+            }
+        }
+    }
+
+    /**
+     * Message processed - remove it for good
+     */
+    public void ack(LocalMessage message) {
+        try {
+            Files.deleteIfExists(inflightDir.resolve(message.getId() + ".json"));
+        } catch (IOException e) {
+            logger.warn("Failed to delete processed message {}", message.getId(), e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Message failed. Returns true if it will be retried after the backoff,
+     * false if it was moved to the dead-letter directory.
+     */
+    public boolean nack(LocalMessage message, String error, long backoffMs) {
+        message.setAttempts(message.getAttempts() + 1);
+        message.setLastError(error);
+        Path claimed = inflightDir.resolve(message.getId() + ".json");
+
+        try {
+            if (message.getAttempts() >= maxAttempts) {
+                write(dlqDir, message);
+                Files.deleteIfExists(claimed);
+                logger.error("Analysis {} moved to local DLQ after {} attempts: {}",
+                        message.getAnalysisId(), message.getAttempts(), error);
+                return false;
+            }
+
+            message.setVisibleAt(System.currentTimeMillis() + backoffMs);
+            write(readyDir, message);
+            Files.deleteIfExists(claimed);
+            due.add(new DueMessage(message.getId(), message.getVisibleAt()));
+            return true;
+
+        } catch (IOException e) {
+            // Leave it in inflight/; it is recovered on the next start
+            logger.error("Failed to requeue local message {}", message.getId(), e);
+            return false;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void deadLetter(Path file) {
+        try {
+            Files.move(file, dlqDir.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.error("Failed to move {} to the local DLQ", file.getFileName(), e);
+        }
+    }
+
+    /**
+     * Write via a temp file and atomic rename so readers never see half a message
+     */
+    private void write(Path dir, LocalMessage message) throws IOException {
+        Path temp = dir.resolve(message.getId() + ".tmp");
+        objectMapper.writeValue(temp.toFile(), message);
+        Files.move(temp, dir.resolve(message.getId() + ".json"),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class DueMessage implements Delayed {
+        private final String id;
+        private final long visibleAt;
+
+        DueMessage(String id, long visibleAt) {
+            this.id = id;
+            this.visibleAt = visibleAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(visibleAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(visibleAt, ((DueMessage) other).visibleAt);
+        }
+    }
+
+    /**
+     * On-disk message format
+     */
+    public static class LocalMessage {
+        private String id;
+        private String analysisId;
+        private String code;
+        private String language;
+        private Map<String, Object> metadata;
+        private int attempts;
+        private long enqueuedAt;
+        private long visibleAt;
+        private String lastError;
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+
+        public String getAnalysisId() { return analysisId; }
+        public void setAnalysisId(String analysisId) { this.analysisId = analysisId; }
+
+        public String getCode() { return code; }
+        public void setCode(String code) { this.code = code; }
+
+        public String getLanguage() { return language; }
+        public void setLanguage(String language) { this.language = language; }
+
+        public Map<String, Object> getMetadata() { return metadata; }
+        public void setMetadata(Map<String, Object> metadata) { this.metadata = metadata; }
+
+        public int getAttempts() { return attempts; }
+        public void setAttempts(int attempts) { this.attempts = attempts; }
+
+        public long getEnqueuedAt() { return enqueuedAt; }
+        public void setEnqueuedAt(long enqueuedAt) { this.enqueuedAt = enqueuedAt; }
+
+        public long getVisibleAt() { return visibleAt; }
+        public void setVisibleAt(long visibleAt) { this.visibleAt = visibleAt; }
+
+        public String getLastError() { return lastError; }
+        public void setLastError(String lastError) { this.lastError = lastError; }
+    }
+}
@@ -0,0 +1,281 @@
+package com.somdiproy.smartcode.service;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.somdiproy.smartcode.lambda.BedrockAnalysisEngine;
+import com.somdiproy.smartcode.lambda.BedrockQuota;
+import com.somdiproy.smartcode.lambda.FileChunkCheckpointStore;
+import com.somdiproy.smartcode.lambda.HedgedBedrockInvoker;
+import com.somdiproy.smartcode.lambda.InMemoryTokenBucketStore;
+import com.somdiproy.smartcode.lambda.ModelRouter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process worker pool for analysis.pipeline.mode=local.
+ *
+ * Drains {@link LocalAnalysisQueue} and runs the same {@link BedrockAnalysisEngine}
+ * the Lambda uses, persisting status and results through
+ * {@link DynamoDBAnalysisStorage}. Retries follow the queue's attempt limit
+ * with exponential backoff; the last failure marks the analysis FAILED.
+ * Chunk results are checkpointed under the queue directory, so a retry only
+ * re-runs the chunks that had not finished.
+ *
+ * Completed results carry queuedAt, processingStartedAt and completedAt
+ * (epoch ms) in their metadata so queue wait and processing time can be
+ * told apart end to end.
+ *
+ * Models are picked per analysis by a {@link ModelRouter} configured from
+ * aws.bedrock.router.*; per-tier calls, throttles, latency and estimated
+ * cost are published as bedrock.router.* meters tagged by tier. With
+ * aws.bedrock.hedging.enabled, calls slower than the p95 of their model and
+ * size class are hedged (see {@link HedgedBedrockInvoker}), counted by
+ * bedrock.hedge.*.
+ *
+ * @author Somdip Roy
+ */
+@Service
+@ConditionalOnProperty(name = "analysis.pipeline.mode", havingValue = "local")
+public class LocalAnalysisWorker {
+    private static final Logger logger = LoggerFactory.getLogger(LocalAnalysisWorker.class);
+
+    @Value("${analysis.local.workers:2}")
+    private int workerCount;
+
+    @Value("${analysis.local.retry-backoff-ms:2000}")
+    private long retryBackoffMs;
+
+    @Value("${analysis.local.queue-dir:${java.io.tmpdir}/smartcode-queue}")
+    private String queueDir;
+
+    @Value("${aws.bedrock.quota.requests-per-minute:0}")
+    private long quotaRequestsPerMinute;
+
+    @Value("${aws.bedrock.quota.tokens-per-minute:0}")
+    private long quotaTokensPerMinute;
+
+    @Value("${aws.bedrock.router.fast-model-id:${aws.bedrock.model-id:us.amazon.nova-premier-v1:0}}")
+    private String fastModelId;
+
+    @Value("${aws.bedrock.router.standard-model-id:${aws.bedrock.model-id:us.amazon.nova-premier-v1:0}}")
+    private String standardModelId;
+
+    @Value("${aws.bedrock.router.premium-model-id:${aws.bedrock.model-id:us.amazon.nova-premier-v1:0}}")
+    private String premiumModelId;
+
+    @Value("${aws.bedrock.router.small-input-chars:4000}")
+    private int smallInputChars;
+
+    @Value("${aws.bedrock.router.large-input-chars:50000}")
+    private int largeInputChars;
+
+    @Value("${aws.bedrock.router.throttle-cooldown-ms:30000}")
+    private long throttleCooldownMs;
+
+    @Value("${aws.bedrock.max-chunk-size:30000}")
+    private int maxChunkSize;
+
+    @Value("${aws.bedrock.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${aws.bedrock.hedging.region:}")
+    private String hedgeRegion;
+
+    @Value("${aws.bedrock.hedging.profile-prefix:}")
+    private String hedgeProfilePrefix;
+
+    @Value("${aws.bedrock.hedging.budget-percent:5}")
+    private double hedgeBudgetPercent;
+
+    @Value("${aws.bedrock.hedging.min-delay-ms:2000}")
+    private long hedgeMinDelayMs;
+
+    private final LocalAnalysisQueue queue;
+    private final DynamoDBAnalysisStorage dynamoDBStorage;
+    private final BedrockRuntimeClient bedrockClient;
+    private final MeterRegistry meterRegistry;
+    private final List<Thread> workers = new ArrayList<>();
+    // Pipeline timestamps of the message the current worker thread is processing
+    private final ThreadLocal<Map<String, Object>> currentTimings = new ThreadLocal<>();
+    private BedrockAnalysisEngine engine;
+    private volatile boolean running;
+
+    public LocalAnalysisWorker(LocalAnalysisQueue queue, DynamoDBAnalysisStorage dynamoDBStorage,
+                               BedrockRuntimeClient bedrockClient, MeterRegistry meterRegistry) {
+        this.queue = queue;
+        this.dynamoDBStorage = dynamoDBStorage;
+        this.bedrockClient = bedrockClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        ModelRouter router = new ModelRouter(fastModelId, standardModelId, premiumModelId,
+                smallInputChars, largeInputChars, throttleCooldownMs);
+        registerRouterMetrics(router);
+
+        // Retries resume from the first chunk without a checkpoint; all workers share one quota
+        BedrockQuota quota = new BedrockQuota(new InMemoryTokenBucketStore(),
+                quotaRequestsPerMinute, quotaTokensPerMinute);
+        engine = new BedrockAnalysisEngine(createInvoker(quota), router, this::writeStatus,
+                new FileChunkCheckpointStore(Paths.get(queueDir, "checkpoints")), quota, maxChunkSize);
+        running = true;
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::run, "local-analysis-worker-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        logger.info("Started {} local analysis worker(s) using models {} / {} / {}",
+                workerCount, fastModelId, standardModelId, premiumModelId);
+    }
+
+    private HedgedBedrockInvoker createInvoker(BedrockQuota quota) {
+        if (!hedgingEnabled) {
+            return HedgedBedrockInvoker.direct(bedrockClient);
+        }
+        if (hedgeRegion.isEmpty() && hedgeProfilePrefix.isEmpty()) {
+            // A hedge would be the same call to the same place
+            logger.warn("aws.bedrock.hedging.enabled needs aws.bedrock.hedging.region or "
+                    + "aws.bedrock.hedging.profile-prefix; hedging disabled");
+            return HedgedBedrockInvoker.direct(bedrockClient);
+        }
+        BedrockRuntimeClient hedgeClient = hedgeRegion.isEmpty() ? null
+                : HedgedBedrockInvoker.regionalClient(bedrockClient, hedgeRegion);
+        HedgedBedrockInvoker invoker = new HedgedBedrockInvoker(bedrockClient, hedgeClient, hedgeProfilePrefix,
+                quota, hedgeBudgetPercent / 100.0, hedgeMinDelayMs);
+        FunctionCounter.builder("bedrock.hedge.requests", invoker, HedgedBedrockInvoker::getHedges)
+                .register(meterRegistry);
+        FunctionCounter.builder("bedrock.hedge.wins", invoker, HedgedBedrockInvoker::getHedgeWins)
+                .description("Hedged requests that answered before the original")
+                .register(meterRegistry);
+        FunctionCounter.builder("bedrock.hedge.tokens", invoker, HedgedBedrockInvoker::getHedgeTokens)
+                .description("Estimated tokens charged to the Bedrock quota for hedges")
+                .register(meterRegistry);
+        logger.info("Bedrock hedging enabled (region {}, budget {}%)",
+                hedgeRegion.isEmpty() ? "same" : hedgeRegion, hedgeBudgetPercent);
+        return invoker;
+    }
+
+    private void registerRouterMetrics(ModelRouter router) {
+        for (ModelRouter.Tier tier : ModelRouter.Tier.values()) {
+            ModelRouter.TierStats stats = router.getTierStats(tier);
+            String tag = tier.name().toLowerCase();
+            FunctionCounter.builder("bedrock.router.calls", stats, ModelRouter.TierStats::getCalls)
+                    .tag("tier", tag).register(meterRegistry);
+            FunctionCounter.builder("bedrock.router.throttles", stats, ModelRouter.TierStats::getThrottles)
+                    .tag("tier", tag).register(meterRegistry);
+            FunctionCounter.builder("bedrock.router.cost.usd", stats, ModelRouter.TierStats::getEstimatedCostUsd)
+                    .description("Estimated on-demand cost at list prices")
+                    .tag("tier", tag).register(meterRegistry);
+            Gauge.builder("bedrock.router.latency.avg", stats, ModelRouter.TierStats::getAverageLatencyMs)
+                    .baseUnit("milliseconds")
+                    .tag("tier", tag).register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void run() {
+        while (running) {
+            LocalAnalysisQueue.LocalMessage message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            process(message);
+        }
+    }
+
+    private void process(LocalAnalysisQueue.LocalMessage message) {
+        String analysisId = message.getAnalysisId();
+        Map<String, Object> timings = new LinkedHashMap<>();
+        timings.put("queuedAt", message.getEnqueuedAt());
+        timings.put("processingStartedAt", System.currentTimeMillis());
+        timings.put("attempts", message.getAttempts() + 1);
+        currentTimings.set(timings);
+
+        try {
+            writeStatus(analysisId, "PROCESSING", "Analysis in progress", null);
+            Object depth = message.getMetadata() != null ? message.getMetadata().get("depth") : null;
+            engine.analyze(analysisId, message.getCode(), message.getLanguage(),
+                    depth != null ? depth.toString() : null, lambdaLogger);
+            queue.ack(message);
+
+        } catch (Exception e) {
+            logger.error("Local analysis {} failed (attempt {})", analysisId, message.getAttempts() + 1, e);
+            long backoff = retryBackoffMs << Math.min(message.getAttempts(), 6);
+            if (!queue.nack(message, e.getMessage(), backoff)) {
+                writeStatus(analysisId, "FAILED", e.getMessage(), null);
+            }
+        } finally {
+            currentTimings.remove();
+        }
+    }
+
+    private void writeStatus(String analysisId, String status, String message, Map<String, Object> result) {
+        if ("COMPLETED".equals(status) && result != null) {
+            result = withTimings(result);
+        }
+        try {
+            dynamoDBStorage.saveAnalysisStatusWithMetadata(analysisId, status, message, result);
+        } catch (Exception e) {
+            // Same policy as the Lambda: a status write failure does not fail the analysis
+            logger.error("Failed to store status {} for analysis {}", status, analysisId, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> withTimings(Map<String, Object> result) {
+        Map<String, Object> timings = currentTimings.get();
+        if (timings == null) {
+            return result;
+        }
+
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        if (result.get("metadata") instanceof Map) {
+            metadata.putAll((Map<String, Object>) result.get("metadata"));
+        }
+        metadata.putAll(timings);
+        metadata.put("completedAt", System.currentTimeMillis());
+
+        Map<String, Object> stamped = new LinkedHashMap<>(result);
+        stamped.put("metadata", metadata);
+        return stamped;
+    }
+
+    // Routes the engine's Lambda-style logging to SLF4J
+    private final LambdaLogger lambdaLogger = new LambdaLogger() {
+        @Override
+        public void log(String message) {
+            logger.info(message);
+        }
+
+        @Override
+        public void log(byte[] message) {
+            logger.info(new String(message, StandardCharsets.UTF_8));
+        }
+    };
+}
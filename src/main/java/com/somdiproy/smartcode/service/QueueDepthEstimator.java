@@ -0,0 +1,142 @@
+package com.somdiproy.smartcode.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue depth estimate for the analysis queue.
+ *
+ * A background sampler feeds in SQS's approximate counts; between samples
+ * the estimate is moved by local counters (messages this instance sent,
+ * and those of them it has seen finish). Counters are monotonic and each
+ * sample remembers where they stood when it was taken, so a send that races
+ * with a sample is counted exactly once. A completion only counts when its
+ * message was sent by this instance after the current sample; anything
+ * older is already reflected in the sample, or was never added locally.
+ *
+ * @author Somdip Roy
+ */
+public class QueueDepthEstimator {
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong failedSends = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+    // Analyses this instance sent and has not seen finish, to their enqueue position
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    private volatile Sample sample;
+
+    /**
+     * Mark the counter positions before issuing a GetQueueAttributes call
+     */
+    public long[] beginSample() {
+        return new long[] { enqueued.get(), finished.get(), failedSends.get() };
+    }
+
+    /**
+     * Install a sample taken after {@link #beginSample()} returned the given marks
+     */
+    public void applySample(long[] marks, int visible, int inFlight, int delayed, Map<String, String> attributes) {
+        this.sample = new Sample(visible, inFlight, delayed, marks[0], marks[1], marks[2],
+                System.currentTimeMillis(), attributes != null ? attributes : Collections.emptyMap());
+        // Sent before the sample; their completions can no longer count
+        pending.values().removeIf(position -> position <= marks[0]);
+    }
+
+    public void recordEnqueue(String analysisId) {
+        pending.put(analysisId, enqueued.incrementAndGet());
+    }
+
+    /**
+     * Undo a {@link #recordEnqueue(String)} whose send failed
+     */
+    public void recordEnqueueFailed(String analysisId) {
+        pending.remove(analysisId);
+        failedSends.incrementAndGet();
+    }
+
+    /**
+     * Count a completion, if its message is one the estimate added since the sample
+     */
+    public void recordFinished(String analysisId) {
+        Long position = pending.remove(analysisId);
+        Sample current = sample;
+        if (position != null && (current == null || position > current.enqueuedMark)) {
+            finished.incrementAndGet();
+        }
+    }
+
+    public boolean hasSample() {
+        return sample != null;
+    }
+
+    public long getSampleAgeMs() {
+        Sample current = sample;
+        return current != null ? System.currentTimeMillis() - current.sampledAt : -1;
+    }
+
+    /**
+     * Messages sent since the sample are counted as delayed (every send carries a delay)
+     */
+    public int getDelayed() {
+        Sample current = sample;
+        long base = current != null ? current.delayed : 0;
+        return (int) Math.max(0, base + sentSince(current));
+    }
+
+    public int getVisible() {
+        Sample current = sample;
+        return current != null ? current.visible : 0;
+    }
+
+    public int getInFlight() {
+        Sample current = sample;
+        return current != null ? current.inFlight : 0;
+    }
+
+    /**
+     * Estimated total = sampled total + local sends - local completions since the sample
+     */
+    public int getTotal() {
+        Sample current = sample;
+        long base = current != null ? (long) current.visible + current.inFlight + current.delayed : 0;
+        long done = finished.get() - (current != null ? current.finishedMark : 0);
+        return (int) Math.max(0, base + sentSince(current) - done);
+    }
+
+    private long sentSince(Sample current) {
+        long sent = enqueued.get() - (current != null ? current.enqueuedMark : 0);
+        long failed = failedSends.get() - (current != null ? current.failedMark : 0);
+        return sent - failed;
+    }
+
+    public Map<String, String> getSampledAttributes() {
+        Sample current = sample;
+        return current != null ? current.attributes : Collections.emptyMap();
+    }
+
+    private static class Sample {
+        private final int visible;
+        private final int inFlight;
+        private final int delayed;
+        private final long enqueuedMark;
+        private final long finishedMark;
+        private final long failedMark;
+        private final long sampledAt;
+        private final Map<String, String> attributes;
+
+        Sample(int visible, int inFlight, int delayed, long enqueuedMark, long finishedMark, long failedMark,
+               long sampledAt, Map<String, String> attributes) {
+            this.visible = visible;
+            this.inFlight = inFlight;
+            this.delayed = delayed;
+            this.enqueuedMark = enqueuedMark;
+            this.finishedMark = finishedMark;
+            this.failedMark = failedMark;
+            this.sampledAt = sampledAt;
+            this.attributes = attributes;
+        }
+    }
+}
@@ -4,9 +4,12 @@ import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
 import com.amazonaws.services.sqs.model.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
@@ -14,9 +17,12 @@ import jakarta.annotation.PreDestroy;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
-public class SQSBedrockService {
+@ConditionalOnProperty(name = "analysis.pipeline.mode", havingValue = "aws", matchIfMissing = true)
+public class SQSBedrockService implements AnalysisQueue {
     private static final Logger logger = LoggerFactory.getLogger(SQSBedrockService.class);
     
     @Value("${aws.sqs.queue-name:bedrock-analysis-queue}")
@@ -46,10 +52,21 @@ public class SQSBedrockService {
     private ObjectMapper objectMapper;
     private String queueUrl;
     private final S3Service s3Service;
+    private final QueueDepthEstimator depthEstimator = new QueueDepthEstimator();
+    private final MeterRegistry meterRegistry;
+    private SqsSendBuffer sendBuffer;
+    
+    // Client-side batching of sends
+    @Value("${analysis.queue.batch.linger-ms:20}")
+    private long batchLingerMs;
+    
+    @Value("${analysis.queue.batch.max-concurrent-batches:4}")
+    private int maxConcurrentBatches;
 
-    public SQSBedrockService(AmazonSQS sqs, S3Service s3Service) {
+    public SQSBedrockService(AmazonSQS sqs, S3Service s3Service, MeterRegistry meterRegistry) {
         this.sqs = sqs;
         this.s3Service = s3Service;
+        this.meterRegistry = meterRegistry;
         this.objectMapper = new ObjectMapper();
     }
 
@@ -78,6 +95,11 @@ public class SQSBedrockService {
                 logger.info("Created new SQS queue: {}", queueUrl);
             }
             
+            // Seed the depth estimate; later samples run in the background
+            sampleQueueDepth();
+            
+            this.sendBuffer = new SqsSendBuffer(sqs, queueUrl, batchLingerMs, maxConcurrentBatches, meterRegistry);
+            
         } catch (Exception e) {
             logger.error("Failed to initialize SQS service", e);
             throw new RuntimeException("Failed to initialize SQS service", e);
@@ -101,58 +123,106 @@ public class SQSBedrockService {
 
     @PreDestroy
     public void cleanup() {
+        if (sendBuffer != null) {
+            sendBuffer.shutdown();
+        }
         logger.info("SQS service cleanup completed");
     }
     
     /**
-     * Calculate dynamic delay based on queue depth and rate limits
+     * Refresh the queue depth sample in the background so submissions never
+     * wait on GetQueueAttributes
      */
-    private int calculateMessageDelay() {
+    @Scheduled(fixedDelayString = "${analysis.queue.depth.sample-interval-ms:15000}",
+               initialDelayString = "${analysis.queue.depth.sample-interval-ms:15000}")
+    public void sampleQueueDepth() {
+        if (queueUrl == null) {
+            return;
+        }
         try {
-            // Get current queue metrics
-            GetQueueAttributesRequest getAttrsRequest = new GetQueueAttributesRequest()
+            long[] marks = depthEstimator.beginSample();
+            
+            GetQueueAttributesRequest request = new GetQueueAttributesRequest()
                 .withQueueUrl(queueUrl)
-                .withAttributeNames("ApproximateNumberOfMessages", 
-                                  "ApproximateNumberOfMessagesNotVisible",
-                                  "ApproximateNumberOfMessagesDelayed");
+                .withAttributeNames("All");
             
-            GetQueueAttributesResult attrsResult = sqs.getQueueAttributes(getAttrsRequest);
-            Map<String, String> attrs = attrsResult.getAttributes();
+            Map<String, String> attrs = sqs.getQueueAttributes(request).getAttributes();
             
             int visibleMessages = Integer.parseInt(attrs.getOrDefault("ApproximateNumberOfMessages", "0"));
             int invisibleMessages = Integer.parseInt(attrs.getOrDefault("ApproximateNumberOfMessagesNotVisible", "0"));
             int delayedMessages = Integer.parseInt(attrs.getOrDefault("ApproximateNumberOfMessagesDelayed", "0"));
             
-            int totalMessages = visibleMessages + invisibleMessages + delayedMessages;
+            depthEstimator.applySample(marks, visibleMessages, invisibleMessages, delayedMessages, attrs);
             
-            // Calculate dynamic delay
-            // Base delay + (number of messages * delay per message)
-            int calculatedDelay = baseDelaySeconds + (totalMessages * delayPerMessageSeconds);
-            
-            // Ensure delay doesn't exceed maximum
-            int finalDelay = Math.min(calculatedDelay, maxDelaySeconds);
-            
-            // More conservative interval - at least 35 seconds between messages
-            int minIntervalSeconds = Math.max(35, 60 / bedrockRateLimitPerMinute);
-            if (invisibleMessages > 0 && finalDelay < minIntervalSeconds) {
-                finalDelay = minIntervalSeconds;
-            }
-            
-            logger.info("Queue depth - Visible: {}, In-flight: {}, Delayed: {}, Total: {} => Delay: {}s",
-                visibleMessages, invisibleMessages, delayedMessages, totalMessages, finalDelay);
-            
-            return finalDelay;
+            logger.debug("Queue depth sample - Visible: {}, In-flight: {}, Delayed: {}",
+                visibleMessages, invisibleMessages, delayedMessages);
             
         } catch (Exception e) {
-            logger.error("Error calculating message delay, using base delay", e);
-            return baseDelaySeconds;
+            logger.warn("Failed to sample queue depth, keeping previous estimate: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Called when this instance observes an analysis reach a terminal state;
+     * only counts if this instance queued it since the last depth sample
+     */
+    @Override
+    public void recordAnalysisFinished(String analysisId) {
+        depthEstimator.recordFinished(analysisId);
+    }
+    
+    /**
+     * Calculate dynamic delay based on the estimated queue depth and rate limits
+     */
+    private int calculateMessageDelay() {
+        int invisibleMessages = depthEstimator.getInFlight();
+        int totalMessages = depthEstimator.getTotal();
+        
+        // Calculate dynamic delay
+        // Base delay + (number of messages * delay per message)
+        int calculatedDelay = baseDelaySeconds + (totalMessages * delayPerMessageSeconds);
+        
+        // Ensure delay doesn't exceed maximum
+        int finalDelay = Math.min(calculatedDelay, maxDelaySeconds);
+        
+        // More conservative interval - at least 35 seconds between messages
+        int minIntervalSeconds = Math.max(35, 60 / bedrockRateLimitPerMinute);
+        if (invisibleMessages > 0 && finalDelay < minIntervalSeconds) {
+            finalDelay = minIntervalSeconds;
         }
+        
+        logger.info("Estimated queue depth - In-flight: {}, Total: {} (sample age {}ms) => Delay: {}s",
+            invisibleMessages, totalMessages, depthEstimator.getSampleAgeMs(), finalDelay);
+        
+        return finalDelay;
     }
    
+    private int admissionDelaySeconds(Map<String, Object> metadata) {
+        Object delay = metadata != null ? metadata.get("admissionDelaySeconds") : null;
+        return delay instanceof Number ? ((Number) delay).intValue() : 0;
+    }
+   
+    @Override
     public String submitAnalysisRequest(String analysisId, String code, String language, Map<String, Object> metadata) {
         try {
-            // Calculate dynamic delay based on current queue state
-            int messageDelay = calculateMessageDelay();
+            return submitAnalysisRequestAsync(analysisId, code, language, metadata).join();
+        } catch (CompletionException e) {
+            logger.error("Error submitting to SQS", e.getCause());
+            throw new RuntimeException("Failed to submit analysis request", e.getCause());
+        }
+    }
+    
+    /**
+     * Submit an analysis request through the batching send buffer.
+     * Completes with the SQS message ID once the batch containing it is sent.
+     */
+    @Override
+    public CompletableFuture<String> submitAnalysisRequestAsync(String analysisId, String code, String language,
+                                                                Map<String, Object> metadata) {
+        try {
+            // Calculate dynamic delay based on current queue state, never
+            // earlier than admission control scheduled it (SQS caps delays at 15 minutes)
+            int messageDelay = Math.min(900, Math.max(calculateMessageDelay(), admissionDelaySeconds(metadata)));
             
             Map<String, Object> message = new HashMap<>();
             message.put("analysisId", analysisId);
@@ -201,12 +271,11 @@ public class SQSBedrockService {
             // Log actual message size for debugging
             logger.info("SQS message size: {} bytes for analysis {}", messageBody.getBytes().length, analysisId);
             
-            // Build send request with dynamic delay
-            SendMessageRequest sendRequest = new SendMessageRequest()
-                .withQueueUrl(queueUrl)
-                .withMessageBody(messageBody)
-                .withDelaySeconds(messageDelay)  // Use calculated delay
-                .withMessageAttributes(Map.of(
+            // Count it now so later messages in the same burst get staggered delays
+            depthEstimator.recordEnqueue(analysisId);
+            
+            // Queue for a batched send with dynamic delay
+            return sendBuffer.send(messageBody, messageDelay, Map.of(
                     "analysisId", new MessageAttributeValue()
                         .withStringValue(analysisId)
                         .withDataType("String"),
@@ -219,69 +288,53 @@ public class SQSBedrockService {
                     "submittedAt", new MessageAttributeValue()
                         .withStringValue(String.valueOf(System.currentTimeMillis()))
                         .withDataType("Number")
-                ));
-                
-            SendMessageResult result = sqs.sendMessage(sendRequest);
-            logger.info("Submitted analysis request {} to SQS: {} with delay of {} seconds", 
-                analysisId, result.getMessageId(), messageDelay);
-            
-            return result.getMessageId();
+                ))
+                .whenComplete((messageId, error) -> {
+                    if (error == null) {
+                        logger.info("Submitted analysis request {} to SQS: {} with delay of {} seconds", 
+                            analysisId, messageId, messageDelay);
+                    } else {
+                        depthEstimator.recordEnqueueFailed(analysisId);
+                    }
+                });
             
         } catch (Exception e) {
-            logger.error("Error submitting to SQS", e);
-            throw new RuntimeException("Failed to submit analysis request", e);
+            return CompletableFuture.failedFuture(e);
         }
     }
     
-    // Overloaded method for backward compatibility
-    public String submitAnalysisRequest(String analysisId, String code, String language) {
-        return submitAnalysisRequest(analysisId, code, language, null);
-    }
-    
     /**
-     * Get current queue depth and metrics
+     * Get current queue depth and metrics (from the sampled estimate, no SQS call)
      */
     public Map<String, Object> getQueueMetrics() {
-        try {
-            GetQueueAttributesRequest request = new GetQueueAttributesRequest()
-                .withQueueUrl(queueUrl)
-                .withAttributeNames("All");
-                
-            GetQueueAttributesResult result = sqs.getQueueAttributes(request);
-            Map<String, String> attrs = result.getAttributes();
-            
-            Map<String, Object> metrics = new HashMap<>();
-            metrics.put("visibleMessages", Integer.parseInt(attrs.getOrDefault("ApproximateNumberOfMessages", "0")));
-            metrics.put("inFlightMessages", Integer.parseInt(attrs.getOrDefault("ApproximateNumberOfMessagesNotVisible", "0")));
-            metrics.put("delayedMessages", Integer.parseInt(attrs.getOrDefault("ApproximateNumberOfMessagesDelayed", "0")));
-            metrics.put("queueCreatedTimestamp", attrs.get("CreatedTimestamp"));
-            metrics.put("lastModifiedTimestamp", attrs.get("LastModifiedTimestamp"));
-            metrics.put("visibilityTimeout", attrs.get("VisibilityTimeout"));
-            metrics.put("messageRetentionPeriod", attrs.get("MessageRetentionPeriod"));
-            metrics.put("delaySeconds", attrs.get("DelaySeconds"));
-            
-            // Calculate next available processing slot
-            int totalActive = (int) metrics.get("inFlightMessages") + (int) metrics.get("delayedMessages");
-            int nextDelay = calculateMessageDelay();
-            metrics.put("nextAvailableSlot", System.currentTimeMillis() + (nextDelay * 1000L));
-            metrics.put("calculatedDelay", nextDelay);
-            
-            return metrics;
-            
-        } catch (Exception e) {
-            logger.error("Error getting queue metrics", e);
-            return Map.of("error", e.getMessage());
-        }
+        Map<String, String> attrs = depthEstimator.getSampledAttributes();
+        
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("visibleMessages", depthEstimator.getVisible());
+        metrics.put("inFlightMessages", depthEstimator.getInFlight());
+        metrics.put("delayedMessages", depthEstimator.getDelayed());
+        metrics.put("estimatedTotalMessages", depthEstimator.getTotal());
+        metrics.put("sampleAgeMs", depthEstimator.getSampleAgeMs());
+        metrics.put("queueCreatedTimestamp", attrs.get("CreatedTimestamp"));
+        metrics.put("lastModifiedTimestamp", attrs.get("LastModifiedTimestamp"));
+        metrics.put("visibilityTimeout", attrs.getOrDefault("VisibilityTimeout", visibilityTimeout.toString()));
+        metrics.put("messageRetentionPeriod", attrs.get("MessageRetentionPeriod"));
+        metrics.put("delaySeconds", attrs.getOrDefault("DelaySeconds", String.valueOf(baseDelaySeconds)));
+        
+        // Calculate next available processing slot
+        int nextDelay = calculateMessageDelay();
+        metrics.put("nextAvailableSlot", System.currentTimeMillis() + (nextDelay * 1000L));
+        metrics.put("calculatedDelay", nextDelay);
+        
+        return metrics;
     }
     
     /**
      * Get queue depth (backward compatibility)
      */
+    @Override
     public int getQueueDepth() {
-        Map<String, Object> metrics = getQueueMetrics();
-        return (int) metrics.getOrDefault("visibleMessages", -1) + 
-               (int) metrics.getOrDefault("inFlightMessages", 0) +
-               (int) metrics.getOrDefault("delayedMessages", 0);
+        return depthEstimator.getTotal();
     }
     
     /**
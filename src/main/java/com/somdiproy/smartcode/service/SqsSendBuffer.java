@@ -0,0 +1,223 @@
+package com.somdiproy.smartcode.service;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side batching for SQS sends.
+ *
+ * Callers hand in one message and get back a future for its message ID.
+ * Messages are held for at most the linger window and sent with
+ * SendMessageBatch, up to 10 entries and 256KB of payload per call; a full
+ * batch is sent immediately. Batch size and per-message linger are exported
+ * as sqs.send.batch.size and sqs.send.linger.
+ *
+ * @author Somdip Roy
+ */
+public class SqsSendBuffer {
+    private static final Logger logger = LoggerFactory.getLogger(SqsSendBuffer.class);
+
+    static final int MAX_BATCH_ENTRIES = 10;
+    static final int MAX_BATCH_BYTES = 262144;
+
+    private final AmazonSQS sqs;
+    private final String queueUrl;
+    private final long lingerMs;
+    private final ScheduledExecutorService executor;
+    private final DistributionSummary batchSize;
+    private final Timer linger;
+
+    private final Deque<PendingMessage> pending = new ArrayDeque<>();
+    private final AtomicLong entryIds = new AtomicLong();
+    private int pendingBytes;
+    private ScheduledFuture<?> scheduledFlush;
+
+    public SqsSendBuffer(AmazonSQS sqs, String queueUrl, long lingerMs, int maxConcurrentBatches,
+                         MeterRegistry meterRegistry) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.lingerMs = lingerMs;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(maxConcurrentBatches, runnable -> {
+            Thread thread = new Thread(runnable, "sqs-send-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.batchSize = DistributionSummary.builder("sqs.send.batch.size")
+                .description("Messages per SendMessageBatch call")
+                .register(meterRegistry);
+        this.linger = Timer.builder("sqs.send.linger")
+                .description("Time a message waited in the send buffer")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a message for sending; completes with its SQS message ID
+     */
+    public CompletableFuture<String> send(String messageBody, int delaySeconds,
+                                          Map<String, MessageAttributeValue> attributes) {
+        SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry()
+                .withId(Long.toString(entryIds.incrementAndGet()))
+                .withMessageBody(messageBody)
+                .withDelaySeconds(delaySeconds)
+                .withMessageAttributes(attributes);
+
+        PendingMessage message = new PendingMessage(entry, payloadSize(entry));
+        if (message.bytes > MAX_BATCH_BYTES) {
+            message.future.completeExceptionally(new IllegalArgumentException(
+                    "SQS message of " + message.bytes + " bytes exceeds the 256KB limit"));
+            return message.future;
+        }
+
+        synchronized (this) {
+            // A message that would overflow the current batch forces it out first
+            if (pendingBytes + message.bytes > MAX_BATCH_BYTES) {
+                executor.execute(this::flush);
+            }
+            pending.addLast(message);
+            pendingBytes += message.bytes;
+
+            if (pending.size() >= MAX_BATCH_ENTRIES) {
+                executor.execute(this::flush);
+            } else if (scheduledFlush == null) {
+                scheduledFlush = executor.schedule(this::flush, lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return message.future;
+    }
+
+    public void shutdown() {
+        flush();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Send every pending message, one batch per call
+     */
+    private void flush() {
+        List<PendingMessage> batch;
+        while (!(batch = takeBatch()).isEmpty()) {
+            sendBatch(batch);
+        }
+    }
+
+    private synchronized List<PendingMessage> takeBatch() {
+        List<PendingMessage> batch = new ArrayList<>(MAX_BATCH_ENTRIES);
+        int bytes = 0;
+        while (!pending.isEmpty() && batch.size() < MAX_BATCH_ENTRIES
+                && bytes + pending.peekFirst().bytes <= MAX_BATCH_BYTES) {
+            PendingMessage message = pending.removeFirst();
+            bytes += message.bytes;
+            batch.add(message);
+        }
+        pendingBytes -= bytes;
+
+        if (pending.isEmpty() && scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        } else if (!pending.isEmpty() && scheduledFlush == null) {
+            scheduledFlush = executor.schedule(this::flush, lingerMs, TimeUnit.MILLISECONDS);
+        }
+        return batch;
+    }
+
+    private void sendBatch(List<PendingMessage> batch) {
+        long now = System.nanoTime();
+        Map<String, PendingMessage> byId = new HashMap<>();
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (PendingMessage message : batch) {
+            byId.put(message.entry.getId(), message);
+            entries.add(message.entry);
+            linger.record(now - message.enqueuedAt, TimeUnit.NANOSECONDS);
+        }
+        batchSize.record(batch.size());
+
+        try {
+            SendMessageBatchResult result = sqs.sendMessageBatch(new SendMessageBatchRequest()
+                    .withQueueUrl(queueUrl)
+                    .withEntries(entries));
+
+            for (SendMessageBatchResultEntry success : result.getSuccessful()) {
+                PendingMessage message = byId.remove(success.getId());
+                if (message != null) {
+                    message.future.complete(success.getMessageId());
+                }
+            }
+            for (BatchResultErrorEntry failure : result.getFailed()) {
+                PendingMessage message = byId.remove(failure.getId());
+                if (message != null) {
+                    message.future.completeExceptionally(new RuntimeException(
+                            "SQS rejected message: " + failure.getCode() + " - " + failure.getMessage()));
+                }
+            }
+            // Anything SQS did not report on is treated as failed
+            byId.values().forEach(message -> message.future.completeExceptionally(
+                    new RuntimeException("No result for message in SQS batch")));
+
+            logger.debug("Sent SQS batch of {} ({} failed)", batch.size(), result.getFailed().size());
+
+        } catch (Exception e) {
+            logger.error("SQS batch send of {} messages failed", batch.size(), e);
+            batch.forEach(message -> message.future.completeExceptionally(e));
+        }
+    }
+
+    private static int payloadSize(SendMessageBatchRequestEntry entry) {
+        int size = entry.getMessageBody().getBytes(StandardCharsets.UTF_8).length;
+        if (entry.getMessageAttributes() != null) {
+            for (Map.Entry<String, MessageAttributeValue> attribute : entry.getMessageAttributes().entrySet()) {
+                MessageAttributeValue value = attribute.getValue();
+                size += attribute.getKey().getBytes(StandardCharsets.UTF_8).length
+                        + value.getDataType().getBytes(StandardCharsets.UTF_8).length
+                        + (value.getStringValue() != null
+                                ? value.getStringValue().getBytes(StandardCharsets.UTF_8).length : 0);
+            }
+        }
+        return size;
+    }
+
+    private static class PendingMessage {
+        private final SendMessageBatchRequestEntry entry;
+        private final int bytes;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        PendingMessage(SendMessageBatchRequestEntry entry, int bytes) {
+            this.entry = entry;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -1,18 +1,45 @@
 package com.somdiproy.smartcode.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.services.sfn.SfnClient;
 import software.amazon.awssdk.services.sfn.model.StartExecutionRequest;
 import software.amazon.awssdk.services.sfn.model.StartExecutionResponse;
+import software.amazon.awssdk.services.sfn.model.StartSyncExecutionRequest;
+import software.amazon.awssdk.services.sfn.model.StartSyncExecutionResponse;
+import software.amazon.awssdk.services.sfn.model.SyncExecutionStatus;
 
 import jakarta.annotation.PostConstruct;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Starts analysis workflows in Step Functions.
+ *
+ * Inputs up to aws.stepfunctions.express.max-code-size characters run on the
+ * Express state machine with StartSyncExecution, so the result comes back in
+ * the same call. Larger inputs, and Express executions that end FAILED or
+ * never start, go to the Standard workflow and are picked up by polling. An
+ * Express call that times out on the client is left to finish on its own:
+ * the execution keeps running and saves its result, so starting another
+ * workflow would analyze the code twice.
+ *
+ * Every execution carries the shared Bedrock quota (token bucket table and
+ * limits) so the Standard workflow's chunk tasks reserve from it before
+ * calling Bedrock. The fixed per-chunk stagger is only used when
+ * aws.stepfunctions.stagger-chunks is set or there is no bucket table.
+ *
+ * @author Somdip Roy
+ */
 @Service
 public class StepFunctionsBedrockService {
     private static final Logger logger = LoggerFactory.getLogger(StepFunctionsBedrockService.class);
@@ -23,41 +50,76 @@ public class StepFunctionsBedrockService {
     @Value("${aws.stepfunctions.enabled:false}")
     private boolean enabled;
     
+    @Value("${aws.stepfunctions.express-state-machine-arn:}")
+    private String expressStateMachineArn;
+    
+    @Value("${aws.stepfunctions.express.max-code-size:20000}")
+    private int expressMaxCodeSize;
+    
+    @Value("${aws.stepfunctions.express.timeout-seconds:90}")
+    private int expressTimeoutSeconds;
+    
+    @Value("${aws.bedrock.quota.token-bucket-table:}")
+    private String quotaTable;
+    
+    @Value("${aws.bedrock.quota.requests-per-minute:0}")
+    private long quotaRequestsPerMinute;
+    
+    @Value("${aws.bedrock.quota.tokens-per-minute:0}")
+    private long quotaTokensPerMinute;
+    
+    @Value("${aws.stepfunctions.stagger-chunks:false}")
+    private boolean staggerChunks;
+    
     private SfnClient sfnClient;
     private ObjectMapper objectMapper;
     
     @PostConstruct
     public void init() {
         if (enabled && !stateMachineArn.isEmpty()) {
-            this.sfnClient = SfnClient.builder().build();
+            // StartSyncExecution holds the connection open for the whole workflow
+            this.sfnClient = SfnClient.builder()
+                    .httpClientBuilder(ApacheHttpClient.builder()
+                            .socketTimeout(Duration.ofSeconds(expressTimeoutSeconds)))
+                    .build();
             this.objectMapper = new ObjectMapper();
             logger.info("Step Functions service initialized with state machine: {}", stateMachineArn);
+            if (isExpressEnabled()) {
+                logger.info("Express workflow {} handles inputs up to {} chars", expressStateMachineArn, expressMaxCodeSize);
+            }
         } else {
             logger.warn("Step Functions service is disabled or not configured");
         }
     }
     
+    /**
+     * Start an analysis workflow, choosing Express (synchronous) or Standard by input size
+     */
+    public Submission submitAnalysis(String analysisId, String code, String language) {
+        if (!enabled) {
+            throw new IllegalStateException("Step Functions service is not enabled");
+        }
+        
+        if (isExpressCandidate(code)) {
+            Submission submission = submitExpress(analysisId, code, language);
+            if (submission != null) {
+                return submission;
+            }
+        }
+        return new Submission(submitAnalysisToStepFunctions(analysisId, code, language), null);
+    }
+    
     public String submitAnalysisToStepFunctions(String analysisId, String code, String language) {
         if (!enabled) {
             throw new IllegalStateException("Step Functions service is not enabled");
         }
         
         try {
-            Map<String, Object> input = new HashMap<>();
-            input.put("analysisId", analysisId);
-            input.put("code", code);
-            input.put("language", language);
-            input.put("timestamp", System.currentTimeMillis());
-            
-           
-
-      
-         // Express workflow to be added later as an optimization
-         StartExecutionRequest request = StartExecutionRequest.builder()
-             .stateMachineArn(stateMachineArn)
-             .name("analysis-" + analysisId)
-             .input(objectMapper.writeValueAsString(input))
-             .build();
+            StartExecutionRequest request = StartExecutionRequest.builder()
+                    .stateMachineArn(stateMachineArn)
+                    .name("analysis-" + analysisId)
+                    .input(buildInput(analysisId, code, language))
+                    .build();
                 
             StartExecutionResponse response = sfnClient.startExecution(request);
             logger.info("Started Step Functions execution: {}", response.executionArn());
@@ -70,7 +132,117 @@ public class StepFunctionsBedrockService {
         }
     }
     
+    /**
+     * Run the Express workflow and wait for it. Returns null when the
+     * execution failed or was never started, so the caller can fall back to
+     * the Standard workflow; a client timeout returns a submission without a
+     * result, since the execution is still running.
+     */
+    public Submission submitExpress(String analysisId, String code, String language) {
+        String executionName = "analysis-" + analysisId;
+        try {
+            long start = System.currentTimeMillis();
+            StartSyncExecutionResponse response = sfnClient.startSyncExecution(StartSyncExecutionRequest.builder()
+                    .stateMachineArn(expressStateMachineArn)
+                    .name(executionName)
+                    .input(buildInput(analysisId, code, language))
+                    .build());
+            
+            if (response.status() == SyncExecutionStatus.FAILED) {
+                logger.warn("Express execution for {} failed ({}: {}), falling back to Standard workflow",
+                        analysisId, response.error(), response.cause());
+                return null;
+            }
+            if (response.status() != SyncExecutionStatus.SUCCEEDED) {
+                // TIMED_OUT: the workflow's own timeout handling records the outcome
+                logger.warn("Express execution for {} ended {} ({}: {})",
+                        analysisId, response.status(), response.error(), response.cause());
+                return new Submission(response.executionArn(), null);
+            }
+            
+            logger.info("Express execution for {} completed in {}ms", analysisId, System.currentTimeMillis() - start);
+            return new Submission(response.executionArn(), extractAnalysis(response.output()));
+            
+        } catch (Exception e) {
+            if (isTimeout(e)) {
+                logger.warn("Express execution for {} still running after {}s; leaving it to finish",
+                        analysisId, expressTimeoutSeconds);
+                return new Submission(executionName, null);
+            }
+            logger.warn("Express execution for {} could not be started, falling back to Standard workflow: {}",
+                    analysisId, e.getMessage());
+            return null;
+        }
+    }
+    
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ApiCallTimeoutException || t instanceof ApiCallAttemptTimeoutException
+                    || t instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * The analyzer returns {analysisId, analysis}; analysis may be an object or a JSON string
+     */
+    private String extractAnalysis(String output) throws Exception {
+        JsonNode root = objectMapper.readTree(output);
+        JsonNode analysis = root.has("analysis") ? root.get("analysis") : root;
+        return analysis.isTextual() ? analysis.asText() : objectMapper.writeValueAsString(analysis);
+    }
+    
+    private String buildInput(String analysisId, String code, String language) throws Exception {
+        Map<String, Object> input = new HashMap<>();
+        input.put("analysisId", analysisId);
+        input.put("code", code);
+        input.put("language", language);
+        input.put("timestamp", System.currentTimeMillis());
+        Map<String, Object> quota = new HashMap<>();
+        quota.put("tokenBucketTable", quotaTable);
+        quota.put("requestsPerMinute", quotaRequestsPerMinute);
+        quota.put("tokensPerMinute", quotaTokensPerMinute);
+        // Without a shared bucket the chunks have nothing to reserve from
+        quota.put("staggerChunks", staggerChunks || quotaTable == null || quotaTable.isEmpty());
+        input.put("quota", quota);
+        return objectMapper.writeValueAsString(input);
+    }
+    
     public boolean isEnabled() {
         return enabled;
     }
+    
+    public boolean isExpressEnabled() {
+        return enabled && expressStateMachineArn != null && !expressStateMachineArn.isEmpty();
+    }
+    
+    /**
+     * Whether code of this size runs on the Express workflow
+     */
+    public boolean isExpressCandidate(String code) {
+        return isExpressEnabled() && code != null && code.length() <= expressMaxCodeSize;
+    }
+    
+    /**
+     * A started workflow; resultJson is set when the Express path already finished the analysis.
+     * executionArn is the execution name when an Express call timed out before returning the ARN.
+     */
+    public static class Submission {
+        private final String executionArn;
+        private final String resultJson;
+        
+        public Submission(String executionArn, String resultJson) {
+            this.executionArn = executionArn;
+            this.resultJson = resultJson;
+        }
+        
+        public String getExecutionArn() { return executionArn; }
+        public String getResultJson() { return resultJson; }
+        
+        public boolean isCompleted() {
+            return resultJson != null;
+        }
+    }
 }
\ No newline at end of file
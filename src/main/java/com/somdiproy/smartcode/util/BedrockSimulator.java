@@ -0,0 +1,424 @@
+package com.somdiproy.smartcode.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Bedrock Runtime InvokeModel endpoint.
+ *
+ * Serves POST /model/{modelId}/invoke with a Nova-shaped response (a code
+ * review JSON in output.message.content[0].text, plus usage counts), so the
+ * app and the Lambda can be load-tested without spending Bedrock quota.
+ * Point a client at it with aws.bedrock.endpoint-url (app) or
+ * BEDROCK_ENDPOINT_URL (Lambda).
+ *
+ * Tunables (see {@link Settings}): time-to-first-token distribution,
+ * output tokens per second, a random ThrottlingException rate, and
+ * per-minute request/token quotas that throttle like the real service.
+ * System prompts ending in a cachePoint are remembered for five minutes and
+ * reported as cache writes, then cache reads, in the usage counts.
+ * Run standalone with {@code java ... BedrockSimulator [port]}; settings
+ * are read from bedrock.simulator.* system properties.
+ *
+ * @author Somdip Roy
+ */
+public class BedrockSimulator {
+    private static final Logger logger = LoggerFactory.getLogger(BedrockSimulator.class);
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random;
+
+    // Fixed one-minute quota window
+    private long windowStart = System.currentTimeMillis();
+    private int windowRequests;
+    private long windowTokens;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Cached system prompt prefixes and when each was last used
+    private static final long CACHE_TTL_MS = 5 * 60 * 1000;
+    private final Map<String, Long> promptCache = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public BedrockSimulator(Settings settings) {
+        this.settings = settings;
+        this.random = settings.seed != 0 ? new Random(settings.seed) : new Random();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Settings settings = Settings.fromSystemProperties();
+        if (args.length > 0) {
+            settings.setPort(Integer.parseInt(args[0]));
+        }
+        new BedrockSimulator(settings).start();
+    }
+
+    public synchronized void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(settings.port), 0);
+        executor = Executors.newFixedThreadPool(settings.maxConcurrency);
+        server.setExecutor(executor);
+        server.createContext("/model/", this::handle);
+        server.start();
+        logger.info("Bedrock simulator listening on port {} - TTFT {}ms ({}), {} tok/s, throttle rate {}, quota {} rpm / {} tpm",
+                getPort(), settings.firstTokenMs, settings.latencyDistribution, settings.outputTokensPerSecond,
+                settings.throttleRate, settings.requestsPerMinute, settings.tokensPerMinute);
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : settings.port;
+    }
+
+    public String getEndpointUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("throttled", throttled.get());
+        stats.put("completed", completed.get());
+        stats.put("inFlight", inFlight.get());
+        return stats;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        inFlight.incrementAndGet();
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            if (!"POST".equals(exchange.getRequestMethod()) || !path.endsWith("/invoke")) {
+                sendError(exchange, 404, "UnknownOperationException", "Unsupported operation: " + path);
+                return;
+            }
+            String modelId = URLDecoder.decode(
+                    path.substring("/model/".length(), path.length() - "/invoke".length()), StandardCharsets.UTF_8);
+
+            byte[] requestBody;
+            try (InputStream in = exchange.getRequestBody()) {
+                requestBody = in.readAllBytes();
+            }
+            String prompt = extractPrompt(requestBody);
+            int inputTokens = Math.max(1, requestBody.length / 4);
+            int cachedTokens = cachedPrefixTokens(requestBody);
+            int outputTokens = sampleOutputTokens(extractMaxTokens(requestBody));
+
+            if (shouldThrottle(inputTokens + outputTokens)) {
+                throttled.incrementAndGet();
+                sendError(exchange, 429, "ThrottlingException", "Too many requests, please wait before trying again.");
+                return;
+            }
+
+            long latencyMs = sampleFirstTokenMs() + (long) (outputTokens * 1000.0 / settings.outputTokensPerSecond);
+            sleep(latencyMs);
+
+            Map<String, Object> response = buildResponse(prompt, inputTokens, outputTokens, cachedTokens);
+            byte[] body = objectMapper.writeValueAsBytes(response);
+
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("x-amzn-RequestId", UUID.randomUUID().toString());
+            exchange.getResponseHeaders().add("X-Amzn-Bedrock-Invocation-Latency", String.valueOf(latencyMs));
+            exchange.getResponseHeaders().add("X-Amzn-Bedrock-Input-Token-Count", String.valueOf(inputTokens));
+            exchange.getResponseHeaders().add("X-Amzn-Bedrock-Output-Token-Count", String.valueOf(outputTokens));
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            completed.incrementAndGet();
+            logger.debug("Simulated {} invoke: {} in / {} out tokens in {}ms", modelId, inputTokens, outputTokens, latencyMs);
+
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Random throttling plus the per-minute request and token quotas
+     */
+    private synchronized boolean shouldThrottle(int tokens) {
+        if (settings.throttleRate > 0 && random.nextDouble() < settings.throttleRate) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= 60_000) {
+            windowStart = now;
+            windowRequests = 0;
+            windowTokens = 0;
+        }
+        if ((settings.requestsPerMinute > 0 && windowRequests + 1 > settings.requestsPerMinute)
+                || (settings.tokensPerMinute > 0 && windowTokens + tokens > settings.tokensPerMinute)) {
+            return true;
+        }
+        windowRequests++;
+        windowTokens += tokens;
+        return false;
+    }
+
+    private synchronized long sampleFirstTokenMs() {
+        double median = settings.firstTokenMs;
+        switch (settings.latencyDistribution) {
+            case "fixed":
+                return (long) median;
+            case "uniform":
+                return (long) (median * (1 - settings.latencyJitter)
+                        + random.nextDouble() * 2 * median * settings.latencyJitter);
+            case "lognormal":
+            default:
+                // Long tail: median stays at firstTokenMs, jitter is sigma of ln(latency)
+                return (long) (median * Math.exp(settings.latencyJitter * random.nextGaussian()));
+        }
+    }
+
+    private synchronized int sampleOutputTokens(int maxTokens) {
+        int tokens = (int) (settings.outputTokens * (0.75 + random.nextDouble() * 0.5));
+        return Math.max(16, maxTokens > 0 ? Math.min(tokens, maxTokens) : tokens);
+    }
+
+    /**
+     * Tokens of the system prompt before a cachePoint: positive when served
+     * from the cache, negative when written to it, 0 without a cachePoint
+     */
+    @SuppressWarnings("unchecked")
+    private int cachedPrefixTokens(byte[] requestBody) {
+        try {
+            Map<String, Object> request = objectMapper.readValue(requestBody, Map.class);
+            List<Map<String, Object>> system = (List<Map<String, Object>>) request.get("system");
+            if (system == null) {
+                return 0;
+            }
+            StringBuilder prefix = new StringBuilder();
+            for (Map<String, Object> block : system) {
+                if (block.containsKey("cachePoint")) {
+                    int tokens = Math.max(1, prefix.length() / 4);
+                    long now = System.currentTimeMillis();
+                    Long lastUsed = promptCache.put(prefix.toString(), now);
+                    return lastUsed != null && now - lastUsed < CACHE_TTL_MS ? tokens : -tokens;
+                }
+                if (block.get("text") != null) {
+                    prefix.append(block.get("text"));
+                }
+            }
+            return 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private String extractPrompt(byte[] requestBody) {
+        try {
+            Map<String, Object> request = objectMapper.readValue(requestBody, Map.class);
+            List<Map<String, Object>> messages = (List<Map<String, Object>>) request.get("messages");
+            StringBuilder prompt = new StringBuilder();
+            if (messages != null) {
+                for (Map<String, Object> message : messages) {
+                    List<Map<String, Object>> content = (List<Map<String, Object>>) message.get("content");
+                    if (content != null) {
+                        for (Map<String, Object> block : content) {
+                            if (block.get("text") != null) {
+                                prompt.append(block.get("text"));
+                            }
+                        }
+                    }
+                }
+            }
+            return prompt.toString();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int extractMaxTokens(byte[] requestBody) {
+        try {
+            Map<String, Object> request = objectMapper.readValue(requestBody, Map.class);
+            Map<String, Object> inferenceConfig = (Map<String, Object>) request.get("inferenceConfig");
+            Object maxTokens = inferenceConfig != null ? inferenceConfig.get("maxTokens") : null;
+            return maxTokens instanceof Number ? ((Number) maxTokens).intValue() : 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Nova response envelope around a plausible review of roughly outputTokens tokens
+     */
+    private Map<String, Object> buildResponse(String prompt, int inputTokens, int outputTokens, int cachedTokens)
+            throws IOException {
+        int lines = Math.max(1, prompt.split("\n", -1).length);
+        int issueCount = Math.max(1, outputTokens / 120);
+
+        List<Map<String, Object>> issues = new ArrayList<>();
+        String[] severities = {"HIGH", "MEDIUM", "LOW"};
+        String[] types = {"SECURITY", "PERFORMANCE", "QUALITY", "BUG"};
+        for (int i = 0; i < issueCount; i++) {
+            Map<String, Object> issue = new LinkedHashMap<>();
+            issue.put("severity", severities[i % severities.length]);
+            issue.put("type", types[i % types.length]);
+            issue.put("title", "Simulated finding " + (i + 1));
+            issue.put("description", "Synthetic issue produced by the Bedrock simulator for load testing.");
+            issue.put("lineNumber", 1 + (i * 37) % lines);
+            issue.put("suggestion", "No action needed - simulated output.");
+            issues.add(issue);
+        }
+
+        Map<String, Object> review = new LinkedHashMap<>();
+        review.put("summary", "Simulated review of " + lines + " prompt lines");
+        review.put("overallScore", 7.5);
+        review.put("issues", issues);
+        review.put("suggestions", List.of(Map.of(
+                "title", "Simulated suggestion",
+                "description", "Synthetic suggestion from the Bedrock simulator.",
+                "category", "Quality",
+                "impact", "Low")));
+        review.put("security", Map.of("securityScore", 8.0, "vulnerabilities", List.of(), "hasSecurityIssues", false));
+        review.put("performance", Map.of("performanceScore", 8.0, "bottlenecks", List.of(), "complexity", "Medium"));
+
+        Map<String, Object> text = new HashMap<>();
+        text.put("text", objectMapper.writeValueAsString(review));
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("role", "assistant");
+        message.put("content", List.of(text));
+
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("inputTokens", inputTokens - Math.abs(cachedTokens));
+        usage.put("outputTokens", outputTokens);
+        usage.put("totalTokens", inputTokens + outputTokens);
+        usage.put("cacheReadInputTokenCount", Math.max(cachedTokens, 0));
+        usage.put("cacheWriteInputTokenCount", Math.max(-cachedTokens, 0));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("output", Map.of("message", message));
+        response.put("stopReason", "end_turn");
+        response.put("usage", usage);
+        return response;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String errorType, String message) throws IOException {
+        byte[] body = objectMapper.writeValueAsBytes(Map.of("message", message));
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("x-amzn-ErrorType", errorType);
+        exchange.getResponseHeaders().add("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(Math.max(0, millis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Simulator tunables. Defaults approximate a large Nova model.
+     */
+    public static class Settings {
+        private int port = 8099;
+        private int maxConcurrency = 64;
+        private String latencyDistribution = "lognormal"; // fixed | uniform | lognormal
+        private long firstTokenMs = 800;
+        private double latencyJitter = 0.4;
+        private double outputTokensPerSecond = 60;
+        private int outputTokens = 1200;
+        private double throttleRate = 0.0;
+        private int requestsPerMinute = 0; // 0 = unlimited
+        private long tokensPerMinute = 0;  // 0 = unlimited
+        private long seed = 0;             // 0 = random
+
+        public static Settings fromSystemProperties() {
+            Settings settings = new Settings();
+            settings.port = Integer.getInteger("bedrock.simulator.port", settings.port);
+            settings.maxConcurrency = Integer.getInteger("bedrock.simulator.max-concurrency", settings.maxConcurrency);
+            settings.latencyDistribution = System.getProperty("bedrock.simulator.latency-distribution",
+                    settings.latencyDistribution);
+            settings.firstTokenMs = Long.getLong("bedrock.simulator.first-token-ms", settings.firstTokenMs);
+            settings.latencyJitter = Double.parseDouble(System.getProperty("bedrock.simulator.latency-jitter",
+                    String.valueOf(settings.latencyJitter)));
+            settings.outputTokensPerSecond = Double.parseDouble(System.getProperty(
+                    "bedrock.simulator.output-tokens-per-second", String.valueOf(settings.outputTokensPerSecond)));
+            settings.outputTokens = Integer.getInteger("bedrock.simulator.output-tokens", settings.outputTokens);
+            settings.throttleRate = Double.parseDouble(System.getProperty("bedrock.simulator.throttle-rate",
+                    String.valueOf(settings.throttleRate)));
+            settings.requestsPerMinute = Integer.getInteger("bedrock.simulator.requests-per-minute",
+                    settings.requestsPerMinute);
+            settings.tokensPerMinute = Long.getLong("bedrock.simulator.tokens-per-minute", settings.tokensPerMinute);
+            settings.seed = Long.getLong("bedrock.simulator.seed", settings.seed);
+            return settings;
+        }
+
+        public int getPort() { return port; }
+        public void setPort(int port) { this.port = port; }
+
+        public int getMaxConcurrency() { return maxConcurrency; }
+        public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+
+        public String getLatencyDistribution() { return latencyDistribution; }
+        public void setLatencyDistribution(String latencyDistribution) { this.latencyDistribution = latencyDistribution; }
+
+        public long getFirstTokenMs() { return firstTokenMs; }
+        public void setFirstTokenMs(long firstTokenMs) { this.firstTokenMs = firstTokenMs; }
+
+        public double getLatencyJitter() { return latencyJitter; }
+        public void setLatencyJitter(double latencyJitter) { this.latencyJitter = latencyJitter; }
+
+        public double getOutputTokensPerSecond() { return outputTokensPerSecond; }
+        public void setOutputTokensPerSecond(double outputTokensPerSecond) { this.outputTokensPerSecond = outputTokensPerSecond; }
+
+        public int getOutputTokens() { return outputTokens; }
+        public void setOutputTokens(int outputTokens) { this.outputTokens = outputTokens; }
+
+        public double getThrottleRate() { return throttleRate; }
+        public void setThrottleRate(double throttleRate) { this.throttleRate = throttleRate; }
+
+        public int getRequestsPerMinute() { return requestsPerMinute; }
+        public void setRequestsPerMinute(int requestsPerMinute) { this.requestsPerMinute = requestsPerMinute; }
+
+        public long getTokensPerMinute() { return tokensPerMinute; }
+        public void setTokensPerMinute(long tokensPerMinute) { this.tokensPerMinute = tokensPerMinute; }
+
+        public long getSeed() { return seed; }
+        public void setSeed(long seed) { this.seed = seed; }
+    }
+}
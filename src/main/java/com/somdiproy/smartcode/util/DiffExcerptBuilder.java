@@ -0,0 +1,187 @@
+package com.somdiproy.smartcode.util;
+
+import com.somdiproy.smartcode.lambda.ChunkResultMerger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Diff Excerpt Builder
+ *
+ * Turns the unified-diff patch of one pull request file into the part of
+ * the head-commit file worth reviewing: every changed line plus a window of
+ * context lines around it. Each run of lines is preceded by a
+ * "// @@ line N" marker giving its head-commit line, which the analysis
+ * uses to map findings back onto the head commit.
+ *
+ * The patch itself only carries about three lines of context, so wider
+ * windows need the head-commit file; without it the excerpt is limited to
+ * the lines the patch shows.
+ *
+ * @author Somdip Roy
+ */
+public final class DiffExcerptBuilder {
+
+    // Context lines GitHub includes around each hunk
+    public static final int PATCH_CONTEXT_LINES = 3;
+
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+(\\d+)(?:,\\d+)? @@.*");
+
+    private DiffExcerptBuilder() {
+    }
+
+    /**
+     * Build the excerpt for one file
+     *
+     * @param path file path in the repository
+     * @param patch unified-diff patch from the PR files API
+     * @param headContent the file at the head commit, or null to use the patch's own lines
+     * @param contextLines lines to include on each side of a change
+     * @return the excerpt, starting with a "// File: " marker, or null when the patch changes no head lines
+     */
+    public static Excerpt build(String path, String patch, String headContent, int contextLines) {
+        NavigableMap<Integer, String> patchLines = new TreeMap<>();
+        TreeSet<Integer> changedLines = new TreeSet<>();
+        TreeSet<Integer> anchors = new TreeSet<>();
+        parse(patch, patchLines, changedLines, anchors);
+        String[] headLines = headContent != null ? headContent.split("\n", -1) : null;
+        if (anchors.isEmpty() || (headLines == null && patchLines.isEmpty())) {
+            return null;
+        }
+        int lastLine = headLines != null ? headLines.length : patchLines.lastKey();
+
+        // Merge the windows around every change into runs of head lines
+        List<int[]> windows = new ArrayList<>();
+        for (int change : anchors) {
+            // A deletion at the end of the file sits just past its last line
+            int anchor = Math.min(change, lastLine);
+            int from = Math.max(1, anchor - contextLines);
+            int to = Math.min(lastLine, anchor + contextLines);
+            int[] last = windows.isEmpty() ? null : windows.get(windows.size() - 1);
+            if (last != null && from <= last[1] + 1) {
+                last[1] = Math.max(last[1], to);
+            } else if (from <= to) {
+                windows.add(new int[]{from, to});
+            }
+        }
+
+        StringBuilder excerpt = new StringBuilder();
+        excerpt.append("// File: ").append(path).append("\n");
+        excerpt.append("// Changed lines: ").append(ranges(changedLines)).append("\n");
+        int includedLines = 0;
+        for (int[] window : windows) {
+            boolean needsMarker = true;
+            for (int line = window[0]; line <= window[1]; line++) {
+                String text = headLines != null ? headLines[line - 1] : patchLines.get(line);
+                if (text == null) {
+                    // Outside what the patch shows; the next shown line starts a new run
+                    needsMarker = true;
+                    continue;
+                }
+                if (needsMarker) {
+                    excerpt.append(ChunkResultMerger.LINE_MARKER).append(line).append("\n");
+                    needsMarker = false;
+                }
+                excerpt.append(text).append("\n");
+                includedLines++;
+            }
+        }
+        return new Excerpt(excerpt.toString(), changedLines.size(), includedLines);
+    }
+
+    /**
+     * Collect the head-side lines of the patch, the added lines, and the
+     * head lines that changes sit at (added lines and where lines were deleted)
+     */
+    private static void parse(String patch, NavigableMap<Integer, String> patchLines,
+                              TreeSet<Integer> changedLines, TreeSet<Integer> anchors) {
+        if (patch == null) {
+            return;
+        }
+        int headLine = -1;
+        for (String line : patch.split("\n")) {
+            Matcher hunk = HUNK_HEADER.matcher(line);
+            if (hunk.matches()) {
+                headLine = Integer.parseInt(hunk.group(1));
+                continue;
+            }
+            if (headLine < 0 || line.isEmpty()) {
+                continue;
+            }
+            switch (line.charAt(0)) {
+                case '+':
+                    patchLines.put(headLine, line.substring(1));
+                    changedLines.add(headLine);
+                    anchors.add(headLine);
+                    headLine++;
+                    break;
+                case ' ':
+                    patchLines.put(headLine, line.substring(1));
+                    headLine++;
+                    break;
+                case '-':
+                    // Deleted lines have no head line; review what now sits in their place
+                    anchors.add(Math.max(1, headLine));
+                    break;
+                default:
+                    // "\ No newline at end of file"
+                    break;
+            }
+        }
+    }
+
+    private static String ranges(TreeSet<Integer> lines) {
+        if (lines.isEmpty()) {
+            return "none (deletions only)";
+        }
+        StringBuilder ranges = new StringBuilder();
+        int start = -1;
+        int previous = -1;
+        for (int line : lines) {
+            if (line != previous + 1) {
+                appendRange(ranges, start, previous);
+                start = line;
+            }
+            previous = line;
+        }
+        appendRange(ranges, start, previous);
+        return ranges.toString();
+    }
+
+    private static void appendRange(StringBuilder ranges, int start, int end) {
+        if (start < 0) {
+            return;
+        }
+        if (ranges.length() > 0) {
+            ranges.append(", ");
+        }
+        ranges.append(start);
+        if (end > start) {
+            ranges.append('-').append(end);
+        }
+    }
+
+    /**
+     * Excerpt text with what it covers
+     */
+    public static class Excerpt {
+        private final String text;
+        private final int changedLines;
+        private final int includedLines;
+
+        Excerpt(String text, int changedLines, int includedLines) {
+            this.text = text;
+            this.changedLines = changedLines;
+            this.includedLines = includedLines;
+        }
+
+        public String getText() { return text; }
+        public int getChangedLines() { return changedLines; }
+        public int getIncludedLines() { return includedLines; }
+    }
+}
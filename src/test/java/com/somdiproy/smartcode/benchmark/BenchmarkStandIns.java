@@ -0,0 +1,83 @@
+package com.somdiproy.smartcode.benchmark;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.somdiproy.smartcode.util.BedrockSimulator;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+
+/**
+ * Local stand-ins for the AWS clients AWSConfig would normally provide
+ * (AWSConfig is off under the test profile).
+ *
+ * DynamoDB is in memory, S3 uploads are drained and discarded, and Bedrock
+ * calls go over HTTP to the embedded {@link BedrockSimulator}, so the
+ * measured path includes real SDK marshalling and network I/O.
+ */
+@TestConfiguration
+class BenchmarkStandIns {
+
+    @Bean
+    InMemoryDynamoDB inMemoryDynamoDB() {
+        return new InMemoryDynamoDB();
+    }
+
+    @Bean
+    AmazonDynamoDB amazonDynamoDB(InMemoryDynamoDB inMemoryDynamoDB) {
+        return inMemoryDynamoDB;
+    }
+
+    @Bean
+    DynamoDbAsyncClient dynamoDbAsyncClient(InMemoryDynamoDB inMemoryDynamoDB) {
+        return inMemoryDynamoDB.asyncClient();
+    }
+
+    @Bean
+    S3Client s3Client() {
+        return new S3Client() {
+            @Override
+            public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+                // Read the body so the upload cost is still paid
+                try (InputStream in = body.contentStreamProvider().newStream()) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return PutObjectResponse.builder().eTag("\"benchmark\"").build();
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Bean
+    BedrockRuntimeClient bedrockRuntimeClient(BedrockSimulator simulator) {
+        return BedrockRuntimeClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("benchmark", "benchmark")))
+                .endpointOverride(URI.create(simulator.getEndpointUrl()))
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package com.somdiproy.smartcode.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.somdiproy.smartcode.lambda.ChunkResultMerger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cost of merging 10k issues from 20 chunks of a multi-file ZIP extraction
+ * with {@link ChunkResultMerger}, where a known share of the issues are
+ * re-reported duplicates with different case and punctuation.
+ *
+ * Reports p50/p95 merge time and allocated bytes per merge, and checks that
+ * exactly the planted duplicates are removed. Writes
+ * chunk-merge-latest.json next to the other benchmark reports. Excluded
+ * from the default build; run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class ChunkMergeBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkMergeBenchmark.class);
+
+    private static final int CHUNKS = 20;
+    private static final int ISSUES = 10_000;
+    private static final double DUPLICATE_RATIO = 0.15;
+    private static final int FILES_PER_CHUNK = 5;
+    private static final int LINES_PER_FILE = 200;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+
+    @Test
+    void mergeTenThousandIssues() throws Exception {
+        Random random = new Random(42);
+        String source = source();
+        ChunkResultMerger merger = ChunkResultMerger.forSource(source);
+        int linesPerChunk = FILES_PER_CHUNK * (LINES_PER_FILE + 1);
+
+        // Unique issues spread over the chunks, then duplicates of earlier ones re-reported
+        int duplicates = (int) (ISSUES * DUPLICATE_RATIO);
+        List<List<Map<String, Object>>> chunkIssues = new ArrayList<>();
+        for (int c = 0; c < CHUNKS; c++) {
+            chunkIssues.add(new ArrayList<>());
+        }
+        List<Map<String, Object>> originals = new ArrayList<>();
+        for (int i = 0; i < ISSUES - duplicates; i++) {
+            int chunk = i % CHUNKS;
+            Map<String, Object> issue = issue("Unvalidated input reaches query builder #" + i,
+                    2 + random.nextInt(linesPerChunk - 2), "MEDIUM");
+            chunkIssues.get(chunk).add(issue);
+            originals.add(issue);
+        }
+        for (int i = 0; i < duplicates; i++) {
+            int index = random.nextInt(originals.size());
+            Map<String, Object> original = originals.get(index);
+            int chunk = index % CHUNKS;
+            String title = ((String) original.get("title")).toUpperCase().replace(' ', '_') + ".";
+            chunkIssues.get(chunk).add(issue(title, (Integer) original.get("lineNumber"), "HIGH"));
+        }
+
+        List<ChunkResultMerger.Chunk> chunks = new ArrayList<>();
+        for (int c = 0; c < CHUNKS; c++) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("overallScore", 5.0 + random.nextInt(5));
+            result.put("issues", chunkIssues.get(c));
+            chunks.add(new ChunkResultMerger.Chunk(result, 1 + c * linesPerChunk, 12_000));
+        }
+
+        Map<String, Object> merged = merger.merge(chunks);
+        assertThat((List<?>) merged.get("issues")).hasSize(ISSUES - duplicates);
+        assertThat(merged.get("duplicateIssuesRemoved")).isEqualTo(duplicates);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP; i++) {
+            merger.merge(chunks);
+        }
+        long[] micros = new long[ITERATIONS];
+        long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < ITERATIONS; i++) {
+            long startedAt = System.nanoTime();
+            merger.merge(chunks);
+            micros[i] = (System.nanoTime() - startedAt) / 1000;
+        }
+        long allocated = (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore)
+                / ITERATIONS;
+        Arrays.sort(micros);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("chunks", CHUNKS);
+        report.put("issuesIn", ISSUES);
+        report.put("issuesOut", ((List<?>) merged.get("issues")).size());
+        report.put("duplicatesRemoved", merged.get("duplicateIssuesRemoved"));
+        report.put("mergeMicrosP50", micros[ITERATIONS / 2]);
+        report.put("mergeMicrosP95", micros[(int) Math.ceil(ITERATIONS * 0.95) - 1]);
+        report.put("allocatedBytesPerMerge", allocated);
+
+        ObjectMapper printer = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Path dir = Files.createDirectories(Paths.get(System.getProperty("benchmark.output-dir", "target/benchmarks")));
+        Files.write(dir.resolve("chunk-merge-latest.json"), printer.writeValueAsBytes(report));
+        logger.info("Chunk merge:\n{}", printer.writeValueAsString(report));
+    }
+
+    private static Map<String, Object> issue(String title, int lineNumber, String severity) {
+        Map<String, Object> issue = new LinkedHashMap<>();
+        issue.put("severity", severity);
+        issue.put("type", "SECURITY");
+        issue.put("title", title);
+        issue.put("description", "Synthetic finding for the merge benchmark.");
+        issue.put("lineNumber", lineNumber);
+        issue.put("suggestion", "Use a parameterized query.");
+        return issue;
+    }
+
+    /**
+     * Concatenated sources with ZIP-style file markers
+     */
+    private static String source() {
+        StringBuilder source = new StringBuilder();
+        for (int f = 0; f < CHUNKS * FILES_PER_CHUNK; f++) {
+            source.append("// File: src/Service").append(f).append(".java\n");
+            for (int line = 0; line < LINES_PER_FILE; line++) {
+                source.append("    int value").append(line).append(" = compute(").append(line).append(");\n");
+            }
+        }
+        return source.toString();
+    }
+}
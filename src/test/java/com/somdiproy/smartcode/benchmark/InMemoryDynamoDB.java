@@ -0,0 +1,159 @@
+package com.somdiproy.smartcode.benchmark;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeAction;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateTimeToLiveRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateTimeToLiveResult;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-table DynamoDB stand-in for the analysis results table.
+ *
+ * Covers what DynamoDBAnalysisStorage and AsyncDynamoDBAnalysisStorage
+ * actually call: item get/put/update/delete keyed on analysisId, plus
+ * enough table metadata for startup. {@link #asyncClient()} exposes the same
+ * items through the SDK v2 async interface.
+ */
+class InMemoryDynamoDB extends AbstractAmazonDynamoDB {
+
+    private static final String HASH_KEY = "analysisId";
+
+    private final Map<String, Map<String, AttributeValue>> items = new ConcurrentHashMap<>();
+
+    @Override
+    public DescribeTableResult describeTable(DescribeTableRequest request) {
+        return new DescribeTableResult().withTable(new TableDescription()
+                .withTableName(request.getTableName())
+                .withTableStatus(TableStatus.ACTIVE)
+                .withItemCount((long) items.size()));
+    }
+
+    @Override
+    public CreateTableResult createTable(CreateTableRequest request) {
+        return new CreateTableResult().withTableDescription(new TableDescription()
+                .withTableName(request.getTableName())
+                .withTableStatus(TableStatus.ACTIVE));
+    }
+
+    @Override
+    public UpdateTimeToLiveResult updateTimeToLive(UpdateTimeToLiveRequest request) {
+        return new UpdateTimeToLiveResult().withTimeToLiveSpecification(request.getTimeToLiveSpecification());
+    }
+
+    @Override
+    public GetItemResult getItem(GetItemRequest request) {
+        Map<String, AttributeValue> item = items.get(keyOf(request.getKey()));
+        return new GetItemResult().withItem(item != null ? new HashMap<>(item) : null);
+    }
+
+    @Override
+    public PutItemResult putItem(PutItemRequest request) {
+        items.put(keyOf(request.getItem()), new HashMap<>(request.getItem()));
+        return new PutItemResult();
+    }
+
+    /**
+     * DynamoDBMapper.save issues legacy AttributeUpdates (PUT/DELETE per attribute)
+     */
+    @Override
+    public UpdateItemResult updateItem(UpdateItemRequest request) {
+        if (request.getUpdateExpression() != null) {
+            throw new UnsupportedOperationException("Update expressions are not simulated");
+        }
+
+        items.compute(keyOf(request.getKey()), (key, existing) -> {
+            Map<String, AttributeValue> item = existing != null ? new HashMap<>(existing) : new HashMap<>(request.getKey());
+            if (request.getAttributeUpdates() != null) {
+                for (Map.Entry<String, AttributeValueUpdate> update : request.getAttributeUpdates().entrySet()) {
+                    if (AttributeAction.DELETE.toString().equals(update.getValue().getAction())) {
+                        item.remove(update.getKey());
+                    } else {
+                        item.put(update.getKey(), update.getValue().getValue());
+                    }
+                }
+            }
+            return item;
+        });
+        return new UpdateItemResult();
+    }
+
+    @Override
+    public DeleteItemResult deleteItem(DeleteItemRequest request) {
+        items.remove(keyOf(request.getKey()));
+        return new DeleteItemResult();
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    /**
+     * SDK v2 async view over the same items (reads only, as used by the app)
+     */
+    DynamoDbAsyncClient asyncClient() {
+        return new DynamoDbAsyncClient() {
+            @Override
+            public CompletableFuture<software.amazon.awssdk.services.dynamodb.model.GetItemResponse> getItem(
+                    software.amazon.awssdk.services.dynamodb.model.GetItemRequest request) {
+                Map<String, AttributeValue> item = items.get(request.key().get(HASH_KEY).s());
+                Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> converted = new HashMap<>();
+                if (item != null) {
+                    item.forEach((name, value) -> converted.put(name, toV2(value)));
+                }
+                return CompletableFuture.completedFuture(software.amazon.awssdk.services.dynamodb.model.GetItemResponse
+                        .builder()
+                        .item(item != null ? converted : null)
+                        .build());
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static String keyOf(Map<String, AttributeValue> key) {
+        return key.get(HASH_KEY).getS();
+    }
+
+    private static software.amazon.awssdk.services.dynamodb.model.AttributeValue toV2(AttributeValue value) {
+        software.amazon.awssdk.services.dynamodb.model.AttributeValue.Builder builder =
+                software.amazon.awssdk.services.dynamodb.model.AttributeValue.builder();
+        if (value.getS() != null) {
+            builder.s(value.getS());
+        } else if (value.getN() != null) {
+            builder.n(value.getN());
+        } else if (value.getBOOL() != null) {
+            builder.bool(value.getBOOL());
+        } else {
+            builder.nul(true);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,388 @@
+package com.somdiproy.smartcode.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.somdiproy.smartcode.service.SessionService;
+import com.somdiproy.smartcode.util.BedrockSimulator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Submit-to-result latency of the analysis pipeline under concurrent load.
+ *
+ * Drives /analyze/code and /analyze/zip over HTTP with a seeded, log-normal
+ * size mix and waits for each result with the long-poll endpoint. Everything
+ * behind the controller is the real code path in local pipeline mode; only
+ * DynamoDB, S3 and Bedrock are local stand-ins (see {@link BenchmarkStandIns}).
+ *
+ * Reports throughput plus p50/p95/p99 of queue wait, processing and total
+ * latency, overall and per submission type, and writes the report as JSON to
+ * benchmark.output-dir (a timestamped file plus pipeline-latency-latest.json)
+ * so runs can be diffed between builds. Excluded from the default build;
+ * run with {@code mvn test -Pbenchmark}, tuning via
+ * application-benchmark.properties or -D overrides.
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"test", "benchmark"})
+@Import(BenchmarkStandIns.class)
+class PipelineLatencyBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineLatencyBenchmark.class);
+
+    private static final String API = "/api/v1/code-review";
+    private static final String SESSION_TOKEN = "benchmark-session";
+
+    @LocalServerPort
+    private int port;
+
+    @MockBean
+    private SessionService sessionService;
+
+    @Autowired
+    private BedrockSimulator simulator;
+
+    @Value("${benchmark.requests}")
+    private int requests;
+
+    @Value("${benchmark.warmup-requests}")
+    private int warmupRequests;
+
+    @Value("${benchmark.concurrency}")
+    private int concurrency;
+
+    @Value("${benchmark.zip-ratio}")
+    private double zipRatio;
+
+    @Value("${benchmark.seed}")
+    private long seed;
+
+    @Value("${benchmark.paste.median-lines}")
+    private int pasteMedianLines;
+
+    @Value("${benchmark.paste.sigma}")
+    private double pasteSigma;
+
+    @Value("${benchmark.zip.median-files}")
+    private int zipMedianFiles;
+
+    @Value("${benchmark.zip.median-lines-per-file}")
+    private int zipMedianLinesPerFile;
+
+    @Value("${benchmark.long-poll-seconds}")
+    private int longPollSeconds;
+
+    @Value("${benchmark.timeout-seconds}")
+    private int timeoutSeconds;
+
+    @Value("${benchmark.output-dir}")
+    private String outputDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @Test
+    void submitToResultLatency() throws Exception {
+        when(sessionService.isValidSession(anyString())).thenReturn(true);
+
+        WorkloadGenerator generator = new WorkloadGenerator(seed, pasteMedianLines, pasteSigma,
+                zipMedianFiles, zipMedianLinesPerFile);
+        List<Submission> warmup = new ArrayList<>();
+        for (int i = 0; i < warmupRequests; i++) {
+            warmup.add(nextSubmission(generator));
+        }
+        List<Submission> measured = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            measured.add(nextSubmission(generator));
+        }
+
+        run(warmup);
+        Map<String, Object> simulatorBefore = simulator.getStats();
+
+        long startedAt = System.nanoTime();
+        List<Sample> samples = run(measured);
+        double wallSeconds = (System.nanoTime() - startedAt) / 1e9;
+
+        Map<String, Object> report = buildReport(samples, wallSeconds, simulatorBefore);
+        Path written = writeReport(report);
+        logger.info("Pipeline benchmark report written to {}\n{}", written, objectMapper.writeValueAsString(report));
+
+        List<Sample> failures = samples.stream().filter(sample -> !sample.completed).collect(Collectors.toList());
+        assertThat(failures)
+                .as("analyses that did not complete: %s", failures.stream()
+                        .map(sample -> sample.analysisId + "=" + sample.outcome).collect(Collectors.toList()))
+                .isEmpty();
+    }
+
+    private Submission nextSubmission(WorkloadGenerator generator) {
+        return generator.nextIsZip(zipRatio)
+                ? Submission.zip(generator.nextZip())
+                : Submission.paste(generator.nextPaste());
+    }
+
+    private List<Sample> run(List<Submission> submissions) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<Sample>> futures = new ArrayList<>();
+            for (Submission submission : submissions) {
+                futures.add(clients.submit(() -> execute(submission)));
+            }
+            List<Sample> samples = new ArrayList<>();
+            for (Future<Sample> future : futures) {
+                samples.add(future.get());
+            }
+            return samples;
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * Submit one analysis and long-poll until it reaches a terminal status
+     */
+    private Sample execute(Submission submission) {
+        Sample sample = new Sample(submission.type, submission.sizeBytes);
+        long submittedAt = System.currentTimeMillis();
+        long deadline = submittedAt + timeoutSeconds * 1000L;
+
+        try {
+            JsonNode accepted = send(submission.request(baseUrl()));
+            sample.analysisId = accepted.path("analysisId").asText(null);
+            if (sample.analysisId == null) {
+                sample.outcome = "rejected: " + accepted.path("message").asText();
+                return sample;
+            }
+
+            while (System.currentTimeMillis() < deadline) {
+                JsonNode response = send(HttpRequest.newBuilder(URI.create(baseUrl() + "/analysis/"
+                                + sample.analysisId + "?sessionToken=" + SESSION_TOKEN + "&waitSeconds=" + longPollSeconds))
+                        .timeout(Duration.ofSeconds(longPollSeconds + 10L))
+                        .GET()
+                        .build());
+                String status = response.path("status").asText();
+                if ("COMPLETED".equals(status) || "FAILED".equals(status)) {
+                    sample.totalMs = System.currentTimeMillis() - submittedAt;
+                    sample.completed = "COMPLETED".equals(status);
+                    sample.outcome = status;
+
+                    JsonNode metadata = response.path("result").path("metadata");
+                    if (metadata.has("processingStartedAt")) {
+                        long processingStartedAt = metadata.path("processingStartedAt").asLong();
+                        sample.queueWaitMs = processingStartedAt - metadata.path("queuedAt").asLong();
+                        sample.processingMs = metadata.path("completedAt").asLong() - processingStartedAt;
+                    }
+                    return sample;
+                }
+            }
+            sample.outcome = "timed out";
+
+        } catch (Exception e) {
+            sample.outcome = "error: " + e.getMessage();
+        }
+        return sample;
+    }
+
+    private JsonNode send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        return objectMapper.readTree(response.body());
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + port + API;
+    }
+
+    private Map<String, Object> buildReport(List<Sample> samples, double wallSeconds,
+                                            Map<String, Object> simulatorBefore) {
+        List<Sample> completed = samples.stream().filter(sample -> sample.completed).collect(Collectors.toList());
+
+        Map<String, Object> workload = new LinkedHashMap<>();
+        workload.put("requests", requests);
+        workload.put("concurrency", concurrency);
+        workload.put("zipRatio", zipRatio);
+        workload.put("seed", seed);
+        workload.put("pasteBytes", percentiles(samples.stream()
+                .filter(sample -> "paste".equals(sample.type)).mapToLong(sample -> sample.sizeBytes).toArray()));
+        workload.put("zipBytes", percentiles(samples.stream()
+                .filter(sample -> "zip".equals(sample.type)).mapToLong(sample -> sample.sizeBytes).toArray()));
+
+        Map<String, Object> simulatorStats = new LinkedHashMap<>();
+        simulator.getStats().forEach((name, value) -> simulatorStats.put(name,
+                value instanceof Number && simulatorBefore.get(name) instanceof Number
+                        ? ((Number) value).longValue() - ((Number) simulatorBefore.get(name)).longValue()
+                        : value));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("benchmark", "pipeline-latency");
+        report.put("timestamp", Instant.now().toString());
+        report.put("workload", workload);
+        report.put("wallSeconds", round(wallSeconds));
+        report.put("completed", completed.size());
+        report.put("failed", samples.size() - completed.size());
+        report.put("throughputPerSecond", round(completed.size() / wallSeconds));
+        report.put("overall", latencySummary(completed));
+        report.put("paste", latencySummary(completed.stream()
+                .filter(sample -> "paste".equals(sample.type)).collect(Collectors.toList())));
+        report.put("zip", latencySummary(completed.stream()
+                .filter(sample -> "zip".equals(sample.type)).collect(Collectors.toList())));
+        report.put("bedrockSimulator", simulatorStats);
+        return report;
+    }
+
+    private Map<String, Object> latencySummary(List<Sample> samples) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", samples.size());
+        summary.put("queueWaitMs", percentiles(samples.stream()
+                .filter(sample -> sample.queueWaitMs >= 0).mapToLong(sample -> sample.queueWaitMs).toArray()));
+        summary.put("processingMs", percentiles(samples.stream()
+                .filter(sample -> sample.processingMs >= 0).mapToLong(sample -> sample.processingMs).toArray()));
+        summary.put("totalMs", percentiles(samples.stream().mapToLong(sample -> sample.totalMs).toArray()));
+        return summary;
+    }
+
+    /**
+     * Nearest-rank percentiles
+     */
+    static Map<String, Object> percentiles(long[] values) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (values.length == 0) {
+            return result;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        result.put("min", sorted[0]);
+        result.put("p50", rank(sorted, 0.50));
+        result.put("p95", rank(sorted, 0.95));
+        result.put("p99", rank(sorted, 0.99));
+        result.put("max", sorted[sorted.length - 1]);
+        result.put("mean", round(Arrays.stream(sorted).average().orElse(0)));
+        return result;
+    }
+
+    private static long rank(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    private Path writeReport(Map<String, Object> report) throws IOException {
+        Path dir = Files.createDirectories(Paths.get(outputDir));
+        byte[] json = objectMapper.writeValueAsBytes(report);
+        Path file = dir.resolve("pipeline-latency-" + System.currentTimeMillis() + ".json");
+        Files.write(file, json);
+        Files.write(dir.resolve("pipeline-latency-latest.json"), json);
+        return file;
+    }
+
+    private static final class Submission {
+        private final String type;
+        private final long sizeBytes;
+        private final byte[] body;
+        private final String contentType;
+
+        private Submission(String type, long sizeBytes, byte[] body, String contentType) {
+            this.type = type;
+            this.sizeBytes = sizeBytes;
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        static Submission paste(String code) {
+            Map<String, String> request = new LinkedHashMap<>();
+            request.put("sessionToken", SESSION_TOKEN);
+            request.put("code", code);
+            request.put("language", "java");
+            try {
+                return new Submission("paste", code.getBytes(StandardCharsets.UTF_8).length,
+                        new ObjectMapper().writeValueAsBytes(request), "application/json");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static Submission zip(byte[] zip) {
+            String boundary = "benchmark-" + UUID.randomUUID();
+            ByteArrayOutputStream body = new ByteArrayOutputStream(zip.length + 512);
+            writeAscii(body, "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"sessionToken\"\r\n\r\n"
+                    + SESSION_TOKEN + "\r\n"
+                    + "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"benchmark.zip\"\r\n"
+                    + "Content-Type: application/zip\r\n\r\n");
+            body.write(zip, 0, zip.length);
+            writeAscii(body, "\r\n--" + boundary + "--\r\n");
+            return new Submission("zip", zip.length, body.toByteArray(),
+                    "multipart/form-data; boundary=" + boundary);
+        }
+
+        HttpRequest request(String baseUrl) {
+            String path = "paste".equals(type) ? "/analyze/code" : "/analyze/zip";
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(Duration.ofSeconds(60))
+                    .header("Content-Type", contentType)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+        }
+
+        private static void writeAscii(ByteArrayOutputStream out, String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Sample {
+        private final String type;
+        private final long sizeBytes;
+        private String analysisId;
+        private boolean completed;
+        private String outcome;
+        private long queueWaitMs = -1;
+        private long processingMs = -1;
+        private long totalMs;
+
+        Sample(String type, long sizeBytes) {
+            this.type = type;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+}
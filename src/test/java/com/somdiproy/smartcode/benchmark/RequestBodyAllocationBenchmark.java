@@ -0,0 +1,146 @@
+package com.somdiproy.smartcode.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.somdiproy.smartcode.lambda.BedrockRequestBodyWriter;
+import com.somdiproy.smartcode.lambda.PromptTemplate;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.SdkBytes;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Heap allocated per Bedrock request body: the streaming
+ * {@link BedrockRequestBodyWriter} against the map-and-String.format body it
+ * replaced, for a 200KB chunk sent with the engine's three attempts.
+ *
+ * Allocation is read from the thread's allocated-bytes counter, so the
+ * numbers do not depend on GC timing. Writes
+ * request-body-allocation-latest.json next to the pipeline report. Excluded
+ * from the default build; run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class RequestBodyAllocationBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(RequestBodyAllocationBenchmark.class);
+
+    private static final int CHUNK_CHARS = 200_000;
+    private static final int ATTEMPTS = 3;
+    private static final int WARMUP = 50;
+    private static final int ITERATIONS = 200;
+
+    private static final String INSTRUCTIONS = """
+            You are an expert code reviewer. Analyze the following %s code and provide a comprehensive review.
+            Provide your response in JSON format with summary, overallScore, issues and suggestions.
+
+            Code:
+            ```%s
+            %s
+            ```
+
+            Respond with valid JSON only.
+            """;
+    private static final PromptTemplate TEMPLATE = PromptTemplate.compile(
+            INSTRUCTIONS.replaceFirst("%s", "\\${language}")
+                    .replaceFirst("%s", "\\${language}")
+                    .replaceFirst("%s", "\\${code}"));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BedrockRequestBodyWriter writer = new BedrockRequestBodyWriter(4000, 0.1, 0.9);
+
+    @Test
+    void requestBodyAllocation() throws Exception {
+        WorkloadGenerator generator = new WorkloadGenerator(42, 4000, 0.1, 1, 1);
+        StringBuilder source = new StringBuilder(CHUNK_CHARS);
+        while (source.length() < CHUNK_CHARS) {
+            source.append(generator.nextPaste());
+        }
+        String code = source.substring(0, CHUNK_CHARS);
+
+        // Both paths must send the same request
+        assertThat(objectMapper.readTree(streamed(code).asByteArrayUnsafe()))
+                .isEqualTo(objectMapper.readTree(legacy(code).asByteArrayUnsafe()));
+
+        long legacyBytes = allocatedPerRequest(() -> {
+            for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                legacy(code);
+            }
+        });
+        long streamedBytes = allocatedPerRequest(() -> streamed(code));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("chunkChars", CHUNK_CHARS);
+        report.put("attempts", ATTEMPTS);
+        report.put("bodyBytes", streamed(code).asByteArrayUnsafe().length);
+        report.put("legacyAllocatedBytesPerRequest", legacyBytes);
+        report.put("streamedAllocatedBytesPerRequest", streamedBytes);
+        report.put("reduction", Math.round(100.0 * legacyBytes / Math.max(1, streamedBytes)) / 100.0);
+
+        ObjectMapper printer = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Path dir = Files.createDirectories(Paths.get(System.getProperty("benchmark.output-dir", "target/benchmarks")));
+        Files.write(dir.resolve("request-body-allocation-latest.json"), printer.writeValueAsBytes(report));
+        logger.info("Request body allocation:\n{}", printer.writeValueAsString(report));
+
+        assertThat(streamedBytes).isLessThan(legacyBytes);
+    }
+
+    private SdkBytes streamed(String code) {
+        return writer.write(TEMPLATE, Map.of("language", "java", "code", code));
+    }
+
+    /**
+     * The body as the engine built it before the streaming writer
+     */
+    private SdkBytes legacy(String code) {
+        try {
+            String prompt = String.format(INSTRUCTIONS, "java", "java", code);
+            Map<String, Object> textContent = new HashMap<>();
+            textContent.put("text", prompt);
+            List<Map<String, Object>> contentArray = new ArrayList<>();
+            contentArray.add(textContent);
+            Map<String, Object> message = new HashMap<>();
+            message.put("role", "user");
+            message.put("content", contentArray);
+            List<Map<String, Object>> messages = new ArrayList<>();
+            messages.add(message);
+
+            Map<String, Object> inferenceConfig = new HashMap<>();
+            inferenceConfig.put("maxTokens", 4000);
+            inferenceConfig.put("temperature", 0.1);
+            inferenceConfig.put("topP", 0.9);
+
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("messages", messages);
+            requestBody.put("inferenceConfig", inferenceConfig);
+            return SdkBytes.fromUtf8String(objectMapper.writeValueAsString(requestBody));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long allocatedPerRequest(Runnable request) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP; i++) {
+            request.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            request.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+    }
+}
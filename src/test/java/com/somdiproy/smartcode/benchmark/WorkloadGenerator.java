@@ -0,0 +1,106 @@
+package com.somdiproy.smartcode.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Seeded generator of benchmark submissions.
+ *
+ * Source sizes are log-normal (most pastes are small, a few are large),
+ * capped at the API limits: 100KB for pasted code, and ZIPs that stay well
+ * under 50MB. The same seed always yields the same workload.
+ */
+class WorkloadGenerator {
+
+    static final int MAX_PASTE_CHARS = 100_000;
+
+    private static final String[] STATEMENTS = {
+            "String query = \"SELECT * FROM users WHERE id = \" + userId;",
+            "List<String> names = new ArrayList<>();",
+            "for (int i = 0; i < items.size(); i++) { total += items.get(i).getPrice(); }",
+            "if (value == null) { throw new IllegalArgumentException(\"value\"); }",
+            "Connection connection = DriverManager.getConnection(url, user, password);",
+            "logger.info(\"Processing order {} for {}\", orderId, customer);",
+            "Map<String, Integer> counts = new HashMap<>();",
+            "try { Thread.sleep(100); } catch (InterruptedException e) { }",
+            "return results.stream().filter(Objects::nonNull).collect(Collectors.toList());",
+            "byte[] digest = MessageDigest.getInstance(\"MD5\").digest(input.getBytes());",
+    };
+
+    private final Random random;
+    private final int pasteMedianLines;
+    private final double pasteSigma;
+    private final int zipMedianFiles;
+    private final int zipMedianLinesPerFile;
+    private int classCounter;
+
+    WorkloadGenerator(long seed, int pasteMedianLines, double pasteSigma,
+                      int zipMedianFiles, int zipMedianLinesPerFile) {
+        this.random = new Random(seed);
+        this.pasteMedianLines = pasteMedianLines;
+        this.pasteSigma = pasteSigma;
+        this.zipMedianFiles = zipMedianFiles;
+        this.zipMedianLinesPerFile = zipMedianLinesPerFile;
+    }
+
+    /**
+     * Pasted Java source, trimmed to the paste limit
+     */
+    String nextPaste() {
+        String code = javaClass(logNormal(pasteMedianLines, pasteSigma));
+        return code.length() > MAX_PASTE_CHARS ? code.substring(0, MAX_PASTE_CHARS) : code;
+    }
+
+    /**
+     * A ZIP of several Java sources
+     */
+    byte[] nextZip() {
+        int files = Math.max(1, logNormal(zipMedianFiles, 0.6));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < files; i++) {
+                zip.putNextEntry(new ZipEntry("src/main/java/com/example/Generated" + classCounter + ".java"));
+                zip.write(javaClass(logNormal(zipMedianLinesPerFile, 0.7)).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    boolean nextIsZip(double zipRatio) {
+        return random.nextDouble() < zipRatio;
+    }
+
+    private int logNormal(int median, double sigma) {
+        return Math.max(5, (int) Math.round(median * Math.exp(sigma * random.nextGaussian())));
+    }
+
+    private String javaClass(int lines) {
+        String className = "Generated" + (classCounter++);
+        StringBuilder code = new StringBuilder(lines * 48);
+        code.append("package com.example;\n\n")
+                .append("import java.util.*;\n")
+                .append("import java.sql.*;\n\n")
+                .append("public class ").append(className).append(" {\n");
+
+        int written = 4;
+        int method = 0;
+        while (written < lines - 1) {
+            code.append("    public Object method").append(method++).append("(String userId, List<Item> items) {\n");
+            int body = Math.min(lines - written - 3, 3 + random.nextInt(12));
+            for (int i = 0; i < body; i++) {
+                code.append("        ").append(STATEMENTS[random.nextInt(STATEMENTS.length)]).append('\n');
+            }
+            code.append("        return null;\n    }\n");
+            written += body + 3;
+        }
+        return code.append("}\n").toString();
+    }
+}
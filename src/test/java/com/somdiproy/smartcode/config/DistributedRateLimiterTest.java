@@ -0,0 +1,92 @@
+package com.somdiproy.smartcode.config;
+
+import com.somdiproy.smartcode.lambda.InMemoryTokenBucketStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DistributedRateLimiterTest {
+
+    private static final String BUCKET = "rate-limit:test";
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(now::get);
+
+    @Test
+    void leaseIsSizedFromLimitAndInstanceCount() {
+        assertThat(limiter(120, 2).getLeaseSize()).isEqualTo(10);
+        assertThat(limiter(120, 4).getLeaseSize()).isEqualTo(7);
+        assertThat(limiter(10, 2).getLeaseSize()).isEqualTo(1);
+    }
+
+    @Test
+    void smallLimitIsNotHoardedByOneInstance() {
+        DistributedRateLimiter a = limiter(2, 2);
+        DistributedRateLimiter b = limiter(2, 2);
+
+        assertThat(a.tryAcquire()).isTrue();
+        assertThat(b.tryAcquire()).isTrue();
+        assertThat(a.tryAcquire()).isFalse();
+        assertThat(b.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void twoInstancesShareTheLimit() {
+        DistributedRateLimiter a = limiter(60, 2);
+        DistributedRateLimiter b = limiter(60, 2);
+
+        int grantedA = 0;
+        int grantedB = 0;
+        for (int i = 0; i < 100; i++) {
+            grantedA += a.tryAcquire() ? 1 : 0;
+            grantedB += b.tryAcquire() ? 1 : 0;
+        }
+
+        assertThat(grantedA + grantedB).isBetween(60 - 2 * 7, 60);
+        assertThat(grantedA).isGreaterThanOrEqualTo(23);
+        assertThat(grantedB).isGreaterThanOrEqualTo(23);
+    }
+
+    @Test
+    void expiredLeaseReturnsUnusedPermits() {
+        DistributedRateLimiter a = limiter(60, 1);
+        a.tryAcquire();
+        assertThat(store.available(BUCKET, 60)).isEqualTo(50);
+
+        now.addAndGet(5000);
+        a.tryAcquire();
+
+        // 5 refilled, a new lease of 10, then the 9 unused returned
+        assertThat(store.available(BUCKET, 60)).isEqualTo(54);
+    }
+
+    @Test
+    void closeReturnsUnusedPermits() {
+        DistributedRateLimiter a = limiter(60, 1);
+        a.tryAcquire();
+        a.close();
+
+        assertThat(store.available(BUCKET, 60)).isEqualTo(59);
+    }
+
+    @Test
+    void exhaustedLimitRefillsOverTime() {
+        DistributedRateLimiter a = limiter(60, 1);
+        int granted = 0;
+        while (a.tryAcquire()) {
+            granted++;
+        }
+        assertThat(granted).isEqualTo(60);
+
+        now.addAndGet(1000);
+        assertThat(a.tryAcquire()).isTrue();
+        assertThat(a.tryAcquire()).isFalse();
+    }
+
+    private DistributedRateLimiter limiter(long permitsPerMinute, int instances) {
+        return new DistributedRateLimiter(BUCKET, store, permitsPerMinute, 10,
+                instances, 5000, now::get, Runnable::run);
+    }
+}
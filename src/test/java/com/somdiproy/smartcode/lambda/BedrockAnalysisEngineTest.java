@@ -0,0 +1,99 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BedrockAnalysisEngineTest {
+
+    private static final String CODE = "public class A {\n    void run() {}\n}\n";
+
+    private final HedgedBedrockInvoker invoker = mock(HedgedBedrockInvoker.class);
+    private final Map<String, Object> written = new HashMap<>();
+    private final BedrockAnalysisEngine engine = new BedrockAnalysisEngine(invoker,
+            ModelRouter.single("amazon.nova-pro-v1:0"), (id, status, message, result) -> {
+                written.put("status", status);
+                written.put("result", result);
+            }, ChunkCheckpointStore.NONE, BedrockQuota.UNLIMITED, 50_000);
+
+    @Test
+    void continuesATruncatedReviewFromItsLastCompleteValue() throws Exception {
+        InvokeModelResponse first = response("{\"summary\":\"ok\",\"issues\":[{\"title\":\"a\"},{\"ti", true);
+        InvokeModelResponse rest = response(",{\"title\":\"b\"}],\"overallScore\":7}", false);
+        when(invoker.invoke(any(), anyInt(), anyLong())).thenReturn(first, rest);
+
+        engine.analyze("a1", CODE, "java", mock(LambdaLogger.class));
+
+        verify(invoker, times(2)).invoke(any(), anyInt(), anyLong());
+        assertThat(written).containsEntry("status", "COMPLETED");
+        assertThat(titles()).containsExactly("a", "b");
+        assertThat(tokenUsage()).containsEntry("continuations", 1).containsEntry("salvagedResponses", 0);
+    }
+
+    @Test
+    void stopsAfterTwoContinuationsAndKeepsWhatParsed() throws Exception {
+        InvokeModelResponse first = response("{\"summary\":\"ok\",\"issues\":[{\"title\":\"a\"}", true);
+        InvokeModelResponse second = response(",{\"title\":\"b\"}", true);
+        InvokeModelResponse third = response(",{\"title\":\"c\"}", true);
+        InvokeModelResponse closing = response("]}", false);
+        when(invoker.invoke(any(), anyInt(), anyLong())).thenReturn(first, second, third, closing);
+
+        engine.analyze("a1", CODE, "java", mock(LambdaLogger.class));
+
+        verify(invoker, times(3)).invoke(any(), anyInt(), anyLong());
+        assertThat(written).containsEntry("status", "COMPLETED");
+        assertThat(titles()).containsExactly("a", "b", "c");
+        assertThat(tokenUsage()).containsEntry("continuations", 2).containsEntry("salvagedResponses", 1);
+    }
+
+    @Test
+    void completeReviewFeedsTheOutputBudget() throws Exception {
+        InvokeModelResponse complete = response("{\"summary\":\"ok\",\"issues\":[{\"title\":\"a\"}]}", false);
+        when(invoker.invoke(any(), anyInt(), anyLong())).thenReturn(complete);
+        int before = engine.getOutputBudget().budgetFor("java", 1000);
+
+        engine.analyze("a1", CODE, "java", mock(LambdaLogger.class));
+
+        // One issue in a few dozen characters is a far higher density than the default
+        assertThat(engine.getOutputBudget().budgetFor("java", 1000)).isGreaterThan(before);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> titles() {
+        Map<String, Object> result = (Map<String, Object>) written.get("result");
+        return ((List<Map<String, Object>>) result.get("issues")).stream()
+                .map(issue -> issue.get("title"))
+                .toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> tokenUsage() {
+        Map<String, Object> result = (Map<String, Object>) written.get("result");
+        return (Map<String, Object>) ((Map<String, Object>) result.get("metadata")).get("tokenUsage");
+    }
+
+    private static InvokeModelResponse response(String text, boolean truncated) throws Exception {
+        Map<String, Object> body = Map.of(
+                "output", Map.of("message", Map.of("content", List.of(Map.of("text", text)))),
+                "stopReason", truncated ? "max_tokens" : "end_turn",
+                "usage", Map.of("inputTokens", 100, "outputTokens", 50));
+        InvokeModelResponse response = mock(InvokeModelResponse.class);
+        when(response.body()).thenReturn(SdkBytes.fromUtf8String(new ObjectMapper().writeValueAsString(body)));
+        return response;
+    }
+}
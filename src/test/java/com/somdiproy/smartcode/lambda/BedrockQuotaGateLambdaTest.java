@@ -0,0 +1,89 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BedrockQuotaGateLambdaTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(now::get);
+    private final BedrockQuotaGateLambda gate = new BedrockQuotaGateLambda(table -> store);
+    private final Context context = mock(Context.class);
+
+    BedrockQuotaGateLambdaTest() {
+        when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+    }
+
+    @Test
+    void withoutATableEveryChunkGoesStraightThrough() {
+        Map<String, Object> input = chunk("x".repeat(4000), null);
+
+        assertThat(gate.handleRequest(input, context))
+                .containsEntry("reserved", true)
+                .containsEntry("waitSeconds", 0L);
+    }
+
+    @Test
+    void chunksAreSpreadByTheQuotaInsteadOfTheirIndex() {
+        Map<String, Object> quota = quota(2, 0);
+
+        assertThat(gate.handleRequest(chunk("code", quota), context)).containsEntry("waitSeconds", 0L);
+        assertThat(gate.handleRequest(chunk("code", quota), context)).containsEntry("waitSeconds", 0L);
+        // Two requests a minute: the third starts when one has refilled, 30s out
+        assertThat(gate.handleRequest(chunk("code", quota), context))
+                .containsEntry("reserved", true)
+                .containsEntry("waitSeconds", 30L);
+        assertThat(store.available(BedrockQuota.REQUESTS_BUCKET, 2)).isEqualTo(-1);
+    }
+
+    @Test
+    void reservesTheChunksEstimatedTokens() {
+        gate.handleRequest(chunk("x".repeat(4000), quota(0, 100_000)), context);
+
+        // 1000 input tokens plus at least the output floor
+        assertThat(store.available(BedrockQuota.TOKENS_BUCKET, 100_000))
+                .isLessThanOrEqualTo(100_000 - 1000 - OutputTokenBudget.BASE_TOKENS);
+    }
+
+    @Test
+    void backlogBeyondTheReserveAheadLimitComesBackLater() {
+        Map<String, Object> quota = quota(1, 0);
+        gate.handleRequest(chunk("code", quota), context);
+        gate.handleRequest(chunk("code", quota), context);
+
+        // A third request a minute would start 120s out
+        Map<String, Object> result = gate.handleRequest(chunk("code", quota), context);
+        assertThat(result).containsEntry("reserved", false);
+        assertThat((Long) result.get("waitSeconds")).isBetween(60L, 61L);
+        assertThat(store.available(BedrockQuota.REQUESTS_BUCKET, 1)).isEqualTo(-1);
+    }
+
+    private static Map<String, Object> chunk(String code, Map<String, Object> quota) {
+        Map<String, Object> input = new HashMap<>();
+        input.put("chunkId", "a1-0");
+        input.put("code", code);
+        input.put("language", "java");
+        if (quota != null) {
+            input.put("quota", quota);
+        }
+        return input;
+    }
+
+    private static Map<String, Object> quota(long requestsPerMinute, long tokensPerMinute) {
+        Map<String, Object> quota = new HashMap<>();
+        quota.put("tokenBucketTable", "bedrock-token-buckets");
+        quota.put("requestsPerMinute", requestsPerMinute);
+        quota.put("tokensPerMinute", tokensPerMinute);
+        quota.put("staggerChunks", false);
+        return quota;
+    }
+}
@@ -0,0 +1,68 @@
+package com.somdiproy.smartcode.lambda;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BedrockQuotaTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(now::get);
+
+    @Test
+    void unlimitedQuotaNeverWaits() {
+        assertThat(BedrockQuota.UNLIMITED.reserve(1_000_000)).isZero();
+    }
+
+    @Test
+    void waitersGetStaggeredStartTimes() {
+        BedrockQuota quota = new BedrockQuota(store, 60, 0);
+        for (int i = 0; i < 60; i++) {
+            assertThat(quota.reserve(100)).isZero();
+        }
+
+        assertThat(quota.reserve(100)).isEqualTo(1000);
+        assertThat(quota.reserve(100)).isEqualTo(2000);
+    }
+
+    @Test
+    void waitsForTheSlowerOfTheTwoBuckets() {
+        BedrockQuota quota = new BedrockQuota(store, 60, 6000);
+
+        assertThat(quota.reserve(6000)).isZero();
+        // Requests have room; 3000 tokens take 30s to refill at 6000/min
+        assertThat(quota.reserve(3000)).isEqualTo(30_000);
+    }
+
+    @Test
+    void tokenBacklogReturnsTheRequestPermit() {
+        BedrockQuota quota = new BedrockQuota(store, 60, 6000);
+        quota.reserve(6000);
+        quota.reserve(6000);
+
+        // A third full minute of tokens would start 120s out, past the reserve-ahead limit
+        assertThat(quota.reserve(6000)).isNegative();
+        assertThat(store.available(BedrockQuota.REQUESTS_BUCKET, 60)).isEqualTo(58);
+    }
+
+    @Test
+    void oversizedRequestIsCappedToOneMinuteOfTokens() {
+        BedrockQuota quota = new BedrockQuota(store, 0, 6000);
+
+        assertThat(quota.reserve(50_000)).isZero();
+        assertThat(store.available(BedrockQuota.TOKENS_BUCKET, 6000)).isZero();
+    }
+
+    @Test
+    void tryAcquireTakesNothingUnlessThereIsRoomNow() {
+        BedrockQuota quota = new BedrockQuota(store, 60, 6000);
+        quota.reserve(5000);
+
+        assertThat(quota.tryAcquire(2000)).isFalse();
+        assertThat(store.available(BedrockQuota.REQUESTS_BUCKET, 60)).isEqualTo(59);
+        assertThat(quota.tryAcquire(1000)).isTrue();
+        assertThat(store.available(BedrockQuota.TOKENS_BUCKET, 6000)).isZero();
+    }
+}
@@ -0,0 +1,130 @@
+package com.somdiproy.smartcode.lambda;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkContextExtractorTest {
+
+    private static final String JAVA = String.join("\n",
+            "package com.example.orders;",                          // 1
+            "",                                                     // 2
+            "import java.util.List;",                               // 3
+            "import java.util.Map;",                                // 4
+            "",                                                     // 5
+            "public class OrderService {",                          // 6
+            "    private final Map<String, Order> orders;",         // 7
+            "    private int retries = 3; // default",              // 8
+            "",                                                     // 9
+            "    public List<Order> open() {",                      // 10
+            "        int limit = 10;",                              // 11
+            "        String brace = \"{\";",                        // 12
+            "        return List.of();",                            // 13
+            "    }",                                                // 14
+            "",                                                     // 15
+            "    static class Cache {",                             // 16
+            "        private long hits;",                           // 17
+            "",                                                     // 18
+            "        void record() {",                              // 19
+            "            hits++;",                                  // 20
+            "        }",                                            // 21
+            "    }",                                                // 22
+            "}",                                                    // 23
+            "",                                                     // 24
+            "class Order {",                                        // 25
+            "    String id;",                                       // 26
+            "}");                                                   // 27
+
+    @Test
+    void chunkAtTheTopOfAFileNeedsNoHeader() {
+        assertThat(ChunkContextExtractor.forSource(JAVA).contextAt(1)).isEmpty();
+    }
+
+    @Test
+    void chunkInsideAMethodGetsPackageImportsAndClassFields() {
+        String context = ChunkContextExtractor.forSource(JAVA).contextAt(12);
+
+        assertThat(context).isEqualTo(String.join("\n",
+                "package com.example.orders;",
+                "import java.util.List;",
+                "import java.util.Map;",
+                "public class OrderService {",
+                "    private final Map<String, Order> orders;",
+                "    private int retries = 3;",
+                "    // ...",
+                "}",
+                ""));
+        // Locals of the method the chunk starts in are not fields
+        assertThat(context).doesNotContain("limit");
+    }
+
+    @Test
+    void chunkInsideANestedClassGetsEveryEnclosingType() {
+        String context = ChunkContextExtractor.forSource(JAVA).contextAt(20);
+
+        assertThat(context).endsWith(String.join("\n",
+                "public class OrderService {",
+                "    private final Map<String, Order> orders;",
+                "    private int retries = 3;",
+                "    static class Cache {",
+                "        private long hits;",
+                "        // ...",
+                "    }",
+                "    // ...",
+                "}",
+                ""));
+    }
+
+    @Test
+    void braceInAStringDoesNotEndTheClass() {
+        // Line 12 opens a brace inside a string literal; the nested class is still found
+        assertThat(ChunkContextExtractor.forSource(JAVA).contextAt(17)).contains("static class Cache {");
+    }
+
+    @Test
+    void chunkAfterAClassClosesOnlyGetsTheFileHeader() {
+        String context = ChunkContextExtractor.forSource(JAVA).contextAt(24);
+
+        assertThat(context).contains("package com.example.orders;", "import java.util.Map;");
+        assertThat(context).doesNotContain("OrderService", "Cache");
+    }
+
+    @Test
+    void nonBraceSourceGetsImportsButNoTypeContext() {
+        String python = String.join("\n",
+                "import os",                                        // 1
+                "from typing import List",                          // 2
+                "",                                                 // 3
+                "class Loader:",                                    // 4
+                "    root = '/tmp'",                                // 5
+                "",                                                 // 6
+                "    def load(self):",                              // 7
+                "        return os.listdir(self.root)");            // 8
+
+        String context = ChunkContextExtractor.forSource(python).contextAt(7);
+
+        assertThat(context).isEqualTo("import os\nfrom typing import List\n");
+    }
+
+    @Test
+    void filesInABundleKeepTheirOwnHeaders() {
+        String bundle = String.join("\n",
+                "// File: src/A.java",                              // 1
+                "import java.util.List;",                           // 2
+                "class A {",                                        // 3
+                "    int a;",                                       // 4
+                "}",                                                // 5
+                "// File: src/B.java",                              // 6
+                "import java.util.Set;",                            // 7
+                "class B {",                                        // 8
+                "    int b;",                                       // 9
+                "    void run() {}",                                // 10
+                "}");                                               // 11
+
+        String context = ChunkContextExtractor.forSource(bundle).contextAt(10);
+
+        assertThat(context).startsWith(ChunkResultMerger.FILE_MARKER + "src/B.java\n");
+        assertThat(context).contains("import java.util.Set;", "class B {", "int b;");
+        assertThat(context).doesNotContain("java.util.List", "class A");
+    }
+}
@@ -0,0 +1,180 @@
+package com.somdiproy.smartcode.lambda;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ChunkResultMergerTest {
+
+    @Test
+    void dropsBoundaryDuplicatesCitedOnNearbyLines() {
+        ChunkResultMerger merger = ChunkResultMerger.forSource(lines(200));
+
+        // Chunk 2 starts at line 100; its line 2 is source line 101, two lines from chunk 1's copy
+        Map<String, Object> merged = merger.merge(List.of(
+                chunk(1, issue("SQL injection risk", 99, "HIGH")),
+                chunk(100, issue("SQL Injection Risk!", 2, "HIGH"))));
+
+        assertThat(issues(merged)).hasSize(1);
+        assertThat(merged.get("duplicateIssuesRemoved")).isEqualTo(1);
+    }
+
+    @Test
+    void matchesAcrossBucketBoundaries() {
+        ChunkResultMerger merger = ChunkResultMerger.forSource(lines(200));
+
+        // Source lines 8 and 10 fall in different buckets
+        Map<String, Object> merged = merger.merge(List.of(
+                chunk(1, issue("Null dereference", 8, "MEDIUM")),
+                chunk(9, issue("Null dereference", 2, "MEDIUM"))));
+
+        assertThat(issues(merged)).hasSize(1);
+    }
+
+    @Test
+    void keepsSameChunkFindingsOnAdjacentLines() {
+        ChunkResultMerger merger = ChunkResultMerger.forSource(lines(200));
+
+        Map<String, Object> merged = merger.merge(List.of(
+                chunk(1, issue("Null dereference", 8, "MEDIUM"), issue("Null dereference", 9, "MEDIUM"),
+                        issue("Null dereference", 9, "MEDIUM"))));
+
+        assertThat(issues(merged)).extracting(issue -> issue.get("lineNumber")).containsExactly(8, 9);
+        assertThat(merged.get("duplicateIssuesRemoved")).isEqualTo(1);
+    }
+
+    @Test
+    void keepsSameTitleFurtherApart() {
+        ChunkResultMerger merger = ChunkResultMerger.forSource(lines(200));
+
+        Map<String, Object> merged = merger.merge(List.of(
+                chunk(1, issue("Null dereference", 10, "MEDIUM"), issue("Null dereference", 14, "MEDIUM"))));
+
+        assertThat(issues(merged)).hasSize(2);
+    }
+
+    @Test
+    void issuesWithoutLinesDoNotMatchLineZero() {
+        ChunkResultMerger merger = ChunkResultMerger.forSource(lines(10));
+        Map<String, Object> noLine = new HashMap<>(issue("Missing license header", 0, "LOW"));
+        noLine.remove("lineNumber");
+
+        Map<String, Object> merged = merger.merge(List.of(
+                chunk(1, noLine, issue("Missing license header", 1, "LOW"))));
+
+        assertThat(issues(merged)).hasSize(2);
+    }
+
+    @Test
+    void keepsTheMoreSevereCopy() {
+        ChunkResultMerger merger = ChunkResultMerger.forSource(lines(200));
+
+        Map<String, Object> merged = merger.merge(List.of(
+                chunk(1, issue("Hardcoded secret", 50, "MEDIUM")),
+                chunk(51, issue("Hardcoded secret", 1, "CRITICAL"))));
+
+        assertThat(issues(merged)).singleElement()
+                .satisfies(issue -> assertThat(issue.get("severity")).isEqualTo("CRITICAL"));
+    }
+
+    @Test
+    void doesNotMatchAcrossFiles() {
+        String code = "// File: A.java\n" + lines(20) + "// File: B.java\n" + lines(20);
+        ChunkResultMerger merger = ChunkResultMerger.forSource(code);
+
+        // Source lines 5 and 26 are both line 4 of their file
+        Map<String, Object> merged = merger.merge(List.of(
+                chunk(1, issue("Unused import", 5, "LOW"), issue("Unused import", 26, "LOW"))));
+
+        assertThat(issues(merged)).extracting(issue -> issue.get("file")).containsExactly("A.java", "B.java");
+        assertThat(issues(merged)).extracting(issue -> issue.get("lineNumber")).containsExactly(4, 4);
+    }
+
+    @Test
+    void mapsLinesAfterLineMarkersToTheirRuns() {
+        String code = "// File: A.java\n"
+                + ChunkResultMerger.LINE_MARKER + "40\nforty\nforty-one\n"
+                + ChunkResultMerger.LINE_MARKER + "90\nninety\n";
+        ChunkResultMerger merger = ChunkResultMerger.forSource(code);
+
+        // Chunk 2 starts at source line 5, the second marker
+        Map<String, Object> merged = merger.merge(List.of(
+                chunk(1, issue("Unchecked cast", 4, "LOW")),
+                chunk(5, issue("Resource leak", 2, "HIGH"))));
+
+        assertThat(issues(merged)).extracting(issue -> issue.get("lineNumber")).containsExactly(41, 90);
+        assertThat(issues(merged)).extracting(issue -> issue.get("file")).containsExactly("A.java", "A.java");
+    }
+
+    @Test
+    void lineMarkersDoNotCarryIntoTheNextFile() {
+        String code = "// File: A.java\n" + ChunkResultMerger.LINE_MARKER + "40\nforty\n"
+                + "// File: B.java\nfirst\n";
+        ChunkResultMerger merger = ChunkResultMerger.forSource(code);
+
+        Map<String, Object> merged = merger.merge(List.of(chunk(1, issue("Unused import", 5, "LOW"))));
+
+        assertThat(issues(merged)).singleElement()
+                .satisfies(issue -> assertThat(issue).containsEntry("file", "B.java").containsEntry("lineNumber", 1));
+    }
+
+    @Test
+    void locateIssuesMapsAWholeSourceResult() {
+        ChunkResultMerger merger = ChunkResultMerger.forSource(ChunkResultMerger.LINE_MARKER + "120\na\nb\n");
+        Map<String, Object> result = new HashMap<>();
+        result.put("issues", new ArrayList<>(List.of(issue("Magic number", 3, "LOW"))));
+
+        assertThat(merger.hasMarkers()).isTrue();
+        merger.locateIssues(result);
+
+        assertThat(issues(result)).singleElement()
+                .satisfies(issue -> assertThat(issue.get("lineNumber")).isEqualTo(121));
+    }
+
+    @Test
+    void weightsScoreByChunkTokens() {
+        ChunkResultMerger merger = ChunkResultMerger.forSource(lines(10));
+        Map<String, Object> big = new HashMap<>(Map.of("overallScore", 8.0));
+        Map<String, Object> small = new HashMap<>(Map.of("overallScore", 2.0));
+
+        Map<String, Object> merged = merger.merge(List.of(
+                new ChunkResultMerger.Chunk(big, 1, 900),
+                new ChunkResultMerger.Chunk(small, 5, 100)));
+
+        assertThat((Double) merged.get("overallScore")).isCloseTo(7.4, within(1e-9));
+    }
+
+    static Map<String, Object> issue(String title, int line, String severity) {
+        Map<String, Object> issue = new HashMap<>();
+        issue.put("title", title);
+        issue.put("lineNumber", line);
+        issue.put("severity", severity);
+        return issue;
+    }
+
+    @SafeVarargs
+    static ChunkResultMerger.Chunk chunk(int startLine, Map<String, Object>... issues) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("issues", new ArrayList<>(List.of(issues)));
+        return new ChunkResultMerger.Chunk(result, startLine, 100);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> issues(Map<String, Object> merged) {
+        return (List<Map<String, Object>>) merged.get("issues");
+    }
+
+    static String lines(int count) {
+        StringBuilder code = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            code.append("line ").append(i).append('\n');
+        }
+        return code.toString();
+    }
+}
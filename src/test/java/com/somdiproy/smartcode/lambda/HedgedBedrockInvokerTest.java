@@ -0,0 +1,142 @@
+package com.somdiproy.smartcode.lambda;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HedgedBedrockInvokerTest {
+
+    private final InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+    private final BedrockRuntimeClient primary = mock(BedrockRuntimeClient.class);
+    private final BedrockRuntimeClient hedgeClient = mock(BedrockRuntimeClient.class);
+    private final InvokeModelResponse response = mock(InvokeModelResponse.class);
+    private final AtomicBoolean slow = new AtomicBoolean();
+
+    @Test
+    void recognizesInferenceProfiles() {
+        assertThat(HedgedBedrockInvoker.isInferenceProfile("amazon.nova-pro-v1:0")).isFalse();
+        assertThat(HedgedBedrockInvoker.isInferenceProfile("anthropic.claude-3-5-sonnet-20240620-v1:0")).isFalse();
+        assertThat(HedgedBedrockInvoker.isInferenceProfile("us.amazon.nova-premier-v1:0")).isTrue();
+        assertThat(HedgedBedrockInvoker.isInferenceProfile(
+                "arn:aws:bedrock:us-east-1:123456789012:inference-profile/us.amazon.nova-pro-v1:0")).isTrue();
+    }
+
+    @Test
+    void refusesToHedgeToTheSamePlace() {
+        assertThatThrownBy(() -> new HedgedBedrockInvoker(primary, null, "", BedrockQuota.UNLIMITED, 0.05, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void profileIdWithOnlyAPrefixIsNeverDuplicated() throws Exception {
+        stubPrimary();
+        HedgedBedrockInvoker invoker = new HedgedBedrockInvoker(primary, null, "us.", BedrockQuota.UNLIMITED, 1, 0);
+        InvokeModelRequest request = request("us.amazon.nova-premier-v1:0");
+
+        warmUp(invoker, request);
+        slow.set(true);
+        invoker.invoke(request, 100, 1000);
+
+        assertThat(invoker.getHedges()).isZero();
+        assertThat(invoker.getStats().get("hedgesUnavailable")).isEqualTo(1L);
+    }
+
+    @Test
+    void hedgeIsChargedToTheQuota() throws Exception {
+        stubPrimary();
+        when(hedgeClient.invokeModel(any(InvokeModelRequest.class))).thenReturn(response);
+        BedrockQuota quota = new BedrockQuota(store, 60, 0);
+        HedgedBedrockInvoker invoker = new HedgedBedrockInvoker(primary, hedgeClient, null, quota, 1, 0);
+        InvokeModelRequest request = request("us.amazon.nova-premier-v1:0");
+
+        warmUp(invoker, request);
+        slow.set(true);
+        assertThat(invoker.invoke(request, 100, 1000)).isSameAs(response);
+
+        assertThat(invoker.getHedges()).isEqualTo(1);
+        assertThat(store.available(BedrockQuota.REQUESTS_BUCKET, 60)).isEqualTo(59);
+    }
+
+    @Test
+    void losingHedgeKeepsItsFullCharge() throws Exception {
+        stubPrimary();
+        when(hedgeClient.invokeModel(any(InvokeModelRequest.class))).thenAnswer(invocation -> {
+            Thread.sleep(1000);
+            return response;
+        });
+        // Frozen clock, so the bucket does not refill during the race
+        InMemoryTokenBucketStore frozen = new InMemoryTokenBucketStore(() -> 0L);
+        BedrockQuota quota = new BedrockQuota(frozen, 0, 60_000);
+        HedgedBedrockInvoker invoker = new HedgedBedrockInvoker(primary, hedgeClient, null, quota, 1, 0);
+        InvokeModelRequest request = request("us.amazon.nova-premier-v1:0");
+
+        warmUp(invoker, request);
+        slow.set(true);
+        invoker.invoke(request, 100, 1000);
+
+        assertThat(invoker.getHedgeWins()).isZero();
+        assertThat(invoker.getHedgeTokens()).isEqualTo(1000);
+        assertThat(frozen.available(BedrockQuota.TOKENS_BUCKET, 60_000)).isEqualTo(59_000);
+    }
+
+    @Test
+    void noHedgeWithoutQuotaRoom() throws Exception {
+        stubPrimary();
+        BedrockQuota quota = new BedrockQuota(store, 60, 0);
+        store.tryAcquire(BedrockQuota.REQUESTS_BUCKET, 60, 60);
+        HedgedBedrockInvoker invoker = new HedgedBedrockInvoker(primary, hedgeClient, null, quota, 1, 0);
+        InvokeModelRequest request = request("us.amazon.nova-premier-v1:0");
+
+        warmUp(invoker, request);
+        slow.set(true);
+        invoker.invoke(request, 100, 1000);
+
+        assertThat(invoker.getHedges()).isZero();
+        verify(hedgeClient, never()).invokeModel(any(InvokeModelRequest.class));
+    }
+
+    @Test
+    void latenciesAreKeptPerModel() throws Exception {
+        stubPrimary();
+        HedgedBedrockInvoker invoker = new HedgedBedrockInvoker(primary, hedgeClient, null, BedrockQuota.UNLIMITED, 1, 0);
+
+        warmUp(invoker, request("us.amazon.nova-lite-v1:0"));
+        slow.set(true);
+        // No samples yet for this model, so no p95 to hedge against
+        invoker.invoke(request("us.amazon.nova-premier-v1:0"), 100, 1000);
+
+        assertThat(invoker.getHedges()).isZero();
+    }
+
+    private void stubPrimary() {
+        when(primary.invokeModel(any(InvokeModelRequest.class))).thenAnswer(invocation -> {
+            if (slow.get()) {
+                Thread.sleep(300);
+            }
+            return response;
+        });
+    }
+
+    private static void warmUp(HedgedBedrockInvoker invoker, InvokeModelRequest request) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            invoker.invoke(request, 100, 1000);
+        }
+    }
+
+    private static InvokeModelRequest request(String modelId) {
+        InvokeModelRequest request = mock(InvokeModelRequest.class);
+        when(request.modelId()).thenReturn(modelId);
+        return request;
+    }
+}
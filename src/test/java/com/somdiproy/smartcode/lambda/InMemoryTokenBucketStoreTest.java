@@ -0,0 +1,69 @@
+package com.somdiproy.smartcode.lambda;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryTokenBucketStoreTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(now::get);
+
+    @Test
+    void startsFullAndRefillsContinuously() {
+        assertThat(store.tryAcquire("b", 60, 60)).isZero();
+        // One permit per second at 60/min
+        assertThat(store.tryAcquire("b", 1, 60)).isEqualTo(1000);
+
+        now.addAndGet(500);
+        assertThat(store.tryAcquire("b", 1, 60)).isEqualTo(500);
+        now.addAndGet(500);
+        assertThat(store.tryAcquire("b", 1, 60)).isZero();
+    }
+
+    @Test
+    void doesNotBurstPastOneMinuteOfTokens() {
+        store.tryAcquire("b", 1, 60);
+        now.addAndGet(600_000);
+
+        assertThat(store.available("b", 60)).isEqualTo(60);
+        assertThat(store.tryAcquire("b", 61, 60)).isPositive();
+    }
+
+    @Test
+    void reservationsQueueCallersBehindEachOther() {
+        store.tryAcquire("b", 60, 60);
+
+        assertThat(store.reserve("b", 1, 60, 10_000)).isEqualTo(1000);
+        assertThat(store.reserve("b", 1, 60, 10_000)).isEqualTo(2000);
+        assertThat(store.reserve("b", 1, 60, 10_000)).isEqualTo(3000);
+        assertThat(store.available("b", 60)).isEqualTo(-3);
+    }
+
+    @Test
+    void reservationBeyondMaxWaitTakesNothing() {
+        store.tryAcquire("b", 60, 60);
+
+        assertThat(store.reserve("b", 5, 60, 1000)).isEqualTo(-5000);
+        assertThat(store.available("b", 60)).isZero();
+    }
+
+    @Test
+    void releaseReturnsPermitsUpToCapacity() {
+        store.tryAcquire("b", 10, 60);
+        store.release("b", 4, 60);
+        assertThat(store.available("b", 60)).isEqualTo(54);
+
+        store.release("b", 100, 60);
+        assertThat(store.available("b", 60)).isEqualTo(60);
+    }
+
+    @Test
+    void bucketsAreIndependent() {
+        store.tryAcquire("a", 60, 60);
+
+        assertThat(store.tryAcquire("b", 60, 60)).isZero();
+    }
+}
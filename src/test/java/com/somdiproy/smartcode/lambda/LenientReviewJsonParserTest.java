@@ -0,0 +1,75 @@
+package com.somdiproy.smartcode.lambda;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LenientReviewJsonParserTest {
+
+    private final LenientReviewJsonParser parser = new LenientReviewJsonParser(new ObjectMapper());
+
+    @Test
+    void readsFencedObjectAndResumesAfterIt() {
+        String json = "{\"summary\":\"ok\",\"issues\":[{\"title\":\"a\"}]}";
+        String output = "Here is the review:\n```json\n" + json + "\n```";
+
+        LenientReviewJsonParser.Result result = parser.parse(output);
+
+        assertThat(result.isComplete()).isTrue();
+        assertThat(result.getValues()).containsEntry("summary", "ok");
+        assertThat(result.getResumeOffset()).isEqualTo(output.indexOf(json) + json.length());
+    }
+
+    @Test
+    void keepsCompleteIssuesFromACutOffArray() {
+        String kept = "Sure. {\"summary\":\"ok\",\"issues\":[{\"title\":\"a\"},{\"title\":\"b\"}";
+        String output = kept + ",{\"title\":\"c\",\"desc";
+
+        LenientReviewJsonParser.Result result = parser.parse(output);
+
+        assertThat(result.isComplete()).isFalse();
+        assertThat(result.getValues()).containsEntry("summary", "ok");
+        assertThat(titles(result)).containsExactly("a", "b");
+        assertThat(result.getResumeOffset()).isEqualTo(kept.length());
+    }
+
+    @Test
+    void resumesAfterTheLastCompleteField() {
+        String kept = "{\"summary\":\"ok\",\"score\":7";
+        String output = kept + ",\"overview\":\"the code is";
+
+        LenientReviewJsonParser.Result result = parser.parse(output);
+
+        assertThat(result.isComplete()).isFalse();
+        assertThat(result.getValues()).containsOnlyKeys("summary", "score");
+        assertThat(result.getResumeOffset()).isEqualTo(kept.length());
+    }
+
+    @Test
+    void cutOffBeforeAnyValueResumesInsideTheObject() {
+        LenientReviewJsonParser.Result result = parser.parse("prose {\"summ");
+
+        assertThat(result.isEmpty()).isTrue();
+        assertThat(result.getResumeOffset()).isEqualTo("prose {".length());
+    }
+
+    @Test
+    void outputWithoutAnObjectIsEmpty() {
+        LenientReviewJsonParser.Result result = parser.parse("I could not review this code.");
+
+        assertThat(result.isEmpty()).isTrue();
+        assertThat(result.isComplete()).isFalse();
+        assertThat(result.getResumeOffset()).isZero();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> titles(LenientReviewJsonParser.Result result) {
+        return ((List<Map<String, Object>>) result.getValues().get("issues")).stream()
+                .map(issue -> issue.get("title"))
+                .toList();
+    }
+}
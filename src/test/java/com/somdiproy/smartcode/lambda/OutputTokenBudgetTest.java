@@ -0,0 +1,55 @@
+package com.somdiproy.smartcode.lambda;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputTokenBudgetTest {
+
+    private final OutputTokenBudget budget = new OutputTokenBudget(10_000);
+
+    @Test
+    void startsFromTheDefaultRates() {
+        // 600 envelope + 0.5 issues/1K chars * 10K chars * 120 tokens * 1.5 headroom
+        assertThat(budget.budgetFor("java", 10_000)).isEqualTo(1500);
+    }
+
+    @Test
+    void neverGoesBelowTheEnvelopeOrAboveTheModelLimit() {
+        assertThat(budget.budgetFor("java", 0)).isEqualTo(OutputTokenBudget.BASE_TOKENS);
+        assertThat(new OutputTokenBudget(2000).budgetFor("java", 1_000_000)).isEqualTo(2000);
+    }
+
+    @Test
+    void learnsIssueDensityPerLanguage() {
+        // 5 issues in 1K chars at 200 tokens each
+        budget.record("Python", 1000, 5, OutputTokenBudget.BASE_TOKENS + 5 * 200);
+
+        // The first python review sets its density to 5; tokens per issue 120 -> 136 for all languages
+        assertThat(budget.budgetFor("python", 1000)).isEqualTo(600 + 1020);
+        assertThat(budget.budgetFor("java", 1000)).isEqualTo(600 + 102);
+    }
+
+    @Test
+    void laterReviewsMoveTheDensityGradually() {
+        budget.record("java", 1000, 2, OutputTokenBudget.BASE_TOKENS);
+        budget.record("java", 1000, 0, OutputTokenBudget.BASE_TOKENS);
+
+        // Density 2 -> 1.6; reviews within the envelope leave tokens per issue at 120
+        assertThat(budget.budgetFor("java", 1000)).isEqualTo(600 + 288);
+        assertThat(budget.getStats().get("tokensPerIssue")).isEqualTo(120L);
+    }
+
+    @Test
+    void emptyInputIsNotRecorded() {
+        budget.record("java", 0, 3, 5000);
+
+        assertThat(budget.budgetFor("java", 10_000)).isEqualTo(1500);
+    }
+
+    @Test
+    void continuationDoublesUpToTheModelLimit() {
+        assertThat(budget.continuationBudget(1500)).isEqualTo(3000);
+        assertThat(budget.continuationBudget(8000)).isEqualTo(10_000);
+    }
+}
@@ -0,0 +1,75 @@
+package com.somdiproy.smartcode.service;
+
+import com.somdiproy.smartcode.lambda.InMemoryTokenBucketStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlServiceTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(now::get);
+
+    @Test
+    void instancesShareTheGlobalBudget() {
+        AdmissionControlService a = service(60_000);
+        AdmissionControlService b = service(60_000);
+
+        assertThat(a.admit("session-a", 60_000).getOutcome()).isEqualTo(AdmissionControlService.Outcome.ADMITTED);
+        AdmissionControlService.Admission second = b.admit("session-b", 30_000);
+
+        assertThat(second.getOutcome()).isEqualTo(AdmissionControlService.Outcome.DELAYED);
+        assertThat(second.getWaitMs()).isEqualTo(30_000);
+        assertThat(a.getGlobalTokensAvailable()).isEqualTo(-30_000);
+    }
+
+    @Test
+    void sessionBudgetIsSharedAcrossInstances() {
+        AdmissionControlService a = service();
+        AdmissionControlService b = service();
+
+        a.admit("session", 10_000);
+        AdmissionControlService.Admission second = b.admit("session", 5_000);
+
+        // 5000 tokens of session debt at 10000/min
+        assertThat(second.getWaitMs()).isEqualTo(30_000);
+    }
+
+    @Test
+    void sessionRejectionReturnsTheGlobalCharge() {
+        AdmissionControlService a = service();
+        a.admit("session", 10_000);
+
+        AdmissionControlService.Admission rejected = a.admit("session", 20_000);
+
+        assertThat(rejected.isRejected()).isTrue();
+        assertThat(a.getGlobalTokensAvailable()).isEqualTo(50_000);
+    }
+
+    @Test
+    void releaseRefundsBothBudgets() {
+        AdmissionControlService a = service();
+        AdmissionControlService.Admission admission = a.admit("session", 10_000);
+
+        a.release(admission);
+
+        assertThat(a.getGlobalTokensAvailable()).isEqualTo(60_000);
+        assertThat(a.admit("session", 10_000).getOutcome()).isEqualTo(AdmissionControlService.Outcome.ADMITTED);
+    }
+
+    private AdmissionControlService service() {
+        return service(10_000);
+    }
+
+    private AdmissionControlService service(long sessionTokensPerMinute) {
+        AdmissionControlService service = new AdmissionControlService(new SimpleMeterRegistry(), store);
+        ReflectionTestUtils.setField(service, "globalTokensPerMinute", 60_000L);
+        ReflectionTestUtils.setField(service, "sessionTokensPerMinute", sessionTokensPerMinute);
+        ReflectionTestUtils.setField(service, "maxDelaySeconds", 60L);
+        return service;
+    }
+}
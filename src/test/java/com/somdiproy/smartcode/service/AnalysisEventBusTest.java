@@ -0,0 +1,106 @@
+package com.somdiproy.smartcode.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnalysisEventBusTest {
+
+    private final AnalysisEventBus bus = new AnalysisEventBus();
+
+    @Test
+    void deliversToSubscribersOfThatAnalysisAndGlobalListeners() {
+        List<String> seen = new ArrayList<>();
+        bus.subscribe("a", event -> seen.add("a:" + event.getStatus()));
+        bus.subscribe("b", event -> seen.add("b:" + event.getStatus()));
+        bus.subscribeAll(event -> seen.add("all:" + event.getAnalysisId()));
+
+        bus.publish(event("a", "PROCESSING"));
+
+        assertThat(seen).containsExactly("all:a", "a:PROCESSING");
+    }
+
+    @Test
+    void unsubscribeHandleRemovesTheListener() {
+        List<AnalysisChangeEvent> seen = new ArrayList<>();
+        Runnable unsubscribe = bus.subscribe("a", seen::add);
+
+        unsubscribe.run();
+        bus.publish(event("a", "COMPLETED"));
+
+        assertThat(seen).isEmpty();
+        assertThat(bus.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    void failingListenerDoesNotStopOthers() {
+        List<AnalysisChangeEvent> seen = new ArrayList<>();
+        bus.subscribe("a", event -> {
+            throw new IllegalStateException("boom");
+        });
+        bus.subscribe("a", seen::add);
+
+        bus.publish(event("a", "COMPLETED"));
+
+        assertThat(seen).hasSize(1);
+    }
+
+    @Test
+    void awaitChangeCompletesWithTheNextEvent() throws Exception {
+        CompletableFuture<AnalysisChangeEvent> change = bus.awaitChange("a", 5000);
+
+        bus.publish(event("a", "COMPLETED"));
+
+        assertThat(change.get(1, TimeUnit.SECONDS).isTerminal()).isTrue();
+        assertThat(bus.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    void awaitChangeCompletesWithNullAfterTheTimeout() throws Exception {
+        CompletableFuture<AnalysisChangeEvent> change = bus.awaitChange("a", 50);
+
+        assertThat(change.get(1, TimeUnit.SECONDS)).isNull();
+        assertThat(bus.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    void localFeedDeliversInWriteOrder() throws Exception {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        CompletableFuture<AnalysisChangeEvent> done = new CompletableFuture<>();
+        bus.subscribe("a", event -> {
+            seen.add(event.getStatus());
+            if (event.isTerminal()) {
+                done.complete(event);
+            }
+        });
+        LocalAnalysisChangeFeed feed = new LocalAnalysisChangeFeed(bus);
+        feed.start();
+        try {
+            feed.recordWritten(record("a", "QUEUED"));
+            feed.recordWritten(record("a", "PROCESSING"));
+            feed.recordWritten(record("a", "COMPLETED"));
+
+            done.get(2, TimeUnit.SECONDS);
+            assertThat(seen).containsExactly("QUEUED", "PROCESSING", "COMPLETED");
+        } finally {
+            feed.stop();
+        }
+    }
+
+    private static AnalysisChangeEvent event(String analysisId, String status) {
+        return new AnalysisChangeEvent(analysisId, record(analysisId, status));
+    }
+
+    private static DynamoDBAnalysisStorage.AnalysisRecord record(String analysisId, String status) {
+        DynamoDBAnalysisStorage.AnalysisRecord record = new DynamoDBAnalysisStorage.AnalysisRecord();
+        record.setAnalysisId(analysisId);
+        record.setStatus(status);
+        return record;
+    }
+}
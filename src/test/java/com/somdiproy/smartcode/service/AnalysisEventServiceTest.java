@@ -0,0 +1,219 @@
+package com.somdiproy.smartcode.service;
+
+import com.somdiproy.smartcode.dto.AnalysisResponse;
+import com.somdiproy.smartcode.dto.AnalysisStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisEventServiceTest {
+
+    private static final Pattern EVENT_ID = Pattern.compile("^id:(\\d+)$", Pattern.MULTILINE);
+
+    private final CodeAnalysisService codeAnalysisService = mock(CodeAnalysisService.class);
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+    private AnalysisEventService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ObjectProvider<AnalysisChangeFeed> noChangeFeed = mock(ObjectProvider.class);
+        service = new AnalysisEventService(codeAnalysisService, new AnalysisEventBus(), noChangeFeed) {
+            @Override
+            SseEmitter newEmitter() {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+        ReflectionTestUtils.setField(service, "emitterTimeoutMs", 600_000L);
+        ReflectionTestUtils.setField(service, "historySize", 200);
+        ReflectionTestUtils.setField(service, "retentionMs", 300_000L);
+        ReflectionTestUtils.setField(service, "reconnectMs", 3_000L);
+        service.init();
+    }
+
+    @Test
+    void newSubscriberGetsTheCurrentStateThenChanges() {
+        currentState(response(40, 100));
+
+        RecordingEmitter emitter = subscribe(null);
+        service.publish(response(60, 200));
+
+        // Ids are the record's update time times ten plus the event's slot (status = 1)
+        assertThat(emitter.eventIds).containsExactly(1001L, 2001L);
+    }
+
+    @Test
+    void reconnectResumesAfterItsLastEventId() {
+        currentState(response(40, 100));
+        subscribe(null);
+        service.publish(response(60, 200));
+        service.publish(response(80, 300));
+
+        RecordingEmitter resumed = subscribe(2001L);
+
+        assertThat(resumed.eventIds).containsExactly(3001L);
+        // Replayed from history, so the current state is not read again
+        verify(codeAnalysisService, times(1)).getAnalysisResultAsync("a");
+    }
+
+    @Test
+    void resumeOnAFreshStreamSkipsWhatTheClientAlreadyHas() {
+        currentState(response(40, 100));
+
+        // Reconnected to an instance that holds no history for the analysis
+        RecordingEmitter emitter = subscribe(1001L);
+        service.publish(response(60, 200));
+
+        assertThat(emitter.eventIds).containsExactly(2001L);
+        assertThat(resumePoints()).isEmpty();
+    }
+
+    @Test
+    void timedOutSubscriberIsRemovedWithItsResumePoint() {
+        currentState(new CompletableFuture<>());
+        RecordingEmitter emitter = subscribe(1001L);
+        assertThat(resumePoints()).containsKey(emitter);
+
+        emitter.timeoutCallback.run();
+
+        assertThat(service.getActiveSubscriberCount()).isZero();
+        assertThat(resumePoints()).isEmpty();
+    }
+
+    @Test
+    void failedSubscriberIsRemovedWithItsResumePoint() {
+        currentState(new CompletableFuture<>());
+        RecordingEmitter emitter = subscribe(1001L);
+
+        emitter.errorCallback.accept(new IOException("Broken pipe"));
+
+        assertThat(service.getActiveSubscriberCount()).isZero();
+        assertThat(resumePoints()).isEmpty();
+    }
+
+    @Test
+    void heartbeatKeepsSubscribersAndDropsBrokenOnes() {
+        currentState(new CompletableFuture<>());
+        RecordingEmitter healthy = subscribe(null);
+        RecordingEmitter broken = subscribe(1001L);
+        broken.failing = true;
+
+        service.sendHeartbeats();
+
+        assertThat(healthy.heartbeats).isEqualTo(1);
+        assertThat(service.getActiveSubscriberCount()).isEqualTo(1);
+        assertThat(resumePoints()).doesNotContainKey(broken);
+    }
+
+    @Test
+    void completedAnalysisClosesTheStream() {
+        currentState(response(40, 100));
+        RecordingEmitter emitter = subscribe(null);
+
+        AnalysisResponse completed = response(100, 200);
+        completed.setStatus(AnalysisStatus.COMPLETED);
+        service.publish(completed);
+
+        // Slot 2 is the "complete" event
+        assertThat(emitter.eventIds).containsExactly(1001L, 2002L);
+        assertThat(emitter.completed).isTrue();
+        assertThat(service.getActiveSubscriberCount()).isZero();
+    }
+
+    private RecordingEmitter subscribe(Long lastEventId) {
+        service.subscribe("a", lastEventId);
+        return emitters.get(emitters.size() - 1);
+    }
+
+    private void currentState(AnalysisResponse response) {
+        currentState(CompletableFuture.completedFuture(response));
+    }
+
+    private void currentState(CompletableFuture<AnalysisResponse> response) {
+        when(codeAnalysisService.getAnalysisResultAsync("a")).thenReturn(response);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<SseEmitter, Long> resumePoints() {
+        Map<String, Object> streams = (Map<String, Object>) ReflectionTestUtils.getField(service, "streams");
+        return (Map<SseEmitter, Long>) ReflectionTestUtils.getField(streams.get("a"), "resumePoints");
+    }
+
+    private static AnalysisResponse response(int progress, long updatedAt) {
+        return AnalysisResponse.builder()
+                .success(true)
+                .analysisId("a")
+                .status(AnalysisStatus.PROCESSING)
+                .progressPercentage(progress)
+                .message("Analyzing")
+                .createdAt(50)
+                .updatedAt(updatedAt)
+                .build();
+    }
+
+    /**
+     * Emitter that records what would be written and hands its callbacks to the test
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<Long> eventIds = new ArrayList<>();
+        private int heartbeats;
+        private boolean failing;
+        private boolean completed;
+        private Runnable timeoutCallback;
+        private Consumer<Throwable> errorCallback;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            StringBuilder frame = new StringBuilder();
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof String) {
+                    frame.append(part.getData());
+                }
+            }
+            Matcher id = EVENT_ID.matcher(frame);
+            if (id.find()) {
+                eventIds.add(Long.parseLong(id.group(1)));
+            } else if (frame.toString().startsWith(":heartbeat")) {
+                heartbeats++;
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+
+        @Override
+        public synchronized void onTimeout(Runnable callback) {
+            timeoutCallback = callback;
+        }
+
+        @Override
+        public synchronized void onError(Consumer<Throwable> callback) {
+            errorCallback = callback;
+        }
+    }
+}
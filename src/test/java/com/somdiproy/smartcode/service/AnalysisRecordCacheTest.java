@@ -0,0 +1,105 @@
+package com.somdiproy.smartcode.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisRecordCacheTest {
+
+    private final AsyncDynamoDBAnalysisStorage storage = mock(AsyncDynamoDBAnalysisStorage.class);
+    private final AnalysisEventBus eventBus = new AnalysisEventBus();
+    private AnalysisRecordCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ObjectProvider<AnalysisChangeFeed> noChangeFeed = mock(ObjectProvider.class);
+        cache = new AnalysisRecordCache(storage, new SimpleMeterRegistry(), eventBus, noChangeFeed);
+        // Windows far longer than a test, so nothing expires mid-assertion
+        ReflectionTestUtils.setField(cache, "coalesceTtlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "negativeTtlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100L);
+        ReflectionTestUtils.setField(cache, "feedTtlMs", 60_000L);
+        cache.init();
+    }
+
+    @Test
+    void concurrentPollsShareOneRead() {
+        CompletableFuture<DynamoDBAnalysisStorage.AnalysisRecord> read = new CompletableFuture<>();
+        when(storage.getAnalysisAsync("a")).thenReturn(read);
+
+        CompletableFuture<DynamoDBAnalysisStorage.AnalysisRecord> first = cache.getRecord("a");
+        CompletableFuture<DynamoDBAnalysisStorage.AnalysisRecord> second = cache.getRecord("a");
+        DynamoDBAnalysisStorage.AnalysisRecord record = record("a", "PROCESSING");
+        read.complete(record);
+
+        assertThat(first.join()).isSameAs(record);
+        assertThat(second.join()).isSameAs(record);
+        verify(storage, times(1)).getAnalysisAsync("a");
+    }
+
+    @Test
+    void resultIsReusedWithinTheWindowUntilInvalidated() {
+        DynamoDBAnalysisStorage.AnalysisRecord record = record("a", "PROCESSING");
+        when(storage.getAnalysisAsync("a")).thenReturn(CompletableFuture.completedFuture(record));
+
+        cache.getRecord("a").join();
+        cache.getRecord("a").join();
+        verify(storage, times(1)).getAnalysisAsync("a");
+
+        cache.invalidate("a");
+        cache.getRecord("a").join();
+        verify(storage, times(2)).getAnalysisAsync("a");
+    }
+
+    @Test
+    void missingAnalysisIsCachedAsNegative() {
+        when(storage.getAnalysisAsync("unknown")).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertThat(cache.getRecord("unknown").join()).isNull();
+        assertThat(cache.getRecord("unknown").join()).isNull();
+
+        verify(storage, times(1)).getAnalysisAsync("unknown");
+    }
+
+    @Test
+    void negativeEntryExpiresOnItsOwnTtl() {
+        ReflectionTestUtils.setField(cache, "negativeTtlMs", 0L);
+        cache.init();
+        when(storage.getAnalysisAsync("unknown")).thenReturn(CompletableFuture.completedFuture(null));
+
+        cache.getRecord("unknown").join();
+        cache.getRecord("unknown").join();
+
+        verify(storage, times(2)).getAnalysisAsync("unknown");
+    }
+
+    @Test
+    void changeEventReplacesANegativeEntryWithoutARead() {
+        when(storage.getAnalysisAsync("a")).thenReturn(CompletableFuture.completedFuture(null));
+        assertThat(cache.getRecord("a").join()).isNull();
+
+        DynamoDBAnalysisStorage.AnalysisRecord record = record("a", "COMPLETED");
+        eventBus.publish(new AnalysisChangeEvent("a", record));
+
+        assertThat(cache.getRecord("a").join()).isSameAs(record);
+        verify(storage, times(1)).getAnalysisAsync("a");
+    }
+
+    private static DynamoDBAnalysisStorage.AnalysisRecord record(String analysisId, String status) {
+        DynamoDBAnalysisStorage.AnalysisRecord record = new DynamoDBAnalysisStorage.AnalysisRecord();
+        record.setAnalysisId(analysisId);
+        record.setStatus(status);
+        return record;
+    }
+}
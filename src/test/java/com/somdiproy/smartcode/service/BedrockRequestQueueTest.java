@@ -0,0 +1,65 @@
+package com.somdiproy.smartcode.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BedrockRequestQueueTest {
+
+    private final BedrockRequestQueue queue = new BedrockRequestQueue();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(queue, "maxConcurrentRequests", 1);
+        ReflectionTestUtils.setField(queue, "requestsPerMinute", 6000.0);
+        queue.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    void returnsWithoutWaitingForASlot() {
+        queue.trySubmitRequest(() -> release.await(5, TimeUnit.SECONDS), 1000);
+
+        long startedAt = System.nanoTime();
+        CompletableFuture<String> second = queue.trySubmitRequest(() -> "second", 1000);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isLessThan(100);
+        assertThat(second).isNotDone();
+    }
+
+    @Test
+    void runsOnceASlotFreesWithinTheTimeout() throws Exception {
+        queue.trySubmitRequest(() -> release.await(5, TimeUnit.SECONDS), 1000);
+        CompletableFuture<String> second = queue.trySubmitRequest(() -> "second", 2000);
+
+        Thread.sleep(150);
+        release.countDown();
+
+        assertThat(second.get(2, TimeUnit.SECONDS)).isEqualTo("second");
+    }
+
+    @Test
+    void failsWhenNoSlotFreesInTime() {
+        queue.trySubmitRequest(() -> release.await(5, TimeUnit.SECONDS), 1000);
+        CompletableFuture<String> second = queue.trySubmitRequest(() -> "second", 100);
+
+        assertThat(second).failsWithin(2, TimeUnit.SECONDS)
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(RejectedExecutionException.class);
+    }
+}
@@ -0,0 +1,101 @@
+package com.somdiproy.smartcode.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalAnalysisQueueTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ackedMessageIsRemovedFromDisk() throws Exception {
+        LocalAnalysisQueue queue = queue();
+        String id = queue.submitAnalysisRequest("a1", "code", "java", Map.of());
+        assertThat(queue.getQueueDepth()).isEqualTo(1);
+
+        LocalAnalysisQueue.LocalMessage message = queue.take();
+        assertThat(message.getId()).isEqualTo(id);
+        assertThat(message.getAnalysisId()).isEqualTo("a1");
+        assertThat(Files.exists(dir.resolve("inflight").resolve(id + ".json"))).isTrue();
+
+        queue.ack(message);
+        assertThat(queue.getQueueDepth()).isZero();
+        assertThat(files("inflight")).isZero();
+        assertThat(files("ready")).isZero();
+    }
+
+    @Test
+    void admissionDelayHoldsTheMessageBack() throws Exception {
+        LocalAnalysisQueue queue = queue();
+        queue.submitAnalysisRequest("later", "code", "java", Map.of("admissionDelaySeconds", 60));
+        queue.submitAnalysisRequest("now", "code", "java", Map.of());
+
+        assertThat(queue.take().getAnalysisId()).isEqualTo("now");
+    }
+
+    @Test
+    void failedMessageIsRetriedThenDeadLettered() throws Exception {
+        LocalAnalysisQueue queue = queue();
+        queue.submitAnalysisRequest("a1", "code", "java", Map.of());
+
+        LocalAnalysisQueue.LocalMessage first = queue.take();
+        assertThat(queue.nack(first, "throttled", 0)).isTrue();
+
+        LocalAnalysisQueue.LocalMessage second = queue.take();
+        assertThat(second.getAttempts()).isEqualTo(1);
+        assertThat(second.getLastError()).isEqualTo("throttled");
+        assertThat(queue.nack(second, "throttled again", 0)).isFalse();
+
+        assertThat(queue.getQueueDepth()).isZero();
+        assertThat(Files.exists(dir.resolve("dlq").resolve(second.getId() + ".json"))).isTrue();
+        assertThat(files("inflight")).isZero();
+    }
+
+    @Test
+    void messagesInFlightAtShutdownAreRecoveredOnRestart() throws Exception {
+        LocalAnalysisQueue crashed = queue();
+        crashed.submitAnalysisRequest("a1", "code", "java", Map.of());
+        crashed.submitAnalysisRequest("a2", "code", "java", Map.of());
+        crashed.take();
+
+        LocalAnalysisQueue restarted = queue();
+        assertThat(restarted.getQueueDepth()).isEqualTo(2);
+        assertThat(files("inflight")).isZero();
+    }
+
+    @Test
+    void unreadableMessageIsDeadLetteredOnStartup() throws Exception {
+        LocalAnalysisQueue first = queue();
+        first.submitAnalysisRequest("a1", "code", "java", Map.of());
+        Files.writeString(dir.resolve("ready").resolve("half-written.json"), "{\"id\":\"half-wr");
+
+        LocalAnalysisQueue restarted = queue();
+
+        assertThat(restarted.getQueueDepth()).isEqualTo(1);
+        assertThat(restarted.take().getAnalysisId()).isEqualTo("a1");
+        assertThat(Files.exists(dir.resolve("dlq").resolve("half-written.json"))).isTrue();
+    }
+
+    private LocalAnalysisQueue queue() throws Exception {
+        LocalAnalysisQueue queue = new LocalAnalysisQueue();
+        ReflectionTestUtils.setField(queue, "queueDir", dir.toString());
+        ReflectionTestUtils.setField(queue, "maxAttempts", 2);
+        queue.init();
+        return queue;
+    }
+
+    private long files(String subdir) throws Exception {
+        try (Stream<Path> files = Files.list(dir.resolve(subdir))) {
+            return files.count();
+        }
+    }
+}
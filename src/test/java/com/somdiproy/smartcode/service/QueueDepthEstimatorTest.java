@@ -0,0 +1,59 @@
+package com.somdiproy.smartcode.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueDepthEstimatorTest {
+
+    private final QueueDepthEstimator estimator = new QueueDepthEstimator();
+
+    @Test
+    void countsSendsAndTheirCompletionsSinceTheSample() {
+        estimator.applySample(estimator.beginSample(), 3, 1, 0, null);
+        estimator.recordEnqueue("a");
+        estimator.recordEnqueue("b");
+        assertThat(estimator.getTotal()).isEqualTo(6);
+
+        estimator.recordFinished("a");
+        assertThat(estimator.getTotal()).isEqualTo(5);
+    }
+
+    @Test
+    void ignoresCompletionsItDidNotQueue() {
+        estimator.applySample(estimator.beginSample(), 3, 1, 0, null);
+
+        // Queued by another instance, or analyzed inline
+        estimator.recordFinished("elsewhere");
+        assertThat(estimator.getTotal()).isEqualTo(4);
+    }
+
+    @Test
+    void ignoresCompletionsTheSampleAlreadyReflects() {
+        estimator.recordEnqueue("a");
+        estimator.applySample(estimator.beginSample(), 0, 1, 0, null);
+
+        estimator.recordFinished("a");
+        assertThat(estimator.getTotal()).isEqualTo(1);
+    }
+
+    @Test
+    void countsEachCompletionOnce() {
+        estimator.applySample(estimator.beginSample(), 0, 0, 0, null);
+        estimator.recordEnqueue("a");
+
+        estimator.recordFinished("a");
+        estimator.recordFinished("a");
+        assertThat(estimator.getTotal()).isZero();
+    }
+
+    @Test
+    void failedSendIsNotCounted() {
+        estimator.applySample(estimator.beginSample(), 2, 0, 0, null);
+        estimator.recordEnqueue("a");
+        estimator.recordEnqueueFailed("a");
+
+        assertThat(estimator.getTotal()).isEqualTo(2);
+        assertThat(estimator.getDelayed()).isZero();
+    }
+}
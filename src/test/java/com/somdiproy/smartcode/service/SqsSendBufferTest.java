@@ -0,0 +1,147 @@
+package com.somdiproy.smartcode.service;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SqsSendBufferTest {
+
+    private final AmazonSQS sqs = mock(AmazonSQS.class);
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private SqsSendBuffer buffer;
+
+    @AfterEach
+    void shutdown() {
+        if (buffer != null) {
+            buffer.shutdown();
+        }
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaitingForTheLinger() throws Exception {
+        acceptAllExcept(null);
+        buffer = new SqsSendBuffer(sqs, "queue", 60_000, 1, new SimpleMeterRegistry());
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < SqsSendBuffer.MAX_BATCH_ENTRIES; i++) {
+            futures.add(buffer.send("m" + i, 0, null));
+        }
+
+        assertThat(futures.get(9).get(2, TimeUnit.SECONDS)).isEqualTo("id-m9");
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(SqsSendBuffer.MAX_BATCH_ENTRIES);
+    }
+
+    @Test
+    void partialBatchIsSentAfterTheLinger() throws Exception {
+        acceptAllExcept(null);
+        buffer = new SqsSendBuffer(sqs, "queue", 20, 1, new SimpleMeterRegistry());
+
+        CompletableFuture<String> first = buffer.send("a", 0, null);
+        CompletableFuture<String> second = buffer.send("b", 0, null);
+
+        assertThat(first.get(2, TimeUnit.SECONDS)).isEqualTo("id-a");
+        assertThat(second.get(2, TimeUnit.SECONDS)).isEqualTo("id-b");
+        assertThat(batches).containsExactly(List.of("a", "b"));
+    }
+
+    @Test
+    void batchesStayUnderThePayloadLimit() throws Exception {
+        acceptAllExcept(null);
+        buffer = new SqsSendBuffer(sqs, "queue", 20, 1, new SimpleMeterRegistry());
+        String large = "x".repeat(SqsSendBuffer.MAX_BATCH_BYTES / 2 + 1);
+
+        CompletableFuture<String> first = buffer.send(large, 0, null);
+        CompletableFuture<String> second = buffer.send(large, 0, null);
+        first.get(2, TimeUnit.SECONDS);
+        second.get(2, TimeUnit.SECONDS);
+
+        assertThat(batches).hasSize(2);
+    }
+
+    @Test
+    void oversizedMessageFailsWithoutCallingSqs() {
+        buffer = new SqsSendBuffer(sqs, "queue", 20, 1, new SimpleMeterRegistry());
+
+        CompletableFuture<String> future = buffer.send("x".repeat(SqsSendBuffer.MAX_BATCH_BYTES + 1), 0, null);
+
+        assertThatThrownBy(future::join).hasCauseInstanceOf(IllegalArgumentException.class);
+        verify(sqs, never()).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void rejectedEntryFailsOnlyItsOwnFuture() throws Exception {
+        acceptAllExcept("bad");
+        buffer = new SqsSendBuffer(sqs, "queue", 20, 1, new SimpleMeterRegistry());
+
+        CompletableFuture<String> good = buffer.send("good", 0, null);
+        CompletableFuture<String> bad = buffer.send("bad", 0, null);
+
+        assertThat(good.get(2, TimeUnit.SECONDS)).isEqualTo("id-good");
+        assertThatThrownBy(() -> bad.get(2, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("InvalidMessageContents");
+    }
+
+    @Test
+    void failedCallFailsTheWholeBatch() {
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenThrow(new IllegalStateException("unavailable"));
+        buffer = new SqsSendBuffer(sqs, "queue", 20, 1, new SimpleMeterRegistry());
+
+        CompletableFuture<String> first = buffer.send("a", 0, null);
+        CompletableFuture<String> second = buffer.send("b", 0, null);
+
+        assertThatThrownBy(() -> first.get(2, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> second.get(2, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Answer every batch with "id-" + body, rejecting the entry whose body is rejectedBody
+     */
+    private void acceptAllExcept(String rejectedBody) {
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            List<String> bodies = new ArrayList<>();
+            SendMessageBatchResult result = new SendMessageBatchResult()
+                    .withSuccessful(new ArrayList<>())
+                    .withFailed(new ArrayList<>());
+            for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+                bodies.add(entry.getMessageBody());
+                if (entry.getMessageBody().equals(rejectedBody)) {
+                    result.getFailed().add(new BatchResultErrorEntry()
+                            .withId(entry.getId())
+                            .withCode("InvalidMessageContents")
+                            .withMessage("rejected"));
+                } else {
+                    result.getSuccessful().add(new SendMessageBatchResultEntry()
+                            .withId(entry.getId())
+                            .withMessageId("id-" + entry.getMessageBody()));
+                }
+            }
+            batches.add(bodies);
+            return result;
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package com.somdiproy.smartcode.util;
+
+import com.somdiproy.smartcode.lambda.ChunkResultMerger;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiffExcerptBuilderTest {
+
+    private static final String PATCH = String.join("\n",
+            "@@ -10,6 +10,7 @@ class A",
+            " h10",
+            " h11",
+            " h12",
+            "+h13",
+            " h14",
+            " h15",
+            " h16");
+
+    @Test
+    void windowsTheHeadFileAroundEachChange() {
+        DiffExcerptBuilder.Excerpt excerpt = DiffExcerptBuilder.build("A.java", PATCH, head(30), 2);
+
+        assertThat(excerpt.getText()).isEqualTo(String.join("\n",
+                "// File: A.java",
+                "// Changed lines: 13",
+                "// @@ line 11",
+                "h11", "h12", "h13", "h14", "h15", ""));
+        assertThat(excerpt.getChangedLines()).isEqualTo(1);
+        assertThat(excerpt.getIncludedLines()).isEqualTo(5);
+    }
+
+    @Test
+    void fallsBackToThePatchLinesWithoutTheHeadFile() {
+        DiffExcerptBuilder.Excerpt excerpt = DiffExcerptBuilder.build("A.java", PATCH, null, 5);
+
+        // Lines 8 and 9 are outside the patch, so the run starts at its first line
+        assertThat(excerpt.getText()).contains("// @@ line 10\nh10\n").endsWith("h16\n");
+        assertThat(excerpt.getIncludedLines()).isEqualTo(7);
+    }
+
+    @Test
+    void startsANewRunForDistantHunks() {
+        String patch = String.join("\n",
+                "@@ -5,1 +5,2 @@",
+                " h5",
+                "+h6",
+                "@@ -40,1 +41,2 @@",
+                " h41",
+                "+h42");
+
+        DiffExcerptBuilder.Excerpt excerpt = DiffExcerptBuilder.build("A.java", patch, head(60), 1);
+
+        assertThat(excerpt.getText()).contains(
+                "// Changed lines: 6, 42\n",
+                "// @@ line 5\nh5\nh6\nh7\n",
+                "// @@ line 41\nh41\nh42\nh43\n");
+    }
+
+    @Test
+    void deletionAnchorsOnTheLineNowInItsPlace() {
+        String patch = String.join("\n",
+                "@@ -20,3 +20,2 @@",
+                " h20",
+                "-removed",
+                " h21");
+
+        DiffExcerptBuilder.Excerpt excerpt = DiffExcerptBuilder.build("A.java", patch, head(30), 1);
+
+        assertThat(excerpt.getText()).contains(
+                "// Changed lines: none (deletions only)\n",
+                "// @@ line 20\nh20\nh21\nh22\n");
+        assertThat(excerpt.getChangedLines()).isZero();
+    }
+
+    @Test
+    void patchWithoutHunksHasNoExcerpt() {
+        assertThat(DiffExcerptBuilder.build("A.java", null, head(10), 3)).isNull();
+        assertThat(DiffExcerptBuilder.build("A.java", "Binary files differ", head(10), 3)).isNull();
+    }
+
+    @Test
+    void issuesInTheExcerptMapBackToHeadLines() {
+        DiffExcerptBuilder.Excerpt excerpt = DiffExcerptBuilder.build("A.java", PATCH, head(30), 2);
+        ChunkResultMerger merger = ChunkResultMerger.forSource(excerpt.getText());
+
+        // Excerpt line 6 is the added h13
+        Map<String, Object> issue = new HashMap<>();
+        issue.put("title", "Possible NPE");
+        issue.put("lineNumber", 6);
+        Map<String, Object> result = new HashMap<>();
+        result.put("issues", new ArrayList<>(List.of(issue)));
+        merger.locateIssues(result);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> located = ((List<Map<String, Object>>) result.get("issues")).get(0);
+        assertThat(located).containsEntry("file", "A.java").containsEntry("lineNumber", 13);
+    }
+
+    private static String head(int lines) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= lines; i++) {
+            content.append('h').append(i);
+            if (i < lines) {
+                content.append('\n');
+            }
+        }
+        return content.toString();
+    }
+}